@@ -1630,15 +1630,45 @@ public long getTimeDuration(String name, long defaultValue, TimeUnit unit) {
     return getTimeDurationHelper(name, vStr, unit);
   }
 
+  /**
+   * Return time duration in the given time unit, like
+   * {@link #getTimeDuration(String, long, TimeUnit)}, but take a value
+   * without a unit suffix, and the default value, to be in a different unit.
+   * This lets a property which used to be given in coarse units be read
+   * more precisely.
+   * @param name Property name
+   * @param defaultValue Value returned if no mapping exists, in defaultUnit.
+   * @param defaultUnit Unit of the default value, and of a stored property
+   *        without a unit suffix.
+   * @param returnUnit Unit to convert the value to.
+   * @throws NumberFormatException If the property stripped of its unit is not
+   *         a number
+   */
+  public long getTimeDuration(String name, long defaultValue,
+      TimeUnit defaultUnit, TimeUnit returnUnit) {
+    String vStr = get(name);
+    if (null == vStr) {
+      return returnUnit.convert(defaultValue, defaultUnit);
+    }
+    vStr = vStr.trim();
+    return getTimeDurationHelper(name, vStr, defaultUnit, returnUnit);
+  }
+
   private long getTimeDurationHelper(String name, String vStr, TimeUnit unit) {
+    return getTimeDurationHelper(name, vStr, unit, unit);
+  }
+
+  private long getTimeDurationHelper(String name, String vStr,
+      TimeUnit defaultUnit, TimeUnit returnUnit) {
     ParsedTimeDuration vUnit = ParsedTimeDuration.unitFor(vStr);
     if (null == vUnit) {
-      LOG.warn("No unit for " + name + "(" + vStr + ") assuming " + unit);
-      vUnit = ParsedTimeDuration.unitFor(unit);
+      LOG.warn("No unit for " + name + "(" + vStr + ") assuming " +
+          defaultUnit);
+      vUnit = ParsedTimeDuration.unitFor(defaultUnit);
     } else {
       vStr = vStr.substring(0, vStr.lastIndexOf(vUnit.suffix()));
     }
-    return unit.convert(Long.parseLong(vStr), vUnit.unit());
+    return returnUnit.convert(Long.parseLong(vStr), vUnit.unit());
   }
 
   public long[] getTimeDurations(String name, TimeUnit unit) {
@@ -0,0 +1,46 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.fs;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import org.apache.hadoop.classification.InterfaceAudience;
+import org.apache.hadoop.classification.InterfaceStability;
+
+/**
+ * Implementers of this interface provide a write API that reads from a
+ * ByteBuffer, not a byte[]. Data in a direct ByteBuffer can then be written
+ * without first being copied to the heap by the caller.
+ */
+@InterfaceAudience.Public
+@InterfaceStability.Evolving
+public interface ByteBufferWritable {
+  /**
+   * Writes all of buf.remaining() bytes from buf.
+   * <p/>
+   * After a successful call, buf.position() will be equal to buf.limit().
+   * <p/>
+   * In the case of an exception, the value of buf.position() is undefined.
+   *
+   * @param buf
+   *          the ByteBuffer holding the data to write
+   * @throws IOException
+   *           if there is some error performing the write
+   */
+  public void write(ByteBuffer buf) throws IOException;
+}
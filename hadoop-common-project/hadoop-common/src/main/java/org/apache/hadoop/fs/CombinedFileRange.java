@@ -0,0 +1,49 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.fs;
+
+import java.util.Collections;
+import java.util.List;
+
+import org.apache.hadoop.classification.InterfaceAudience;
+import org.apache.hadoop.classification.InterfaceStability;
+
+/**
+ * A range which covers several nearby ranges of a vectored read, so that
+ * they are fetched with a single read.
+ */
+@InterfaceAudience.Private
+@InterfaceStability.Unstable
+public class CombinedFileRange extends FileRange {
+  private final List<FileRange> underlying;
+
+  CombinedFileRange(long offset, int length, List<FileRange> underlying) {
+    super(offset, length);
+    this.underlying = Collections.unmodifiableList(underlying);
+  }
+
+  /** @return the ranges this range covers, in order of offset */
+  public List<FileRange> getUnderlying() {
+    return underlying;
+  }
+
+  @Override
+  public String toString() {
+    return super.toString() + " of " + underlying.size() + " ranges";
+  }
+}
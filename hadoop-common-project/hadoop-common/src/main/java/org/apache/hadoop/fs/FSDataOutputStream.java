@@ -21,6 +21,7 @@
 import java.io.FilterOutputStream;
 import java.io.IOException;
 import java.io.OutputStream;
+import java.nio.ByteBuffer;
 
 import org.apache.hadoop.classification.InterfaceAudience;
 import org.apache.hadoop.classification.InterfaceStability;
@@ -30,9 +31,12 @@
 @InterfaceAudience.Public
 @InterfaceStability.Stable
 public class FSDataOutputStream extends DataOutputStream
-    implements Syncable, CanSetDropBehind {
+    implements Syncable, CanSetDropBehind, ByteBufferWritable {
   private final OutputStream wrappedStream;
 
+  /** The size of the chunks a direct buffer is copied to the heap in. */
+  private static final int TMP_BUFFER_SIZE = 64 * 1024;
+
   private static class PositionCache extends FilterOutputStream {
     private final FileSystem.Statistics statistics;
     private long position;
@@ -61,6 +65,27 @@ public void write(byte b[], int off, int len) throws IOException {
       }
     }
       
+    void write(ByteBuffer buf) throws IOException {
+      final int len = buf.remaining();
+      if (out instanceof ByteBufferWritable) {
+        ((ByteBufferWritable)out).write(buf);
+      } else if (buf.hasArray()) {
+        out.write(buf.array(), buf.arrayOffset() + buf.position(), len);
+        buf.position(buf.limit());
+      } else {
+        byte[] tmp = new byte[Math.min(len, TMP_BUFFER_SIZE)];
+        while (buf.hasRemaining()) {
+          int n = Math.min(tmp.length, buf.remaining());
+          buf.get(tmp, 0, n);
+          out.write(tmp, 0, n);
+        }
+      }
+      position += len;                            // update position
+      if (statistics != null) {
+        statistics.incrementBytesWritten(len);
+      }
+    }
+
     long getPos() {
       return position;                            // return cached position
     }
@@ -111,6 +136,20 @@ public OutputStream getWrappedStream() {
     return wrappedStream;
   }
 
+  /**
+   * Write the remaining bytes of a buffer. If the wrapped stream is
+   * {@link ByteBufferWritable}, it takes the data from the buffer directly.
+   */
+  @Override  // ByteBufferWritable
+  public void write(ByteBuffer buf) throws IOException {
+    final int len = buf.remaining();
+    ((PositionCache)out).write(buf);
+    written += len;
+    if (written < 0) {
+      written = Integer.MAX_VALUE;
+    }
+  }
+
   @Override  // Syncable
   public void hflush() throws IOException {
     if (wrappedStream instanceof Syncable) {
@@ -25,6 +25,7 @@
 
 import java.io.IOException;
 import java.io.OutputStream;
+import java.nio.ByteBuffer;
 import java.util.zip.Checksum;
 
 /**
@@ -33,7 +34,8 @@
  */
 @InterfaceAudience.LimitedPrivate({"HDFS"})
 @InterfaceStability.Unstable
-abstract public class FSOutputSummer extends OutputStream {
+abstract public class FSOutputSummer extends OutputStream
+    implements ByteBufferWritable {
   // data checksum
   private final DataChecksum sum;
   // internal buffer for storing data before it is checksumed
@@ -42,6 +44,8 @@ abstract public class FSOutputSummer extends OutputStream {
   private byte checksum[];
   // The number of valid bytes in the buffer.
   private int count;
+  // direct buffer for the checksums of data written from a direct buffer
+  private ByteBuffer directChecksum;
   
   // We want this value to be a multiple of 3 because the native code checksums
   // 3 chunks simultaneously. The chosen value of 9 strikes a balance between
@@ -61,6 +65,22 @@ protected FSOutputSummer(DataChecksum sum) {
    */
   protected abstract void writeChunk(byte[] b, int bOffset, int bLen,
       byte[] checksum, int checksumOffset, int checksumLen) throws IOException;
+
+  /**
+   * Write the data chunk of <code>bLen > 0</code> bytes from the position of
+   * <code>b</code>, and its checksum. The position of <code>b</code> is
+   * advanced past the chunk.
+   *
+   * This is called for data written from a direct buffer, only while the
+   * internal buffer is empty. By default the chunk is copied through the
+   * internal buffer to {@link #writeChunk(byte[], int, int, byte[], int, int)};
+   * streams which can take the data from the buffer should override it.
+   */
+  protected void writeChunk(ByteBuffer b, int bLen, byte[] checksum,
+      int checksumOffset, int checksumLen) throws IOException {
+    b.get(buf, 0, bLen);
+    writeChunk(buf, 0, bLen, checksum, checksumOffset, checksumLen);
+  }
   
   /**
    * Check if the implementing OutputStream is closed and should no longer
@@ -138,6 +158,52 @@ private int write1(byte b[], int off, int len) throws IOException {
     return bytesToCopy;
   }
 
+  /**
+   * Writes the remaining bytes of <code>src</code> and generate a checksum for
+   * each data chunk, like {@link #write(byte[], int, int)}.
+   *
+   * <p> Whole chunks of a direct buffer are checksummed in place, and handed
+   * to {@link #writeChunk(ByteBuffer, int, byte[], int, int)} without being
+   * copied to the heap first.
+   *
+   * @param      src   the data.
+   * @exception  IOException  if an I/O error occurs.
+   */
+  @Override
+  public synchronized void write(ByteBuffer src) throws IOException {
+    if (src.hasArray()) {
+      final int len = src.remaining();
+      write(src.array(), src.arrayOffset() + src.position(), len);
+      src.position(src.position() + len);
+      return;
+    }
+
+    checkClosed();
+
+    while (src.hasRemaining()) {
+      write1(src);
+    }
+  }
+
+  /**
+   * Write a portion of a direct buffer, flushing to the underlying
+   * stream at most once if necessary.
+   */
+  private void write1(ByteBuffer src) throws IOException {
+    if (count == 0 && src.remaining() >= buf.length) {
+      writeChecksumChunks(src, buf.length);
+      return;
+    }
+
+    int bytesToCopy = Math.min(buf.length - count, src.remaining());
+    src.get(buf, count, bytesToCopy);
+    count += bytesToCopy;
+    if (count == buf.length) {
+      // local buffer is full
+      flushBuffer();
+    }
+  }
+
   /* Forces any buffered output bytes to be checksumed and written out to
    * the underlying output stream. 
    */
@@ -224,6 +290,37 @@ private void writeChecksumChunks(byte b[], int off, int len)
     }
   }
 
+  /** Generate checksums for the data chunks in the next <code>len</code>
+   * bytes of a direct buffer and output chunks & checksums to the underlying
+   * output stream.
+   */
+  private void writeChecksumChunks(ByteBuffer src, int len)
+      throws IOException {
+    final int start = src.position();
+    final ByteBuffer data = src.duplicate();
+    data.limit(start + len);
+    if (directChecksum == null) {
+      directChecksum = ByteBuffer.allocateDirect(checksum.length);
+    }
+    directChecksum.clear();
+    sum.calculateChunkedSums(data, directChecksum);
+    directChecksum.get(checksum, 0, sum.getChecksumSize(len));
+    TraceScope scope = createWriteTraceScope();
+    try {
+      for (int i = 0; i < len; i += sum.getBytesPerChecksum()) {
+        int chunkLen = Math.min(sum.getBytesPerChecksum(), len - i);
+        int ckOffset = i / sum.getBytesPerChecksum() * getChecksumSize();
+        data.position(start + i);
+        writeChunk(data, chunkLen, checksum, ckOffset, getChecksumSize());
+      }
+    } finally {
+      if (scope != null) {
+        scope.close();
+      }
+    }
+    src.position(start + len);
+  }
+
   /**
    * Converts a checksum integer value to a byte stream
    */
@@ -248,6 +345,7 @@ static byte[] int2byte(int integer, byte[] bytes) {
   protected synchronized void setChecksumBufSize(int size) {
     this.buf = new byte[size];
     this.checksum = new byte[sum.getChecksumSize(size)];
+    this.directChecksum = null;
     this.count = 0;
   }
 
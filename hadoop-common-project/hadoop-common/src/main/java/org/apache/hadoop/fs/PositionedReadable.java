@@ -18,6 +18,9 @@
 package org.apache.hadoop.fs;
 
 import java.io.*;
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.function.IntFunction;
 
 import org.apache.hadoop.classification.InterfaceAudience;
 import org.apache.hadoop.classification.InterfaceStability;
@@ -85,4 +88,41 @@ void readFully(long position, byte[] buffer, int offset, int length)
    * the read operation completed
    */
   void readFully(long position, byte[] buffer) throws IOException;
+
+  /**
+   * @return the smallest gap between two ranges of a vectored read which is
+   *         cheaper to seek over than to read through
+   */
+  default int minSeekForVectorReads() {
+    return 4 * 1024;
+  }
+
+  /**
+   * @return the largest read which nearby ranges of a vectored read are
+   *         merged into
+   */
+  default int maxReadSizeForVectorReads() {
+    return 1024 * 1024;
+  }
+
+  /**
+   * Read several ranges of the file, each into a buffer of its own. This
+   * does not change the current offset of a file. On return, the data of
+   * each range is set to a future of its buffer; the reads may complete
+   * asynchronously, and in any order. Implementations may merge nearby
+   * ranges into fewer reads, and issue reads in parallel.
+   *
+   * The default implementation reads each range in turn with
+   * {@link #readFully(long, byte[], int, int)}.
+   *
+   * @param ranges the ranges to read, which must not overlap
+   * @param allocate allocates a buffer of the given size
+   * @throws IOException IO problems.
+   * @throws IllegalArgumentException if a range is invalid, or two ranges
+   * overlap
+   */
+  default void readVectored(List<? extends FileRange> ranges,
+      IntFunction<ByteBuffer> allocate) throws IOException {
+    VectoredReadUtils.readVectored(this, ranges, allocate);
+  }
 }
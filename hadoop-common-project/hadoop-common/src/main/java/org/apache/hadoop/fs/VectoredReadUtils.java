@@ -0,0 +1,263 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.fs;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.IntFunction;
+
+import org.apache.hadoop.classification.InterfaceAudience;
+import org.apache.hadoop.classification.InterfaceStability;
+
+/**
+ * Helpers for implementing {@link PositionedReadable#readVectored}.
+ */
+@InterfaceAudience.Private
+@InterfaceStability.Unstable
+public final class VectoredReadUtils {
+  /** The size of the chunks read into a buffer without an array. */
+  private static final int TMP_BUFFER_SIZE = 64 * 1024;
+
+  private static final Comparator<FileRange> BY_OFFSET =
+      new Comparator<FileRange>() {
+        @Override
+        public int compare(FileRange a, FileRange b) {
+          return Long.compare(a.getOffset(), b.getOffset());
+        }
+      };
+
+  private VectoredReadUtils() {
+  }
+
+  /**
+   * Check the ranges of a vectored read, and give each a future for its
+   * data.
+   *
+   * @param ranges the ranges to read
+   * @param fileLength the length of the file, or -1 if it is not known
+   * @return the ranges, sorted by offset
+   * @throws EOFException if a range ends past the end of the file
+   * @throws IllegalArgumentException if a range has a negative offset or
+   *                                  length, or if two ranges overlap
+   */
+  public static List<FileRange> validateAndSortRanges(
+      List<? extends FileRange> ranges, long fileLength) throws EOFException {
+    List<FileRange> sorted = new ArrayList<FileRange>(ranges);
+    Collections.sort(sorted, BY_OFFSET);
+    long prevEnd = 0;
+    for (FileRange range : sorted) {
+      if (range.getOffset() < 0 || range.getLength() < 0) {
+        throw new IllegalArgumentException("Invalid " + range);
+      }
+      if (range.getOffset() < prevEnd) {
+        throw new IllegalArgumentException("Overlapping ranges at " + range);
+      }
+      prevEnd = range.getOffset() + range.getLength();
+      if (fileLength >= 0 && prevEnd > fileLength) {
+        throw new EOFException(FSExceptionMessages.EOF_IN_READ_FULLY
+            + ": " + range + " ends past " + fileLength);
+      }
+    }
+    for (FileRange range : sorted) {
+      range.setData(new CompletableFuture<ByteBuffer>());
+    }
+    return sorted;
+  }
+
+  /**
+   * Read each of the ranges in turn with
+   * {@link PositionedReadable#readFully(long, byte[], int, int)}.
+   */
+  public static void readVectored(PositionedReadable stream,
+      List<? extends FileRange> ranges, IntFunction<ByteBuffer> allocate)
+      throws IOException {
+    for (FileRange range : validateAndSortRanges(ranges, -1)) {
+      try {
+        ByteBuffer buffer = allocate.apply(range.getLength());
+        readFully(stream, range.getOffset(), buffer, range.getLength());
+        range.getData().complete(buffer);
+      } catch (IOException | RuntimeException e) {
+        range.getData().completeExceptionally(e);
+      }
+    }
+  }
+
+  /**
+   * Read bytes from the stream into a buffer from its position. On return,
+   * the position of the buffer is unchanged and its limit is the end of the
+   * bytes read.
+   *
+   * @param stream the stream to read from
+   * @param offset the offset in the stream to read from
+   * @param buffer the buffer to read into
+   * @param length the number of bytes to read
+   */
+  public static void readFully(PositionedReadable stream, long offset,
+      ByteBuffer buffer, int length) throws IOException {
+    int start = buffer.position();
+    if (buffer.hasArray()) {
+      stream.readFully(offset, buffer.array(), buffer.arrayOffset() + start,
+          length);
+    } else {
+      byte[] tmp = new byte[Math.min(length, TMP_BUFFER_SIZE)];
+      ByteBuffer dup = buffer.duplicate();
+      for (int done = 0; done < length;) {
+        int len = Math.min(tmp.length, length - done);
+        stream.readFully(offset + done, tmp, 0, len);
+        dup.put(tmp, 0, len);
+        done += len;
+      }
+    }
+    buffer.limit(start + length);
+  }
+
+  /**
+   * Merge sorted ranges which are close enough together that reading the
+   * gap between them is cheaper than a separate read.
+   *
+   * @param sortedRanges the ranges, sorted by offset and not overlapping
+   * @param chunkSize if positive, ranges are only merged within the same
+   *                  chunk of this size, such as a block
+   * @param minSeek the largest gap between merged ranges
+   * @param maxSize the largest merged range
+   * @return the merged ranges, in order of offset
+   */
+  public static List<CombinedFileRange> mergeSortedRanges(
+      List<? extends FileRange> sortedRanges, long chunkSize, int minSeek,
+      int maxSize) {
+    List<CombinedFileRange> result = new ArrayList<CombinedFileRange>();
+    List<FileRange> current = null;
+    long start = 0;
+    long end = 0;
+    for (FileRange range : sortedRanges) {
+      long rangeEnd = range.getOffset() + range.getLength();
+      if (current != null
+          && range.getOffset() - end <= minSeek
+          && rangeEnd - start <= maxSize
+          && inSameChunk(start, rangeEnd, chunkSize)) {
+        current.add(range);
+        end = Math.max(end, rangeEnd);
+        continue;
+      }
+      if (current != null) {
+        result.add(new CombinedFileRange(start, (int) (end - start), current));
+      }
+      current = new ArrayList<FileRange>();
+      current.add(range);
+      start = range.getOffset();
+      end = rangeEnd;
+    }
+    if (current != null) {
+      result.add(new CombinedFileRange(start, (int) (end - start), current));
+    }
+    return result;
+  }
+
+  private static boolean inSameChunk(long start, long end, long chunkSize) {
+    return chunkSize <= 0
+        || start / chunkSize == Math.max(end - 1, start) / chunkSize;
+  }
+
+  /**
+   * Read bytes from an input stream into a buffer from its position, like
+   * {@link #readFully(PositionedReadable, long, ByteBuffer, int)}.
+   *
+   * @throws EOFException if the stream ends first
+   */
+  public static void readFully(InputStream in, ByteBuffer buffer, int length)
+      throws IOException {
+    int start = buffer.position();
+    byte[] tmp = buffer.hasArray() ?
+        null : new byte[Math.min(length, TMP_BUFFER_SIZE)];
+    ByteBuffer dup = buffer.duplicate();
+    for (int done = 0; done < length;) {
+      int nread;
+      if (tmp == null) {
+        nread = in.read(buffer.array(), buffer.arrayOffset() + start + done,
+            length - done);
+      } else {
+        nread = in.read(tmp, 0, Math.min(tmp.length, length - done));
+        if (nread > 0) {
+          dup.put(tmp, 0, nread);
+        }
+      }
+      if (nread < 0) {
+        throw new EOFException(FSExceptionMessages.EOF_IN_READ_FULLY);
+      }
+      done += nread;
+    }
+    buffer.limit(start + length);
+  }
+
+  /**
+   * Read a merged range into a single buffer, and complete the data of each
+   * range it covers with a slice of it. If the read fails, the data of each
+   * range completes with the failure.
+   */
+  public static void readCombinedRange(PositionedReadable stream,
+      CombinedFileRange range, IntFunction<ByteBuffer> allocate) {
+    try {
+      ByteBuffer buffer = allocate.apply(range.getLength());
+      readFully(stream, range.getOffset(), buffer, range.getLength());
+      completeCombinedRange(range, buffer);
+    } catch (IOException | RuntimeException e) {
+      failCombinedRange(range, e);
+    }
+  }
+
+  /**
+   * Complete the data of each range a merged range covers with a slice of
+   * the data read for the merged range.
+   */
+  public static void completeCombinedRange(CombinedFileRange range,
+      ByteBuffer buffer) {
+    for (FileRange child : range.getUnderlying()) {
+      child.getData().complete(sliceTo(buffer, range.getOffset(), child));
+    }
+  }
+
+  /** Fail the data of each range a merged range covers. */
+  public static void failCombinedRange(CombinedFileRange range,
+      Throwable cause) {
+    for (FileRange child : range.getUnderlying()) {
+      child.getData().completeExceptionally(cause);
+    }
+  }
+
+  /**
+   * @param readData the data read from the file, from its position
+   * @param readOffset the offset in the file of the data
+   * @param range a range within the data
+   * @return the part of the data in the range
+   */
+  public static ByteBuffer sliceTo(ByteBuffer readData, long readOffset,
+      FileRange range) {
+    int start = readData.position() + (int) (range.getOffset() - readOffset);
+    ByteBuffer slice = readData.duplicate();
+    slice.limit(start + range.getLength());
+    slice.position(start);
+    return slice.slice();
+  }
+}
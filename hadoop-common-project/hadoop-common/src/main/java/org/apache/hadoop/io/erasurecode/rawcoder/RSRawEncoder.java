@@ -28,6 +28,11 @@
  * isn't available in some environment. Please always use native implementations
  * when possible. This new Java coder is about 5X faster than the one originated
  * from HDFS-RAID, and also compatible with the native/ISA-L coder.
+ *
+ * Direct ByteBuffers are coded a segment at a time through heap arrays, with
+ * the same GF(256) table lookups as byte arrays, so that both kinds of buffers
+ * are coded at about the same speed. RawErasureCoderBenchmark compares the
+ * coders on either kind of buffer.
  */
 @InterfaceAudience.Private
 public class RSRawEncoder extends RawErasureEncoder {
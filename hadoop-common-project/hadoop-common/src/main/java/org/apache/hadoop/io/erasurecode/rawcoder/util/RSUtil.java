@@ -35,6 +35,13 @@ private RSUtil(){}
   public static GaloisField GF = GaloisField.getInstance();
   public static final int PRIMITIVE_ROOT = 2;
 
+  /**
+   * The size of the segments coded at a time from ByteBuffers, small enough
+   * for the segments of all the inputs and outputs to stay in cache while
+   * they are coded.
+   */
+  private static final int SEGMENT_SIZE = 4096;
+
   public static int[] getPrimitivePower(int numDataUnits, int numParityUnits) {
     int[] primitivePower = new int[numDataUnits + numParityUnits];
     // compute powers of the primitive root
@@ -133,53 +140,45 @@ public static void encodeData(byte[] gfTables, int dataLen, byte[][] inputs,
 
   /**
    * See above. Try to use the byte[] version when possible.
+   *
+   * The data is copied through heap arrays a segment at a time and coded by
+   * the byte[] version, since the bulk copies between a direct buffer and an
+   * array cost much less than an absolute get and put of every byte, which
+   * the JIT can neither unroll nor free of their bounds checks.
    */
   public static void encodeData(byte[] gfTables, ByteBuffer[] inputs,
       ByteBuffer[] outputs) {
     int numInputs = inputs.length;
     int numOutputs = outputs.length;
     int dataLen = inputs[0].remaining();
-    int l, i, j, iPos, oPos;
-    ByteBuffer input, output;
-    byte s;
-    final int times = dataLen / 8;
-    final int extra = dataLen - dataLen % 8;
-    byte[] tableLine;
-
-    for (l = 0; l < numOutputs; l++) {
-      output = outputs[l];
-
-      for (j = 0; j < numInputs; j++) {
-        input = inputs[j];
-        iPos = input.position();
-        oPos = output.position();
-
-        s = gfTables[j * 32 + l * numInputs * 32 + 1];
-        tableLine = GF256.gfMulTab()[s & 0xff];
-
-        for (i = 0; i < times; i++, iPos += 8, oPos += 8) {
-          output.put(oPos + 0, (byte) (output.get(oPos + 0) ^
-              tableLine[0xff & input.get(iPos + 0)]));
-          output.put(oPos + 1, (byte) (output.get(oPos + 1) ^
-              tableLine[0xff & input.get(iPos + 1)]));
-          output.put(oPos + 2, (byte) (output.get(oPos + 2) ^
-              tableLine[0xff & input.get(iPos + 2)]));
-          output.put(oPos + 3, (byte) (output.get(oPos + 3) ^
-              tableLine[0xff & input.get(iPos + 3)]));
-          output.put(oPos + 4, (byte) (output.get(oPos + 4) ^
-              tableLine[0xff & input.get(iPos + 4)]));
-          output.put(oPos + 5, (byte) (output.get(oPos + 5) ^
-              tableLine[0xff & input.get(iPos + 5)]));
-          output.put(oPos + 6, (byte) (output.get(oPos + 6) ^
-              tableLine[0xff & input.get(iPos + 6)]));
-          output.put(oPos + 7, (byte) (output.get(oPos + 7) ^
-              tableLine[0xff & input.get(iPos + 7)]));
-        }
+    int segmentLen = Math.min(dataLen, SEGMENT_SIZE);
+    ByteBuffer[] inputBuffers = new ByteBuffer[numInputs];
+    ByteBuffer[] outputBuffers = new ByteBuffer[numOutputs];
+    byte[][] inputSegments = new byte[numInputs][segmentLen];
+    byte[][] outputSegments = new byte[numOutputs][segmentLen];
+    int[] inputOffsets = new int[numInputs];
+    int[] outputOffsets = new int[numOutputs];
+    for (int j = 0; j < numInputs; j++) {
+      inputBuffers[j] = inputs[j].duplicate();
+    }
+    for (int l = 0; l < numOutputs; l++) {
+      outputBuffers[l] = outputs[l].duplicate();
+    }
 
-        for (i = extra; i < dataLen; i++, iPos++, oPos++) {
-          output.put(oPos, (byte) (output.get(oPos) ^
-              tableLine[0xff & input.get(iPos)]));
-        }
+    for (int done = 0; done < dataLen; done += segmentLen) {
+      int len = Math.min(segmentLen, dataLen - done);
+      for (int j = 0; j < numInputs; j++) {
+        inputBuffers[j].get(inputSegments[j], 0, len);
+      }
+      for (int l = 0; l < numOutputs; l++) {
+        outputBuffers[l].mark();
+        outputBuffers[l].get(outputSegments[l], 0, len);
+      }
+      encodeData(gfTables, len, inputSegments, inputOffsets,
+          outputSegments, outputOffsets);
+      for (int l = 0; l < numOutputs; l++) {
+        outputBuffers[l].reset();
+        outputBuffers[l].put(outputSegments[l], 0, len);
       }
     }
   }
@@ -37,6 +37,8 @@ private RpcConstants() {
   
   
   public static final int INVALID_RETRY_COUNT = -1;
+
+  public static final long INVALID_STATE_ID = Long.MIN_VALUE;
   
  /**
   * The Rpc-connection header is as follows 
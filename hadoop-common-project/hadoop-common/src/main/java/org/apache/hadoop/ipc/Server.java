@@ -424,6 +424,7 @@ protected ResponseBuffer initialValue() {
         }
   };
   private int socketSendBufferSize;
+  private volatile AlignmentContext alignmentContext;
   private final int maxDataLength;
   private final boolean tcpNoDelay; // if T then disable Nagle's Algorithm
 
@@ -673,10 +674,12 @@ public static class Call implements Schedulable {
     private final CallerContext callerContext; // the call context
     private int priorityLevel;
     // the priority level assigned by scheduler, 0 by default
+    private long clientStateId = RpcConstants.INVALID_STATE_ID;
 
     private Call(Call call) {
       this(call.callId, call.retryCount, call.rpcRequest, call.connection,
           call.rpcKind, call.clientId, call.traceScope, call.callerContext);
+      this.clientStateId = call.clientStateId;
     }
 
     public Call(int id, int retryCount, Writable param, 
@@ -715,6 +718,21 @@ public void setResponse(ByteBuffer response) {
       this.rpcResponse = response;
     }
 
+    /**
+     * @return the state ID the client had seen when it sent this call, as
+     * received by the server's {@link AlignmentContext}, or
+     * {@link RpcConstants#INVALID_STATE_ID} if none was sent.
+     */
+    @InterfaceStability.Unstable
+    @InterfaceAudience.LimitedPrivate({"HDFS"})
+    public long getClientStateId() {
+      return clientStateId;
+    }
+
+    void setClientStateId(long stateId) {
+      this.clientStateId = stateId;
+    }
+
     /**
      * Allow a IPC response to be postponed instead of sent immediately
      * after the handler returns from the proxy method.  The intended use
@@ -2202,6 +2220,11 @@ private void processRpcRequest(RpcRequestHeaderProto header,
           rpcRequest, this, ProtoUtil.convert(header.getRpcKind()),
           header.getClientId().toByteArray(), traceScope, callerContext);
 
+      AlignmentContext ac = alignmentContext;
+      if (ac != null && header.hasStateId()) {
+        call.setClientStateId(ac.receiveRequestState(header));
+      }
+
       // Save the priority level assignment by the scheduler
       call.setPriorityLevel(callQueue.getPriorityLevel(call));
 
@@ -2392,6 +2415,12 @@ public void run() {
             LOG.info(Thread.currentThread().getName() + ": skipped " + call);
             continue;
           }
+          if (shouldDeferCall(call)) {
+            // The server has not caught up with the state the client has
+            // seen yet. Put the call back rather than hold this handler.
+            requeueCall(call);
+            continue;
+          }
           String errorClass = null;
           String error = null;
           RpcStatusProto returnStatus = RpcStatusProto.SUCCESS;
@@ -2477,6 +2506,35 @@ public Writable run() throws Exception {
 
   }
 
+  /**
+   * @return true if the server has not caught up with the state ID sent by
+   * the client of the call, and should hold the call back for a while.
+   */
+  private boolean shouldDeferCall(Call call) {
+    AlignmentContext ac = alignmentContext;
+    return ac != null &&
+        call.clientStateId != RpcConstants.INVALID_STATE_ID &&
+        call.clientStateId > ac.getLastSeenStateId() &&
+        Time.now() - call.timestamp < ac.getMaxStateWaitMs();
+  }
+
+  /**
+   * Put a call which is being held back at the end of the call queue,
+   * without blocking. If the queue is full, ask the client to retry it.
+   */
+  private void requeueCall(Call call)
+      throws IOException, InterruptedException {
+    if (!callQueue.offer(call)) {
+      rpcMetrics.incrClientBackoff();
+      synchronized (call.connection.responseQueue) {
+        setupResponse(call, RpcStatusProto.ERROR,
+            RpcErrorCodeProto.ERROR_RPC_SERVER, null,
+            RetriableException.class.getName(), "Server is too busy.");
+        call.sendResponse();
+      }
+    }
+  }
+
   @VisibleForTesting
   void logException(Log logger, Throwable e, Call call) {
     if (exceptionsHandler.isSuppressedLog(e.getClass())) {
@@ -2680,6 +2738,10 @@ private void setupResponse(
     headerBuilder.setRetryCount(call.retryCount);
     headerBuilder.setStatus(status);
     headerBuilder.setServerIpcVersionNum(CURRENT_VERSION);
+    AlignmentContext ac = alignmentContext;
+    if (ac != null) {
+      ac.updateResponseState(headerBuilder);
+    }
 
     if (status == RpcStatusProto.SUCCESS) {
       RpcResponseHeaderProto header = headerBuilder.build();
@@ -2782,6 +2844,16 @@ Configuration getConf() {
   /** Sets the socket buffer size used for responding to RPCs */
   public void setSocketSendBufSize(int size) { this.socketSendBufferSize = size; }
 
+  /**
+   * Set the {@link AlignmentContext} used to exchange state with clients in
+   * RPC headers. May be null to disable state alignment.
+   */
+  @InterfaceStability.Unstable
+  @InterfaceAudience.LimitedPrivate({"HDFS"})
+  public void setAlignmentContext(AlignmentContext alignmentContext) {
+    this.alignmentContext = alignmentContext;
+  }
+
   public void setTracer(Tracer t) {
     this.tracer = t;
   }
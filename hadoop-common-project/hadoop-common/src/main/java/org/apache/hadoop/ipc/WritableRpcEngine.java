@@ -314,6 +314,26 @@ public <T> ProtocolProxy<T> getProxy(Class<T> protocol, long clientVersion,
     return new ProtocolProxy<T>(protocol, proxy, true);
   }
   
+  /** Construct a client-side proxy object that implements the named protocol,
+   * talking to a server at the named address. State alignment is not
+   * supported by this engine.
+   * @param <T>*/
+  @Override
+  public <T> ProtocolProxy<T> getProxy(Class<T> protocol, long clientVersion,
+                         InetSocketAddress addr, UserGroupInformation ticket,
+                         Configuration conf, SocketFactory factory,
+                         int rpcTimeout, RetryPolicy connectionRetryPolicy,
+                         AtomicBoolean fallbackToSimpleAuth,
+                         AlignmentContext alignmentContext)
+    throws IOException {
+    if (alignmentContext != null) {
+      throw new UnsupportedOperationException(
+          "Not supported: alignmentContext=" + alignmentContext);
+    }
+    return getProxy(protocol, clientVersion, addr, ticket, conf, factory,
+        rpcTimeout, connectionRetryPolicy, fallbackToSimpleAuth);
+  }
+
   /* Construct a server for a protocol implementation instance listening on a
    * port and address. */
   @Override
@@ -18,6 +18,7 @@
 package org.apache.hadoop.net;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Collection;
 import java.util.Collections;
@@ -381,10 +382,100 @@ public boolean equals(Object to) {
     }
   } // end of InnerNode
 
+  /** The leaves of a subtree, which are a range of a {@link Snapshot}. */
+  private static final class Subtree {
+    final Node node;
+    /** The index of the first leaf. */
+    final int start;
+    /** The index after the last leaf. */
+    final int end;
+
+    Subtree(Node node, int start, int end) {
+      this.node = node;
+      this.start = start;
+      this.end = end;
+    }
+  }
+
+  /**
+   * An immutable copy of the cluster map for choosing nodes without the
+   * lock. The leaves are kept in the order of a depth first walk of the
+   * tree, so that the leaves of every subtree are a contiguous range.
+   */
+  private static final class Snapshot {
+    private final Node[] leaves;
+    /** The subtree of each inner node and leaf, by normalized path. */
+    private final Map<String, Subtree> subtrees =
+        new HashMap<String, Subtree>();
+
+    Snapshot(InnerNode root) {
+      leaves = new Node[root.getNumOfLeaves()];
+      int end = addSubtree(root, NodeBase.ROOT, 0);
+      Preconditions.checkState(end == leaves.length,
+          "Found " + end + " leaves, expected " + leaves.length);
+    }
+
+    private int addSubtree(Node node, String path, int start) {
+      int end = start;
+      if (node instanceof InnerNode) {
+        for (Node child : ((InnerNode) node).getChildren()) {
+          end = addSubtree(child,
+              path + NodeBase.PATH_SEPARATOR_STR + child.getName(), end);
+        }
+      } else {
+        leaves[end++] = node;
+      }
+      subtrees.put(path, new Subtree(node, start, end));
+      return end;
+    }
+
+    /** @return the subtree at the given path, or null if there is none */
+    Subtree get(String path) {
+      return subtrees.get(NodeBase.normalize(path));
+    }
+
+    /**
+     * @return the sorted, distinct indices of the excluded leaves in the
+     *         given range but not in the excluded subtree, if any
+     */
+    int[] getExcludedLeaves(Collection<Node> excludedNodes, int start,
+        int end, Subtree excludedSubtree) {
+      if (excludedNodes == null || excludedNodes.isEmpty()) {
+        return new int[0];
+      }
+      int[] indices = new int[excludedNodes.size()];
+      int n = 0;
+      for (Node node : excludedNodes) {
+        Subtree leaf = node == null ? null : get(NodeBase.getPath(node));
+        if (leaf == null || leaf.node instanceof InnerNode
+            || !node.equals(leaf.node)
+            || leaf.start < start || leaf.start >= end
+            || (excludedSubtree != null && leaf.start >= excludedSubtree.start
+                && leaf.start < excludedSubtree.end)) {
+          continue;
+        }
+        indices[n++] = leaf.start;
+      }
+      Arrays.sort(indices, 0, n);
+      int distinct = 0;
+      for (int i = 0; i < n; i++) {
+        if (distinct == 0 || indices[i] != indices[distinct - 1]) {
+          indices[distinct++] = indices[i];
+        }
+      }
+      return Arrays.copyOf(indices, distinct);
+    }
+  }
+
   /**
    * the root cluster map
    */
   InnerNode clusterMap;
+  /**
+   * The copy of the cluster map used to choose nodes, or null if the cluster
+   * map has changed since the last copy was made.
+   */
+  private volatile Snapshot snapshot;
   /** Depth of all leaf nodes */
   private int depthOfAllLeaves = -1;
   /** rack counter */
@@ -431,6 +522,7 @@ public void add(Node node) {
                                            + node.toString() 
                                            + " at an illegal network location");
       }
+      invalidateSnapshot();
       if (clusterMap.add(node)) {
         LOG.info("Adding a new node: "+NodeBase.getPath(node));
         if (rack == null) {
@@ -448,6 +540,34 @@ public void add(Node node) {
     }
   }
 
+  /**
+   * Drop the copy of the cluster map used to choose nodes. This must be
+   * called with the write lock held whenever the cluster map is changed.
+   */
+  protected void invalidateSnapshot() {
+    snapshot = null;
+  }
+
+  /** @return an up to date copy of the cluster map */
+  private Snapshot getSnapshot() {
+    Snapshot snap = snapshot;
+    if (snap == null) {
+      netlock.readLock().lock();
+      try {
+        // Publish the copy under the lock, so that a change to the cluster
+        // map can not be followed by a copy made before it.
+        snap = snapshot;
+        if (snap == null) {
+          snap = new Snapshot(clusterMap);
+          snapshot = snap;
+        }
+      } finally {
+        netlock.readLock().unlock();
+      }
+    }
+    return snap;
+  }
+
   protected void incrementRacks() {
     numOfRacks++;
     if (!clusterEverBeenMultiRack && numOfRacks > 1) {
@@ -509,6 +629,7 @@ public void remove(Node node) {
     LOG.info("Removing a node: "+NodeBase.getPath(node));
     netlock.writeLock().lock();
     try {
+      invalidateSnapshot();
       if (clusterMap.remove(node)) {
         InnerNode rack = (InnerNode)getNode(node.getNetworkLocation());
         if (rack == null) {
@@ -701,13 +822,10 @@ public boolean isOnSameRack( Node node1,  Node node2) {
     if (node1 == null || node2 == null) {
       return false;
     }
-      
-    netlock.readLock().lock();
-    try {
-      return isSameParents(node1, node2);
-    } finally {
-      netlock.readLock().unlock();
-    }
+    // The parents of a node only change when it is added or removed, and
+    // the answer may be stale as soon as it is returned, so there is no need
+    // to take the lock.
+    return isSameParents(node1, node2);
   }
   
   /**
@@ -773,15 +891,10 @@ public Node chooseRandom(final String scope) {
    */
   public Node chooseRandom(final String scope,
       final Collection<Node> excludedNodes) {
-    netlock.readLock().lock();
-    try {
-      if (scope.startsWith("~")) {
-        return chooseRandom(NodeBase.ROOT, scope.substring(1), excludedNodes);
-      } else {
-        return chooseRandom(scope, null, excludedNodes);
-      }
-    } finally {
-      netlock.readLock().unlock();
+    if (scope.startsWith("~")) {
+      return chooseRandom(NodeBase.ROOT, scope.substring(1), excludedNodes);
+    } else {
+      return chooseRandom(scope, null, excludedNodes);
     }
   }
 
@@ -795,51 +908,64 @@ private Node chooseRandom(final String scope, String excludedScope,
         excludedScope = null;
       }
     }
-    Node node = getNode(scope);
-    if (!(node instanceof InnerNode)) {
+    // Choose among the leaves of a copy of the cluster map, which is not
+    // changed under us, so the excluded leaves can be skipped rather than
+    // retried.
+    final Snapshot snap = getSnapshot();
+    Subtree subtree = snap.get(scope);
+    if (subtree == null || !(subtree.node instanceof InnerNode)) {
+      Node node = subtree == null ? null : subtree.node;
       return excludedNodes != null && excludedNodes.contains(node) ?
           null : node;
     }
-    InnerNode innerNode = (InnerNode)node;
-    int numOfDatanodes = innerNode.getNumOfLeaves();
-    if (excludedScope == null) {
-      node = null;
-    } else {
-      node = getNode(excludedScope);
-      if (!(node instanceof InnerNode)) {
-        numOfDatanodes -= 1;
-      } else {
-        numOfDatanodes -= ((InnerNode)node).getNumOfLeaves();
+    Subtree excludedSubtree = null;
+    if (excludedScope != null) {
+      excludedSubtree = snap.get(excludedScope);
+      // The subtrees either nest or are disjoint
+      if (excludedSubtree != null && (excludedSubtree.start < subtree.start
+          || excludedSubtree.end > subtree.end)) {
+        excludedSubtree = null;
       }
     }
+    int numOfDatanodes = subtree.end - subtree.start;
+    if (excludedSubtree != null) {
+      numOfDatanodes -= excludedSubtree.end - excludedSubtree.start;
+    }
     if (numOfDatanodes == 0) {
       LOG.warn("Failed to find datanode (scope=\"{}\" excludedScope=\"{}\").",
           String.valueOf(scope), String.valueOf(excludedScope));
       return null;
     }
-    Node ret = null;
-    final int availableNodes;
-    if (excludedScope == null) {
-      availableNodes = countNumOfAvailableNodes(scope, excludedNodes);
-    } else {
-      availableNodes =
-          countNumOfAvailableNodes("~" + excludedScope, excludedNodes);
-    }
+    final int[] excludedLeaves = snap.getExcludedLeaves(excludedNodes,
+        subtree.start, subtree.end, excludedSubtree);
+    final int availableNodes = numOfDatanodes - excludedLeaves.length;
     LOG.debug("Choosing random from {} available nodes on node {},"
         + " scope={}, excludedScope={}, excludeNodes={}", availableNodes,
-        innerNode.toString(), scope, excludedScope, excludedNodes);
+        subtree.node, scope, excludedScope, excludedNodes);
+    Node ret = null;
     if (availableNodes > 0) {
-      do {
-        int leaveIndex = r.nextInt(numOfDatanodes);
-        ret = innerNode.getLeaf(leaveIndex, node);
-        if (excludedNodes == null || !excludedNodes.contains(ret)) {
-          break;
+      // Pick one of the available leaves, and find its index by skipping
+      // the excluded leaves and the excluded subtree in ascending order.
+      int index = subtree.start + r.nextInt(availableNodes);
+      boolean skippedSubtree = excludedSubtree == null;
+      int e = 0;
+      while (true) {
+        int nextExcluded = e < excludedLeaves.length ?
+            excludedLeaves[e] : Integer.MAX_VALUE;
+        if (!skippedSubtree && excludedSubtree.start < nextExcluded) {
+          if (excludedSubtree.start > index) {
+            break;
+          }
+          index += excludedSubtree.end - excludedSubtree.start;
+          skippedSubtree = true;
+        } else if (nextExcluded <= index) {
+          index++;
+          e++;
         } else {
-          LOG.debug("Node {} is excluded, continuing.", ret);
+          break;
         }
-        // We've counted numOfAvailableNodes inside the lock, so there must be
-        // at least 1 satisfying node. Keep trying until we found it.
-      } while (true);
+      }
+      ret = snap.leaves[index];
     }
     LOG.debug("chooseRandom returning {}", ret);
     return ret;
@@ -881,38 +1007,27 @@ public int countNumOfAvailableNodes(String scope,
     scope = NodeBase.normalize(scope);
     int excludedCountInScope = 0; // the number of nodes in both scope & excludedNodes
     int excludedCountOffScope = 0; // the number of nodes outside scope & excludedNodes
-    netlock.readLock().lock();
-    try {
-      if (excludedNodes != null) {
-        for (Node node : excludedNodes) {
-          node = getNode(NodeBase.getPath(node));
-          if (node == null) {
-            continue;
-          }
-          if ((NodeBase.getPath(node) + NodeBase.PATH_SEPARATOR_STR)
-              .startsWith(scope + NodeBase.PATH_SEPARATOR_STR)) {
-            excludedCountInScope++;
-          } else {
-            excludedCountOffScope++;
-          }
+    final Snapshot snap = getSnapshot();
+    if (excludedNodes != null) {
+      for (Node node : excludedNodes) {
+        Subtree subtree = snap.get(NodeBase.getPath(node));
+        if (subtree == null) {
+          continue;
+        }
+        if ((NodeBase.getPath(subtree.node) + NodeBase.PATH_SEPARATOR_STR)
+            .startsWith(scope + NodeBase.PATH_SEPARATOR_STR)) {
+          excludedCountInScope++;
+        } else {
+          excludedCountOffScope++;
         }
       }
-      Node n = getNode(scope);
-      int scopeNodeCount = 0;
-      if (n != null) {
-        scopeNodeCount++;
-      }
-      if (n instanceof InnerNode) {
-        scopeNodeCount=((InnerNode)n).getNumOfLeaves();
-      }
-      if (isExcluded) {
-        return clusterMap.getNumOfLeaves() - scopeNodeCount
-            - excludedCountOffScope;
-      } else {
-        return scopeNodeCount - excludedCountInScope;
-      }
-    } finally {
-      netlock.readLock().unlock();
+    }
+    Subtree n = snap.get(scope);
+    int scopeNodeCount = n == null ? 0 : n.end - n.start;
+    if (isExcluded) {
+      return snap.leaves.length - scopeNodeCount - excludedCountOffScope;
+    } else {
+      return scopeNodeCount - excludedCountInScope;
     }
   }
 
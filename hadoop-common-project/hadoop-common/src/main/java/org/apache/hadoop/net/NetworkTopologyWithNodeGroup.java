@@ -123,13 +123,7 @@ public boolean isOnSameRack( Node node1,  Node node2) {
         node1.getParent() == null || node2.getParent() == null) {
       return false;
     }
-      
-    netlock.readLock().lock();
-    try {
-      return isSameParents(node1.getParent(), node2.getParent());
-    } finally {
-      netlock.readLock().unlock();
-    }
+    return isSameParents(node1.getParent(), node2.getParent());
   }
 
   /**
@@ -151,12 +145,7 @@ public boolean isOnSameNodeGroup(Node node1, Node node2) {
     if (node1 == null || node2 == null) {
       return false;
     }
-    netlock.readLock().lock();
-    try {
-      return isSameParents(node1, node2);
-    } finally {
-      netlock.readLock().unlock();
-    }
+    return isSameParents(node1, node2);
   }
 
   /**
@@ -206,6 +195,7 @@ public void add(Node node) {
             + node.toString() 
             + " at an illegal network location");
       }
+      invalidateSnapshot();
       if (clusterMap.add(node)) {
         LOG.info("Adding a new node: " + NodeBase.getPath(node));
         if (rack == null) {
@@ -235,6 +225,7 @@ public void remove(Node node) {
     LOG.info("Removing a node: "+NodeBase.getPath(node));
     netlock.writeLock().lock();
     try {
+      invalidateSnapshot();
       if (clusterMap.remove(node)) {
         Node nodeGroup = getNode(node.getNetworkLocation());
         if (nodeGroup == null) {
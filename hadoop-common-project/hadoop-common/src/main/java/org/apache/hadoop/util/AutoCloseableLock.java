@@ -17,59 +17,99 @@
  */
 package org.apache.hadoop.util;
 
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReentrantLock;
 
+import com.google.common.base.Preconditions;
+
 /**
- * This is a wrap class of a ReentrantLock. Extending AutoCloseable
- * interface such that the users can use a try-with-resource syntax.
+ * This is a wrap class of one or more {@link Lock}s, acquired and released
+ * together. Extending AutoCloseable interface such that the users can use a
+ * try-with-resource syntax.
+ *
+ * By default it wraps a single {@code ReentrantLock}. It can also wrap a
+ * chain of locks, such as the sides of {@code ReentrantReadWriteLock}s. The
+ * locks of a chain are always acquired in the order given to the
+ * constructor and released in the reverse order, and either all of them or
+ * none of them are held.
+ *
+ * Chains which share locks must list them in the same order, or two threads
+ * can deadlock. For example, the DataNode dataset locks are chained in the
+ * order dataset, block pool, volume: a volume lock chain holds the dataset
+ * lock shared and the block pool lock shared before the volume lock. A
+ * thread holding one chain must not then acquire a lock which comes earlier
+ * in that order, such as the exclusive dataset lock while it holds a volume
+ * lock.
  */
 public class AutoCloseableLock implements AutoCloseable {
 
-  private final ReentrantLock lock;
+  private final Lock[] locks;
+  /** The number of holds taken through this object and not released. */
+  private final AtomicInteger holdCount = new AtomicInteger();
 
   /**
    * Creates an instance of {@code AutoCloseableLock}, initializes
    * the underlying {@code ReentrantLock} object.
    */
   public AutoCloseableLock() {
-    this.lock = new ReentrantLock();
+    this(new ReentrantLock());
   }
 
   /**
-   * A wrapper method that makes a call to {@code lock()} of the underlying
-   * {@code ReentrantLock} object.
+   * Creates an instance of {@code AutoCloseableLock} wrapping the given
+   * locks, such as the sides of {@code ReentrantReadWriteLock}s.
    *
-   * Acquire teh lock it is not held by another thread, then sets
-   * lock held count to one, then returns immediately.
+   * @param locks the locks to wrap, in the order to acquire them.
+   */
+  public AutoCloseableLock(Lock... locks) {
+    Preconditions.checkArgument(locks.length > 0, "No locks to wrap");
+    this.locks = locks;
+  }
+
+  /**
+   * A wrapper method that makes a call to {@code lock()} of each of the
+   * underlying locks, in order.
    *
-   * If the current thread already holds the lock, increase the lock
-   * help count by one and returns immediately.
+   * For a {@code ReentrantLock}, acquires the lock if it is not held by
+   * another thread, then sets the lock hold count to one and returns
+   * immediately. If the current thread already holds the lock, increases
+   * the lock hold count by one and returns immediately.
    *
-   * If the lock is held by another thread, the current thread is
+   * If a lock is held by another thread, the current thread is
    * suspended until the lock has been acquired by current thread.
    *
-   * @return The {@code ReentrantLock} object itself. This is to
-   * support try-with-resource syntax.
+   * @return This object itself. This is to support try-with-resource syntax.
    */
   public AutoCloseableLock acquire() {
-    lock.lock();
+    for (Lock lock : locks) {
+      lock.lock();
+    }
+    holdCount.incrementAndGet();
     return this;
   }
 
   /**
-   * A wrapper method that makes a call to {@code unlock()} of the
-   * underlying {@code ReentrantLock} object.
-   *
-   * Attempts to release the lock.
+   * A wrapper method that makes a call to {@code unlock()} of each of the
+   * underlying locks, in the reverse order.
    *
-   * If the current thread holds the lock, decrements the hold
+   * If the current thread holds a {@code ReentrantLock}, decrements its hold
    * count. If the hold count reaches zero, the lock is released.
    *
    * If the current thread does not hold the lock, then
    * {@link IllegalMonitorStateException} is thrown.
    */
   public void release() {
-    lock.unlock();
+    unlock(locks.length);
+    holdCount.decrementAndGet();
+  }
+
+  /** Release the first n locks, in the reverse order. */
+  private void unlock(int n) {
+    for (int i = n - 1; i >= 0; i--) {
+      locks[i].unlock();
+    }
   }
 
   /**
@@ -85,38 +125,84 @@ public void close() {
   }
 
   /**
-   * A wrapper method that makes a call to {@code tryLock()} of
-   * the underlying {@code ReentrantLock} object.
-   *
-   * If the lock is not held by another thread, acquires the lock, set the
-   * hold count to one and returns {@code true}.
+   * A wrapper method that makes a call to {@code tryLock()} of each of the
+   * underlying locks, in order.
    *
-   * If the current thread already holds the lock, the increment the hold
-   * count by one and returns {@code true}.
+   * If the locks are not held by another thread, acquires them and returns
+   * {@code true}. If the current thread already holds a
+   * {@code ReentrantLock}, its hold count is incremented by one.
    *
-   * If the lock is held by another thread then the method returns
-   * immediately with {@code false}.
+   * If a lock is held by another thread then the locks of the chain
+   * acquired so far are released and the method returns immediately with
+   * {@code false}.
    *
    * @return {@code true} if the lock was free and was acquired by the
    *          current thread, or the lock was already held by the current
    *          thread; and {@code false} otherwise.
    */
   public boolean tryLock() {
-    return lock.tryLock();
+    for (int i = 0; i < locks.length; i++) {
+      if (!locks[i].tryLock()) {
+        unlock(i);
+        return false;
+      }
+    }
+    holdCount.incrementAndGet();
+    return true;
+  }
+
+  /**
+   * A wrapper method that makes a call to {@code tryLock(long, TimeUnit)} of
+   * the underlying locks, all within the given waiting time.
+   *
+   * If a lock of a chain cannot be acquired in time, or the current thread is
+   * interrupted, the locks of the chain acquired so far are released.
+   *
+   * @param time the maximum time to wait for the lock.
+   * @param unit the time unit of the {@code time} argument.
+   * @return {@code true} if the lock was acquired and {@code false} if the
+   *         waiting time elapsed first.
+   * @throws InterruptedException if the current thread is interrupted while
+   *         acquiring the lock.
+   */
+  public boolean tryLock(long time, TimeUnit unit)
+      throws InterruptedException {
+    final long deadline = System.nanoTime() + unit.toNanos(time);
+    int i = 0;
+    try {
+      for (; i < locks.length; i++) {
+        if (!locks[i].tryLock(deadline - System.nanoTime(),
+            TimeUnit.NANOSECONDS)) {
+          unlock(i);
+          return false;
+        }
+      }
+    } catch (InterruptedException e) {
+      unlock(i);
+      throw e;
+    }
+    holdCount.incrementAndGet();
+    return true;
   }
 
   /**
    * A wrapper method that makes a call to {@code isLocked()} of
-   * the underlying {@code ReentrantLock} object.
+   * the underlying lock, if it is a single {@code ReentrantLock}.
    *
    * Queries if this lock is held by any thread. This method is
    * designed for use in monitoring of the system state,
    * not for synchronization control.
    *
+   * For other locks, such as a side of a {@code ReentrantReadWriteLock} or a
+   * chain of locks, only the holds taken through this object are counted.
+   *
    * @return {@code true} if any thread holds this lock and
    *         {@code false} otherwise
    */
   public boolean isLocked() {
-    return lock.isLocked();
+    if (locks.length == 1 && locks[0] instanceof ReentrantLock) {
+      return ((ReentrantLock)locks[0]).isLocked();
+    }
+    return holdCount.get() > 0;
   }
 }
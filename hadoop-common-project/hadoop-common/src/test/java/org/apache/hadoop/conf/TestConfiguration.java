@@ -887,6 +887,18 @@ public void testTimeDuration() {
       assertEquals(1 + ptd.suffix(), conf.get("test.time.unit"));
       assertEquals(1, conf.getTimeDuration("test.time.unit", 2, ptd.unit()));
     }
+
+    // a value without a unit is taken in the default unit
+    assertEquals(30000L,
+        conf.getTimeDuration("test.time.Y", 30, SECONDS, MILLISECONDS));
+    conf.set("test.time.Y", "20");
+    assertEquals(20000L,
+        conf.getTimeDuration("test.time.Y", 30, SECONDS, MILLISECONDS));
+    conf.set("test.time.Y", "150ms");
+    assertEquals(150L,
+        conf.getTimeDuration("test.time.Y", 30, SECONDS, MILLISECONDS));
+    assertEquals(0L,
+        conf.getTimeDuration("test.time.Y", 30, MILLISECONDS, SECONDS));
   }
 
   public void testPattern() throws IOException {
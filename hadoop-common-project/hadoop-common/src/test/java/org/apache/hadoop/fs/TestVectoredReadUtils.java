@@ -0,0 +1,175 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.fs;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.EOFException;
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.function.IntFunction;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.test.GenericTestUtils;
+import org.junit.Test;
+
+/**
+ * Tests {@link VectoredReadUtils} and the default implementation of
+ * {@link PositionedReadable#readVectored}.
+ */
+public class TestVectoredReadUtils {
+  private static final IntFunction<ByteBuffer> HEAP =
+      new IntFunction<ByteBuffer>() {
+        @Override
+        public ByteBuffer apply(int value) {
+          return ByteBuffer.allocate(value);
+        }
+      };
+  private static final IntFunction<ByteBuffer> DIRECT =
+      new IntFunction<ByteBuffer>() {
+        @Override
+        public ByteBuffer apply(int value) {
+          return ByteBuffer.allocateDirect(value);
+        }
+      };
+
+  @Test
+  public void testMergeSortedRanges() {
+    List<FileRange> ranges = Arrays.asList(new FileRange(0, 100),
+        new FileRange(110, 100), new FileRange(1000, 100),
+        new FileRange(1100, 100), new FileRange(1200, 1000));
+    List<CombinedFileRange> merged =
+        VectoredReadUtils.mergeSortedRanges(ranges, 0, 10, 1000);
+    assertEquals(3, merged.size());
+    assertEquals(0, merged.get(0).getOffset());
+    assertEquals(210, merged.get(0).getLength());
+    assertEquals(2, merged.get(0).getUnderlying().size());
+    // The gap is too large
+    assertEquals(1000, merged.get(1).getOffset());
+    assertEquals(200, merged.get(1).getLength());
+    // The merged range would be too large
+    assertEquals(1200, merged.get(2).getOffset());
+    assertEquals(1, merged.get(2).getUnderlying().size());
+
+    // Ranges are not merged across chunks
+    merged = VectoredReadUtils.mergeSortedRanges(ranges, 1100, 10, 10000);
+    assertEquals(3, merged.size());
+    assertEquals(1000, merged.get(1).getOffset());
+    assertEquals(1, merged.get(1).getUnderlying().size());
+    assertEquals(1100, merged.get(2).getOffset());
+    assertEquals(1100, merged.get(2).getLength());
+    assertEquals(2, merged.get(2).getUnderlying().size());
+  }
+
+  @Test
+  public void testSliceTo() {
+    ByteBuffer buffer = ByteBuffer.allocate(100);
+    for (int i = 0; i < 100; i++) {
+      buffer.put((byte) i);
+    }
+    buffer.flip();
+    ByteBuffer slice =
+        VectoredReadUtils.sliceTo(buffer, 1000, new FileRange(1010, 20));
+    assertEquals(0, slice.position());
+    assertEquals(20, slice.remaining());
+    assertEquals(10, slice.get(0));
+    assertEquals(29, slice.get(19));
+    // The buffer itself is unchanged
+    assertEquals(0, buffer.position());
+    assertEquals(100, buffer.limit());
+  }
+
+  @Test
+  public void testValidateRanges() throws Exception {
+    List<FileRange> sorted = VectoredReadUtils.validateAndSortRanges(
+        Arrays.asList(new FileRange(200, 10), new FileRange(0, 100)), 1000);
+    assertEquals(0, sorted.get(0).getOffset());
+    assertEquals(200, sorted.get(1).getOffset());
+    try {
+      VectoredReadUtils.validateAndSortRanges(
+          Arrays.asList(new FileRange(0, 100), new FileRange(50, 100)), 1000);
+      fail("Overlapping ranges should fail");
+    } catch (IllegalArgumentException e) {
+      GenericTestUtils.assertExceptionContains("Overlapping", e);
+    }
+    try {
+      VectoredReadUtils.validateAndSortRanges(
+          Arrays.asList(new FileRange(990, 100)), 1000);
+      fail("A range past the end of the file should fail");
+    } catch (EOFException e) {
+      // expected
+    }
+  }
+
+  @Test
+  public void testDefaultReadVectored() throws Exception {
+    Configuration conf = new Configuration();
+    FileSystem fs = FileSystem.getLocal(conf);
+    Path file = new Path(GenericTestUtils.getTempPath("vectoredread.dat"));
+    byte[] data = new byte[256 * 1024];
+    for (int i = 0; i < data.length; i++) {
+      data[i] = (byte) (i * 31);
+    }
+    try (FSDataOutputStream out = fs.create(file, true)) {
+      out.write(data);
+    }
+    try (FSDataInputStream in = fs.open(file)) {
+      for (IntFunction<ByteBuffer> allocate : Arrays.asList(HEAP, DIRECT)) {
+        List<FileRange> ranges = new ArrayList<FileRange>();
+        ranges.add(new FileRange(100 * 1024, 100 * 1024));
+        ranges.add(new FileRange(0, 10));
+        ranges.add(new FileRange(20, 0));
+        ranges.add(new FileRange(data.length - 1, 1));
+        in.readVectored(ranges, allocate);
+        for (FileRange range : ranges) {
+          assertData(data, range);
+        }
+      }
+      // A range past the end of the file fails on its own
+      List<FileRange> ranges = Arrays.asList(new FileRange(0, 10),
+          new FileRange(data.length - 10, 20));
+      in.readVectored(ranges, HEAP);
+      assertData(data, ranges.get(0));
+      try {
+        ranges.get(1).getData().get();
+        fail("Reading past the end of the file should fail");
+      } catch (ExecutionException e) {
+        assertTrue(e.getCause() instanceof EOFException);
+      }
+    } finally {
+      fs.delete(file, false);
+      new File(file.toUri().getPath()).delete();
+    }
+  }
+
+  private static void assertData(byte[] data, FileRange range)
+      throws Exception {
+    ByteBuffer buffer = range.getData().get();
+    assertEquals(range.getLength(), buffer.remaining());
+    for (int i = 0; i < range.getLength(); i++) {
+      assertEquals(data[(int) range.getOffset() + i],
+          buffer.get(buffer.position() + i));
+    }
+  }
+}
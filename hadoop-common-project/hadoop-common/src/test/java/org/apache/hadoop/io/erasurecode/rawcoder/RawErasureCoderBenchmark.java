@@ -41,7 +41,8 @@
  * and measures the total throughput. It only focuses on performance and doesn't
  * validate correctness of the encoded/decoded results.
  * User can specify the data size each thread processes, as well as the chunk
- * size to use for the coder.
+ * size to use for the coder, and whether to code heap or direct buffers,
+ * which otherwise depends on the buffers the coder prefers.
  * Different coders are supported. User can specify the coder by a coder index.
  * The coder is shared among all the threads.
  */
@@ -101,7 +102,8 @@ private static void usage(String message) {
     }
     System.out.println(
         "Usage: RawErasureCoderBenchmark <encode/decode> <coderIndex> " +
-            "[numThreads] [dataSize-in-MB] [chunkSize-in-KB]");
+            "[numThreads] [dataSize-in-MB] [chunkSize-in-KB] " +
+            "[heap/direct]");
     printAvailableCoders();
     System.exit(1);
   }
@@ -113,6 +115,7 @@ public static void main(String[] args) throws Exception {
     int dataSizeMB = 10240;
     int chunkSizeKB = 1024;
     int numThreads = 1;
+    Boolean useDirectBuffer = null;
 
     if (args.length > 1) {
       opType = args[0];
@@ -169,8 +172,20 @@ public static void main(String[] args) throws Exception {
       }
     }
 
-    performBench(opType, CODER.values()[coderIndex],
-        numThreads, dataSizeMB, chunkSizeKB);
+    if (args.length > 5) {
+      if (!"heap".equals(args[5]) && !"direct".equals(args[5])) {
+        usage("Invalid buffer type: should be either 'heap' or 'direct'");
+      }
+      useDirectBuffer = "direct".equals(args[5]);
+    }
+
+    CODER coder = CODER.values()[coderIndex];
+    if (useDirectBuffer == null) {
+      performBench(opType, coder, numThreads, dataSizeMB, chunkSizeKB);
+    } else {
+      performBench(opType, coder, numThreads, dataSizeMB, chunkSizeKB,
+          useDirectBuffer);
+    }
   }
 
   /**
@@ -184,21 +199,39 @@ public static void main(String[] args) throws Exception {
    */
   public static void performBench(String opType, CODER coder,
       int numThreads, int dataSizeMB, int chunkSizeKB) throws Exception {
+    RawErasureEncoder encoder = CODER_MAKERS.get(coder.ordinal())
+        .createEncoder(BenchData.OPTIONS);
+    boolean useDirectBuffer = encoder.preferDirectBuffer();
+    encoder.release();
+    performBench(opType, coder, numThreads, dataSizeMB, chunkSizeKB,
+        useDirectBuffer);
+  }
+
+  /**
+   * Performs benchmark on the given kind of buffers.
+   *
+   * @param opType          The operation to perform. Can be encode or decode
+   * @param coder           The coder to use
+   * @param numThreads      Number of threads to launch concurrently
+   * @param dataSizeMB      Total test data size in MB
+   * @param chunkSizeKB     Chunk size in KB
+   * @param useDirectBuffer Whether to code direct buffers or heap buffers
+   */
+  public static void performBench(String opType, CODER coder,
+      int numThreads, int dataSizeMB, int chunkSizeKB,
+      boolean useDirectBuffer) throws Exception {
     BenchData.configure(dataSizeMB, chunkSizeKB);
 
     RawErasureEncoder encoder = null;
     RawErasureDecoder decoder = null;
-    ByteBuffer testData;
+    ByteBuffer testData = genTestData(useDirectBuffer,
+        BenchData.bufferSizeKB);
     boolean isEncode = opType.equals("encode");
 
     if (isEncode) {
       encoder = getRawEncoder(coder.ordinal());
-      testData = genTestData(encoder.preferDirectBuffer(),
-          BenchData.bufferSizeKB);
     } else {
       decoder = getRawDecoder(coder.ordinal());
-      testData = genTestData(decoder.preferDirectBuffer(),
-          BenchData.bufferSizeKB);
     }
 
     ExecutorService executor = Executors.newFixedThreadPool(numThreads);
@@ -206,7 +239,7 @@ public static void performBench(String opType, CODER coder,
     StopWatch sw = new StopWatch().start();
     for (int i = 0; i < numThreads; i++) {
       futures.add(executor.submit(new BenchmarkCallable(isEncode,
-          encoder, decoder, testData.duplicate())));
+          encoder, decoder, testData.duplicate(), useDirectBuffer)));
     }
     List<Long> durations = new ArrayList<>(numThreads);
     try {
@@ -218,7 +251,8 @@ public static void performBench(String opType, CODER coder,
       DecimalFormat df = new DecimalFormat("#.##");
       System.out.println(coder + " " + opType + " " +
           df.format(totalDataSize) + "MB data, with chunk size " +
-          BenchData.chunkSize / 1024 + "KB");
+          BenchData.chunkSize / 1024 + "KB, in " +
+          (useDirectBuffer ? "direct" : "heap") + " buffers");
       System.out.println("Total time: " + df.format(duration / 1000.0) + " s.");
       System.out.println("Total throughput: " + df.format(
           totalDataSize / duration * 1000.0) + " MB/s");
@@ -358,18 +392,18 @@ private static class BenchmarkCallable implements Callable<Long> {
     private final ByteBuffer testData;
 
     public BenchmarkCallable(boolean isEncode, RawErasureEncoder encoder,
-        RawErasureDecoder decoder, ByteBuffer testData) {
+        RawErasureDecoder decoder, ByteBuffer testData,
+        boolean useDirectBuffer) {
       if (isEncode) {
         Preconditions.checkArgument(encoder != null);
         this.encoder = encoder;
         this.decoder = null;
-        benchData = new BenchData(encoder.preferDirectBuffer());
       } else {
         Preconditions.checkArgument(decoder != null);
         this.decoder = decoder;
         this.encoder = null;
-        benchData = new BenchData(decoder.preferDirectBuffer());
       }
+      benchData = new BenchData(useDirectBuffer);
       this.isEncode = isEncode;
       this.testData = testData;
     }
@@ -18,6 +18,7 @@
 package org.apache.hadoop.io.erasurecode.rawcoder;
 
 import org.junit.Before;
+import org.junit.Test;
 
 /**
  * Test the new raw Reed-solomon coder implemented in Java.
@@ -30,4 +31,12 @@ public void setup() {
     this.decoderClass = RSRawDecoder.class;
     setAllowDump(false);
   }
+
+  @Test
+  public void testCoding_6x3_erasing_d0_p0_largeChunks() {
+    // Chunks of several segments of the ByteBuffer coding, and a partial one
+    baseChunkSize = 3 * 4096 + 100;
+    prepare(null, 6, 3, new int[]{0}, new int[]{0});
+    testCodingDoMixAndTwice();
+  }
 }
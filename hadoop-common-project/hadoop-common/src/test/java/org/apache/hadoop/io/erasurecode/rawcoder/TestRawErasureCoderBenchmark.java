@@ -51,6 +51,11 @@ public void testRSCoder() throws Exception {
         RawErasureCoderBenchmark.CODER.RS_CODER, 3, 200, 200);
     RawErasureCoderBenchmark.performBench("decode",
         RawErasureCoderBenchmark.CODER.RS_CODER, 4, 135, 20);
+    // RS Java coder on direct buffers
+    RawErasureCoderBenchmark.performBench("encode",
+        RawErasureCoderBenchmark.CODER.RS_CODER, 3, 200, 200, true);
+    RawErasureCoderBenchmark.performBench("decode",
+        RawErasureCoderBenchmark.CODER.RS_CODER, 4, 135, 20, true);
   }
 
   @Test
@@ -17,6 +17,7 @@
  */
 package org.apache.hadoop.ipc;
 
+import com.google.common.base.Supplier;
 import com.google.protobuf.BlockingService;
 import com.google.protobuf.RpcController;
 import com.google.protobuf.ServiceException;
@@ -24,6 +25,8 @@
 import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.fs.CommonConfigurationKeys;
 import org.apache.hadoop.ipc.metrics.RpcMetrics;
+import org.apache.hadoop.ipc.protobuf.RpcHeaderProtos.RpcRequestHeaderProto;
+import org.apache.hadoop.ipc.protobuf.RpcHeaderProtos.RpcResponseHeaderProto;
 import org.apache.hadoop.ipc.protobuf.RpcHeaderProtos.RpcResponseHeaderProto.RpcErrorCodeProto;
 import org.apache.hadoop.ipc.protobuf.TestProtos;
 import org.apache.hadoop.ipc.protobuf.TestProtos.EchoRequestProto;
@@ -34,6 +37,9 @@
 import org.apache.hadoop.ipc.protobuf.TestRpcServiceProtos.TestProtobufRpcProto;
 import org.apache.hadoop.metrics2.MetricsRecordBuilder;
 import org.apache.hadoop.net.NetUtils;
+import org.apache.hadoop.security.UserGroupInformation;
+import org.apache.hadoop.test.GenericTestUtils;
+import org.apache.hadoop.util.Time;
 import org.junit.After;
 import org.junit.Assert;
 import org.junit.Before;
@@ -41,10 +47,16 @@
 
 import java.io.IOException;
 import java.net.URISyntaxException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
 
 import static org.apache.hadoop.test.MetricsAsserts.assertCounterGt;
 import static org.apache.hadoop.test.MetricsAsserts.getMetrics;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 
 /**
@@ -179,6 +191,131 @@ public void testProtoBufRpc2() throws Exception {
     assertCounterGt("Echo2NumOps", 0L, rpcDetailedMetrics);
   }
 
+  /**
+   * A simple alignment context which passes a single state ID in each
+   * direction.
+   */
+  private static class TestAlignmentContext implements AlignmentContext {
+    private final AtomicLong stateId = new AtomicLong();
+    private volatile long lastReceivedRequestState =
+        RpcConstants.INVALID_STATE_ID;
+    private volatile long maxStateWaitMs = 0;
+
+    @Override
+    public void updateResponseState(RpcResponseHeaderProto.Builder header) {
+      header.setStateId(stateId.get());
+    }
+
+    @Override
+    public void receiveResponseState(RpcResponseHeaderProto header) {
+      stateId.set(header.getStateId());
+    }
+
+    @Override
+    public void updateRequestState(RpcRequestHeaderProto.Builder header) {
+      header.setStateId(stateId.get());
+    }
+
+    @Override
+    public long receiveRequestState(RpcRequestHeaderProto header) {
+      lastReceivedRequestState = header.getStateId();
+      return lastReceivedRequestState;
+    }
+
+    @Override
+    public long getLastSeenStateId() {
+      return stateId.get();
+    }
+
+    @Override
+    public long getMaxStateWaitMs() {
+      return maxStateWaitMs;
+    }
+  }
+
+  @Test (timeout=5000)
+  public void testAlignmentContext() throws Exception {
+    TestAlignmentContext serverContext = new TestAlignmentContext();
+    TestAlignmentContext clientContext = new TestAlignmentContext();
+    server.setAlignmentContext(serverContext);
+    serverContext.stateId.set(100);
+
+    TestRpcService client = RPC.getProtocolProxy(TestRpcService.class, 0,
+        addr, UserGroupInformation.getCurrentUser(), conf,
+        NetUtils.getDefaultSocketFactory(conf), 0, null, null,
+        clientContext).getProxy();
+    try {
+      client.ping(null, newEmptyRequest());
+      // The client picks up the server's state from the response
+      assertEquals(100, clientContext.getLastSeenStateId());
+      assertEquals(0, serverContext.lastReceivedRequestState);
+
+      // and sends it back on the next request
+      client.ping(null, newEmptyRequest());
+      assertEquals(100, serverContext.lastReceivedRequestState);
+    } finally {
+      RPC.stopProxy(client);
+    }
+  }
+
+  /**
+   * Test that a call whose client has seen a later state than the server is
+   * held back until the server catches up, without holding the only handler
+   * of the server.
+   */
+  @Test (timeout=30000)
+  public void testAlignmentContextDefersCall() throws Exception {
+    final TestAlignmentContext serverContext = new TestAlignmentContext();
+    TestAlignmentContext clientContext = new TestAlignmentContext();
+    server.setAlignmentContext(serverContext);
+    serverContext.stateId.set(100);
+    serverContext.maxStateWaitMs = 60000;
+    clientContext.stateId.set(200);
+
+    final TestRpcService client = RPC.getProtocolProxy(TestRpcService.class,
+        0, addr, UserGroupInformation.getCurrentUser(), conf,
+        NetUtils.getDefaultSocketFactory(conf), 0, null, null,
+        clientContext).getProxy();
+    TestRpcService otherClient = getClient(addr, conf);
+    ExecutorService executor = Executors.newSingleThreadExecutor();
+    try {
+      Future<EmptyResponseProto> deferred = executor.submit(
+          new Callable<EmptyResponseProto>() {
+            @Override
+            public EmptyResponseProto call() throws Exception {
+              return client.ping(null, newEmptyRequest());
+            }
+          });
+      GenericTestUtils.waitFor(new Supplier<Boolean>() {
+        @Override
+        public Boolean get() {
+          return serverContext.lastReceivedRequestState == 200;
+        }
+      }, 10, 10000);
+
+      // Other calls are served while the call is held back.
+      for (int i = 0; i < 10; i++) {
+        otherClient.ping(null, newEmptyRequest());
+      }
+      assertFalse(deferred.isDone());
+
+      serverContext.stateId.set(200);
+      deferred.get();
+      assertEquals(200, clientContext.getLastSeenStateId());
+
+      // A call is not held back for longer than the server allows.
+      serverContext.maxStateWaitMs = 100;
+      clientContext.stateId.set(300);
+      long startMs = Time.monotonicNow();
+      client.ping(null, newEmptyRequest());
+      assertTrue(Time.monotonicNow() - startMs >= 100);
+    } finally {
+      executor.shutdownNow();
+      RPC.stopProxy(client);
+      RPC.stopProxy(otherClient);
+    }
+  }
+
   @Test (timeout=5000)
   public void testProtoBufRandomException() throws Exception {
     TestRpcService client = getClient(addr, conf);
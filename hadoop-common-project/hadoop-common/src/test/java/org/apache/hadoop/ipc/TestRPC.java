@@ -282,6 +282,17 @@ public <T> ProtocolProxy<T> getProxy(
       return new ProtocolProxy<T>(protocol, proxy, false);
     }
 
+    @Override
+    public <T> ProtocolProxy<T> getProxy(
+        Class<T> protocol, long clientVersion, InetSocketAddress addr,
+        UserGroupInformation ticket, Configuration conf, SocketFactory factory,
+        int rpcTimeout, RetryPolicy connectionRetryPolicy,
+        AtomicBoolean fallbackToSimpleAuth, AlignmentContext alignmentContext)
+        throws IOException {
+      return getProxy(protocol, clientVersion, addr, ticket, conf, factory,
+          rpcTimeout, connectionRetryPolicy, fallbackToSimpleAuth);
+    }
+
     @Override
     public org.apache.hadoop.ipc.RPC.Server getServer(
         Class<?> protocol, Object instance, String bindAddress, int port,
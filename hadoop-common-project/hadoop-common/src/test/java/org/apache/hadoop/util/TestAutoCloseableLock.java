@@ -21,6 +21,13 @@
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.assertEquals;
 
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
 import org.junit.Test;
 /**
  * A test class for AutoCloseableLock.
@@ -92,4 +99,95 @@ public void run() {
     }
     assertFalse(lock.isLocked());
   }
+
+  /**
+   * Test wrapping the two sides of a read-write lock.
+   *
+   * @throws Exception
+   */
+  @Test
+  public void testReadWriteLock() throws Exception {
+    final ReentrantReadWriteLock rwLock = new ReentrantReadWriteLock();
+    final AutoCloseableLock readLock =
+        new AutoCloseableLock(rwLock.readLock());
+    final AutoCloseableLock writeLock =
+        new AutoCloseableLock(rwLock.writeLock());
+    try(AutoCloseableLock localLock = readLock.acquire()) {
+      assertEquals(1, rwLock.getReadLockCount());
+      assertTrue(readLock.isLocked());
+      assertFalse(writeLock.isLocked());
+      Thread competingThread = new Thread() {
+        @Override
+        public void run() {
+          // Readers share the lock, writers are excluded.
+          assertTrue(readLock.tryLock());
+          readLock.release();
+          assertFalse(writeLock.tryLock());
+        }
+      };
+      competingThread.start();
+      competingThread.join();
+    }
+    assertEquals(0, rwLock.getReadLockCount());
+    assertFalse(readLock.isLocked());
+    try(AutoCloseableLock localLock = writeLock.acquire()) {
+      assertTrue(rwLock.isWriteLockedByCurrentThread());
+      assertTrue(writeLock.isLocked());
+    }
+    assertFalse(rwLock.isWriteLocked());
+    assertFalse(writeLock.isLocked());
+  }
+
+  /**
+   * Test that a chain of locks is acquired as a whole, and that a failed
+   * attempt releases the locks of the chain it acquired.
+   *
+   * @throws Exception
+   */
+  @Test
+  public void testLockChain() throws Exception {
+    final ReentrantReadWriteLock outer = new ReentrantReadWriteLock();
+    final ReentrantLock inner = new ReentrantLock();
+    final AutoCloseableLock chain =
+        new AutoCloseableLock(outer.readLock(), inner);
+    try(AutoCloseableLock localLock = chain.acquire()) {
+      assertTrue(chain.isLocked());
+      assertEquals(1, outer.getReadLockCount());
+      assertTrue(inner.isHeldByCurrentThread());
+    }
+    assertFalse(chain.isLocked());
+    assertEquals(0, outer.getReadLockCount());
+    assertFalse(inner.isLocked());
+
+    final AtomicBoolean locked = new AtomicBoolean(true);
+    final AtomicLong waitedMs = new AtomicLong();
+    final AtomicInteger readLockCount = new AtomicInteger(-1);
+    try(AutoCloseableLock localLock = new AutoCloseableLock(inner).acquire()) {
+      Thread competingThread = new Thread() {
+        @Override
+        public void run() {
+          // The outer lock is free, the inner one is not.
+          long start = Time.monotonicNow();
+          try {
+            locked.set(chain.tryLock(200, TimeUnit.MILLISECONDS));
+          } catch (InterruptedException e) {
+            return;
+          }
+          waitedMs.set(Time.monotonicNow() - start);
+          readLockCount.set(outer.getReadLockCount());
+        }
+      };
+      competingThread.start();
+      competingThread.join();
+    }
+    assertFalse(locked.get());
+    assertTrue(waitedMs.get() >= 100);
+    assertEquals(0, readLockCount.get());
+    assertFalse(chain.isLocked());
+
+    assertTrue(chain.tryLock(200, TimeUnit.MILLISECONDS));
+    assertTrue(chain.isLocked());
+    chain.release();
+    assertFalse(chain.isLocked());
+  }
 }
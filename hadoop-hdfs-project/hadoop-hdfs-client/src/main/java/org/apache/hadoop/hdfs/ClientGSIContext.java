@@ -0,0 +1,108 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.hadoop.classification.InterfaceAudience;
+import org.apache.hadoop.classification.InterfaceStability;
+import org.apache.hadoop.ipc.AlignmentContext;
+import org.apache.hadoop.ipc.RpcConstants;
+import org.apache.hadoop.ipc.protobuf.RpcHeaderProtos.RpcRequestHeaderProto;
+import org.apache.hadoop.ipc.protobuf.RpcHeaderProtos.RpcResponseHeaderProto;
+
+/**
+ * Global State Id context for the client.
+ *
+ * This is the client side implementation responsible for receiving
+ * state alignment info from the NameNodes and sending the highest state ID
+ * seen so far with every request, so that a standby NameNode serving a read
+ * can make sure it has caught up with the writes this client has observed.
+ * A single instance is shared by all proxies to the NameNodes of one
+ * nameservice.
+ */
+@InterfaceAudience.Private
+@InterfaceStability.Evolving
+public class ClientGSIContext implements AlignmentContext {
+
+  private final AtomicLong lastSeenStateId =
+      new AtomicLong(RpcConstants.INVALID_STATE_ID);
+
+  @Override
+  public long getLastSeenStateId() {
+    return lastSeenStateId.get();
+  }
+
+  /**
+   * Client side implementation only receives state alignment info.
+   * It does not provide state alignment info in responses.
+   */
+  @Override
+  public void updateResponseState(RpcResponseHeaderProto.Builder header) {
+    throw new UnsupportedOperationException(
+        "Client does not build responses");
+  }
+
+  /**
+   * Client side implementation for receiving state alignment info
+   * in responses. The last seen state ID only ever moves forward.
+   */
+  @Override
+  public void receiveResponseState(RpcResponseHeaderProto header) {
+    if (!header.hasStateId()) {
+      return;
+    }
+    long stateId = header.getStateId();
+    long current = lastSeenStateId.get();
+    while (stateId > current &&
+        !lastSeenStateId.compareAndSet(current, stateId)) {
+      current = lastSeenStateId.get();
+    }
+  }
+
+  /**
+   * Client side implementation for providing state alignment info in
+   * requests.
+   */
+  @Override
+  public void updateRequestState(RpcRequestHeaderProto.Builder header) {
+    long stateId = lastSeenStateId.get();
+    if (stateId != RpcConstants.INVALID_STATE_ID) {
+      header.setStateId(stateId);
+    }
+  }
+
+  /**
+   * Client side implementation only provides state alignment info.
+   * It does not receive state alignment info from requests.
+   */
+  @Override
+  public long receiveRequestState(RpcRequestHeaderProto header) {
+    throw new UnsupportedOperationException(
+        "Client does not receive requests");
+  }
+
+  /**
+   * Client side implementation does not hold back requests.
+   */
+  @Override
+  public long getMaxStateWaitMs() {
+    throw new UnsupportedOperationException(
+        "Client does not receive requests");
+  }
+}
@@ -226,6 +226,9 @@ public class DFSClient implements java.io.Closeable, RemotePeerFactory,
       new DFSHedgedReadMetrics();
   private static ThreadPoolExecutor HEDGED_READ_THREAD_POOL;
   private static volatile ThreadPoolExecutor STRIPED_READ_THREAD_POOL;
+  private static volatile ThreadPoolExecutor VECTORED_READ_THREAD_POOL;
+  /** The latency of the recent reads per DataNode, for hedged reads. */
+  private final DataNodeLatencyTracker readLatencyTracker;
   private final int smallBufferSize;
 
   public DfsClientConf getConf() {
@@ -363,9 +366,19 @@ public DFSClient(URI nameNodeUri, ClientProtocol rpcNamenode,
       this.initThreadsNumForHedgedReads(dfsClientConf.
           getHedgedReadThreadpoolSize());
     }
+    if (dfsClientConf.getHedgedReadThresholdPercentile() > 0) {
+      this.readLatencyTracker = new DataNodeLatencyTracker(
+          dfsClientConf.getHedgedReadThresholdPercentile(),
+          dfsClientConf.getHedgedReadThresholdMinMillis(),
+          dfsClientConf.getHedgedReadThresholdMillis());
+    } else {
+      this.readLatencyTracker = null;
+    }
 
     this.initThreadsNumForStripedReads(dfsClientConf.
         getStripedReadThreadpoolSize());
+    this.initThreadsNumForVectoredReads(dfsClientConf.
+        getVectoredReadThreadpoolSize());
     this.saslClient = new SaslDataTransferClient(
         conf, DataTransferSaslUtil.getSaslPropertiesResolver(conf),
         TrustedChannelResolver.getInstance(conf), nnFallbackToSimpleAuth);
@@ -2830,6 +2843,47 @@ public void rejectedExecution(Runnable runnable,
     }
   }
 
+  /**
+   * Create thread pool for reading the ranges of vectored reads in parallel,
+   * VECTORED_READ_THREAD_POOL, if it does not already exist.
+   * @param num Number of threads for vectored reads thread pool.
+   */
+  private void initThreadsNumForVectoredReads(int num) {
+    Preconditions.checkArgument(num > 0,
+        HdfsClientConfigKeys.VectoredRead.THREADPOOL_SIZE_KEY +
+        " must be greater than 0.");
+    if (VECTORED_READ_THREAD_POOL != null) {
+      return;
+    }
+    synchronized (DFSClient.class) {
+      if (VECTORED_READ_THREAD_POOL == null) {
+        VECTORED_READ_THREAD_POOL = new ThreadPoolExecutor(1, num, 60,
+            TimeUnit.SECONDS, new SynchronousQueue<Runnable>(),
+            new Daemon.DaemonFactory() {
+              private final AtomicInteger threadIndex = new AtomicInteger(0);
+
+              @Override
+              public Thread newThread(Runnable r) {
+                Thread t = super.newThread(r);
+                t.setName("vectoredRead-" + threadIndex.getAndIncrement());
+                return t;
+              }
+            },
+            new ThreadPoolExecutor.CallerRunsPolicy() {
+              @Override
+              public void rejectedExecution(Runnable runnable,
+                  ThreadPoolExecutor e) {
+                LOG.debug("Execution for vectored reading rejected, "
+                    + "Executing in current thread");
+                // will run in the current thread
+                super.rejectedExecution(runnable, e);
+              }
+            });
+        VECTORED_READ_THREAD_POOL.allowCoreThreadTimeOut(true);
+      }
+    }
+  }
+
   ThreadPoolExecutor getHedgedReadsThreadPool() {
     return HEDGED_READ_THREAD_POOL;
   }
@@ -2838,6 +2892,10 @@ ThreadPoolExecutor getStripedReadsThreadPool() {
     return STRIPED_READ_THREAD_POOL;
   }
 
+  ThreadPoolExecutor getVectoredReadsThreadPool() {
+    return VECTORED_READ_THREAD_POOL;
+  }
+
   boolean isHedgedReadsEnabled() {
     return (HEDGED_READ_THREAD_POOL != null) &&
         HEDGED_READ_THREAD_POOL.getMaximumPoolSize() > 0;
@@ -2847,6 +2905,24 @@ DFSHedgedReadMetrics getHedgedReadMetrics() {
     return HEDGED_READ_METRIC;
   }
 
+  /**
+   * @return the number of milliseconds to wait for a read from the DataNode
+   *         before starting a hedged read
+   */
+  long getHedgedReadThresholdMillis(DatanodeInfo datanode) {
+    if (readLatencyTracker == null) {
+      return dfsClientConf.getHedgedReadThresholdMillis();
+    }
+    return readLatencyTracker.getThresholdMillis(datanode);
+  }
+
+  /** Record the latency of a read from a DataNode. */
+  void addReadLatency(DatanodeInfo datanode, long latencyMs) {
+    if (readLatencyTracker != null) {
+      readLatencyTracker.addLatency(datanode, latencyMs);
+    }
+  }
+
   public KeyProvider getKeyProvider() {
     return clientContext.getKeyProviderCache().get(conf);
   }
@@ -57,4 +57,6 @@ public void startFetchFromDatanode() {}
   public void fetchFromDatanodeException() {}
 
   public void readFromDatanodeDelay() {}
+
+  public void readFromBlockReaderDelay() {}
 }
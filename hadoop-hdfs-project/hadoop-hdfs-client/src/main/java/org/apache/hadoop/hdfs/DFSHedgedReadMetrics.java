@@ -18,7 +18,12 @@
 package org.apache.hadoop.hdfs;
 
 import org.apache.hadoop.classification.InterfaceAudience;
+import org.apache.hadoop.hdfs.protocol.DatanodeInfo;
 
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.atomic.AtomicLong;
 
 /**
@@ -31,6 +36,12 @@ public class DFSHedgedReadMetrics {
   public final AtomicLong hedgedReadOps = new AtomicLong();
   public final AtomicLong hedgedReadOpsWin = new AtomicLong();
   public final AtomicLong hedgedReadOpsInCurThread = new AtomicLong();
+  /** The number of hedged reads each DataNode took part in, by address. */
+  private final ConcurrentMap<String, AtomicLong> dnHedgedReads =
+      new ConcurrentHashMap<>();
+  /** The number of hedged reads each DataNode served first, by address. */
+  private final ConcurrentMap<String, AtomicLong> dnHedgedReadWins =
+      new ConcurrentHashMap<>();
 
   public void incHedgedReadOps() {
     hedgedReadOps.incrementAndGet();
@@ -55,4 +66,55 @@ public long getHedgedReadOpsInCurThread() {
   public long getHedgedReadWins() {
     return hedgedReadOpsWin.longValue();
   }
+
+  /** Count a hedged read which the DataNode took part in. */
+  public void incHedgedReads(DatanodeInfo datanode) {
+    getCounter(dnHedgedReads, datanode).incrementAndGet();
+  }
+
+  /** Count a hedged read which the DataNode served first. */
+  public void incHedgedReadWins(DatanodeInfo datanode) {
+    getCounter(dnHedgedReadWins, datanode).incrementAndGet();
+  }
+
+  public long getHedgedReads(DatanodeInfo datanode) {
+    AtomicLong counter = dnHedgedReads.get(datanode.getXferAddr());
+    return counter == null ? 0 : counter.longValue();
+  }
+
+  public long getHedgedReadWins(DatanodeInfo datanode) {
+    AtomicLong counter = dnHedgedReadWins.get(datanode.getXferAddr());
+    return counter == null ? 0 : counter.longValue();
+  }
+
+  /**
+   * @return the fraction of the hedged reads each DataNode took part in
+   *         which it served first, by DataNode transfer address
+   */
+  public Map<String, Double> getHedgedReadWinRates() {
+    Map<String, Double> rates = new HashMap<>();
+    for (Map.Entry<String, AtomicLong> entry : dnHedgedReads.entrySet()) {
+      long reads = entry.getValue().longValue();
+      AtomicLong wins = dnHedgedReadWins.get(entry.getKey());
+      if (reads > 0) {
+        rates.put(entry.getKey(),
+            (wins == null ? 0 : wins.longValue()) / (double) reads);
+      }
+    }
+    return rates;
+  }
+
+  private static AtomicLong getCounter(ConcurrentMap<String, AtomicLong> map,
+      DatanodeInfo datanode) {
+    String key = datanode.getXferAddr();
+    AtomicLong counter = map.get(key);
+    if (counter == null) {
+      AtomicLong newCounter = new AtomicLong();
+      counter = map.putIfAbsent(key, newCounter);
+      if (counter == null) {
+        counter = newCounter;
+      }
+    }
+    return counter;
+  }
 }
@@ -27,7 +27,9 @@
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.EnumSet;
+import java.util.IdentityHashMap;
 import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
@@ -41,8 +43,10 @@
 import java.util.concurrent.ExecutorCompletionService;
 import java.util.concurrent.Future;
 import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.IntFunction;
 
 import org.apache.commons.io.IOUtils;
 import org.apache.hadoop.classification.InterfaceAudience;
@@ -52,11 +56,14 @@
 import org.apache.hadoop.fs.CanSetReadahead;
 import org.apache.hadoop.fs.CanUnbuffer;
 import org.apache.hadoop.fs.ChecksumException;
+import org.apache.hadoop.fs.CombinedFileRange;
 import org.apache.hadoop.fs.FSInputStream;
 import org.apache.hadoop.fs.FileEncryptionInfo;
+import org.apache.hadoop.fs.FileRange;
 import org.apache.hadoop.fs.HasEnhancedByteBufferAccess;
 import org.apache.hadoop.fs.ReadOption;
 import org.apache.hadoop.fs.StorageType;
+import org.apache.hadoop.fs.VectoredReadUtils;
 import org.apache.hadoop.hdfs.DFSUtilClient.CorruptedBlocks;
 import org.apache.hadoop.hdfs.client.impl.BlockReaderFactory;
 import org.apache.hadoop.hdfs.client.impl.DfsClientConf;
@@ -81,6 +88,7 @@
 import org.apache.hadoop.security.token.Token;
 import org.apache.hadoop.util.IdentityHashStore;
 import org.apache.hadoop.util.StopWatch;
+import org.apache.hadoop.util.Time;
 import org.apache.htrace.core.SpanId;
 import org.apache.htrace.core.TraceScope;
 import org.apache.htrace.core.Tracer;
@@ -100,6 +108,8 @@ public class DFSInputStream extends FSInputStream
   @VisibleForTesting
   public static boolean tcpReadsDisabledForTesting = false;
   private long hedgedReadOpsLoopNumForTesting = 0;
+  // the largest read from a block reader which is hedged at once
+  private static final int MAX_SEQUENTIAL_HEDGED_READ_LENGTH = 128 * 1024;
   protected final DFSClient dfsClient;
   protected AtomicBoolean closed = new AtomicBoolean(false);
   protected final String src;
@@ -113,6 +123,9 @@ public class DFSInputStream extends FSInputStream
   protected long pos = 0;
   protected long blockEnd = -1;
   private BlockReader blockReader = null;
+  // the DataNode whose block reader a hedged read last overtook, which the
+  // next blockSeekTo avoids if it can
+  private DatanodeInfo stalledNode = null;
   ////
 
   // state shared by stateful and positional read:
@@ -564,7 +577,17 @@ private synchronized DatanodeInfo blockSeekTo(long target) throws IOException {
 
       long offsetIntoBlock = target - targetBlock.getStartOffset();
 
-      DNAddrPair retval = chooseDataNode(targetBlock, null);
+      DNAddrPair retval = null;
+      if (stalledNode != null) {
+        if (targetBlock.getLocations().length > 1) {
+          retval = getBestNodeDNAddrPair(targetBlock,
+              Collections.singletonList(stalledNode));
+        }
+        stalledNode = null;
+      }
+      if (retval == null) {
+        retval = chooseDataNode(targetBlock, null);
+      }
       chosenNode = retval.info;
       InetSocketAddress targetAddr = retval.addr;
       StorageType storageType = retval.storageType;
@@ -700,6 +723,9 @@ private synchronized int readBuffer(ReaderStrategy reader, int len,
     while (true) {
       // retry as many times as seekToNewSource allows.
       try {
+        if (isSequentialHedgedReadEnabled()) {
+          return hedgedReadFromBlock(reader, len, corruptedBlocks);
+        }
         return reader.readFromBlock(blockReader, len);
       } catch ( ChecksumException ce ) {
         DFSClient.LOG.warn("Found Checksum error for "
@@ -735,6 +761,151 @@ private synchronized int readBuffer(ReaderStrategy reader, int len,
     }
   }
 
+  private boolean isSequentialHedgedReadEnabled() {
+    return dfsClient.isHedgedReadsEnabled()
+        && dfsClient.getConf().isHedgedReadSequentialEnabled()
+        && blockReader != null && !blockReader.isShortCircuit();
+  }
+
+  /**
+   * Like {@link ReaderStrategy#readFromBlock(BlockReader, int)}, except we
+   * start up a 'hedged' positional read of the same range from another
+   * DataNode if the read from the current block reader is taking longer than
+   * the hedged read threshold of its DataNode. We then use the result of
+   * whichever read returns first. If the hedged read wins, the current block
+   * reader is abandoned, and the next read seeks to another DataNode.
+   */
+  private int hedgedReadFromBlock(ReaderStrategy strategy, int len,
+      CorruptedBlocks corruptedBlocks) throws IOException {
+    final BlockReader reader = blockReader;
+    final DatanodeInfo readerNode = currentNode;
+    final LocatedBlock block = currentLocatedBlock;
+    final int readLen = Math.min(len, MAX_SEQUENTIAL_HEDGED_READ_LENGTH);
+    // Set by whichever comes first of the read finishing and the stream
+    // abandoning the reader. The other one closes the reader.
+    final AtomicBoolean settled = new AtomicBoolean(false);
+    final DFSHedgedReadMetrics metrics = dfsClient.getHedgedReadMetrics();
+    CompletionService<ByteBuffer> hedgedService =
+        new ExecutorCompletionService<>(dfsClient.getHedgedReadsThreadPool());
+    Future<ByteBuffer> original = hedgedService.submit(
+        new Callable<ByteBuffer>() {
+          @Override
+          public ByteBuffer call() throws IOException {
+            try {
+              DFSClientFaultInjector.get().readFromBlockReaderDelay();
+              byte[] buf = new byte[readLen];
+              int nread = reader.read(buf, 0, readLen);
+              return nread < 0 ? null : ByteBuffer.wrap(buf, 0, nread);
+            } finally {
+              if (!settled.compareAndSet(false, true)) {
+                IOUtilsClient.cleanup(DFSClient.LOG, reader);
+              }
+            }
+          }
+        });
+    Future<ByteBuffer> hedged = null;
+    DatanodeInfo hedgedNode = null;
+    CorruptedBlocks hedgedCorruptedBlocks = new CorruptedBlocks();
+    IOException originalFailure = null;
+    try {
+      Future<ByteBuffer> done = hedgedService.poll(
+          dfsClient.getHedgedReadThresholdMillis(readerNode),
+          TimeUnit.MILLISECONDS);
+      if (done == null && block.getLocations().length > 1) {
+        DNAddrPair chosenNode = getBestNodeDNAddrPair(block,
+            Collections.singletonList(readerNode));
+        if (chosenNode != null) {
+          DFSClient.LOG.debug("Waited {}ms to read from {}; spawning hedged "
+              + "read from {}", dfsClient.getHedgedReadThresholdMillis(
+                  readerNode), readerNode, chosenNode.info);
+          long start = pos - block.getStartOffset();
+          hedgedNode = chosenNode.info;
+          hedged = hedgedService.submit(getFromOneDataNode(chosenNode, block,
+              start, start + readLen - 1, ByteBuffer.allocate(readLen),
+              hedgedCorruptedBlocks, 0));
+          metrics.incHedgedReadOps();
+          metrics.incHedgedReads(readerNode);
+          metrics.incHedgedReads(hedgedNode);
+        }
+      }
+      int pending = hedged == null ? 1 : 2;
+      while (pending-- > 0) {
+        if (done == null) {
+          done = hedgedService.take();
+        }
+        ByteBuffer result;
+        try {
+          result = done.get();
+        } catch (ExecutionException e) {
+          if (done == original) {
+            Throwable cause = e.getCause();
+            originalFailure = cause instanceof IOException ?
+                (IOException) cause : new IOException(cause);
+          } else {
+            // already logged in actualGetFromOneDataNode
+            addCorruptedBlocks(corruptedBlocks, hedgedCorruptedBlocks);
+          }
+          done = null;
+          continue;
+        }
+        if (done == original) {
+          if (hedged != null) {
+            hedged.cancel(false);
+            metrics.incHedgedReadWins();
+            metrics.incHedgedReadWins(readerNode);
+          }
+          if (result == null) {
+            return -1;
+          }
+          IOUtilsClient.updateReadStatistics(readStatistics,
+              result.remaining(), reader);
+          dfsClient.updateFileSystemReadStats(reader.getNetworkDistance(),
+              result.remaining());
+          return strategy.readFromBuffer(result);
+        }
+        metrics.incHedgedReadWins();
+        metrics.incHedgedReadWins(hedgedNode);
+        if (originalFailure instanceof ChecksumException) {
+          corruptedBlocks.addCorruptedBlock(getCurrentBlock(), readerNode);
+        }
+        abandonBlockReader(reader, settled);
+        return strategy.readFromBuffer(result);
+      }
+      throw originalFailure;
+    } catch (InterruptedException e) {
+      if (hedged != null) {
+        hedged.cancel(false);
+      }
+      abandonBlockReader(reader, settled);
+      throw new InterruptedIOException(
+          "Interrupted while waiting for reading task");
+    }
+  }
+
+  /**
+   * Stop using a block reader whose read is still outstanding, and make the
+   * next read seek to another DataNode if it can. The reader is closed once
+   * its read returns.
+   */
+  private void abandonBlockReader(BlockReader reader, AtomicBoolean settled) {
+    blockReader = null;
+    blockEnd = -1;
+    stalledNode = currentNode;
+    if (!settled.compareAndSet(false, true)) {
+      IOUtilsClient.cleanup(DFSClient.LOG, reader);
+    }
+  }
+
+  private static void addCorruptedBlocks(CorruptedBlocks to,
+      CorruptedBlocks from) {
+    for (Map.Entry<ExtendedBlock, Set<DatanodeInfo>> entry :
+        from.getCorruptionMap().entrySet()) {
+      for (DatanodeInfo node : entry.getValue()) {
+        to.addCorruptedBlock(entry.getKey(), node);
+      }
+    }
+  }
+
   protected synchronized int readWithStrategy(ReaderStrategy strategy)
       throws IOException {
     dfsClient.checkOpen();
@@ -1027,6 +1198,7 @@ void actualGetFromOneDataNode(final DNAddrPair datanode, LocatedBlock block,
       // start of the loop.
       block = refreshLocatedBlock(block);
       BlockReader reader = null;
+      long startTime = Time.monotonicNow();
       try {
         DFSClientFaultInjector.get().fetchFromDatanodeException();
         reader = getBlockReader(block, startInBlk, len, datanode.addr,
@@ -1040,6 +1212,8 @@ void actualGetFromOneDataNode(final DNAddrPair datanode, LocatedBlock block,
               "excpected " + len + ", got " + nread);
         }
         DFSClientFaultInjector.get().readFromDatanodeDelay();
+        dfsClient.addReadLatency(datanode.info,
+            Time.monotonicNow() - startTime);
         return;
       } catch (ChecksumException e) {
         String msg = "fetchBlockByteRange(). Got a checksum exception for "
@@ -1100,11 +1274,14 @@ protected LocatedBlock refreshLocatedBlock(LocatedBlock block)
   private void hedgedFetchBlockByteRange(LocatedBlock block, long start,
       long end, byte[] buf, int offset, CorruptedBlocks corruptedBlocks)
       throws IOException {
-    final DfsClientConf conf = dfsClient.getConf();
     ArrayList<Future<ByteBuffer>> futures = new ArrayList<>();
     CompletionService<ByteBuffer> hedgedService =
         new ExecutorCompletionService<>(dfsClient.getHedgedReadsThreadPool());
     ArrayList<DatanodeInfo> ignored = new ArrayList<>();
+    // the DataNode each read is from, to credit the winner
+    IdentityHashMap<ByteBuffer, DatanodeInfo> readNodes =
+        new IdentityHashMap<>();
+    final DFSHedgedReadMetrics metrics = dfsClient.getHedgedReadMetrics();
     ByteBuffer bb;
     int len = (int) (end - start + 1);
     int hedgedReadId = 0;
@@ -1119,15 +1296,18 @@ private void hedgedFetchBlockByteRange(LocatedBlock block, long start,
         // the NN to reget block locations. Only go here on first read.
         chosenNode = chooseDataNode(block, ignored);
         bb = ByteBuffer.allocate(len);
+        readNodes.put(bb, chosenNode.info);
         Callable<ByteBuffer> getFromDataNodeCallable = getFromOneDataNode(
             chosenNode, block, start, end, bb,
             corruptedBlocks, hedgedReadId++);
         Future<ByteBuffer> firstRequest = hedgedService
             .submit(getFromDataNodeCallable);
         futures.add(firstRequest);
+        long threshold = dfsClient.getHedgedReadThresholdMillis(
+            chosenNode.info);
         try {
           Future<ByteBuffer> future = hedgedService.poll(
-              conf.getHedgedReadThresholdMillis(), TimeUnit.MILLISECONDS);
+              threshold, TimeUnit.MILLISECONDS);
           if (future != null) {
             ByteBuffer result = future.get();
             System.arraycopy(result.array(), result.position(), buf, offset,
@@ -1135,10 +1315,11 @@ private void hedgedFetchBlockByteRange(LocatedBlock block, long start,
             return;
           }
           DFSClient.LOG.debug("Waited {}ms to read from {}; spawning hedged "
-              + "read", conf.getHedgedReadThresholdMillis(), chosenNode.info);
+              + "read", threshold, chosenNode.info);
           // Ignore this node on next go around.
           ignored.add(chosenNode.info);
-          dfsClient.getHedgedReadMetrics().incHedgedReadOps();
+          metrics.incHedgedReadOps();
+          metrics.incHedgedReads(chosenNode.info);
           // continue; no need to refresh block locations
         } catch (ExecutionException e) {
           // Ignore
@@ -1156,12 +1337,14 @@ private void hedgedFetchBlockByteRange(LocatedBlock block, long start,
             chosenNode = chooseDataNode(block, ignored);
           }
           bb = ByteBuffer.allocate(len);
+          readNodes.put(bb, chosenNode.info);
           Callable<ByteBuffer> getFromDataNodeCallable = getFromOneDataNode(
               chosenNode, block, start, end, bb,
               corruptedBlocks, hedgedReadId++);
           Future<ByteBuffer> oneMoreRequest = hedgedService
               .submit(getFromDataNodeCallable);
           futures.add(oneMoreRequest);
+          metrics.incHedgedReads(chosenNode.info);
         } catch (IOException ioe) {
           DFSClient.LOG.debug("Failed getting node for hedged read: {}",
               ioe.getMessage());
@@ -1172,7 +1355,8 @@ private void hedgedFetchBlockByteRange(LocatedBlock block, long start,
           ByteBuffer result = getFirstToComplete(hedgedService, futures);
           // cancel the rest.
           cancelAll(futures);
-          dfsClient.getHedgedReadMetrics().incHedgedReadWins();
+          metrics.incHedgedReadWins();
+          metrics.incHedgedReadWins(readNodes.get(result));
           System.arraycopy(result.array(), result.position(), buf, offset,
               len);
           return;
@@ -1378,6 +1562,114 @@ protected void reportCheckSumFailure(CorruptedBlocks corruptedBlocks,
     corruptedBlockMap.clear();
   }
 
+  @Override
+  public int minSeekForVectorReads() {
+    return dfsClient.getConf().getVectoredReadMinSeekSize();
+  }
+
+  @Override
+  public int maxReadSizeForVectorReads() {
+    return dfsClient.getConf().getVectoredReadMaxMergedSize();
+  }
+
+  /**
+   * Read the ranges in parallel. Nearby ranges within the same block are
+   * merged, so that each is fetched with a single positional read.
+   */
+  @Override
+  public void readVectored(List<? extends FileRange> ranges,
+      final IntFunction<ByteBuffer> allocate) throws IOException {
+    dfsClient.checkOpen();
+    if (closed.get()) {
+      throw new IOException("Stream closed");
+    }
+    long filelen = getFileLength();
+    List<FileRange> sorted =
+        VectoredReadUtils.validateAndSortRanges(ranges, filelen);
+    if (sorted.isEmpty()) {
+      return;
+    }
+    List<CombinedFileRange> combined = mergeRangesWithinBlocks(sorted);
+    ThreadPoolExecutor pool = dfsClient.getVectoredReadsThreadPool();
+    for (final CombinedFileRange range : combined) {
+      pool.execute(new Runnable() {
+        @Override
+        public void run() {
+          VectoredReadUtils.readCombinedRange(DFSInputStream.this, range,
+              allocate);
+        }
+      });
+    }
+  }
+
+  /**
+   * Merge the nearby ranges which are within the same block. The blocks of a
+   * file may have different lengths, e.g. after an append or a concat, so
+   * the boundaries are taken from the located blocks. A range which crosses
+   * a block boundary is read on its own.
+   *
+   * @param sorted the ranges, sorted by offset and not overlapping
+   */
+  @VisibleForTesting
+  List<CombinedFileRange> mergeRangesWithinBlocks(List<FileRange> sorted)
+      throws IOException {
+    final int minSeek = minSeekForVectorReads();
+    final int maxSize = maxReadSizeForVectorReads();
+    if (!sorted.isEmpty()) {
+      // locate the blocks of all the ranges at once
+      long start = sorted.get(0).getOffset();
+      FileRange last = sorted.get(sorted.size() - 1);
+      long end = last.getOffset() + last.getLength();
+      if (start < getFileLength() && end > start) {
+        getBlockRange(start, end - start);
+      }
+    }
+    List<CombinedFileRange> combined = new ArrayList<>();
+    List<FileRange> group = new ArrayList<>();
+    long blockEnd = -1;
+    for (FileRange range : sorted) {
+      long rangeEnd = range.getOffset() + range.getLength();
+      if (range.getOffset() < blockEnd && rangeEnd <= blockEnd) {
+        group.add(range);
+        continue;
+      }
+      combined.addAll(
+          VectoredReadUtils.mergeSortedRanges(group, 0, minSeek, maxSize));
+      group.clear();
+      if (range.getLength() == 0) {
+        // an empty range may end the file, past its last block
+        combined.addAll(VectoredReadUtils.mergeSortedRanges(
+            Collections.singletonList(range), 0, minSeek, maxSize));
+        continue;
+      }
+      blockEnd = getBlockEnd(getBlockAt(range.getOffset()));
+      group.add(range);
+      if (rangeEnd > blockEnd) {
+        combined.addAll(
+            VectoredReadUtils.mergeSortedRanges(group, 0, minSeek, maxSize));
+        group.clear();
+      }
+    }
+    combined.addAll(
+        VectoredReadUtils.mergeSortedRanges(group, 0, minSeek, maxSize));
+    return combined;
+  }
+
+  /**
+   * @return the offset in the file of the end of a located block, which for
+   *         the last block is the end of the file, since the length of a
+   *         block being written is not known to the namenode.
+   */
+  private long getBlockEnd(LocatedBlock block) {
+    long end = block.getStartOffset() + block.getBlockSize();
+    synchronized(infoLock) {
+      if (end >= locatedBlocks.getFileLength()) {
+        end = Math.max(end, getFileLength());
+      }
+    }
+    return end;
+  }
+
   @Override
   public long skip(long n) throws IOException {
     if ( n > 0 ) {
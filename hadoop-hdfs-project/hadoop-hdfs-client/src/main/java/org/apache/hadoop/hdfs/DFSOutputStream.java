@@ -411,8 +411,10 @@ protected synchronized void writeChunk(byte[] b, int offset, int len,
 
   /* write the data chunk in <code>buffer</code> staring at
   * <code>buffer.position</code> with
-  * a length of <code>len > 0</code>, and its checksum
+  * a length of <code>len > 0</code>, and its checksum. The data is copied
+  * straight from the buffer into the packet, even from a direct buffer.
   */
+  @Override
   protected synchronized void writeChunk(ByteBuffer buffer, int len,
       byte[] checksum, int ckoff, int cklen) throws IOException {
     writeChunkPrepare(len, ckoff, cklen);
@@ -123,9 +123,7 @@ public synchronized void writeData(ByteBuffer inBuffer, int len)
     if (dataPos + len > buf.length) {
       throw new BufferOverflowException();
     }
-    for (int i = 0; i < len; i++) {
-      buf[dataPos + i] = inBuffer.get();
-    }
+    inBuffer.get(buf, dataPos, len);
     dataPos += len;
   }
 
@@ -272,6 +272,8 @@ private void flipDataBuffers() {
   private ExecutorService flushAllExecutor;
   private CompletionService<Void> flushAllExecutorCompletionService;
   private int blockGroupIndex;
+  /** A chunk of data written from a direct buffer. */
+  private byte[] directChunk;
 
   /** Construct a new output stream for creating a file. */
   DFSStripedOutputStream(DFSClient dfsClient, String src, HdfsFileStatus stat,
@@ -509,6 +511,20 @@ private boolean shouldEndBlockGroup() {
         currentBlockGroup.getNumBytes() == blockSize * numDataBlocks;
   }
 
+  /**
+   * The data cells of a stripe are encoded from the cell buffers, so a chunk
+   * from a direct buffer is written like one from an array.
+   */
+  @Override
+  protected synchronized void writeChunk(ByteBuffer buffer, int len,
+      byte[] checksum, int ckoff, int cklen) throws IOException {
+    if (directChunk == null) {
+      directChunk = new byte[bytesPerChecksum];
+    }
+    buffer.get(directChunk, 0, len);
+    writeChunk(directChunk, 0, len, checksum, ckoff, cklen);
+  }
+
   @Override
   protected synchronized void writeChunk(byte[] bytes, int offset, int len,
       byte[] checksum, int ckoff, int cklen) throws IOException {
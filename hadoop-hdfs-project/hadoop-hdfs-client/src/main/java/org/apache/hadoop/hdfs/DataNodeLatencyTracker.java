@@ -0,0 +1,119 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs;
+
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.apache.hadoop.classification.InterfaceAudience;
+import org.apache.hadoop.hdfs.protocol.DatanodeInfo;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * Tracks the latency of the recent reads from each DataNode, to derive the
+ * time to wait for a read from a DataNode before hedging it.
+ *
+ * The threshold of a DataNode is the configured percentile of the latency
+ * of its last {@link #WINDOW_SIZE} reads, bounded by a minimum and by the
+ * fixed hedged read threshold. DataNodes with fewer than
+ * {@link #MIN_SAMPLES} reads use the fixed threshold.
+ */
+@InterfaceAudience.Private
+public class DataNodeLatencyTracker {
+  static final int WINDOW_SIZE = 64;
+  static final int MIN_SAMPLES = 16;
+
+  /** The latencies of the recent reads from a DataNode. */
+  private static class Window {
+    private final long[] latencies = new long[WINDOW_SIZE];
+    private int next;
+    private int size;
+
+    synchronized void add(long latencyMs) {
+      latencies[next] = latencyMs;
+      next = (next + 1) % WINDOW_SIZE;
+      if (size < WINDOW_SIZE) {
+        size++;
+      }
+    }
+
+    /** @return the percentile, or -1 if there are too few samples */
+    long getPercentile(int percentile) {
+      long[] sorted;
+      synchronized (this) {
+        if (size < MIN_SAMPLES) {
+          return -1;
+        }
+        sorted = Arrays.copyOf(latencies, size);
+      }
+      Arrays.sort(sorted);
+      int index = (int) Math.ceil(percentile / 100.0 * sorted.length) - 1;
+      return sorted[Math.max(index, 0)];
+    }
+  }
+
+  private final int percentile;
+  private final long minThresholdMs;
+  private final long maxThresholdMs;
+  private final ConcurrentMap<String, Window> windows =
+      new ConcurrentHashMap<>();
+
+  /**
+   * @param percentile the percentile of the latencies to hedge after
+   * @param minThresholdMs the smallest threshold
+   * @param maxThresholdMs the largest threshold, which is also used for
+   *                       DataNodes with too few reads
+   */
+  public DataNodeLatencyTracker(int percentile, long minThresholdMs,
+      long maxThresholdMs) {
+    Preconditions.checkArgument(percentile > 0 && percentile < 100,
+        "Invalid percentile %s", percentile);
+    this.percentile = percentile;
+    this.minThresholdMs = Math.min(minThresholdMs, maxThresholdMs);
+    this.maxThresholdMs = maxThresholdMs;
+  }
+
+  /** Record the latency of a read from a DataNode. */
+  public void addLatency(DatanodeInfo datanode, long latencyMs) {
+    String key = datanode.getDatanodeUuid();
+    Window window = windows.get(key);
+    if (window == null) {
+      Window newWindow = new Window();
+      window = windows.putIfAbsent(key, newWindow);
+      if (window == null) {
+        window = newWindow;
+      }
+    }
+    window.add(latencyMs);
+  }
+
+  /**
+   * @return the number of milliseconds to wait for a read from the DataNode
+   *         before hedging it
+   */
+  public long getThresholdMillis(DatanodeInfo datanode) {
+    Window window = windows.get(datanode.getDatanodeUuid());
+    long latency = window == null ? -1 : window.getPercentile(percentile);
+    if (latency < 0) {
+      return maxThresholdMs;
+    }
+    return Math.max(minThresholdMs, Math.min(latency, maxThresholdMs));
+  }
+}
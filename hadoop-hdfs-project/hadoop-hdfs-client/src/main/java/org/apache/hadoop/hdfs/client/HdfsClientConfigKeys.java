@@ -360,6 +360,10 @@ interface Mmap {
     long    CACHE_TIMEOUT_MS_DEFAULT  = 60*MINUTE;
     String  RETRY_TIMEOUT_MS_KEY = PREFIX + "retry.timeout.ms";
     long    RETRY_TIMEOUT_MS_DEFAULT = 5*MINUTE;
+    String  CACHE_MAX_BYTES_KEY = PREFIX + "cache.max.bytes";
+    long    CACHE_MAX_BYTES_DEFAULT = 0;
+    String  READS_ENABLED_KEY = PREFIX + "reads.enabled";
+    boolean READS_ENABLED_DEFAULT = false;
   }
 
   /** dfs.client.hedged.read configuration properties */
@@ -370,6 +374,12 @@ interface HedgedRead {
     long    THRESHOLD_MILLIS_DEFAULT = 500;
     String  THREADPOOL_SIZE_KEY = PREFIX + "threadpool.size";
     int     THREADPOOL_SIZE_DEFAULT = 0;
+    String  THRESHOLD_PERCENTILE_KEY = PREFIX + "threshold.percentile";
+    int     THRESHOLD_PERCENTILE_DEFAULT = 0;
+    String  THRESHOLD_MIN_MILLIS_KEY = PREFIX + "threshold.min.millis";
+    long    THRESHOLD_MIN_MILLIS_DEFAULT = 10;
+    String  SEQUENTIAL_ENABLED_KEY = PREFIX + "sequential.enabled";
+    boolean SEQUENTIAL_ENABLED_DEFAULT = false;
   }
 
   /** dfs.client.read.striped configuration properties */
@@ -384,6 +394,19 @@ interface StripedRead {
     int     THREADPOOL_SIZE_DEFAULT = 18;
   }
 
+  /** dfs.client.read.vectored configuration properties */
+  interface VectoredRead {
+    String PREFIX = Read.PREFIX + "vectored.";
+
+    String  THREADPOOL_SIZE_KEY = PREFIX + "threadpool.size";
+    int     THREADPOOL_SIZE_DEFAULT = 16;
+    /** Ranges closer together than this are read with a single pread. */
+    String  MIN_SEEK_SIZE_KEY = PREFIX + "min.seek.size";
+    int     MIN_SEEK_SIZE_DEFAULT = 64 * 1024;
+    String  MAX_MERGED_SIZE_KEY = PREFIX + "max.merged.size";
+    int     MAX_MERGED_SIZE_DEFAULT = 1024 * 1024;
+  }
+
   /** dfs.http.client configuration properties */
   interface HttpClient {
     String  PREFIX = "dfs.http.client.";
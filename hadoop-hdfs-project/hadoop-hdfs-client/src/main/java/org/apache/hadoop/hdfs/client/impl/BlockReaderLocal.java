@@ -19,6 +19,7 @@
 
 import java.io.IOException;
 import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
 import java.nio.channels.FileChannel;
 import java.util.EnumSet;
 
@@ -59,6 +60,9 @@
  * </li>
  * <li>The client reads the file descriptors.</li>
  * </ul>
+ * If {@link HdfsClientConfigKeys.Mmap#READS_ENABLED_KEY} is set, reads are
+ * served from the memory-mapped region of the replica kept by the
+ * ShortCircuitCache, without going through a bounce buffer.
  */
 @InterfaceAudience.Private
 class BlockReaderLocal implements BlockReader {
@@ -68,6 +72,7 @@ class BlockReaderLocal implements BlockReader {
 
   public static class Builder {
     private final int bufferSize;
+    private final boolean mmapReads;
     private boolean verifyChecksum;
     private int maxReadahead;
     private String filename;
@@ -81,6 +86,7 @@ public Builder(ShortCircuitConf conf) {
       this.maxReadahead = Integer.MAX_VALUE;
       this.verifyChecksum = !conf.isSkipShortCircuitChecksums();
       this.bufferSize = conf.getShortCircuitBufferSize();
+      this.mmapReads = conf.isShortCircuitMmapReadsEnabled();
     }
 
     public Builder setVerifyChecksum(boolean verifyChecksum) {
@@ -239,6 +245,23 @@ public BlockReaderLocal build() {
    */
   private final Tracer tracer;
 
+  /**
+   * True if we read from the mmap of the replica whenever we can.
+   */
+  private final boolean mmapReads;
+
+  /**
+   * The mmap of the replica, held until we are closed.
+   *
+   * This is null if we haven't needed it yet, or if it couldn't be created.
+   */
+  private ClientMmap clientMmap;
+
+  /**
+   * True if we failed to get the mmap of the replica.
+   */
+  private boolean mmapFailed = false;
+
   private BlockReaderLocal(Builder builder) {
     this.replica = builder.replica;
     this.dataIn = replica.getDataStream().getChannel();
@@ -269,6 +292,7 @@ private BlockReaderLocal(Builder builder) {
     this.maxReadaheadLength = maxReadaheadChunks * bytesPerChecksum;
     this.storageType = builder.storageType;
     this.tracer = builder.tracer;
+    this.mmapReads = builder.mmapReads;
   }
 
   private synchronized void createDataBufIfNeeded() {
@@ -357,23 +381,9 @@ private synchronized int fillBuffer(ByteBuffer buf, boolean canSkipChecksum)
         try {
           buf.limit(buf.position());
           buf.position(startBufPos);
-          createChecksumBufIfNeeded();
           int checksumsNeeded = (total + bytesPerChecksum - 1) /
               bytesPerChecksum;
-          checksumBuf.clear();
-          checksumBuf.limit(checksumsNeeded * checksumSize);
-          long checksumPos = BlockMetadataHeader.getHeaderSize()
-              + ((startDataPos / bytesPerChecksum) * checksumSize);
-          while (checksumBuf.hasRemaining()) {
-            int nRead = checksumIn.read(checksumBuf, checksumPos);
-            if (nRead < 0) {
-              throw new IOException("Got unexpected checksum file EOF at " +
-                  checksumPos + ", block file position " + startDataPos +
-                  " for block " + block + " of file " + filename);
-            }
-            checksumPos += nRead;
-          }
-          checksumBuf.flip();
+          readChecksums(startDataPos, checksumsNeeded);
 
           checksum.verifyChunkedSums(buf, checksumBuf, filename, startDataPos);
         } finally {
@@ -384,6 +394,32 @@ private synchronized int fillBuffer(ByteBuffer buf, boolean canSkipChecksum)
     }
   }
 
+  /**
+   * Read checksums into checksumBuf.
+   *
+   * @param startDataPos     The block file position of the first chunk.
+   *                         Must be a multiple of the checksum size.
+   * @param checksumsNeeded  The number of chunks to read the checksums of.
+   */
+  private synchronized void readChecksums(long startDataPos,
+      int checksumsNeeded) throws IOException {
+    createChecksumBufIfNeeded();
+    checksumBuf.clear();
+    checksumBuf.limit(checksumsNeeded * checksumSize);
+    long checksumPos = BlockMetadataHeader.getHeaderSize()
+        + ((startDataPos / bytesPerChecksum) * checksumSize);
+    while (checksumBuf.hasRemaining()) {
+      int nRead = checksumIn.read(checksumBuf, checksumPos);
+      if (nRead < 0) {
+        throw new IOException("Got unexpected checksum file EOF at " +
+            checksumPos + ", block file position " + startDataPos +
+            " for block " + block + " of file " + filename);
+      }
+      checksumPos += nRead;
+    }
+    checksumBuf.flip();
+  }
+
   private boolean createNoChecksumContext() {
     return !verifyChecksum ||
         // Checksums are not stored for replicas on transient storage.  We do
@@ -411,7 +447,9 @@ public synchronized int read(ByteBuffer buf) throws IOException {
           buf.remaining(), block, filename, canSkipChecksum);
       int nRead;
       try {
-        if (canSkipChecksum && zeroReadaheadRequested) {
+        if (mmapReads && canReadFromMmap()) {
+          nRead = readFromMmap(buf, canSkipChecksum);
+        } else if (canSkipChecksum && zeroReadaheadRequested) {
           nRead = readWithoutBounceBuffer(buf);
         } else {
           nRead = readWithBounceBuffer(buf, canSkipChecksum);
@@ -443,6 +481,87 @@ private synchronized int readWithoutBounceBuffer(ByteBuffer buf)
     return (total == 0 && (dataPos == dataIn.size())) ? -1 : total;
   }
 
+  /**
+   * Get the mmap of the replica, creating it through the cache if needed.
+   *
+   * @return the mmap, or null if the replica couldn't be mmapped.
+   */
+  private synchronized MappedByteBuffer getMmap() {
+    if ((clientMmap == null) && !mmapFailed) {
+      clientMmap = replica.getOrCreateClientMmap(false);
+      if (clientMmap == null) {
+        LOG.trace("can't get an mmap for {} of {}; reading through the bounce "
+            + "buffer instead.", block, filename);
+        mmapFailed = true;
+      }
+    }
+    return (clientMmap == null) ? null : clientMmap.getMappedByteBuffer();
+  }
+
+  /**
+   * Check whether the next read can be served from the mmap of the replica.
+   * If so, any buffered data is dropped, since the mmap replaces it.
+   */
+  private synchronized boolean canReadFromMmap() {
+    MappedByteBuffer mmap = getMmap();
+    if (mmap == null) {
+      return false;
+    }
+    freeDataBufIfExists();
+    freeChecksumBufIfExists();
+    // At EOF, or past the end of the block file when it was mapped
+    return dataPos < mmap.capacity();
+  }
+
+  /**
+   * Read directly from the mmap of the replica.
+   *
+   * Unless we can skip checksums, the chunks read are verified first, if no
+   * reader of the replica has verified them yet.
+   *
+   * @param buf              The buffer to read into.
+   * @param canSkipChecksum  True if we can skip checksums.
+   */
+  private synchronized int readFromMmap(ByteBuffer buf,
+      boolean canSkipChecksum) throws IOException {
+    MappedByteBuffer mmap = clientMmap.getMappedByteBuffer();
+    int nRead = (int)Math.min(buf.remaining(), mmap.capacity() - dataPos);
+    if (!canSkipChecksum && nRead > 0) {
+      verifyMmapChunks(mmap, dataPos, nRead);
+    }
+    ByteBuffer data = mmap.duplicate();
+    data.position((int)dataPos);
+    data.limit((int)dataPos + nRead);
+    buf.put(data);
+    dataPos += nRead;
+    return nRead;
+  }
+
+  /**
+   * Verify the chunks of the mmap covering a range of the block against the
+   * checksums, skipping the chunks already verified for the replica.
+   */
+  private synchronized void verifyMmapChunks(MappedByteBuffer mmap, long pos,
+      int len) throws IOException {
+    final int endChunk =
+        (int)((pos + len + bytesPerChecksum - 1) / bytesPerChecksum);
+    final int maxChunks = Math.max(1, maxAllocatedChunks);
+    int chunk = (int)(pos / bytesPerChecksum);
+    while ((chunk = replica.getFirstUnverifiedChunk(chunk, endChunk))
+        < endChunk) {
+      int numChunks = Math.min(endChunk - chunk, maxChunks);
+      long startDataPos = (long)chunk * bytesPerChecksum;
+      readChecksums(startDataPos, numChunks);
+      ByteBuffer data = mmap.duplicate();
+      data.position((int)startDataPos);
+      data.limit((int)Math.min(mmap.capacity(),
+          startDataPos + (long)numChunks * bytesPerChecksum));
+      checksum.verifyChunkedSums(data, checksumBuf, filename, startDataPos);
+      replica.setChunksVerified(chunk, chunk + numChunks);
+      chunk += numChunks;
+    }
+  }
+
   /**
    * Fill the data buffer.  If necessary, validate the data against the
    * checksums.
@@ -552,7 +671,10 @@ public synchronized int read(byte[] arr, int off, int len)
       LOG.trace(traceFormatStr + ": starting",
           arr.length, off, len, filename, block, canSkipChecksum);
       try {
-        if (canSkipChecksum && zeroReadaheadRequested) {
+        if (mmapReads && canReadFromMmap()) {
+          nRead = readFromMmap(ByteBuffer.wrap(arr, off, len),
+              canSkipChecksum);
+        } else if (canSkipChecksum && zeroReadaheadRequested) {
           nRead = readWithoutBounceBuffer(arr, off, len);
         } else {
           nRead = readWithBounceBuffer(arr, off, len, canSkipChecksum);
@@ -624,6 +746,10 @@ public synchronized void close() throws IOException {
     if (closed) return;
     closed = true;
     LOG.trace("close(filename={}, block={})", filename, block);
+    if (clientMmap != null) {
+      clientMmap.close();
+      clientMmap = null;
+    }
     replica.unref();
     freeDataBufIfExists();
     freeChecksumBufIfExists();
@@ -80,6 +80,7 @@
 import static org.apache.hadoop.hdfs.client.HdfsClientConfigKeys.Read;
 import static org.apache.hadoop.hdfs.client.HdfsClientConfigKeys.Retry;
 import static org.apache.hadoop.hdfs.client.HdfsClientConfigKeys.ShortCircuit;
+import static org.apache.hadoop.hdfs.client.HdfsClientConfigKeys.VectoredRead;
 import static org.apache.hadoop.hdfs.client.HdfsClientConfigKeys.Write;
 
 import java.util.ArrayList;
@@ -130,10 +131,16 @@ public class DfsClientConf {
 
   private final long hedgedReadThresholdMillis;
   private final int hedgedReadThreadpoolSize;
+  private final int hedgedReadThresholdPercentile;
+  private final long hedgedReadThresholdMinMillis;
+  private final boolean hedgedReadSequentialEnabled;
   private final List<Class<? extends ReplicaAccessorBuilder>>
       replicaAccessorBuilderClasses;
 
   private final int stripedReadThreadpoolSize;
+  private final int vectoredReadThreadpoolSize;
+  private final int vectoredReadMinSeekSize;
+  private final int vectoredReadMaxMergedSize;
 
   private final boolean dataTransferTcpNoDelay;
 
@@ -248,6 +255,18 @@ public DfsClientConf(Configuration conf) {
     hedgedReadThreadpoolSize = conf.getInt(
         HdfsClientConfigKeys.HedgedRead.THREADPOOL_SIZE_KEY,
         HdfsClientConfigKeys.HedgedRead.THREADPOOL_SIZE_DEFAULT);
+    hedgedReadThresholdPercentile = conf.getInt(
+        HedgedRead.THRESHOLD_PERCENTILE_KEY,
+        HedgedRead.THRESHOLD_PERCENTILE_DEFAULT);
+    Preconditions.checkArgument(hedgedReadThresholdPercentile >= 0
+        && hedgedReadThresholdPercentile < 100,
+        HedgedRead.THRESHOLD_PERCENTILE_KEY + " must be in [0, 100)");
+    hedgedReadThresholdMinMillis = conf.getLong(
+        HedgedRead.THRESHOLD_MIN_MILLIS_KEY,
+        HedgedRead.THRESHOLD_MIN_MILLIS_DEFAULT);
+    hedgedReadSequentialEnabled = conf.getBoolean(
+        HedgedRead.SEQUENTIAL_ENABLED_KEY,
+        HedgedRead.SEQUENTIAL_ENABLED_DEFAULT);
 
     stripedReadThreadpoolSize = conf.getInt(
         HdfsClientConfigKeys.StripedRead.THREADPOOL_SIZE_KEY,
@@ -255,6 +274,17 @@ public DfsClientConf(Configuration conf) {
     Preconditions.checkArgument(stripedReadThreadpoolSize > 0, "The value of " +
         HdfsClientConfigKeys.StripedRead.THREADPOOL_SIZE_KEY +
         " must be greater than 0.");
+    vectoredReadThreadpoolSize = conf.getInt(
+        VectoredRead.THREADPOOL_SIZE_KEY,
+        VectoredRead.THREADPOOL_SIZE_DEFAULT);
+    Preconditions.checkArgument(vectoredReadThreadpoolSize > 0,
+        VectoredRead.THREADPOOL_SIZE_KEY + " must be greater than 0.");
+    vectoredReadMinSeekSize = conf.getInt(
+        VectoredRead.MIN_SEEK_SIZE_KEY,
+        VectoredRead.MIN_SEEK_SIZE_DEFAULT);
+    vectoredReadMaxMergedSize = conf.getInt(
+        VectoredRead.MAX_MERGED_SIZE_KEY,
+        VectoredRead.MAX_MERGED_SIZE_DEFAULT);
     replicaAccessorBuilderClasses = loadReplicaAccessorBuilderClasses(conf);
   }
 
@@ -549,6 +579,28 @@ public int getHedgedReadThreadpoolSize() {
     return hedgedReadThreadpoolSize;
   }
 
+  /**
+   * @return the percentile of the per-DataNode read latency to hedge after,
+   *         or 0 to always hedge after the fixed threshold
+   */
+  public int getHedgedReadThresholdPercentile() {
+    return hedgedReadThresholdPercentile;
+  }
+
+  /**
+   * @return the hedgedReadThresholdMinMillis
+   */
+  public long getHedgedReadThresholdMinMillis() {
+    return hedgedReadThresholdMinMillis;
+  }
+
+  /**
+   * @return whether stalled sequential reads are hedged
+   */
+  public boolean isHedgedReadSequentialEnabled() {
+    return hedgedReadSequentialEnabled;
+  }
+
   /**
    * @return the stripedReadThreadpoolSize
    */
@@ -556,6 +608,27 @@ public int getStripedReadThreadpoolSize() {
     return stripedReadThreadpoolSize;
   }
 
+  /**
+   * @return the vectoredReadThreadpoolSize
+   */
+  public int getVectoredReadThreadpoolSize() {
+    return vectoredReadThreadpoolSize;
+  }
+
+  /**
+   * @return the largest gap between ranges merged into one vectored read
+   */
+  public int getVectoredReadMinSeekSize() {
+    return vectoredReadMinSeekSize;
+  }
+
+  /**
+   * @return the largest merged range of a vectored read
+   */
+  public int getVectoredReadMaxMergedSize() {
+    return vectoredReadMaxMergedSize;
+  }
+
   /**
    * @return the replicaAccessorBuilderClasses
    */
@@ -595,6 +668,8 @@ public static class ShortCircuitConf {
     private final int shortCircuitMmapCacheSize;
     private final long shortCircuitMmapCacheExpiryMs;
     private final long shortCircuitMmapCacheRetryTimeout;
+    private final long shortCircuitMmapCacheMaxBytes;
+    private final boolean shortCircuitMmapReadsEnabled;
     private final long shortCircuitCacheStaleThresholdMs;
 
     private final long keyProviderCacheExpiryMs;
@@ -653,6 +728,12 @@ public ShortCircuitConf(Configuration conf) {
       shortCircuitMmapCacheRetryTimeout = conf.getLong(
           Mmap.RETRY_TIMEOUT_MS_KEY,
           Mmap.RETRY_TIMEOUT_MS_DEFAULT);
+      shortCircuitMmapCacheMaxBytes = conf.getLong(
+          Mmap.CACHE_MAX_BYTES_KEY,
+          Mmap.CACHE_MAX_BYTES_DEFAULT);
+      shortCircuitMmapReadsEnabled = conf.getBoolean(
+          Mmap.READS_ENABLED_KEY,
+          Mmap.READS_ENABLED_DEFAULT);
       shortCircuitCacheStaleThresholdMs = conf.getLong(
           ShortCircuit.REPLICA_STALE_THRESHOLD_MS_KEY,
           ShortCircuit.REPLICA_STALE_THRESHOLD_MS_DEFAULT);
@@ -758,6 +839,21 @@ public long getShortCircuitMmapCacheRetryTimeout() {
       return shortCircuitMmapCacheRetryTimeout;
     }
 
+    /**
+     * @return the shortCircuitMmapCacheMaxBytes
+     */
+    public long getShortCircuitMmapCacheMaxBytes() {
+      return shortCircuitMmapCacheMaxBytes;
+    }
+
+    /**
+     * @return true if short-circuit reads are served from the mmap of the
+     *         replica, which needs the mmap cache to be enabled.
+     */
+    public boolean isShortCircuitMmapReadsEnabled() {
+      return shortCircuitMmapEnabled && shortCircuitMmapReadsEnabled;
+    }
+
     /**
      * @return the shortCircuitCacheStaleThresholdMs
      */
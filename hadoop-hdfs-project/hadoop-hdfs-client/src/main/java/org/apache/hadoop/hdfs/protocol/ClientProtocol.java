@@ -44,6 +44,7 @@
 import org.apache.hadoop.hdfs.security.token.block.DataEncryptionKey;
 import org.apache.hadoop.hdfs.security.token.delegation.DelegationTokenIdentifier;
 import org.apache.hadoop.hdfs.security.token.delegation.DelegationTokenSelector;
+import org.apache.hadoop.hdfs.server.namenode.ha.ReadOnly;
 import org.apache.hadoop.hdfs.server.protocol.DatanodeStorageReport;
 import org.apache.hadoop.io.EnumSetWritable;
 import org.apache.hadoop.io.Text;
@@ -124,6 +125,7 @@ public interface ClientProtocol {
    * @throws IOException If an I/O error occurred
    */
   @Idempotent
+  @ReadOnly
   LocatedBlocks getBlockLocations(String src, long offset, long length)
       throws IOException;
 
@@ -307,6 +309,7 @@ void setStoragePolicy(String src, String policyName)
    *           If file/dir <code>src</code> is not found
    */
   @Idempotent
+  @ReadOnly
   BlockStoragePolicy getStoragePolicy(String path) throws IOException;
 
   /**
@@ -671,6 +674,7 @@ boolean mkdirs(String src, FsPermission masked, boolean createParent)
    * @throws IOException If an I/O error occurred
    */
   @Idempotent
+  @ReadOnly
   DirectoryListing getListing(String src, byte[] startAfter,
       boolean needLocation) throws IOException;
 
@@ -780,6 +784,7 @@ DatanodeStorageReport[] getDatanodeStorageReport(
    *           a symlink.
    */
   @Idempotent
+  @ReadOnly
   long getPreferredBlockSize(String filename)
       throws IOException;
 
@@ -959,6 +964,7 @@ CorruptFileBlocks listCorruptFileBlocks(String path, String cookie)
    * @throws IOException If an I/O error occurred
    */
   @Idempotent
+  @ReadOnly
   HdfsFileStatus getFileInfo(String src) throws IOException;
 
   /**
@@ -973,6 +979,7 @@ CorruptFileBlocks listCorruptFileBlocks(String path, String cookie)
    * @throws IOException If an I/O error occurred
    */
   @Idempotent
+  @ReadOnly
   boolean isFileClosed(String src) throws IOException;
 
   /**
@@ -989,6 +996,7 @@ CorruptFileBlocks listCorruptFileBlocks(String path, String cookie)
    * @throws IOException If an I/O error occurred
    */
   @Idempotent
+  @ReadOnly
   HdfsFileStatus getFileLinkInfo(String src) throws IOException;
 
   /**
@@ -1002,6 +1010,7 @@ CorruptFileBlocks listCorruptFileBlocks(String path, String cookie)
    * @throws IOException If an I/O error occurred
    */
   @Idempotent
+  @ReadOnly
   ContentSummary getContentSummary(String path) throws IOException;
 
   /**
@@ -1114,6 +1123,7 @@ void createSymlink(String target, String link, FsPermission dirPerm,
    *           or an I/O error occurred
    */
   @Idempotent
+  @ReadOnly
   String getLinkTarget(String path) throws IOException;
 
   /**
@@ -1384,6 +1394,7 @@ void removeAclEntries(String src, List<AclEntry> aclSpec)
    * Gets the ACLs of files and directories.
    */
   @Idempotent
+  @ReadOnly
   AclStatus getAclStatus(String src) throws IOException;
 
   /**
@@ -1441,6 +1452,7 @@ void setXAttr(String src, XAttr xAttr, EnumSet<XAttrSetFlag> flag)
    * @throws IOException
    */
   @Idempotent
+  @ReadOnly
   List<XAttr> getXAttrs(String src, List<XAttr> xAttrs)
       throws IOException;
 
@@ -1456,6 +1468,7 @@ List<XAttr> getXAttrs(String src, List<XAttr> xAttrs)
    * @throws IOException
    */
   @Idempotent
+  @ReadOnly
   List<XAttr> listXAttrs(String src)
       throws IOException;
 
@@ -1532,6 +1545,7 @@ void setErasureCodingPolicy(String src, ErasureCodingPolicy ecPolicy)
    * @throws IOException
    */
   @Idempotent
+  @ReadOnly
   ErasureCodingPolicy getErasureCodingPolicy(String src) throws IOException;
 
   /**
@@ -1545,5 +1559,6 @@ void setErasureCodingPolicy(String src, ErasureCodingPolicy ecPolicy)
    * @throws IOException If an I/O error occurred
    */
   @Idempotent
+  @ReadOnly
   QuotaUsage getQuotaUsage(String path) throws IOException;
 }
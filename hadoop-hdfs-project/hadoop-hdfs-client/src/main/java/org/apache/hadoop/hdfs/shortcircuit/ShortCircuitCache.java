@@ -293,6 +293,17 @@ public interface ShortCircuitReplicaCreator {
    */
   private int maxEvictableMmapedSize;
 
+  /**
+   * Maximum total size in bytes of the mmaps of the evictable elements, or 0
+   * if only their number is limited.
+   */
+  private final long maxEvictableMmapedBytes;
+
+  /**
+   * Total size in bytes of the mmaps of the evictable elements.
+   */
+  private long evictableMmappedBytes = 0;
+
   /**
    * Mmaped elements older than this will be closed.
    */
@@ -333,12 +344,22 @@ public static ShortCircuitCache fromConf(ShortCircuitConf conf) {
         conf.getShortCircuitMmapCacheExpiryMs(),
         conf.getShortCircuitMmapCacheRetryTimeout(),
         conf.getShortCircuitCacheStaleThresholdMs(),
-        conf.getShortCircuitSharedMemoryWatcherInterruptCheckMs());
+        conf.getShortCircuitSharedMemoryWatcherInterruptCheckMs(),
+        conf.getShortCircuitMmapCacheMaxBytes());
   }
 
   public ShortCircuitCache(int maxTotalSize, long maxNonMmappedEvictableLifespanMs,
       int maxEvictableMmapedSize, long maxEvictableMmapedLifespanMs,
       long mmapRetryTimeoutMs, long staleThresholdMs, int shmInterruptCheckMs) {
+    this(maxTotalSize, maxNonMmappedEvictableLifespanMs,
+        maxEvictableMmapedSize, maxEvictableMmapedLifespanMs,
+        mmapRetryTimeoutMs, staleThresholdMs, shmInterruptCheckMs, 0);
+  }
+
+  public ShortCircuitCache(int maxTotalSize, long maxNonMmappedEvictableLifespanMs,
+      int maxEvictableMmapedSize, long maxEvictableMmapedLifespanMs,
+      long mmapRetryTimeoutMs, long staleThresholdMs, int shmInterruptCheckMs,
+      long maxEvictableMmapedBytes) {
     Preconditions.checkArgument(maxTotalSize >= 0);
     this.maxTotalSize = maxTotalSize;
     Preconditions.checkArgument(maxNonMmappedEvictableLifespanMs >= 0);
@@ -347,6 +368,8 @@ public ShortCircuitCache(int maxTotalSize, long maxNonMmappedEvictableLifespanMs
     this.maxEvictableMmapedSize = maxEvictableMmapedSize;
     Preconditions.checkArgument(maxEvictableMmapedLifespanMs >= 0);
     this.maxEvictableMmapedLifespanMs = maxEvictableMmapedLifespanMs;
+    Preconditions.checkArgument(maxEvictableMmapedBytes >= 0);
+    this.maxEvictableMmapedBytes = maxEvictableMmapedBytes;
     this.mmapRetryTimeoutMs = mmapRetryTimeoutMs;
     this.staleThresholdMs = staleThresholdMs;
     DfsClientShmManager shmManager = null;
@@ -492,7 +515,9 @@ private int demoteOldEvictableMmaped(long now) {
       long evictionTimeMs =
           TimeUnit.MILLISECONDS.convert(evictionTimeNs, TimeUnit.NANOSECONDS);
       if (evictionTimeMs + maxEvictableMmapedLifespanMs >= now) {
-        if (evictableMmapped.size() < maxEvictableMmapedSize) {
+        if (evictableMmapped.size() < maxEvictableMmapedSize &&
+            (maxEvictableMmapedBytes == 0 ||
+             evictableMmappedBytes <= maxEvictableMmapedBytes)) {
           break;
         }
         needMoreSpace = true;
@@ -580,6 +605,9 @@ private void removeEvictable(ShortCircuitReplica replica,
     Preconditions.checkState(removed == replica,
         "failed to make %s unevictable", replica);
     replica.setEvictableTimeNs(null);
+    if (map == evictableMmapped) {
+      evictableMmappedBytes -= replica.getMmapSize();
+    }
   }
 
   /**
@@ -600,6 +628,9 @@ private void insertEvictable(Long evictionTimeNs,
     Preconditions.checkState(null == replica.getEvictableTimeNs());
     replica.setEvictableTimeNs(evictionTimeNs);
     map.put(evictionTimeNs, replica);
+    if (map == evictableMmapped) {
+      evictableMmappedBytes += replica.getMmapSize();
+    }
   }
 
   /**
@@ -22,6 +22,7 @@
 import java.nio.MappedByteBuffer;
 import java.nio.channels.FileChannel;
 import java.nio.channels.FileChannel.MapMode;
+import java.util.BitSet;
 
 import org.apache.hadoop.classification.InterfaceAudience;
 import org.apache.hadoop.hdfs.ExtendedBlockId;
@@ -119,6 +120,14 @@ public class ShortCircuitReplica {
    */
   private Long evictableTimeNs = null;
 
+  /**
+   * The checksum chunks of the block data which have been verified by reads
+   * from the mmap, or null if none have.
+   *
+   * Protected by the replica lock.
+   */
+  private BitSet verifiedChunks = null;
+
   public ShortCircuitReplica(ExtendedBlockId key,
       FileInputStream dataStream, FileInputStream metaStream,
       ShortCircuitCache cache, long creationTimeMs, Slot slot) throws IOException {
@@ -213,6 +222,17 @@ public boolean hasMmap() {
     return ((mmapData != null) && (mmapData instanceof MappedByteBuffer));
   }
 
+  /**
+   * Get the size in bytes of the mmap associated with this replica.
+   *
+   * Must be called with the cache lock held.
+   *
+   * @return the size of the mmap, or 0 if the replica has no mmap.
+   */
+  long getMmapSize() {
+    return hasMmap() ? ((MappedByteBuffer)mmapData).capacity() : 0;
+  }
+
   /**
    * Free the mmap associated with this replica.
    *
@@ -290,6 +310,34 @@ MappedByteBuffer loadMmapInternal() {
     }
   }
 
+  /**
+   * Find the first checksum chunk in a range which has not been verified.
+   *
+   * @param from   The first chunk of the range.
+   * @param to     The chunk after the last one of the range.
+   * @return       The first unverified chunk, or to if all are verified.
+   */
+  public synchronized int getFirstUnverifiedChunk(int from, int to) {
+    if (verifiedChunks == null) {
+      return from;
+    }
+    return Math.min(verifiedChunks.nextClearBit(from), to);
+  }
+
+  /**
+   * Record that a range of checksum chunks has been verified, so that
+   * readers of the mmap do not verify them again.
+   *
+   * @param from   The first chunk of the range.
+   * @param to     The chunk after the last one of the range.
+   */
+  public synchronized void setChunksVerified(int from, int to) {
+    if (verifiedChunks == null) {
+      verifiedChunks = new BitSet();
+    }
+    verifiedChunks.set(from, to);
+  }
+
   /**
    * Get the evictable time in nanoseconds.
    *
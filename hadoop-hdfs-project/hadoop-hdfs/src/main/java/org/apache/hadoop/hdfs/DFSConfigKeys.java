@@ -238,6 +238,9 @@ public class DFSConfigKeys extends CommonConfigurationKeys {
       = "dfs.namenode.storageinfo.defragment.ratio";
   public static final double
       DFS_NAMENODE_STORAGEINFO_DEFRAGMENT_RATIO_DEFAULT = 0.75;
+  public static final String DFS_NAMENODE_BLOCKREPORT_DIFF_THREADS_KEY
+      = "dfs.namenode.blockreport.diff.threads";
+  public static final int DFS_NAMENODE_BLOCKREPORT_DIFF_THREADS_DEFAULT = 0;
   public static final String  DFS_WEBHDFS_AUTHENTICATION_FILTER_KEY = "dfs.web.authentication.filter";
   /* Phrased as below to avoid javac inlining as a constant, to match the behavior when
      this was AuthFilter.class.getName(). Note that if you change the import for AuthFilter, you
@@ -302,6 +305,9 @@ public class DFSConfigKeys extends CommonConfigurationKeys {
   public static final String  DFS_NAMENODE_EDITS_ASYNC_LOGGING =
       "dfs.namenode.edits.asynclogging";
   public static final boolean DFS_NAMENODE_EDITS_ASYNC_LOGGING_DEFAULT = false;
+  public static final String  DFS_NAMENODE_EDITS_REPLAY_PREFETCH_OPS_KEY =
+      "dfs.namenode.edits.replay.prefetch-ops";
+  public static final int     DFS_NAMENODE_EDITS_REPLAY_PREFETCH_OPS_DEFAULT = 0;
 
   public static final String  DFS_LIST_LIMIT = "dfs.ls.limit";
   public static final int     DFS_LIST_LIMIT_DEFAULT = 1000;
@@ -309,6 +315,10 @@ public class DFSConfigKeys extends CommonConfigurationKeys {
   public static final int     DFS_CONTENT_SUMMARY_LIMIT_DEFAULT = 5000;
   public static final String  DFS_CONTENT_SUMMARY_SLEEP_MICROSEC_KEY = "dfs.content-summary.sleep-microsec";
   public static final long    DFS_CONTENT_SUMMARY_SLEEP_MICROSEC_DEFAULT = 500;
+  public static final String  DFS_CONTENT_SUMMARY_CACHE_ENABLED_KEY = "dfs.content-summary.cache.enabled";
+  public static final boolean DFS_CONTENT_SUMMARY_CACHE_ENABLED_DEFAULT = false;
+  public static final String  DFS_CONTENT_SUMMARY_CACHE_MIN_SUBTREE_SIZE_KEY = "dfs.content-summary.cache.min-subtree-size";
+  public static final long    DFS_CONTENT_SUMMARY_CACHE_MIN_SUBTREE_SIZE_DEFAULT = 1000;
   public static final String  DFS_DATANODE_FAILED_VOLUMES_TOLERATED_KEY = "dfs.datanode.failed.volumes.tolerated";
   public static final int     DFS_DATANODE_FAILED_VOLUMES_TOLERATED_DEFAULT = 0;
   public static final String  DFS_DATANODE_SYNCONCLOSE_KEY = "dfs.datanode.synconclose";
@@ -371,6 +381,15 @@ public class DFSConfigKeys extends CommonConfigurationKeys {
   public static final String DFS_NAMENODE_REPLICATION_WORK_MULTIPLIER_PER_ITERATION =
       "dfs.namenode.replication.work.multiplier.per.iteration";
   public static final int DFS_NAMENODE_REPLICATION_WORK_MULTIPLIER_PER_ITERATION_DEFAULT = 2;
+  public static final String DFS_NAMENODE_RECONSTRUCTION_CAPACITY_BASED_KEY =
+      "dfs.namenode.reconstruction.capacity-based";
+  public static final boolean DFS_NAMENODE_RECONSTRUCTION_CAPACITY_BASED_DEFAULT = false;
+  public static final String DFS_NAMENODE_RECONSTRUCTION_TARGET_CHOOSER_THREADS_KEY =
+      "dfs.namenode.reconstruction.target-chooser.threads";
+  public static final int DFS_NAMENODE_RECONSTRUCTION_TARGET_CHOOSER_THREADS_DEFAULT = 0;
+  public static final String DFS_NAMENODE_RECONSTRUCTION_BATCH_SIZE_KEY =
+      "dfs.namenode.reconstruction.batch.size";
+  public static final int DFS_NAMENODE_RECONSTRUCTION_BATCH_SIZE_DEFAULT = 1000;
 
   //Delegation token related keys
   public static final String  DFS_NAMENODE_DELEGATION_KEY_UPDATE_INTERVAL_KEY = "dfs.namenode.delegation.key.update-interval";
@@ -411,6 +430,10 @@ public class DFSConfigKeys extends CommonConfigurationKeys {
   public static final String  DFS_NAMENODE_WRITE_LOCK_REPORTING_THRESHOLD_MS_KEY =
       "dfs.namenode.write-lock-reporting-threshold-ms";
   public static final long    DFS_NAMENODE_WRITE_LOCK_REPORTING_THRESHOLD_MS_DEFAULT = 1000L;
+  // Whether the block manager state has a lock separate from the namespace
+  public static final String  DFS_NAMENODE_FSLOCK_FINE_GRAINED_KEY =
+      "dfs.namenode.fslock.fine-grained";
+  public static final boolean DFS_NAMENODE_FSLOCK_FINE_GRAINED_DEFAULT = false;
 
   public static final String  DFS_UPGRADE_DOMAIN_FACTOR = "dfs.namenode.upgrade.domain.factor";
   public static final int DFS_UPGRADE_DOMAIN_FACTOR_DEFAULT = DFS_REPLICATION_DEFAULT;
@@ -506,6 +529,10 @@ public class DFSConfigKeys extends CommonConfigurationKeys {
   public static final int     DFS_DATANODE_DIRECTORYSCAN_INTERVAL_DEFAULT = 21600;
   public static final String  DFS_DATANODE_DIRECTORYSCAN_THREADS_KEY = "dfs.datanode.directoryscan.threads";
   public static final int     DFS_DATANODE_DIRECTORYSCAN_THREADS_DEFAULT = 1;
+  public static final String  DFS_DATANODE_DIRECTORYSCAN_INCREMENTAL_ENABLED_KEY = "dfs.datanode.directoryscan.incremental.enabled";
+  public static final boolean DFS_DATANODE_DIRECTORYSCAN_INCREMENTAL_ENABLED_DEFAULT = false;
+  public static final String  DFS_DATANODE_DIRECTORYSCAN_FULL_SCAN_INTERVAL_KEY = "dfs.datanode.directoryscan.full.scan.interval";
+  public static final long    DFS_DATANODE_DIRECTORYSCAN_FULL_SCAN_INTERVAL_DEFAULT = 7 * 24 * 3600; // 1 week
 
   public static final String  DFS_DN_EC_RECONSTRUCTION_STRIPED_READ_THREADS_KEY = "dfs.datanode.ec.reconstruction.stripedread.threads";
   public static final int     DFS_DN_EC_RECONSTRUCTION_STRIPED_READ_THREADS_DEFAULT = 20;
@@ -515,6 +542,8 @@ public class DFSConfigKeys extends CommonConfigurationKeys {
   public static final int     DFS_DN_EC_RECONSTRUCTION_STRIPED_READ_TIMEOUT_MILLIS_DEFAULT = 5000; //5s
   public static final String  DFS_DN_EC_RECONSTRUCTION_STRIPED_BLK_THREADS_KEY = "dfs.datanode.ec.reconstruction.stripedblock.threads.size";
   public static final int     DFS_DN_EC_RECONSTRUCTION_STRIPED_BLK_THREADS_DEFAULT = 8;
+  public static final String  DFS_DN_EC_RECONSTRUCTION_PIPELINE_DEPTH_KEY = "dfs.datanode.ec.reconstruction.pipeline.depth";
+  public static final int     DFS_DN_EC_RECONSTRUCTION_PIPELINE_DEPTH_DEFAULT = 1;
 
   public static final String
       DFS_DATANODE_DIRECTORYSCAN_THROTTLE_LIMIT_MS_PER_SEC_KEY =
@@ -535,10 +564,22 @@ public class DFSConfigKeys extends CommonConfigurationKeys {
   public static final String  DFS_DATANODE_MAX_RECEIVER_THREADS_KEY =
       HdfsClientConfigKeys.DeprecatedKeys.DFS_DATANODE_MAX_RECEIVER_THREADS_KEY;
   public static final int     DFS_DATANODE_MAX_RECEIVER_THREADS_DEFAULT = 4096;
+  public static final String  DFS_DATANODE_XCEIVER_SELECTOR_ENABLED_KEY =
+      "dfs.datanode.xceiver.selector.enabled";
+  public static final boolean DFS_DATANODE_XCEIVER_SELECTOR_ENABLED_DEFAULT =
+      false;
   public static final String  DFS_DATANODE_SCAN_PERIOD_HOURS_KEY = "dfs.datanode.scan.period.hours";
   public static final int     DFS_DATANODE_SCAN_PERIOD_HOURS_DEFAULT = 21 * 24;  // 3 weeks.
   public static final String  DFS_BLOCK_SCANNER_VOLUME_BYTES_PER_SECOND = "dfs.block.scanner.volume.bytes.per.second";
   public static final long    DFS_BLOCK_SCANNER_VOLUME_BYTES_PER_SECOND_DEFAULT = 1048576L;
+  public static final String  DFS_BLOCK_SCANNER_VOLUME_ADAPTIVE_ENABLED_KEY = "dfs.block.scanner.volume.adaptive.enabled";
+  public static final boolean DFS_BLOCK_SCANNER_VOLUME_ADAPTIVE_ENABLED_DEFAULT = false;
+  public static final String  DFS_BLOCK_SCANNER_VOLUME_ADAPTIVE_MIN_BYTES_PER_SECOND_KEY = "dfs.block.scanner.volume.adaptive.min.bytes.per.second";
+  public static final long    DFS_BLOCK_SCANNER_VOLUME_ADAPTIVE_MIN_BYTES_PER_SECOND_DEFAULT = 131072L;
+  public static final String  DFS_BLOCK_SCANNER_VOLUME_ADAPTIVE_MAX_BYTES_PER_SECOND_KEY = "dfs.block.scanner.volume.adaptive.max.bytes.per.second";
+  public static final long    DFS_BLOCK_SCANNER_VOLUME_ADAPTIVE_MAX_BYTES_PER_SECOND_DEFAULT = 8388608L;
+  public static final String  DFS_BLOCK_SCANNER_VOLUME_PRIORITY_ENABLED_KEY = "dfs.block.scanner.volume.priority.enabled";
+  public static final boolean DFS_BLOCK_SCANNER_VOLUME_PRIORITY_ENABLED_DEFAULT = false;
   public static final String  DFS_DATANODE_TRANSFERTO_ALLOWED_KEY = "dfs.datanode.transferTo.allowed";
   public static final boolean DFS_DATANODE_TRANSFERTO_ALLOWED_DEFAULT = true;
   public static final String  DFS_HEARTBEAT_INTERVAL_KEY = "dfs.heartbeat.interval";
@@ -553,6 +594,10 @@ public class DFSConfigKeys extends CommonConfigurationKeys {
   public static final int     DFS_NAMENODE_DECOMMISSION_BLOCKS_PER_INTERVAL_DEFAULT = 500000;
   public static final String  DFS_NAMENODE_DECOMMISSION_MAX_CONCURRENT_TRACKED_NODES = "dfs.namenode.decommission.max.concurrent.tracked.nodes";
   public static final int     DFS_NAMENODE_DECOMMISSION_MAX_CONCURRENT_TRACKED_NODES_DEFAULT = 100;
+  public static final String  DFS_NAMENODE_DECOMMISSION_INCREMENTAL_KEY = "dfs.namenode.decommission.incremental";
+  public static final boolean DFS_NAMENODE_DECOMMISSION_INCREMENTAL_DEFAULT = false;
+  public static final String  DFS_NAMENODE_DECOMMISSION_BLOCKS_PER_LOCK_KEY = "dfs.namenode.decommission.blocks.per.lock";
+  public static final int     DFS_NAMENODE_DECOMMISSION_BLOCKS_PER_LOCK_DEFAULT = 1000;
   public static final String  DFS_NAMENODE_HANDLER_COUNT_KEY = "dfs.namenode.handler.count";
   public static final int     DFS_NAMENODE_HANDLER_COUNT_DEFAULT = 10;
   public static final String  DFS_NAMENODE_LIFELINE_HANDLER_RATIO_KEY =
@@ -606,6 +651,8 @@ public class DFSConfigKeys extends CommonConfigurationKeys {
   public static final int     DFS_BLOCKREPORT_INITIAL_DELAY_DEFAULT = 0;
   public static final String  DFS_BLOCKREPORT_SPLIT_THRESHOLD_KEY = "dfs.blockreport.split.threshold";
   public static final long    DFS_BLOCKREPORT_SPLIT_THRESHOLD_DEFAULT = 1000 * 1000;
+  public static final String  DFS_BLOCKREPORT_SEGMENT_SIZE_KEY = "dfs.blockreport.segment.size";
+  public static final int     DFS_BLOCKREPORT_SEGMENT_SIZE_DEFAULT = 0;
   public static final String  DFS_NAMENODE_MAX_FULL_BLOCK_REPORT_LEASES = "dfs.namenode.max.full.block.report.leases";
   public static final int     DFS_NAMENODE_MAX_FULL_BLOCK_REPORT_LEASES_DEFAULT = 6;
   public static final String  DFS_NAMENODE_FULL_BLOCK_REPORT_LEASE_LENGTH_MS = "dfs.namenode.full.block.report.lease.length.ms";
@@ -628,6 +675,21 @@ public class DFSConfigKeys extends CommonConfigurationKeys {
   public static final String DFS_IMAGE_COMPRESSION_CODEC_DEFAULT =
                                    "org.apache.hadoop.io.compress.DefaultCodec";
 
+  // property for parallel fsimage loading and saving
+  public static final String DFS_IMAGE_PARALLEL_LOAD_KEY =
+      "dfs.image.parallel.load";
+  public static final boolean DFS_IMAGE_PARALLEL_LOAD_DEFAULT = false;
+  public static final String DFS_IMAGE_PARALLEL_TARGET_SECTIONS_KEY =
+      "dfs.image.parallel.target.sections";
+  public static final int DFS_IMAGE_PARALLEL_TARGET_SECTIONS_DEFAULT = 12;
+  public static final String DFS_IMAGE_PARALLEL_INODE_THRESHOLD_KEY =
+      "dfs.image.parallel.inode.threshold";
+  public static final long DFS_IMAGE_PARALLEL_INODE_THRESHOLD_DEFAULT =
+      1000000;
+  public static final String DFS_IMAGE_PARALLEL_THREADS_KEY =
+      "dfs.image.parallel.threads";
+  public static final int DFS_IMAGE_PARALLEL_THREADS_DEFAULT = 4;
+
   public static final String DFS_IMAGE_TRANSFER_RATE_KEY =
                                            "dfs.image.transfer.bandwidthPerSec";
   public static final long DFS_IMAGE_TRANSFER_RATE_DEFAULT = 0;  //no throttling
@@ -649,6 +711,8 @@ public class DFSConfigKeys extends CommonConfigurationKeys {
   public static final String  DFS_DATANODE_PLUGINS_KEY = "dfs.datanode.plugins";
   public static final String  DFS_DATANODE_FSDATASET_FACTORY_KEY = "dfs.datanode.fsdataset.factory";
   public static final String  DFS_DATANODE_FSDATASET_VOLUME_CHOOSING_POLICY_KEY = "dfs.datanode.fsdataset.volume.choosing.policy";
+  public static final String  DFS_DATANODE_FSDATASET_VOLUME_LOCKS_ENABLED_KEY = "dfs.datanode.fsdataset.volume.locks.enabled";
+  public static final boolean DFS_DATANODE_FSDATASET_VOLUME_LOCKS_ENABLED_DEFAULT = false;
   public static final String  DFS_DATANODE_AVAILABLE_SPACE_VOLUME_CHOOSING_POLICY_BALANCED_SPACE_THRESHOLD_KEY = "dfs.datanode.available-space-volume-choosing-policy.balanced-space-threshold";
   public static final long    DFS_DATANODE_AVAILABLE_SPACE_VOLUME_CHOOSING_POLICY_BALANCED_SPACE_THRESHOLD_DEFAULT = 1024L * 1024L * 1024L * 10L; // 10 GB
   public static final String  DFS_DATANODE_AVAILABLE_SPACE_VOLUME_CHOOSING_POLICY_BALANCED_SPACE_PREFERENCE_FRACTION_KEY = "dfs.datanode.available-space-volume-choosing-policy.balanced-space-preference-fraction";
@@ -745,9 +809,28 @@ public class DFSConfigKeys extends CommonConfigurationKeys {
   public static final String  DFS_HA_TAILEDITS_INPROGRESS_KEY =
           "dfs.ha.tail-edits.in-progress";
   public static final boolean DFS_HA_TAILEDITS_INPROGRESS_DEFAULT = false;
+  public static final String DFS_HA_TAILEDITS_INPROGRESS_PERIOD_KEY =
+      "dfs.ha.tail-edits.in-progress.period";
+  public static final long DFS_HA_TAILEDITS_INPROGRESS_PERIOD_DEFAULT =
+      100; // 100ms
+  public static final String DFS_HA_TAILEDITS_INPROGRESS_BACKOFF_MAX_KEY =
+      "dfs.ha.tail-edits.in-progress.backoff-max";
+  public static final long DFS_HA_TAILEDITS_INPROGRESS_BACKOFF_MAX_DEFAULT =
+      1000; // 1s
+  public static final String DFS_HA_TAILEDITS_QJM_RPC_MAX_TXNS_KEY =
+      "dfs.ha.tail-edits.qjm.rpc.max-txns";
+  public static final int DFS_HA_TAILEDITS_QJM_RPC_MAX_TXNS_DEFAULT = 5000;
   public static final String DFS_HA_TAILEDITS_ROLLEDITS_TIMEOUT_KEY =
       "dfs.ha.tail-edits.rolledits.timeout";
   public static final int DFS_HA_TAILEDITS_ROLLEDITS_TIMEOUT_DEFAULT = 60; // 1m
+  public static final String DFS_HA_STANDBY_CONSISTENT_READS_ENABLED_KEY =
+      "dfs.ha.standby.consistent-reads.enabled";
+  public static final boolean DFS_HA_STANDBY_CONSISTENT_READS_ENABLED_DEFAULT =
+      false;
+  public static final String DFS_HA_STANDBY_CONSISTENT_READS_WAIT_MS_KEY =
+      "dfs.ha.standby.consistent-reads.wait.ms";
+  public static final long DFS_HA_STANDBY_CONSISTENT_READS_WAIT_MS_DEFAULT =
+      1000;
   public static final String DFS_HA_LOGROLL_RPC_TIMEOUT_KEY = "dfs.ha.log-roll.rpc.timeout";
   public static final int DFS_HA_LOGROLL_RPC_TIMEOUT_DEFAULT = 20000; // 20s
   public static final String DFS_HA_FENCE_METHODS_KEY = "dfs.ha.fencing.methods";
@@ -811,6 +894,8 @@ public class DFSConfigKeys extends CommonConfigurationKeys {
   public static final String  DFS_JOURNALNODE_HTTPS_ADDRESS_KEY = "dfs.journalnode.https-address";
   public static final int     DFS_JOURNALNODE_HTTPS_PORT_DEFAULT = 8481;
   public static final String  DFS_JOURNALNODE_HTTPS_ADDRESS_DEFAULT = "0.0.0.0:" + DFS_JOURNALNODE_HTTPS_PORT_DEFAULT;
+  public static final String  DFS_JOURNALNODE_EDIT_CACHE_SIZE_KEY = "dfs.journalnode.edit-cache-size.bytes";
+  public static final long    DFS_JOURNALNODE_EDIT_CACHE_SIZE_DEFAULT = 1024 * 1024;
 
   public static final String  DFS_JOURNALNODE_KEYTAB_FILE_KEY = "dfs.journalnode.keytab.file";
   public static final String  DFS_JOURNALNODE_KERBEROS_PRINCIPAL_KEY = "dfs.journalnode.kerberos.principal";
@@ -827,17 +827,26 @@ public static JournalInfoProto convert(JournalInfo j) {
 
   public static BlockReportContext convert(BlockReportContextProto proto) {
     return new BlockReportContext(proto.getTotalRpcs(), proto.getCurRpc(),
-        proto.getId(), proto.getLeaseId(), proto.getSorted());
+        proto.getId(), proto.getLeaseId(), proto.getSorted(),
+        proto.hasMinBlockId() ? proto.getMinBlockId() : Long.MIN_VALUE,
+        proto.hasMaxBlockId() ? proto.getMaxBlockId() : Long.MAX_VALUE);
   }
 
   public static BlockReportContextProto convert(BlockReportContext context) {
-    return BlockReportContextProto.newBuilder().
+    BlockReportContextProto.Builder builder =
+        BlockReportContextProto.newBuilder().
         setTotalRpcs(context.getTotalRpcs()).
         setCurRpc(context.getCurRpc()).
         setId(context.getReportId()).
         setLeaseId(context.getLeaseId()).
-        setSorted(context.isSorted()).
-        build();
+        setSorted(context.isSorted());
+    if (context.getMinBlockId() != Long.MIN_VALUE) {
+      builder.setMinBlockId(context.getMinBlockId());
+    }
+    if (context.getMaxBlockId() != Long.MAX_VALUE) {
+      builder.setMaxBlockId(context.getMaxBlockId());
+    }
+    return builder.build();
   }
 
   private static StorageTypesProto convertStorageTypesProto(
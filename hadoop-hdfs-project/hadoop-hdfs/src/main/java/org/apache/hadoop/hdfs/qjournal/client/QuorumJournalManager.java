@@ -21,6 +21,7 @@
 import java.net.InetSocketAddress;
 import java.net.URI;
 import java.net.URL;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.List;
@@ -36,6 +37,7 @@
 import org.apache.hadoop.hdfs.DFSConfigKeys;
 import org.apache.hadoop.hdfs.DFSUtil;
 import org.apache.hadoop.hdfs.qjournal.protocol.QJournalProtocolProtos.GetJournalStateResponseProto;
+import org.apache.hadoop.hdfs.qjournal.protocol.QJournalProtocolProtos.GetJournaledEditsResponseProto;
 import org.apache.hadoop.hdfs.qjournal.protocol.QJournalProtocolProtos.NewEpochResponseProto;
 import org.apache.hadoop.hdfs.qjournal.protocol.QJournalProtocolProtos.PrepareRecoveryResponseProto;
 import org.apache.hadoop.hdfs.qjournal.protocol.QJournalProtocolProtos.SegmentStateProto;
@@ -77,6 +79,11 @@ public class QuorumJournalManager implements JournalManager {
   private final int newEpochTimeoutMs;
   private final int writeTxnsTimeoutMs;
 
+  // Whether to fetch in-progress edits over RPC from the JournalNodes'
+  // in-memory caches, and the maximum number of edits to fetch per RPC.
+  private final boolean inProgressTailingEnabled;
+  private final int maxTxnsPerRpc;
+
   // Since these don't occur during normal operation, we can
   // use rather lengthy timeouts, and don't need to make them
   // configurable.
@@ -142,6 +149,16 @@ public QuorumJournalManager(Configuration conf,
     this.writeTxnsTimeoutMs = conf.getInt(
         DFSConfigKeys.DFS_QJOURNAL_WRITE_TXNS_TIMEOUT_KEY,
         DFSConfigKeys.DFS_QJOURNAL_WRITE_TXNS_TIMEOUT_DEFAULT);
+
+    this.inProgressTailingEnabled = conf.getBoolean(
+        DFSConfigKeys.DFS_HA_TAILEDITS_INPROGRESS_KEY,
+        DFSConfigKeys.DFS_HA_TAILEDITS_INPROGRESS_DEFAULT);
+    this.maxTxnsPerRpc = conf.getInt(
+        DFSConfigKeys.DFS_HA_TAILEDITS_QJM_RPC_MAX_TXNS_KEY,
+        DFSConfigKeys.DFS_HA_TAILEDITS_QJM_RPC_MAX_TXNS_DEFAULT);
+    Preconditions.checkArgument(maxTxnsPerRpc > 0,
+        "Must specify %s greater than 0!",
+        DFSConfigKeys.DFS_HA_TAILEDITS_QJM_RPC_MAX_TXNS_KEY);
   }
   
   protected List<AsyncLogger> createLoggers(
@@ -474,6 +491,92 @@ public void selectInputStreams(Collection<EditLogInputStream> streams,
   public void selectInputStreams(Collection<EditLogInputStream> streams,
       long fromTxnId, boolean inProgressOk,
       boolean onlyDurableTxns) throws IOException {
+    if (inProgressOk && onlyDurableTxns && inProgressTailingEnabled) {
+      // Try to fetch the most recent edits from the JournalNodes' in-memory
+      // caches first, which avoids an HTTP round trip per segment and the
+      // disk reads on the JournalNodes.
+      try {
+        selectRpcInputStreams(streams, fromTxnId);
+        return;
+      } catch (IOException ioe) {
+        LOG.warn("Encountered exception while tailing edits >= " + fromTxnId +
+            " via RPC; falling back to streaming.", ioe);
+      }
+    }
+    selectStreamingInputStreams(streams, fromTxnId, inProgressOk,
+        onlyDurableTxns);
+  }
+
+  /**
+   * Select input streams from the edits cached in memory on the
+   * JournalNodes, fetched via {@link AsyncLoggerSet#getJournaledEdits}.
+   * Only transactions which are present on a quorum of JournalNodes are
+   * returned. If no new transactions are available, no streams are added.
+   *
+   * @throws IOException if a quorum of JournalNodes is unable to serve the
+   * requested transactions from cache
+   */
+  private void selectRpcInputStreams(Collection<EditLogInputStream> streams,
+      long fromTxnId) throws IOException {
+    QuorumCall<AsyncLogger, GetJournaledEditsResponseProto> q =
+        loggers.getJournaledEdits(fromTxnId, maxTxnsPerRpc);
+    Map<AsyncLogger, GetJournaledEditsResponseProto> responseMap =
+        loggers.waitForWriteQuorum(q, selectInputStreamsTimeoutMs,
+            "selectRpcInputStreams");
+    assert responseMap.size() >= loggers.getMajoritySize() :
+        "Quorum call returned without a majority";
+
+    // Each response may begin before fromTxnId, since the JournalNodes
+    // return whole journaled batches. Compute the highest txid held by
+    // each responder and pick the highest one present on a majority.
+    List<Long> lastTxIds = new ArrayList<Long>(responseMap.size());
+    for (GetJournaledEditsResponseProto resp : responseMap.values()) {
+      lastTxIds.add(getLastTxId(resp, fromTxnId));
+    }
+    Collections.sort(lastTxIds);
+    long majorityLastTxId =
+        lastTxIds.get(lastTxIds.size() - loggers.getMajoritySize());
+    if (majorityLastTxId < fromTxnId) {
+      LOG.debug("No new edits available in the JournalNode caches after " +
+          "txid " + (fromTxnId - 1));
+      return;
+    }
+
+    GetJournaledEditsResponseProto chosen = null;
+    for (GetJournaledEditsResponseProto resp : responseMap.values()) {
+      if (getLastTxId(resp, fromTxnId) >= majorityLastTxId) {
+        chosen = resp;
+        break;
+      }
+    }
+    assert chosen != null;
+    LOG.debug("Selected cached edits " + chosen.getFromTxId() + "-" +
+        majorityLastTxId + " via RPC for txid " + fromTxnId);
+
+    EditLogInputStream elis = EditLogFileInputStream.fromByteString(
+        chosen.getEditLog(), chosen.getFromTxId(), majorityLastTxId, true);
+    final PriorityQueue<EditLogInputStream> allStreams =
+        new PriorityQueue<EditLogInputStream>(1,
+            JournalSet.EDIT_LOG_INPUT_STREAM_COMPARATOR);
+    allStreams.add(elis);
+    JournalSet.chainAndMakeRedundantStreams(streams, allStreams, fromTxnId);
+  }
+
+  private static long getLastTxId(GetJournaledEditsResponseProto resp,
+      long fromTxnId) {
+    if (resp.getTxnCount() == 0) {
+      return fromTxnId - 1;
+    }
+    return resp.getFromTxId() + resp.getTxnCount() - 1;
+  }
+
+  /**
+   * Select input streams by listing the segments on each JournalNode and
+   * streaming them over HTTP.
+   */
+  private void selectStreamingInputStreams(
+      Collection<EditLogInputStream> streams, long fromTxnId,
+      boolean inProgressOk, boolean onlyDurableTxns) throws IOException {
 
     QuorumCall<AsyncLogger, RemoteEditLogManifest> q =
         loggers.getEditLogManifest(fromTxnId, inProgressOk);
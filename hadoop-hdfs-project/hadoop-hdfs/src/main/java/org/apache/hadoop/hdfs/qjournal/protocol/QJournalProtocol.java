@@ -24,6 +24,7 @@
 import org.apache.hadoop.hdfs.DFSConfigKeys;
 import org.apache.hadoop.hdfs.qjournal.client.QuorumJournalManager;
 import org.apache.hadoop.hdfs.qjournal.protocol.QJournalProtocolProtos.GetEditLogManifestResponseProto;
+import org.apache.hadoop.hdfs.qjournal.protocol.QJournalProtocolProtos.GetJournaledEditsResponseProto;
 import org.apache.hadoop.hdfs.qjournal.protocol.QJournalProtocolProtos.GetJournalStateResponseProto;
 import org.apache.hadoop.hdfs.qjournal.protocol.QJournalProtocolProtos.NewEpochResponseProto;
 import org.apache.hadoop.hdfs.qjournal.protocol.QJournalProtocolProtos.PrepareRecoveryResponseProto;
@@ -133,6 +134,21 @@ public void purgeLogsOlderThan(RequestInfo requestInfo, long minTxIdToKeep)
   public GetEditLogManifestResponseProto getEditLogManifest(String jid,
       long sinceTxId, boolean inProgressOk)
       throws IOException;
+
+  /**
+   * Fetch recent edits from the in-memory cache of the JournalNode.
+   * The returned edits start with the cached batch containing sinceTxId
+   * and may include transactions which are not yet committed.
+   *
+   * @param jid the journal from which to fetch edits
+   * @param sinceTxId the first transaction which the client cares about
+   * @param maxTxns the maximum number of transactions to return
+   * @return the serialized edits, or no edits if none are newer than
+   *         sinceTxId
+   * @throws IOException if sinceTxId is no longer, or not yet, cached
+   */
+  public GetJournaledEditsResponseProto getJournaledEdits(String jid,
+      long sinceTxId, int maxTxns) throws IOException;
   
   /**
    * Begin the recovery process for a given segment. See the HDFS-3077
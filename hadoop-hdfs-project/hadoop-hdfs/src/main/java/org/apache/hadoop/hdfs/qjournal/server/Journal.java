@@ -34,10 +34,12 @@
 import org.apache.commons.logging.LogFactory;
 import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.fs.FileUtil;
+import org.apache.hadoop.hdfs.DFSConfigKeys;
 import org.apache.hadoop.hdfs.qjournal.protocol.JournalNotFormattedException;
 import org.apache.hadoop.hdfs.qjournal.protocol.JournalOutOfSyncException;
 import org.apache.hadoop.hdfs.qjournal.protocol.QJournalProtocol;
 import org.apache.hadoop.hdfs.qjournal.protocol.QJournalProtocolProtos;
+import org.apache.hadoop.hdfs.qjournal.protocol.QJournalProtocolProtos.GetJournaledEditsResponseProto;
 import org.apache.hadoop.hdfs.qjournal.protocol.QJournalProtocolProtos.NewEpochResponseProto;
 import org.apache.hadoop.hdfs.qjournal.protocol.QJournalProtocolProtos.PersistedRecoveryPaxosData;
 import org.apache.hadoop.hdfs.qjournal.protocol.QJournalProtocolProtos.PrepareRecoveryResponseProto;
@@ -83,6 +85,7 @@ public class Journal implements Closeable {
   // Current writing state
   private EditLogOutputStream curSegment;
   private long curSegmentTxId = HdfsServerConstants.INVALID_TXID;
+  private int curSegmentLayoutVersion = 0;
   private long nextTxId = HdfsServerConstants.INVALID_TXID;
   private long highestWrittenTxId = 0;
   
@@ -135,6 +138,12 @@ public class Journal implements Closeable {
 
   private long lastJournalTimestamp = 0;
 
+  /**
+   * In-memory cache of recently journaled edits, served to readers tailing
+   * in-progress segments over RPC. Null if in-progress tailing is disabled.
+   */
+  private final JournaledEditsCache cache;
+
   /**
    * Time threshold for sync calls, beyond which a warning should be logged to the console.
    */
@@ -151,6 +160,15 @@ public class Journal implements Closeable {
     this.fjm = storage.getJournalManager();
     
     this.metrics = JournalMetrics.create(this);
+
+    if (conf.getBoolean(DFSConfigKeys.DFS_HA_TAILEDITS_INPROGRESS_KEY,
+        DFSConfigKeys.DFS_HA_TAILEDITS_INPROGRESS_DEFAULT)) {
+      this.cache = new JournaledEditsCache(conf.getLong(
+          DFSConfigKeys.DFS_JOURNALNODE_EDIT_CACHE_SIZE_KEY,
+          DFSConfigKeys.DFS_JOURNALNODE_EDIT_CACHE_SIZE_DEFAULT));
+    } else {
+      this.cache = null;
+    }
     
     EditLogFile latest = scanStorageForLatestEdits();
     if (latest != null) {
@@ -314,6 +332,11 @@ synchronized NewEpochResponseProto newEpoch(
     
     updateLastPromisedEpoch(epoch);
     abortCurSegment();
+    if (cache != null) {
+      // The new writer may recover the open segment to a different length,
+      // so the cached edits can no longer be trusted.
+      cache.clear();
+    }
     
     NewEpochResponseProto.Builder builder =
         NewEpochResponseProto.newBuilder();
@@ -421,6 +444,11 @@ synchronized void journal(RequestInfo reqInfo,
     metrics.batchesWritten.incr(1);
     metrics.bytesWritten.incr(records.length);
     metrics.txnsWritten.incr(numTxns);
+
+    if (cache != null) {
+      cache.storeEdits(records, firstTxnId, lastTxnId,
+          curSegmentLayoutVersion);
+    }
     
     updateHighestWrittenTxId(lastTxnId);
     nextTxId = lastTxnId + 1;
@@ -571,6 +599,7 @@ public synchronized void startLogSegment(RequestInfo reqInfo, long txid,
     
     curSegment = fjm.startLogSegment(txid, layoutVersion);
     curSegmentTxId = txid;
+    curSegmentLayoutVersion = layoutVersion;
     nextTxId = txid;
   }
   
@@ -687,6 +716,21 @@ public RemoteEditLogManifest getEditLogManifest(long sinceTxId,
     return new RemoteEditLogManifest(logs, getCommittedTxnId());
   }
 
+  /**
+   * @see QJournalProtocol#getJournaledEdits(String, long, int)
+   */
+  GetJournaledEditsResponseProto getJournaledEdits(long sinceTxId,
+      int maxTxns) throws IOException {
+    // As with getEditLogManifest(), anyone may read the edits.
+    checkFormatted();
+    if (cache == null) {
+      throw new IOException("The journal edits cache is not enabled, which " +
+          "is a requirement to fetch journaled edits via RPC. Please enable " +
+          "it via " + DFSConfigKeys.DFS_HA_TAILEDITS_INPROGRESS_KEY);
+    }
+    return cache.retrieveEdits(sinceTxId, maxTxns);
+  }
+
   /**
    * @return the current state of the given segment, or null if the
    * segment does not exist.
@@ -1088,6 +1132,9 @@ public synchronized void doRollback() throws IOException {
 
   synchronized void discardSegments(long startTxId) throws IOException {
     storage.getJournalManager().discardSegments(startTxId);
+    if (cache != null) {
+      cache.clear();
+    }
     // we delete all the segments after the startTxId. let's reset committedTxnId 
     committedTxnId.set(startTxId - 1);
   }
@@ -0,0 +1,176 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs.qjournal.server;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.hadoop.hdfs.qjournal.protocol.QJournalProtocolProtos.GetJournaledEditsResponseProto;
+import org.apache.hadoop.hdfs.server.namenode.EditLogFileOutputStream;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.protobuf.ByteString;
+
+/**
+ * An in-memory cache of the most recently journaled edits, held in the
+ * serialized form they were received in from the writer. This allows
+ * standby NameNodes tailing in-progress segments to fetch new edits over
+ * RPC without re-reading them from disk.
+ *
+ * Edits are stored as the batches passed to
+ * {@link Journal#journal}, keyed by the first transaction ID of each batch.
+ * The cache only ever holds a contiguous range of transactions; a gap in
+ * the transaction IDs or a change of layout version clears it. When the
+ * total size of the cached batches exceeds the configured capacity, the
+ * oldest batches are evicted.
+ *
+ * This class is thread-safe.
+ */
+class JournaledEditsCache {
+  private static final Log LOG = LogFactory.getLog(JournaledEditsCache.class);
+
+  /** Thrown when the requested transactions are not held in the cache. */
+  static class CacheMissException extends IOException {
+    private static final long serialVersionUID = 1L;
+
+    CacheMissException(String msg) {
+      super(msg);
+    }
+  }
+
+  private final long capacity;
+  private final TreeMap<Long, byte[]> dataMap = new TreeMap<Long, byte[]>();
+  private long size = 0;
+  private long highestTxnId = -1;
+  private int layoutVersion = Integer.MAX_VALUE;
+  private byte[] layoutHeader;
+
+  JournaledEditsCache(long capacity) {
+    this.capacity = capacity;
+  }
+
+  /**
+   * Add a batch of serialized edits to the cache.
+   *
+   * @param data the serialized edits, as sent by the writer
+   * @param firstTxnId the first transaction ID contained in data
+   * @param lastTxnId the last transaction ID contained in data
+   * @param newLayoutVersion the layout version the edits were written with
+   */
+  synchronized void storeEdits(byte[] data, long firstTxnId, long lastTxnId,
+      int newLayoutVersion) {
+    if (newLayoutVersion != layoutVersion) {
+      clear();
+      layoutVersion = newLayoutVersion;
+      layoutHeader = createLayoutHeader(newLayoutVersion);
+    } else if (!dataMap.isEmpty() && firstTxnId != highestTxnId + 1) {
+      LOG.warn("Edits cache received non-contiguous txn IDs: expected " +
+          (highestTxnId + 1) + " but got " + firstTxnId + "; clearing cache");
+      clear();
+    }
+    if (data.length > capacity) {
+      LOG.warn("A single batch of edits (" + data.length + " bytes) " +
+          "exceeds the edits cache capacity of " + capacity + " bytes; " +
+          "clearing cache");
+      clear();
+      return;
+    }
+    dataMap.put(firstTxnId, data);
+    size += data.length;
+    highestTxnId = lastTxnId;
+    while (size > capacity) {
+      Map.Entry<Long, byte[]> oldest = dataMap.pollFirstEntry();
+      size -= oldest.getValue().length;
+    }
+  }
+
+  /**
+   * Fetch cached edits starting at the batch which contains sinceTxId.
+   * The returned edits are prefixed with an edit log header so that they
+   * can be read directly as an edit log stream. Since edits are returned in
+   * whole batches, the response may begin before sinceTxId and may contain
+   * slightly more than maxTxns transactions.
+   *
+   * @param sinceTxId the first transaction ID the caller is interested in
+   * @param maxTxns the maximum number of transactions to return
+   * @throws CacheMissException if sinceTxId is older than the cached edits
+   */
+  synchronized GetJournaledEditsResponseProto retrieveEdits(long sinceTxId,
+      int maxTxns) throws CacheMissException {
+    if (dataMap.isEmpty() || sinceTxId < dataMap.firstKey()) {
+      throw new CacheMissException("Transaction ID " + sinceTxId +
+          " is not present in the edits cache" + (dataMap.isEmpty() ? "" :
+          "; oldest cached transaction is " + dataMap.firstKey()));
+    }
+    if (sinceTxId > highestTxnId) {
+      return GetJournaledEditsResponseProto.newBuilder()
+          .setTxnCount(0).build();
+    }
+    long fromTxId = dataMap.floorKey(sinceTxId);
+    NavigableMap<Long, byte[]> tail = dataMap.tailMap(fromTxId, true);
+    ByteString.Output output = ByteString.newOutput();
+    try {
+      output.write(layoutHeader);
+      long lastTxId = highestTxnId;
+      for (Map.Entry<Long, byte[]> entry : tail.entrySet()) {
+        if (entry.getKey() - sinceTxId >= maxTxns) {
+          lastTxId = entry.getKey() - 1;
+          break;
+        }
+        output.write(entry.getValue());
+      }
+      return GetJournaledEditsResponseProto.newBuilder()
+          .setTxnCount((int) (lastTxId - fromTxId + 1))
+          .setFromTxId(fromTxId)
+          .setEditLog(output.toByteString())
+          .build();
+    } catch (IOException ioe) {
+      // ByteString.Output is in-memory and never throws
+      throw new IllegalStateException(ioe);
+    }
+  }
+
+  /** Remove all cached edits. */
+  synchronized void clear() {
+    dataMap.clear();
+    size = 0;
+    highestTxnId = -1;
+  }
+
+  @VisibleForTesting
+  synchronized long getCachedBytes() {
+    return size;
+  }
+
+  private static byte[] createLayoutHeader(int layoutVersion) {
+    ByteArrayOutputStream baos = new ByteArrayOutputStream();
+    try {
+      EditLogFileOutputStream.writeHeader(layoutVersion,
+          new DataOutputStream(baos));
+    } catch (IOException ioe) {
+      throw new IllegalStateException(ioe);
+    }
+    return baos.toByteArray();
+  }
+}
@@ -56,26 +56,21 @@ public abstract class BlockInfo extends Block
   /** For implementing {@link LightWeightGSet.LinkedElement} interface. */
   private LightWeightGSet.LinkedElement nextLinkedElement;
 
-
-  // Storages this block is replicated on
-  protected DatanodeStorageInfo[] storages;
-
   private BlockUnderConstructionFeature uc;
 
   /**
-   * Construct an entry for blocksmap
+   * Construct an entry for blocksmap. Subclasses are responsible for
+   * allocating room for the storages the block is stored on.
    * @param size the block's replication factor, or the total number of blocks
    *             in the block group
    */
   public BlockInfo(short size) {
-    this.storages = new DatanodeStorageInfo[size];
     this.bcId = INVALID_INODE_ID;
     this.replication = isStriped() ? 0 : size;
   }
 
   public BlockInfo(Block blk, short size) {
     super(blk);
-    this.storages = new DatanodeStorageInfo[size];
     this.bcId = INVALID_INODE_ID;
     this.replication = isStriped() ? 0 : size;
   }
@@ -111,10 +106,11 @@ public Iterator<DatanodeStorageInfo> getStorageInfos() {
 
       @Override
       public boolean hasNext() {
-        while (index < storages.length && storages[index] == null) {
+        final int capacity = getCapacity();
+        while (index < capacity && getStorageInfo(index) == null) {
           index++;
         }
-        return index < storages.length;
+        return index < capacity;
       }
 
       @Override
@@ -122,7 +118,7 @@ public DatanodeStorageInfo next() {
         if (!hasNext()) {
           throw new NoSuchElementException();
         }
-        return storages[index++];
+        return getStorageInfo(index++);
       }
 
       @Override
@@ -137,20 +133,13 @@ public DatanodeDescriptor getDatanode(int index) {
     return storage == null ? null : storage.getDatanodeDescriptor();
   }
 
-  DatanodeStorageInfo getStorageInfo(int index) {
-    assert this.storages != null : "BlockInfo is not initialized";
-    return storages[index];
-  }
+  /** @return the storage in the given slot, which may be null. */
+  abstract DatanodeStorageInfo getStorageInfo(int index);
 
-  void setStorageInfo(int index, DatanodeStorageInfo storage) {
-    assert this.storages != null : "BlockInfo is not initialized";
-    this.storages[index] = storage;
-  }
+  abstract void setStorageInfo(int index, DatanodeStorageInfo storage);
 
-  public int getCapacity() {
-    assert this.storages != null : "BlockInfo is not initialized";
-    return storages.length;
-  }
+  /** @return the number of storage slots currently allocated. */
+  public abstract int getCapacity();
 
   /**
    * Count the number of data-nodes the block currently belongs to (i.e., NN
@@ -22,6 +22,7 @@
 import org.apache.hadoop.hdfs.server.common.HdfsServerConstants.BlockUCState;
 import org.apache.hadoop.hdfs.util.StripedBlockUtil;
 import org.apache.hadoop.hdfs.protocol.ErasureCodingPolicy;
+import com.google.common.annotations.VisibleForTesting;
 
 import java.util.Iterator;
 import java.util.NoSuchElementException;
@@ -41,6 +42,9 @@
 @InterfaceAudience.Private
 public class BlockInfoStriped extends BlockInfo {
   private final ErasureCodingPolicy ecPolicy;
+  /** Storages the blocks of this block group are stored on. */
+  @VisibleForTesting
+  DatanodeStorageInfo[] storages;
   /**
    * Always the same size with storage. Record the block index for each entry
    * TODO: actually this is only necessary for over-replicated block. Thus can
@@ -50,6 +54,8 @@ public class BlockInfoStriped extends BlockInfo {
 
   public BlockInfoStriped(Block blk, ErasureCodingPolicy ecPolicy) {
     super(blk, (short) (ecPolicy.getNumDataUnits() + ecPolicy.getNumParityUnits()));
+    storages = new DatanodeStorageInfo[
+        ecPolicy.getNumDataUnits() + ecPolicy.getNumParityUnits()];
     indices = new byte[ecPolicy.getNumDataUnits() + ecPolicy.getNumParityUnits()];
     initIndices();
     this.ecPolicy = ecPolicy;
@@ -93,6 +99,21 @@ public ErasureCodingPolicy getErasureCodingPolicy() {
     return ecPolicy;
   }
 
+  @Override
+  DatanodeStorageInfo getStorageInfo(int index) {
+    return storages[index];
+  }
+
+  @Override
+  void setStorageInfo(int index, DatanodeStorageInfo storage) {
+    storages[index] = storage;
+  }
+
+  @Override
+  public int getCapacity() {
+    return storages.length;
+  }
+
   private void initIndices() {
     for (int i = 0; i < indices.length; i++) {
       indices[i] = -1;
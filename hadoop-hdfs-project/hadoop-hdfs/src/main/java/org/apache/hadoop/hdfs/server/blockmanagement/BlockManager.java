@@ -21,11 +21,13 @@
 
 import java.io.IOException;
 import java.io.PrintWriter;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.BitSet;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.Deque;
 import java.util.EnumSet;
 import java.util.HashMap;
 import java.util.HashSet;
@@ -40,7 +42,11 @@
 import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.Callable;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.ThreadLocalRandom;
 import java.util.concurrent.atomic.AtomicLong;
 
@@ -97,9 +103,11 @@
 import org.apache.hadoop.hdfs.server.protocol.DatanodeStorage.State;
 import org.apache.hadoop.hdfs.server.protocol.KeyUpdateCommand;
 import org.apache.hadoop.hdfs.server.protocol.ReceivedDeletedBlockInfo;
+import org.apache.hadoop.hdfs.server.protocol.StorageBlockReport;
 import org.apache.hadoop.hdfs.server.protocol.StorageReceivedDeletedBlocks;
 import org.apache.hadoop.hdfs.util.FoldedTreeSet;
 import org.apache.hadoop.hdfs.util.LightWeightHashSet;
+import org.apache.hadoop.hdfs.util.RwLockMode;
 import org.apache.hadoop.hdfs.protocol.ErasureCodingPolicy;
 
 import static org.apache.hadoop.hdfs.util.StripedBlockUtil.getInternalBlockLength;
@@ -117,6 +125,8 @@
 
 import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.Preconditions;
+import com.google.common.base.Throwables;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -229,6 +239,38 @@ public long getNumTimedOutPendingReconstructions() {
   private final BlockReportProcessingThread blockReportThread =
       new BlockReportProcessingThread();
 
+  /**
+   * Workers comparing full block reports with the blocks recorded for the
+   * reporting storages, or null if the reports are processed entirely by
+   * the block report thread.
+   */
+  private final ExecutorService blockReportDiffExecutor;
+
+  /**
+   * Whether the number of blocks the ReplicationMonitor considers for
+   * reconstruction in each iteration follows the transfers the live
+   * DataNodes are free to start, rather than just their number.
+   */
+  private final boolean capacityBasedReconstruction;
+
+  /**
+   * Workers choosing the targets of reconstruction work, or null if the
+   * targets are chosen by the ReplicationMonitor itself.
+   */
+  private final ExecutorService reconstructionTargetChooser;
+  private final int reconstructionTargetChooserThreads;
+
+  /** The number of blocks whose reconstruction is scheduled together. */
+  private final int reconstructionBatchSize;
+
+  /**
+   * The smoothed number of blocks scheduled for reconstruction per second,
+   * and when the ReplicationMonitor last computed reconstruction work.
+   */
+  private volatile double lowRedundancyBlocksDrainRate = 0;
+  private long lastReconstructionWorkTime = 0;
+  private static final double DRAIN_RATE_WEIGHT = 0.25;
+
   /** Store blocks -> datanodedescriptor(s) map of corrupt replicas */
   final CorruptReplicasMap corruptReplicas = new CorruptReplicasMap();
 
@@ -435,6 +477,33 @@ public BlockManager(final Namesystem namesystem, boolean haEnabled,
         DFSConfigKeys.DFS_BALANCER_GETBLOCKS_MIN_BLOCK_SIZE_KEY,
         DFSConfigKeys.DFS_BALANCER_GETBLOCKS_MIN_BLOCK_SIZE_DEFAULT);
     this.blockReportLeaseManager = new BlockReportLeaseManager(conf);
+    final int blockReportDiffThreads = conf.getInt(
+        DFSConfigKeys.DFS_NAMENODE_BLOCKREPORT_DIFF_THREADS_KEY,
+        DFSConfigKeys.DFS_NAMENODE_BLOCKREPORT_DIFF_THREADS_DEFAULT);
+    this.blockReportDiffExecutor = blockReportDiffThreads > 0 ?
+        Executors.newFixedThreadPool(blockReportDiffThreads,
+            new ThreadFactoryBuilder().setDaemon(true)
+                .setNameFormat("Block report diff worker %d").build()) :
+        null;
+
+    this.capacityBasedReconstruction = conf.getBoolean(
+        DFSConfigKeys.DFS_NAMENODE_RECONSTRUCTION_CAPACITY_BASED_KEY,
+        DFSConfigKeys.DFS_NAMENODE_RECONSTRUCTION_CAPACITY_BASED_DEFAULT);
+    this.reconstructionTargetChooserThreads = conf.getInt(
+        DFSConfigKeys.DFS_NAMENODE_RECONSTRUCTION_TARGET_CHOOSER_THREADS_KEY,
+        DFSConfigKeys
+            .DFS_NAMENODE_RECONSTRUCTION_TARGET_CHOOSER_THREADS_DEFAULT);
+    this.reconstructionTargetChooser = reconstructionTargetChooserThreads > 0 ?
+        Executors.newFixedThreadPool(reconstructionTargetChooserThreads,
+            new ThreadFactoryBuilder().setDaemon(true)
+                .setNameFormat("Reconstruction target chooser %d").build()) :
+        null;
+    this.reconstructionBatchSize = conf.getInt(
+        DFSConfigKeys.DFS_NAMENODE_RECONSTRUCTION_BATCH_SIZE_KEY,
+        DFSConfigKeys.DFS_NAMENODE_RECONSTRUCTION_BATCH_SIZE_DEFAULT);
+    Preconditions.checkArgument(reconstructionBatchSize > 0,
+        DFSConfigKeys.DFS_NAMENODE_RECONSTRUCTION_BATCH_SIZE_KEY
+            + " must be positive");
 
     bmSafeMode = new BlockManagerSafeMode(this, namesystem, haEnabled, conf);
 
@@ -573,6 +642,12 @@ public void close() {
       blockReportThread.join(3000);
     } catch (InterruptedException ie) {
     }
+    if (blockReportDiffExecutor != null) {
+      blockReportDiffExecutor.shutdownNow();
+    }
+    if (reconstructionTargetChooser != null) {
+      reconstructionTargetChooser.shutdownNow();
+    }
     datanodeManager.close();
     pendingReconstruction.stop();
     blocksMap.close();
@@ -859,6 +934,7 @@ private void completeBlock(BlockInfo curBlock, boolean force)
     }
 
     curBlock.convertToCompleteBlock();
+    datanodeManager.getDecomManager().blockChanged(curBlock, null);
     // Since safe-mode only counts complete blocks, and we now have
     // one more complete block, we need to adjust the total up, and
     // also count it as safe, if we have at least the minimum replica
@@ -1432,6 +1508,7 @@ private void markBlockAsCorrupt(BlockToMarkCorrupt b,
     }
     corruptReplicas.addToCorruptReplicasMap(corrupted, node, b.getReason(),
         b.getReasonCode());
+    datanodeManager.getDecomManager().blockChanged(b.getStored(), null);
 
     NumberReplicas numberOfReplicas = countNodes(b.getStored());
     boolean hasEnoughLiveReplicas = numberOfReplicas.liveReplicas() >=
@@ -1567,7 +1644,13 @@ int computeBlockReconstructionWork(int blocksToProcess) {
 
   /**
    * Reconstruct a set of blocks to full strength through replication or
-   * erasure coding
+   * erasure coding.
+   *
+   * If there are reconstruction target choosers, the blocks are handled in
+   * batches. The targets of a batch are chosen by a chooser without the
+   * global lock, while the ReplicationMonitor goes on to pick the sources of
+   * the next batches, and adds the tasks of the earlier batches to the
+   * DataNodes, so that the lock is only ever held for a batch at a time.
    *
    * @param blocksToReconstruct blocks to be reconstructed, for each priority
    * @return the number of blocks scheduled for replication
@@ -1575,16 +1658,79 @@ int computeBlockReconstructionWork(int blocksToProcess) {
   @VisibleForTesting
   int computeReconstructionWorkForBlocks(
       List<List<BlockInfo>> blocksToReconstruct) {
+    int numBlocks = 0;
+    for (List<BlockInfo> blocks : blocksToReconstruct) {
+      numBlocks += blocks.size();
+    }
     int scheduledWork = 0;
-    List<BlockReconstructionWork> reconWork = new LinkedList<>();
+    if (reconstructionTargetChooser == null) {
+      List<BlockReconstructionWork> reconWork =
+          scheduleReconstructions(blocksToReconstruct, 0, numBlocks);
+      chooseTargets(reconWork);
+      scheduledWork = addReconstructionTasks(reconWork);
+    } else {
+      final Deque<Future<List<BlockReconstructionWork>>> inFlight =
+          new ArrayDeque<>();
+      try {
+        for (int from = 0; from < numBlocks; from += reconstructionBatchSize) {
+          final List<BlockReconstructionWork> reconWork =
+              scheduleReconstructions(blocksToReconstruct, from,
+                  from + reconstructionBatchSize);
+          inFlight.add(submitChooseTargets(reconWork));
+          if (inFlight.size() > reconstructionTargetChooserThreads) {
+            scheduledWork += addReconstructionTasks(
+                getChosenTargets(inFlight.remove()));
+          }
+        }
+        while (!inFlight.isEmpty()) {
+          scheduledWork += addReconstructionTasks(
+              getChosenTargets(inFlight.remove()));
+        }
+      } catch (InterruptedException ie) {
+        LOG.info("Interrupted while choosing reconstruction targets");
+        for (Future<List<BlockReconstructionWork>> f : inFlight) {
+          f.cancel(true);
+        }
+        Thread.currentThread().interrupt();
+      }
+    }
 
-    // Step 1: categorize at-risk blocks into replication and EC tasks
+    if (blockLog.isDebugEnabled()) {
+      blockLog.debug(
+          "BLOCK* neededReconstruction = {} pendingReconstruction = {}",
+          neededReconstruction.size(), pendingReconstruction.size());
+    }
+
+    return scheduledWork;
+  }
+
+  /**
+   * Step 1: categorize at-risk blocks into replication and EC tasks, and
+   * choose their sources.
+   *
+   * @param blocksToReconstruct blocks to be reconstructed, for each priority
+   * @param from the position of the first block to schedule, counting the
+   *             blocks of every priority in turn
+   * @param to the position after the last block to schedule
+   * @return the reconstruction work for the blocks
+   */
+  private List<BlockReconstructionWork> scheduleReconstructions(
+      List<List<BlockInfo>> blocksToReconstruct, int from, int to) {
+    List<BlockReconstructionWork> reconWork = new LinkedList<>();
     namesystem.writeLock();
     try {
       synchronized (neededReconstruction) {
-        for (int priority = 0; priority < blocksToReconstruct
-            .size(); priority++) {
-          for (BlockInfo block : blocksToReconstruct.get(priority)) {
+        int pos = 0;
+        for (int priority = 0; priority < blocksToReconstruct.size()
+            && pos < to; priority++) {
+          List<BlockInfo> blocks = blocksToReconstruct.get(priority);
+          int start = Math.max(from - pos, 0);
+          int end = Math.min(to - pos, blocks.size());
+          pos += blocks.size();
+          if (start >= end) {
+            continue;
+          }
+          for (BlockInfo block : blocks.subList(start, end)) {
             BlockReconstructionWork rw = scheduleReconstruction(block,
                 priority);
             if (rw != null) {
@@ -1596,8 +1742,13 @@ int computeReconstructionWorkForBlocks(
     } finally {
       namesystem.writeUnlock();
     }
+    return reconWork;
+  }
 
-    // Step 2: choose target nodes for each reconstruction task
+  /**
+   * Step 2: choose target nodes for each reconstruction task.
+   */
+  private void chooseTargets(List<BlockReconstructionWork> reconWork) {
     final Set<Node> excludedNodes = new HashSet<>();
     for(BlockReconstructionWork rw : reconWork){
       // Exclude all of the containing nodes from being targets.
@@ -1614,8 +1765,47 @@ int computeReconstructionWorkForBlocks(
           placementPolicies.getPolicy(rw.getBlock().isStriped());
       rw.chooseTargets(placementPolicy, storagePolicySuite, excludedNodes);
     }
+  }
+
+  private Future<List<BlockReconstructionWork>> submitChooseTargets(
+      final List<BlockReconstructionWork> reconWork) {
+    Callable<List<BlockReconstructionWork>> chooser =
+        new Callable<List<BlockReconstructionWork>>() {
+          @Override
+          public List<BlockReconstructionWork> call() {
+            chooseTargets(reconWork);
+            return reconWork;
+          }
+        };
+    try {
+      return reconstructionTargetChooser.submit(chooser);
+    } catch (RejectedExecutionException e) {
+      // the block manager is shutting down
+      FutureTask<List<BlockReconstructionWork>> task =
+          new FutureTask<>(chooser);
+      task.run();
+      return task;
+    }
+  }
+
+  private static List<BlockReconstructionWork> getChosenTargets(
+      Future<List<BlockReconstructionWork>> chosen)
+      throws InterruptedException {
+    try {
+      return chosen.get();
+    } catch (ExecutionException ee) {
+      Throwables.propagateIfPossible(ee.getCause());
+      throw new IllegalStateException(ee.getCause());
+    }
+  }
 
-    // Step 3: add tasks to the DN
+  /**
+   * Step 3: add tasks to the DN.
+   *
+   * @return the number of blocks scheduled for reconstruction
+   */
+  private int addReconstructionTasks(List<BlockReconstructionWork> reconWork) {
+    int scheduledWork = 0;
     namesystem.writeLock();
     try {
       for(BlockReconstructionWork rw : reconWork){
@@ -1649,12 +1839,7 @@ int computeReconstructionWorkForBlocks(
               rw.getBlock(), targetList);
         }
       }
-
-      blockLog.debug(
-          "BLOCK* neededReconstruction = {} pendingReconstruction = {}",
-          neededReconstruction.size(), pendingReconstruction.size());
     }
-
     return scheduledWork;
   }
 
@@ -2015,7 +2200,7 @@ private void processPendingReconstructions() {
   }
 
   public long requestBlockReportLeaseId(DatanodeRegistration nodeReg) {
-    assert namesystem.hasReadLock();
+    assert namesystem.hasReadLock(RwLockMode.BM);
     DatanodeDescriptor node = null;
     try {
       node = datanodeManager.getDatanode(nodeReg);
@@ -2137,6 +2322,34 @@ private static class BlockInfoToAdd {
     }
   }
 
+  /**
+   * The difference between a storage's full block report and the blocks
+   * recorded for the storage, computed under the namesystem read lock by
+   * {@link BlockManager#computeReportDiffs}.
+   */
+  public static class BlockReportDiff {
+    private final DatanodeStorageInfo storageInfo;
+    private final int blockReportCount;
+    /** Reported replicas whose processing changes any state. */
+    final List<BlockReportReplica> changed = new ArrayList<>();
+    /** Recorded blocks which were not reported. */
+    final List<BlockInfo> unreported = new ArrayList<>();
+
+    BlockReportDiff(DatanodeStorageInfo storageInfo) {
+      this.storageInfo = storageInfo;
+      this.blockReportCount = storageInfo.getBlockReportCount();
+    }
+
+    /**
+     * @return whether the difference was computed for the given storage
+     *         since its last block report or (re-)registration.
+     */
+    boolean isCurrent(DatanodeStorageInfo storage) {
+      return storageInfo == storage
+          && blockReportCount == storage.getBlockReportCount();
+    }
+  }
+
   /**
    * The given storage is reporting all its blocks.
    * Update the (storage-->block list) and (block-->storage list) maps.
@@ -2148,6 +2361,25 @@ public boolean processReport(final DatanodeID nodeID,
       final DatanodeStorage storage,
       final BlockListAsLongs newReport,
       BlockReportContext context, boolean lastStorageInRpc) throws IOException {
+    return processReport(nodeID, storage, newReport, context, lastStorageInRpc,
+        null);
+  }
+
+  /**
+   * The given storage is reporting all its blocks.
+   * Update the (storage-->block list) and (block-->storage list) maps.
+   *
+   * @param diff the difference between the report and the blocks recorded
+   *        for the storage, computed by {@link #computeReportDiffs}, or null
+   *        to compare them here.
+   * @return true if all known storages of the given DN have finished reporting.
+   * @throws IOException
+   */
+  public boolean processReport(final DatanodeID nodeID,
+      final DatanodeStorage storage,
+      final BlockListAsLongs newReport,
+      BlockReportContext context, boolean lastStorageInRpc,
+      BlockReportDiff diff) throws IOException {
     namesystem.writeLock();
     final long startTime = Time.monotonicNow(); //after acquiring write lock
     final long endTime;
@@ -2196,11 +2428,17 @@ public boolean processReport(final DatanodeID nodeID,
             storageInfo.getStorageID(),
             nodeID.getDatanodeUuid());
         processFirstBlockReport(storageInfo, newReport);
+      } else if (diff != null && diff.isCurrent(storageInfo)
+          && !shouldPostponeBlocksFromFuture) {
+        invalidatedBlocks = processReportDiff(storageInfo, diff, context);
       } else {
         invalidatedBlocks = processReport(storageInfo, newReport, context);
       }
       
-      storageInfo.receivedBlockReport();
+      // A report sent in segments is only complete with the last of them
+      if (context == null || context.isLastSegment()) {
+        storageInfo.receivedBlockReport();
+      }
       if (context != null) {
         storageInfo.setLastBlockReportId(context.getReportId());
         if (lastStorageInRpc) {
@@ -2251,6 +2489,104 @@ public boolean processReport(final DatanodeID nodeID,
     return !node.hasStaleStorages();
   }
 
+  /**
+   * Compare the block reports of a DataNode's storages with the blocks
+   * recorded for them. The reports are compared concurrently by the block
+   * report diff workers under the namesystem read lock, so that
+   * {@link #processReport} only has to apply the differences under the write
+   * lock.
+   *
+   * @return the future difference for each report, or null if the reports
+   *         are to be compared by {@link #processReport}.
+   */
+  public List<Future<BlockReportDiff>> computeReportDiffs(
+      final DatanodeID nodeID, final StorageBlockReport[] reports,
+      final BlockReportContext context) {
+    if (blockReportDiffExecutor == null) {
+      return null;
+    }
+    List<Future<BlockReportDiff>> diffs = new ArrayList<>(reports.length);
+    try {
+      for (final StorageBlockReport report : reports) {
+        diffs.add(blockReportDiffExecutor.submit(
+            new Callable<BlockReportDiff>() {
+              @Override
+              public BlockReportDiff call() throws IOException {
+                return computeReportDiff(nodeID, report.getStorage(),
+                    report.getBlocks(), context);
+              }
+            }));
+      }
+    } catch (RejectedExecutionException e) {
+      // the block manager is shutting down
+      for (Future<BlockReportDiff> diff : diffs) {
+        diff.cancel(true);
+      }
+      return null;
+    }
+    return diffs;
+  }
+
+  /**
+   * Wait for a difference submitted by {@link #computeReportDiffs}.
+   *
+   * @return the difference, or null if it could not be computed, in which
+   *         case {@link #processReport} compares the report itself.
+   */
+  public BlockReportDiff getReportDiff(Future<BlockReportDiff> diff)
+      throws IOException {
+    try {
+      return diff.get();
+    } catch (ExecutionException ee) {
+      LOG.debug("Failed to compare block report with the stored blocks",
+          ee.getCause());
+      return null;
+    } catch (InterruptedException ie) {
+      Thread.currentThread().interrupt();
+      throw new IOException(ie);
+    }
+  }
+
+  private BlockReportDiff computeReportDiff(final DatanodeID nodeID,
+      final DatanodeStorage storage, final BlockListAsLongs newReport,
+      BlockReportContext context) throws IOException {
+    // Postponed and initial reports change state while being compared,
+    // so they are left to processReport. Check before sorting the report,
+    // and again under the lock.
+    if (isReportLeftToProcessReport()) {
+      return null;
+    }
+    Iterable<BlockReportReplica> sortedReport = newReport;
+    if (context == null || !context.isSorted()) {
+      warnUnsortedReport(
+          context != null ? Long.toHexString(context.getReportId()) : "",
+          nodeID.getDatanodeUuid());
+      sortedReport = sortReport(newReport);
+    }
+    namesystem.readLock();
+    try {
+      if (isReportLeftToProcessReport()) {
+        return null;
+      }
+      DatanodeDescriptor node = datanodeManager.getDatanode(nodeID);
+      if (node == null || !node.isRegistered()) {
+        return null;
+      }
+      DatanodeStorageInfo storageInfo =
+          node.getStorageInfo(storage.getStorageID());
+      if (storageInfo == null || storageInfo.getBlockReportCount() == 0) {
+        return null;
+      }
+      return reportDiffSorted(storageInfo, sortedReport, context);
+    } finally {
+      namesystem.readUnlock();
+    }
+  }
+
+  private boolean isReportLeftToProcessReport() {
+    return shouldPostponeBlocksFromFuture || namesystem.isInStartupSafeMode();
+  }
+
   private void removeZombieReplicas(BlockReportContext context,
       DatanodeStorageInfo zombie) {
     LOG.warn("processReport 0x{}: removing zombie storage {}, which no " +
@@ -2380,27 +2716,84 @@ private Collection<Block> processReport(
 
     Iterable<BlockReportReplica> sortedReport;
     if (!sorted) {
-      blockLog.warn("BLOCK* processReport 0x{}: Report from the DataNode ({}) "
-                    + "is unsorted. This will cause overhead on the NameNode "
-                    + "which needs to sort the Full BR. Please update the "
-                    + "DataNode to the same version of Hadoop HDFS as the "
-                    + "NameNode ({}).",
-                    strBlockReportId,
-                    storageInfo.getDatanodeDescriptor().getDatanodeUuid(),
-                    VersionInfo.getVersion());
-      Set<BlockReportReplica> set = new FoldedTreeSet<>();
-      for (BlockReportReplica iblk : report) {
-        set.add(new BlockReportReplica(iblk));
-      }
-      sortedReport = set;
+      warnUnsortedReport(strBlockReportId,
+          storageInfo.getDatanodeDescriptor().getDatanodeUuid());
+      sortedReport = sortReport(report);
     } else {
       sortedReport = report;
     }
 
-    reportDiffSorted(storageInfo, sortedReport,
+    reportDiffSorted(storageInfo, sortedReport, context,
                      toAdd, toRemove, toInvalidate, toCorrupt, toUC);
+    processReportedBlocks(storageInfo, toAdd, toRemove, toInvalidate,
+        toCorrupt, toUC, strBlockReportId);
+    return toInvalidate;
+  }
 
+  /**
+   * Apply the difference between a block report and the blocks recorded for
+   * the storage computed by {@link #computeReportDiffs}. The state of the
+   * reported replicas which differed is checked again, since it may have
+   * changed after the difference was computed.
+   */
+  private Collection<Block> processReportDiff(
+      final DatanodeStorageInfo storageInfo, final BlockReportDiff diff,
+      BlockReportContext context) throws IOException {
+    assert namesystem.hasWriteLock();
+    Collection<BlockInfoToAdd> toAdd = new LinkedList<>();
+    Collection<BlockInfo> toRemove = new TreeSet<>();
+    Collection<Block> toInvalidate = new LinkedList<>();
+    Collection<BlockToMarkCorrupt> toCorrupt = new LinkedList<>();
+    Collection<StatefulBlockInfo> toUC = new LinkedList<>();
+    String strBlockReportId =
+        context != null ? Long.toHexString(context.getReportId()) : "";
 
+    for (BlockReportReplica replica : diff.changed) {
+      BlockInfo storedBlock =
+          blocksMap.getStoredBlock(new Block(getStoredBlockId(replica)));
+      if (storedBlock != null) {
+        reportDiffSortedInner(storageInfo, replica, replica.getState(),
+            storedBlock, toAdd, toCorrupt, toUC);
+      } else {
+        // Replica not found anywhere so it should be invalidated
+        toInvalidate.add(new Block(replica));
+      }
+    }
+    for (BlockInfo b : diff.unreported) {
+      // the replica may have been removed since the diff was computed
+      if (b.findStorageInfo(storageInfo) >= 0) {
+        toRemove.add(b);
+      }
+    }
+    processReportedBlocks(storageInfo, toAdd, toRemove, toInvalidate,
+        toCorrupt, toUC, strBlockReportId);
+    return toInvalidate;
+  }
+
+  private static void warnUnsortedReport(String strBlockReportId,
+      String datanodeUuid) {
+    blockLog.warn("BLOCK* processReport 0x{}: Report from the DataNode ({}) "
+                  + "is unsorted. This will cause overhead on the NameNode "
+                  + "which needs to sort the Full BR. Please update the "
+                  + "DataNode to the same version of Hadoop HDFS as the "
+                  + "NameNode ({}).",
+                  strBlockReportId, datanodeUuid, VersionInfo.getVersion());
+  }
+
+  private static Iterable<BlockReportReplica> sortReport(
+      BlockListAsLongs report) {
+    Set<BlockReportReplica> set = new FoldedTreeSet<>();
+    for (BlockReportReplica iblk : report) {
+      set.add(new BlockReportReplica(iblk));
+    }
+    return set;
+  }
+
+  private void processReportedBlocks(final DatanodeStorageInfo storageInfo,
+      Collection<BlockInfoToAdd> toAdd, Collection<BlockInfo> toRemove,
+      Collection<Block> toInvalidate, Collection<BlockToMarkCorrupt> toCorrupt,
+      Collection<StatefulBlockInfo> toUC, String strBlockReportId)
+      throws IOException {
     DatanodeDescriptor node = storageInfo.getDatanodeDescriptor();
     // Process the blocks on each queue
     for (StatefulBlockInfo b : toUC) { 
@@ -2425,8 +2818,6 @@ private Collection<Block> processReport(
     for (BlockToMarkCorrupt b : toCorrupt) {
       markBlockAsCorrupt(b, storageInfo, node);
     }
-
-    return toInvalidate;
   }
 
   /**
@@ -2549,8 +2940,23 @@ private void processFirstBlockReport(
     }
   }
 
+  /**
+   * @return an iterator over the blocks recorded for the storage which the
+   *         block report covers, which is just a range of block IDs if the
+   *         report was sent in segments.
+   */
+  private static Iterator<BlockInfo> getReportedBlockIterator(
+      DatanodeStorageInfo storageInfo, BlockReportContext context) {
+    if (context == null) {
+      return storageInfo.getBlockIterator();
+    }
+    return storageInfo.getBlockIterator(context.getMinBlockId(),
+        context.getMaxBlockId());
+  }
+
   private void reportDiffSorted(DatanodeStorageInfo storageInfo,
       Iterable<BlockReportReplica> newReport,
+      BlockReportContext context,
       Collection<BlockInfoToAdd> toAdd,     // add to DatanodeDescriptor
       Collection<BlockInfo> toRemove,       // remove from DatanodeDescriptor
       Collection<Block> toInvalidate,       // should be removed from DN
@@ -2558,18 +2964,14 @@ private void reportDiffSorted(DatanodeStorageInfo storageInfo,
       Collection<StatefulBlockInfo> toUC) { // add to under-construction list
 
     // The blocks must be sorted and the storagenodes blocks must be sorted
-    Iterator<BlockInfo> storageBlocksIterator = storageInfo.getBlockIterator();
+    Iterator<BlockInfo> storageBlocksIterator =
+        getReportedBlockIterator(storageInfo, context);
     DatanodeDescriptor dn = storageInfo.getDatanodeDescriptor();
     BlockInfo storageBlock = null;
 
     for (BlockReportReplica replica : newReport) {
 
-      long replicaID = replica.getBlockId();
-      if (BlockIdManager.isStripedBlockID(replicaID)
-          && (!hasNonEcBlockUsingStripedID ||
-              !blocksMap.containsBlock(replica))) {
-        replicaID = BlockIdManager.convertToStripedID(replicaID);
-      }
+      long replicaID = getStoredBlockId(replica);
 
       ReplicaState reportedState = replica.getState();
 
@@ -2628,6 +3030,88 @@ && isGenStampInFuture(replica)) {
     }
   }
 
+  /**
+   * Compare a sorted block report with the blocks recorded for the storage
+   * without changing any state, so that it can be done under the read lock.
+   * The reported replicas whose processing would change any state are
+   * kept, along with the recorded blocks which were not reported.
+   */
+  private BlockReportDiff reportDiffSorted(DatanodeStorageInfo storageInfo,
+      Iterable<BlockReportReplica> newReport, BlockReportContext context) {
+    assert namesystem.hasReadLock();
+    assert !shouldPostponeBlocksFromFuture;
+    final BlockReportDiff diff = new BlockReportDiff(storageInfo);
+    // The outcome for each replica is only checked here, and worked out
+    // again when the difference is applied.
+    final Collection<BlockInfoToAdd> toAdd = new ArrayList<>(1);
+    final Collection<BlockToMarkCorrupt> toCorrupt = new ArrayList<>(1);
+    final Collection<StatefulBlockInfo> toUC = new ArrayList<>(1);
+
+    // The blocks must be sorted and the storagenodes blocks must be sorted
+    Iterator<BlockInfo> storageBlocksIterator =
+        getReportedBlockIterator(storageInfo, context);
+    BlockInfo storageBlock = null;
+
+    for (BlockReportReplica replica : newReport) {
+      long replicaID = getStoredBlockId(replica);
+
+      if (storageBlock == null && storageBlocksIterator.hasNext()) {
+        storageBlock = storageBlocksIterator.next();
+      }
+      // Stored blocks with IDs lower than replica were not reported
+      while (storageBlock != null &&
+             Long.compare(replicaID, storageBlock.getBlockId()) > 0) {
+        diff.unreported.add(storageBlock);
+        storageBlock = storageBlocksIterator.hasNext()
+                       ? storageBlocksIterator.next() : null;
+      }
+
+      BlockInfo storedBlock;
+      if (storageBlock != null && replicaID == storageBlock.getBlockId()) {
+        storedBlock = storageBlock;
+        storageBlock = null;
+      } else {
+        storedBlock = blocksMap.getStoredBlock(new Block(replicaID));
+      }
+      if (storedBlock == null) {
+        // Replica not found anywhere so it should be invalidated
+        diff.changed.add(new BlockReportReplica(replica));
+        continue;
+      }
+      reportDiffSortedInner(storageInfo, replica, replica.getState(),
+          storedBlock, toAdd, toCorrupt, toUC);
+      if (!toAdd.isEmpty() || !toCorrupt.isEmpty() || !toUC.isEmpty()) {
+        diff.changed.add(new BlockReportReplica(replica));
+        toAdd.clear();
+        toCorrupt.clear();
+        toUC.clear();
+      }
+    }
+
+    // Any remaining blocks have not been reported
+    if (storageBlock != null) {
+      diff.unreported.add(storageBlock);
+    }
+    while (storageBlocksIterator.hasNext()) {
+      diff.unreported.add(storageBlocksIterator.next());
+    }
+    return diff;
+  }
+
+  /**
+   * @return the ID of the stored block for the reported replica, which for
+   *         the internal block of a striped block is the ID of the group.
+   */
+  private long getStoredBlockId(Block replica) {
+    long replicaID = replica.getBlockId();
+    if (BlockIdManager.isStripedBlockID(replicaID)
+        && (!hasNonEcBlockUsingStripedID ||
+            !blocksMap.containsBlock(replica))) {
+      replicaID = BlockIdManager.convertToStripedID(replicaID);
+    }
+    return replicaID;
+  }
+
   private void reportDiffSortedInner(
       final DatanodeStorageInfo storageInfo,
       final BlockReportReplica replica, final ReplicaState reportedState,
@@ -2903,6 +3387,7 @@ private void addStoredBlockImmediate(BlockInfo storedBlock, Block reported,
 
     // just add it
     AddBlockResult result = storageInfo.addBlockInitial(storedBlock, reported);
+    datanodeManager.getDecomManager().blockChanged(storedBlock, null);
 
     // Now check for completion of blocks and safe block count
     int numCurrentReplica = countLiveNodes(storedBlock);
@@ -2973,6 +3458,7 @@ private Block addStoredBlock(final BlockInfo block,
               + " received for {} on node {} size {}", storedBlock, node,
           storedBlock.getNumBytes());
     }
+    datanodeManager.getDecomManager().blockChanged(storedBlock, null);
 
     // Now check for completion of blocks and safe block count
     NumberReplicas num = countNodes(storedBlock);
@@ -3282,6 +3768,7 @@ public void setReplication(
     // update neededReconstruction priority queues
     b.setReplication(newRepl);
     updateNeededReconstructions(b, 0, newRepl - oldRepl);
+    datanodeManager.getDecomManager().blockChanged(b, null);
 
     if (oldRepl > newRepl) {
       processExtraRedundancyBlock(b, newRepl, null, null);
@@ -3495,6 +3982,7 @@ public void removeStoredBlock(BlockInfo storedBlock, DatanodeDescriptor node) {
             " removed from node {}", storedBlock, node);
         return;
       }
+      datanodeManager.getDecomManager().blockChanged(storedBlock, node);
 
       CachedBlock cblock = namesystem.getCacheManager().getCachedBlocks()
           .get(new CachedBlock(storedBlock.getBlockId(), (short) 0, false));
@@ -3946,6 +4434,7 @@ public void removeBlock(BlockInfo block) {
     // file already removes them from the block map below.
     block.setNumBytes(BlockCommand.NO_ACK);
     addToInvalidates(block);
+    datanodeManager.getDecomManager().blockChanged(block, null);
     removeBlockFromMap(block);
     // Remove the block from pendingReconstruction and neededReconstruction
     pendingReconstruction.remove(block);
@@ -4014,6 +4503,7 @@ public void checkRedundancy(BlockCollection bc) {
       } else if (shouldProcessExtraRedundancy(n, expected)) {
         processExtraRedundancyBlock(block, expected, null, null);
       }
+      datanodeManager.getDecomManager().blockChanged(block, null);
     }
   }
 
@@ -4303,6 +4793,58 @@ private void scanAndCompactStorages() throws InterruptedException {
     }
   }
 
+  /**
+   * @return the number of reconstruction tasks the live DataNodes are free
+   *         to start by their next heartbeats. This is what remains of the
+   *         replication stream limit of each node, after the transfers it
+   *         was running at its last heartbeat and the tasks already queued
+   *         for it, so that nodes which finish their transfers sooner are
+   *         given more work.
+   */
+  @VisibleForTesting
+  int getReconstructionCapacity() {
+    long capacity = 0;
+    for (DatanodeDescriptor node : heartbeatManager.getDatanodes()) {
+      if (node.isDecommissioned()) {
+        continue;
+      }
+      // decommissioning nodes may be used as sources up to the hard limit
+      int limit = node.isDecommissionInProgress() ?
+          replicationStreamsHardLimit : maxReplicationStreams;
+      int free = Math.min(limit, node.getAvailableTransfers())
+          - node.getNumberOfBlocksToBeReplicated()
+          - node.getNumberOfBlocksToBeErasureCoded();
+      if (free > 0) {
+        capacity += free;
+      }
+    }
+    return (int) Math.min(capacity, Integer.MAX_VALUE);
+  }
+
+  private void updateReconstructionRate(int scheduled, long startTime,
+      long endTime) {
+    if (lastReconstructionWorkTime > 0 && endTime > lastReconstructionWorkTime) {
+      double rate =
+          scheduled * 1000.0 / (endTime - lastReconstructionWorkTime);
+      lowRedundancyBlocksDrainRate = DRAIN_RATE_WEIGHT * rate
+          + (1 - DRAIN_RATE_WEIGHT) * lowRedundancyBlocksDrainRate;
+    }
+    lastReconstructionWorkTime = endTime;
+    final NameNodeMetrics metrics = NameNode.getNameNodeMetrics();
+    if (metrics != null) {
+      metrics.addReconstructionWork(endTime - startTime);
+      metrics.incrBlocksScheduledForReconstruction(scheduled);
+    }
+  }
+
+  /**
+   * @return the smoothed number of low redundancy blocks scheduled for
+   *         reconstruction per second.
+   */
+  public long getLowRedundancyBlocksDrainRate() {
+    return Math.round(lowRedundancyBlocksDrainRate);
+  }
+
   /**
    * Compute block replication and block invalidation work that can be scheduled
    * on data-nodes. The datanode will be informed of this work at the next
@@ -4320,12 +4862,17 @@ int computeDatanodeWork() {
     }
 
     final int numlive = heartbeatManager.getLiveDatanodeCount();
-    final int blocksToProcess = numlive
+    int blocksToProcess = numlive
         * this.blocksReplWorkMultiplier;
+    if (capacityBasedReconstruction) {
+      blocksToProcess = Math.max(blocksToProcess, getReconstructionCapacity());
+    }
     final int nodesToProcess = (int) Math.ceil(numlive
         * this.blocksInvalidateWorkPct);
 
+    final long startTime = Time.monotonicNow();
     int workFound = this.computeBlockReconstructionWork(blocksToProcess);
+    updateReconstructionRate(workFound, startTime, Time.monotonicNow());
 
     // Update counters
     namesystem.writeLock();
@@ -29,6 +29,7 @@
 import java.util.Map;
 import java.util.Queue;
 import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import com.google.common.annotations.VisibleForTesting;
 import com.google.common.collect.ImmutableList;
@@ -232,7 +233,12 @@ public Type getType() {
   private boolean disallowed = false;
 
   // The number of replication work pending before targets are determined
-  private int pendingReplicationWithoutTargets = 0;
+  private final AtomicInteger pendingReplicationWithoutTargets =
+      new AtomicInteger();
+
+  // The number of further transfers the node could start at its last
+  // heartbeat, or Integer.MAX_VALUE before the first one
+  private volatile int availableTransfers = Integer.MAX_VALUE;
 
   // HB processing can use it to tell if it is the first HB since DN restarted
   private boolean heartbeatedSinceRegistration = false;
@@ -583,11 +589,11 @@ Iterator<BlockInfo> getBlockIterator() {
   }
 
   void incrementPendingReplicationWithoutTargets() {
-    pendingReplicationWithoutTargets++;
+    pendingReplicationWithoutTargets.incrementAndGet();
   }
 
   void decrementPendingReplicationWithoutTargets() {
-    pendingReplicationWithoutTargets--;
+    pendingReplicationWithoutTargets.decrementAndGet();
   }
 
   /**
@@ -640,7 +646,7 @@ void addBlocksToBeInvalidated(List<Block> blocklist) {
    * The number of work items that are pending to be replicated
    */
   int getNumberOfBlocksToBeReplicated() {
-    return pendingReplicationWithoutTargets + replicateBlocks.size();
+    return pendingReplicationWithoutTargets.get() + replicateBlocks.size();
   }
 
   /**
@@ -651,6 +657,19 @@ public int getNumberOfBlocksToBeErasureCoded() {
     return erasurecodeBlocks.size();
   }
 
+  /**
+   * @return the number of further transfers the node could start when it
+   *         last sent a heartbeat, which is less than the replication
+   *         stream limit by the transfers it was running.
+   */
+  int getAvailableTransfers() {
+    return availableTransfers;
+  }
+
+  void setAvailableTransfers(int availableTransfers) {
+    this.availableTransfers = availableTransfers;
+  }
+
   public List<BlockTargetPair> getReplicationCommand(int maxTransfers) {
     return replicateBlocks.poll(maxTransfers);
   }
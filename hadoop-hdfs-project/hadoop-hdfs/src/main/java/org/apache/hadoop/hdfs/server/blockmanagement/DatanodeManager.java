@@ -1532,6 +1532,7 @@ public DatanodeCommand[] handleHeartbeat(DatanodeRegistration nodeReg,
     }
     heartbeatManager.updateHeartbeat(nodeinfo, reports, cacheCapacity,
         cacheUsed, xceiverCount, failedVolumes, volumeFailureSummary);
+    nodeinfo.setAvailableTransfers(maxTransfers);
 
     // If we are in safemode, do not send back any recovery / replication
     // requests. Don't even drain the existing queue of work.
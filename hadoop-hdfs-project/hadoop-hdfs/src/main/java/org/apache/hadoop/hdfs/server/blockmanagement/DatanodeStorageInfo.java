@@ -18,6 +18,7 @@
 package org.apache.hadoop.hdfs.server.blockmanagement;
 
 import java.util.Arrays;
+import java.util.Comparator;
 import java.util.Iterator;
 import java.util.List;
 
@@ -30,6 +31,7 @@
 import org.apache.hadoop.hdfs.util.FoldedTreeSet;
 
 import com.google.common.annotations.VisibleForTesting;
+import com.google.common.collect.AbstractIterator;
 
 /**
  * A Datanode has one or more storages. A storage in the Datanode is represented
@@ -98,6 +100,15 @@ public void updateFromStorage(DatanodeStorage storage) {
 
   private final FoldedTreeSet<BlockInfo> blocks = new FoldedTreeSet<>();
 
+  // Compares a block ID with the ID of a stored block.
+  private static final Comparator<Object> LONG_AND_BLOCK_COMPARATOR
+      = new Comparator<Object>() {
+        @Override
+        public int compare(Object o1, Object o2) {
+          return Long.compare((long) o1, ((Block) o2).getBlockId());
+        }
+      };
+
   // The ID of the last full block report which updated this storage.
   private long lastBlockReportId = 0;
 
@@ -280,6 +291,31 @@ Iterator<BlockInfo> getBlockIterator() {
     return blocks.iterator();
   }
 
+  /**
+   * @return an iterator over the blocks with IDs in the given range, in order
+   *         of ID.
+   */
+  Iterator<BlockInfo> getBlockIterator(long minBlockId,
+      final long maxBlockId) {
+    if (minBlockId == Long.MIN_VALUE && maxBlockId == Long.MAX_VALUE) {
+      return getBlockIterator();
+    }
+    final Iterator<BlockInfo> tail =
+        blocks.tailIterator(minBlockId, LONG_AND_BLOCK_COMPARATOR);
+    return new AbstractIterator<BlockInfo>() {
+      @Override
+      protected BlockInfo computeNext() {
+        if (tail.hasNext()) {
+          BlockInfo b = tail.next();
+          if (b.getBlockId() <= maxBlockId) {
+            return b;
+          }
+        }
+        return endOfData();
+      }
+    };
+  }
+
   void updateState(StorageReport r) {
     capacity = r.getCapacity();
     dfsUsed = r.getDfsUsed();
@@ -21,11 +21,15 @@
 import static org.apache.hadoop.util.Time.monotonicNow;
 
 import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Queue;
+import java.util.Set;
 import java.util.TreeMap;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Executors;
@@ -40,6 +44,8 @@
 import org.apache.hadoop.hdfs.server.namenode.NameNode;
 import org.apache.hadoop.hdfs.server.namenode.Namesystem;
 import org.apache.hadoop.hdfs.util.CyclicIteration;
+import org.apache.hadoop.hdfs.util.LightWeightHashSet;
+import org.apache.hadoop.hdfs.util.LightWeightLinkedSet;
 import org.apache.hadoop.util.ChunkedArrayList;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -69,6 +75,12 @@
  * as blocks become replicated, so monitor scans will become more efficient 
  * over time.
  * <p/>
+ * If {@link DFSConfigKeys#DFS_NAMENODE_DECOMMISSION_INCREMENTAL_KEY} is set,
+ * the monitor instead scans the blocks of each datanode only once, releasing
+ * the namesystem lock periodically, and afterwards rechecks only the blocks
+ * that {@link BlockManager} reports as changed. The set of blocks preventing
+ * a datanode from being decommissioned is then always up to date.
+ * <p/>
  * Decommission-in-progress nodes that become dead do not progress to 
  * decommissioned until they become live again. This prevents potential 
  * durability loss for singly-replicated blocks (see HDFS-6791).
@@ -104,6 +116,17 @@ public class DecommissionManager {
   private final TreeMap<DatanodeDescriptor, AbstractList<BlockInfo>>
       decomNodeBlocks;
 
+  /**
+   * Map containing the decommission-in-progress datanodes that are being
+   * tracked incrementally, used instead of decomNodeBlocks if
+   * {@link DFSConfigKeys#DFS_NAMENODE_DECOMMISSION_INCREMENTAL_KEY} is set.
+   * <p/>
+   * Unlike decomNodeBlocks, this map is updated by block events through
+   * {@link #blockChanged(BlockInfo, DatanodeDescriptor)}.
+   */
+  private final TreeMap<DatanodeDescriptor, PendingBlocks>
+      decomNodePendingBlocks;
+
   /**
    * Tracking a node in decomNodeBlocks consumes additional memory. To limit
    * the impact on NN memory consumption, we limit the number of nodes in 
@@ -111,6 +134,15 @@ public class DecommissionManager {
    */
   private final Queue<DatanodeDescriptor> pendingNodes;
 
+  /**
+   * The datanodes which started or stopped decommissioning while nodes were
+   * tracked in decomNodePendingBlocks, with the scan of their blocks. The
+   * monitor walks these blocks so that the tracked nodes sharing them
+   * recheck them.
+   */
+  private final LinkedHashMap<DatanodeDescriptor, BlockScan>
+      adminStateChangedNodes;
+
   private Monitor monitor = null;
 
   DecommissionManager(final Namesystem namesystem,
@@ -123,7 +155,9 @@ public class DecommissionManager {
         new ThreadFactoryBuilder().setNameFormat("DecommissionMonitor-%d")
             .setDaemon(true).build());
     decomNodeBlocks = new TreeMap<>();
+    decomNodePendingBlocks = new TreeMap<>();
     pendingNodes = new LinkedList<>();
+    adminStateChangedNodes = new LinkedHashMap<>();
   }
 
   /**
@@ -162,14 +196,29 @@ void activate(Configuration conf) {
         "value for "
         + DFSConfigKeys.DFS_NAMENODE_DECOMMISSION_MAX_CONCURRENT_TRACKED_NODES);
 
-    monitor = new Monitor(blocksPerInterval, maxConcurrentTrackedNodes);
+    final boolean incremental = conf.getBoolean(
+        DFSConfigKeys.DFS_NAMENODE_DECOMMISSION_INCREMENTAL_KEY,
+        DFSConfigKeys.DFS_NAMENODE_DECOMMISSION_INCREMENTAL_DEFAULT);
+    final int blocksPerLock = conf.getInt(
+        DFSConfigKeys.DFS_NAMENODE_DECOMMISSION_BLOCKS_PER_LOCK_KEY,
+        DFSConfigKeys.DFS_NAMENODE_DECOMMISSION_BLOCKS_PER_LOCK_DEFAULT);
+    checkArgument(blocksPerLock > 0,
+        "Must set a positive value for "
+        + DFSConfigKeys.DFS_NAMENODE_DECOMMISSION_BLOCKS_PER_LOCK_KEY);
+
+    if (incremental) {
+      monitor = new IncrementalMonitor(blocksPerInterval,
+          maxConcurrentTrackedNodes, blocksPerLock);
+    } else {
+      monitor = new Monitor(blocksPerInterval, maxConcurrentTrackedNodes);
+    }
     executor.scheduleAtFixedRate(monitor, intervalSecs, intervalSecs,
         TimeUnit.SECONDS);
 
     LOG.debug("Activating DecommissionManager with interval {} seconds, " +
             "{} max blocks per interval, " +
-            "{} max concurrently tracked nodes.", intervalSecs,
-        blocksPerInterval, maxConcurrentTrackedNodes);
+            "{} max concurrently tracked nodes, incremental {}.", intervalSecs,
+        blocksPerInterval, maxConcurrentTrackedNodes, incremental);
   }
 
   /**
@@ -199,6 +248,7 @@ public void startDecommission(DatanodeDescriptor node) {
         }
         node.decommissioningStatus.setStartTime(monotonicNow());
         pendingNodes.add(node);
+        adminStateChanged(node);
       }
     } else {
       LOG.trace("startDecommission: Node {} in {}, nothing to do." +
@@ -223,12 +273,58 @@ public void stopDecommission(DatanodeDescriptor node) {
       // Remove from tracking in DecommissionManager
       pendingNodes.remove(node);
       decomNodeBlocks.remove(node);
+      decomNodePendingBlocks.remove(node);
+      adminStateChanged(node);
     } else {
       LOG.trace("stopDecommission: Node {} in {}, nothing to do." +
           node, node.getAdminState());
     }
   }
 
+  /**
+   * Notes that the replicas or the expected redundancy of a block changed, so
+   * that the decommission-in-progress datanodes storing it recheck whether it
+   * prevents them from being decommissioned. Does nothing unless the nodes are
+   * tracked incrementally.
+   * @param block the stored block
+   * @param removedFrom the datanode the block was just removed from, or null
+   */
+  void blockChanged(BlockInfo block, DatanodeDescriptor removedFrom) {
+    if (decomNodePendingBlocks.isEmpty()) {
+      return;
+    }
+    if (removedFrom != null) {
+      recheckOn(block, removedFrom);
+    }
+    for (DatanodeStorageInfo storage :
+        blockManager.blocksMap.getStorages(block)) {
+      recheckOn(block, storage.getDatanodeDescriptor());
+    }
+  }
+
+  /**
+   * Notes that a datanode started or stopped decommissioning, which changes
+   * the live replicas of each of its blocks, so that the other
+   * decommission-in-progress datanodes recheck the blocks they share with it.
+   * The blocks are walked later by the monitor, not under this lock hold.
+   */
+  private void adminStateChanged(DatanodeDescriptor node) {
+    // Walk all the blocks again if the node changed before being walked
+    adminStateChangedNodes.remove(node);
+    if (!decomNodePendingBlocks.isEmpty()) {
+      adminStateChangedNodes.put(node, new BlockScan());
+    }
+  }
+
+  private void recheckOn(BlockInfo block, DatanodeDescriptor node) {
+    if (node.isDecommissionInProgress()) {
+      final PendingBlocks pending = decomNodePendingBlocks.get(node);
+      if (pending != null) {
+        pending.toRecheck.add(block);
+      }
+    }
+  }
+
   private void setDecommissioned(DatanodeDescriptor dn) {
     dn.setDecommissioned();
     LOG.info("Decommissioning complete for node {}", dn);
@@ -313,7 +409,18 @@ public int getNumPendingNodes() {
 
   @VisibleForTesting
   public int getNumTrackedNodes() {
-    return decomNodeBlocks.size();
+    return decomNodeBlocks.size() + decomNodePendingBlocks.size();
+  }
+
+  @VisibleForTesting
+  public int getNumAdminStateChangedNodes() {
+    return adminStateChangedNodes.size();
+  }
+
+  @VisibleForTesting
+  public int getNumBlocksToRecheck(DatanodeDescriptor node) {
+    final PendingBlocks pending = decomNodePendingBlocks.get(node);
+    return pending == null ? 0 : pending.toRecheck.size();
   }
 
   @VisibleForTesting
@@ -321,6 +428,11 @@ public int getNumNodesChecked() {
     return monitor.numNodesChecked;
   }
 
+  @VisibleForTesting
+  public int getNumBlocksChecked() {
+    return monitor.numBlocksChecked;
+  }
+
   /**
    * Checks to see if DNs have finished decommissioning.
    * <p/>
@@ -331,25 +443,25 @@ private class Monitor implements Runnable {
     /**
      * The maximum number of blocks to check per tick.
      */
-    private final int numBlocksPerCheck;
+    final int numBlocksPerCheck;
     /**
      * The maximum number of nodes to track in decomNodeBlocks. A value of 0
      * means no limit.
      */
-    private final int maxConcurrentTrackedNodes;
+    final int maxConcurrentTrackedNodes;
     /**
      * The number of blocks that have been checked on this tick.
      */
-    private int numBlocksChecked = 0;
+    int numBlocksChecked = 0;
     /**
      * The number of nodes that have been checked on this tick. Used for 
      * statistics.
      */
-    private int numNodesChecked = 0;
+    int numNodesChecked = 0;
     /**
      * The last datanode in decomNodeBlocks that we've processed
      */
-    private DatanodeDescriptor iterkey = new DatanodeDescriptor(new 
+    DatanodeDescriptor iterkey = new DatanodeDescriptor(new 
         DatanodeID("", "", "", 0, 0, 0, 0));
 
     Monitor(int numBlocksPerCheck, int maxConcurrentTrackedNodes) {
@@ -357,7 +469,7 @@ private class Monitor implements Runnable {
       this.maxConcurrentTrackedNodes = maxConcurrentTrackedNodes;
     }
 
-    private boolean exceededNumBlocksPerCheck() {
+    boolean exceededNumBlocksPerCheck() {
       LOG.trace("Processed {} blocks so far this tick", numBlocksChecked);
       return numBlocksChecked >= numBlocksPerCheck;
     }
@@ -390,7 +502,7 @@ public void run() {
      * Pop datanodes off the pending list and into decomNodeBlocks, 
      * subject to the maxConcurrentTrackedNodes limit.
      */
-    private void processPendingNodes() {
+    void processPendingNodes() {
       while (!pendingNodes.isEmpty() &&
           (maxConcurrentTrackedNodes == 0 ||
            decomNodeBlocks.size() < maxConcurrentTrackedNodes)) {
@@ -537,19 +649,7 @@ private void processBlocksForDecomInternal(
         final NumberReplicas num = blockManager.countNodes(block);
         final int liveReplicas = num.liveReplicas();
 
-        // Schedule low redundancy blocks for reconstruction if not already
-        // pending
-        if (blockManager.isNeededReconstruction(block, liveReplicas)) {
-          if (!blockManager.neededReconstruction.contains(block) &&
-              blockManager.pendingReconstruction.getNumReplicas(block) == 0 &&
-              blockManager.isPopulatingReplQueues()) {
-            // Process these blocks only when active NN is out of safe mode.
-            blockManager.neededReconstruction.add(block,
-                liveReplicas, num.readOnlyReplicas(),
-                num.decommissionedAndDecommissioning(),
-                blockManager.getExpectedRedundancyNum(block));
-          }
-        }
+        scheduleReconstruction(block, num);
 
         // Even if the block is without sufficient redundancy,
         // it doesn't block decommission if has sufficient redundancy
@@ -584,6 +684,330 @@ private void processBlocksForDecomInternal(
           decommissionOnlyReplicas,
           lowRedundancyInOpenFiles);
     }
+
+    /**
+     * Schedule a low redundancy block for reconstruction if not already
+     * pending.
+     */
+    void scheduleReconstruction(BlockInfo block, NumberReplicas num) {
+      final int liveReplicas = num.liveReplicas();
+      if (blockManager.isNeededReconstruction(block, liveReplicas)) {
+        if (!blockManager.neededReconstruction.contains(block) &&
+            blockManager.pendingReconstruction.getNumReplicas(block) == 0 &&
+            blockManager.isPopulatingReplQueues()) {
+          // Process these blocks only when active NN is out of safe mode.
+          blockManager.neededReconstruction.add(block,
+              liveReplicas, num.readOnlyReplicas(),
+              num.decommissionedAndDecommissioning(),
+              blockManager.getExpectedRedundancyNum(block));
+        }
+      }
+    }
+  }
+
+  /**
+   * A scan of the blocks of a datanode, one storage after another, which
+   * continues where it stopped after the namesystem lock is released.
+   */
+  private static class BlockScan {
+    /** The IDs of the storages whose blocks have all been scanned. */
+    private final Set<String> scannedStorages = new HashSet<>();
+    /** The storage being scanned, and the ID of its next block to scan. */
+    private String storageId = null;
+    private long nextBlockId = Long.MIN_VALUE;
+
+    /**
+     * @return the storage of the node to continue scanning, or null if the
+     *         blocks of all its storages have been scanned.
+     */
+    DatanodeStorageInfo getStorageToScan(DatanodeDescriptor dn) {
+      final DatanodeStorageInfo[] storages = dn.getStorageInfos();
+      for (DatanodeStorageInfo storage : storages) {
+        if (storage.getStorageID().equals(storageId)) {
+          return storage;
+        }
+      }
+      for (DatanodeStorageInfo storage : storages) {
+        if (!scannedStorages.contains(storage.getStorageID())) {
+          storageId = storage.getStorageID();
+          nextBlockId = Long.MIN_VALUE;
+          return storage;
+        }
+      }
+      return null;
+    }
+
+    void finishScan(DatanodeStorageInfo storage) {
+      scannedStorages.add(storage.getStorageID());
+      storageId = null;
+    }
+  }
+
+  /**
+   * The blocks of a decommission-in-progress datanode which prevent it from
+   * being decommissioned, together with the progress of its initial scan.
+   * Tracked incrementally, so the counts in
+   * {@link DatanodeDescriptor#decommissioningStatus} are always current.
+   */
+  private static class PendingBlocks {
+    /** The blocks without sufficient redundancy. */
+    private final LightWeightHashSet<BlockInfo> lowRedundancy =
+        new LightWeightHashSet<>();
+    /** The blocks in lowRedundancy which belong to open files. */
+    private final LightWeightHashSet<BlockInfo> inOpenFiles =
+        new LightWeightHashSet<>();
+    /** The blocks in lowRedundancy with no live replicas. */
+    private final LightWeightHashSet<BlockInfo> decommissionOnly =
+        new LightWeightHashSet<>();
+    /** The blocks changed by block events since they were last checked. */
+    private final LightWeightLinkedSet<BlockInfo> toRecheck =
+        new LightWeightLinkedSet<>();
+    /** The initial scan of the blocks of the datanode. */
+    private final BlockScan scan = new BlockScan();
+
+    void add(BlockInfo block, boolean inOpenFile, boolean decomOnly) {
+      lowRedundancy.add(block);
+      if (inOpenFile) {
+        inOpenFiles.add(block);
+      }
+      if (decomOnly) {
+        decommissionOnly.add(block);
+      }
+    }
+
+    void remove(BlockInfo block) {
+      if (lowRedundancy.remove(block)) {
+        inOpenFiles.remove(block);
+        decommissionOnly.remove(block);
+      }
+    }
+
+
+    void updateStatus(DatanodeDescriptor dn) {
+      dn.decommissioningStatus.set(lowRedundancy.size(),
+          decommissionOnly.size(), inOpenFiles.size());
+    }
+  }
+
+  /**
+   * Checks to see if DNs have finished decommissioning, scanning the blocks
+   * of each DN only once.
+   * <p/>
+   * After the initial scan of a DN, only the blocks reported by
+   * {@link #blockChanged(BlockInfo, DatanodeDescriptor)} are rechecked,
+   * including the blocks of the DNs which started or stopped decommissioning,
+   * which the monitor walks before checking the tracked DNs. The namesystem
+   * lock is released every numBlocksPerLock blocks, and the scan of a DN
+   * continues where it stopped.
+   */
+  private class IncrementalMonitor extends Monitor {
+    /**
+     * The maximum number of blocks to check per lock hold.
+     */
+    private final int numBlocksPerLock;
+
+    IncrementalMonitor(int numBlocksPerCheck, int maxConcurrentTrackedNodes,
+        int numBlocksPerLock) {
+      super(numBlocksPerCheck, maxConcurrentTrackedNodes);
+      this.numBlocksPerLock = numBlocksPerLock;
+    }
+
+    @Override
+    public void run() {
+      if (!namesystem.isRunning()) {
+        LOG.info("Namesystem is not running, skipping decommissioning checks"
+            + ".");
+        return;
+      }
+      // Reset the checked count at beginning of each iteration
+      numBlocksChecked = 0;
+      numNodesChecked = 0;
+      final List<DatanodeDescriptor> nodes = new ArrayList<>();
+      namesystem.writeLock();
+      try {
+        processPendingNodes();
+        for (Map.Entry<DatanodeDescriptor, PendingBlocks> entry :
+            new CyclicIteration<>(decomNodePendingBlocks, iterkey)) {
+          nodes.add(entry.getKey());
+        }
+      } finally {
+        namesystem.writeUnlock();
+      }
+      boolean walked = false;
+      while (!walked && !exceededNumBlocksPerCheck()) {
+        namesystem.writeLock();
+        try {
+          walked = walkAdminStateChangedNodes();
+        } finally {
+          namesystem.writeUnlock();
+        }
+      }
+      for (DatanodeDescriptor dn : nodes) {
+        if (exceededNumBlocksPerCheck()) {
+          break;
+        }
+        numNodesChecked++;
+        boolean done = false;
+        while (!done && !exceededNumBlocksPerCheck()) {
+          namesystem.writeLock();
+          try {
+            done = check(dn);
+          } finally {
+            namesystem.writeUnlock();
+          }
+        }
+        iterkey = dn;
+      }
+      if (numBlocksChecked + numNodesChecked > 0) {
+        LOG.info("Checked {} blocks and {} nodes this tick", numBlocksChecked,
+            numNodesChecked);
+      }
+    }
+
+    @Override
+    void processPendingNodes() {
+      while (!pendingNodes.isEmpty() &&
+          (maxConcurrentTrackedNodes == 0 ||
+           decomNodePendingBlocks.size() < maxConcurrentTrackedNodes)) {
+        decomNodePendingBlocks.put(pendingNodes.poll(), new PendingBlocks());
+      }
+    }
+
+    /**
+     * Walks the blocks of the datanodes which started or stopped
+     * decommissioning, up to numBlocksPerLock blocks, and queues each block
+     * for recheck on the tracked datanodes storing it.
+     *
+     * @return true if the blocks of all these datanodes have been walked.
+     */
+    private boolean walkAdminStateChangedNodes() {
+      final long limit = Math.min(numBlocksPerCheck,
+          (long) numBlocksChecked + numBlocksPerLock);
+      final Iterator<Map.Entry<DatanodeDescriptor, BlockScan>> nodes =
+          adminStateChangedNodes.entrySet().iterator();
+      while (numBlocksChecked < limit && nodes.hasNext()) {
+        final Map.Entry<DatanodeDescriptor, BlockScan> entry = nodes.next();
+        final DatanodeDescriptor dn = entry.getKey();
+        final BlockScan scan = entry.getValue();
+        DatanodeStorageInfo storage = scan.getStorageToScan(dn);
+        while (numBlocksChecked < limit && storage != null) {
+          final Iterator<BlockInfo> it = storage.getBlockIterator(
+              scan.nextBlockId, Long.MAX_VALUE);
+          while (numBlocksChecked < limit && it.hasNext()) {
+            numBlocksChecked++;
+            final BlockInfo block = it.next();
+            blockChanged(block, null);
+            scan.nextBlockId = block.getBlockId() + 1;
+          }
+          if (!it.hasNext()) {
+            scan.finishScan(storage);
+            storage = scan.getStorageToScan(dn);
+          }
+        }
+        if (storage == null) {
+          nodes.remove();
+        }
+      }
+      return adminStateChangedNodes.isEmpty();
+    }
+
+    /**
+     * Rechecks the changed blocks of a datanode and continues its scan, up to
+     * numBlocksPerLock blocks, then marks it as decommissioned if no blocks
+     * are left to check and none prevents it.
+     *
+     * @return true if there is nothing more to check on the datanode.
+     */
+    private boolean check(DatanodeDescriptor dn) {
+      final PendingBlocks pending = decomNodePendingBlocks.get(dn);
+      if (pending == null) {
+        // Decommissioning was stopped while the lock was released
+        return true;
+      }
+      final long limit = Math.min(numBlocksPerCheck,
+          (long) numBlocksChecked + numBlocksPerLock);
+      while (numBlocksChecked < limit && !pending.toRecheck.isEmpty()) {
+        numBlocksChecked++;
+        checkBlock(dn, pending, pending.toRecheck.pollFirst());
+      }
+      final BlockScan scan = pending.scan;
+      DatanodeStorageInfo storage = scan.getStorageToScan(dn);
+      while (numBlocksChecked < limit && storage != null) {
+        final Iterator<BlockInfo> it = storage.getBlockIterator(
+            scan.nextBlockId, Long.MAX_VALUE);
+        while (numBlocksChecked < limit && it.hasNext()) {
+          numBlocksChecked++;
+          final BlockInfo block = it.next();
+          checkBlock(dn, pending, block);
+          scan.nextBlockId = block.getBlockId() + 1;
+        }
+        if (!it.hasNext()) {
+          scan.finishScan(storage);
+          storage = scan.getStorageToScan(dn);
+        }
+      }
+      pending.updateStatus(dn);
+      if (!pending.toRecheck.isEmpty() || storage != null) {
+        LOG.debug("Node {} has {} blocks to recheck and {} to scan.", dn,
+            pending.toRecheck.size(), storage == null ? "none" : "more");
+        return false;
+      }
+
+      if (!adminStateChangedNodes.isEmpty()) {
+        // The blocks of a node which started or stopped decommissioning have
+        // not all been queued for recheck yet, so wait for the next tick.
+        LOG.debug("Node {} waits for the blocks of {} other nodes to be " +
+            "walked.", dn, adminStateChangedNodes.size());
+        return true;
+      }
+      final boolean isHealthy = blockManager.isNodeHealthyForDecommission(dn);
+      if (pending.lowRedundancy.isEmpty() && isHealthy) {
+        setDecommissioned(dn);
+        decomNodePendingBlocks.remove(dn);
+        LOG.debug("Node {} is sufficiently replicated and healthy, "
+            + "marked as decommissioned.", dn);
+      } else {
+        LOG.debug("Node {} {} healthy."
+            + " It needs to replicate {} more blocks."
+            + " Decommissioning is still in progress.",
+            dn, isHealthy? "is": "isn't", pending.lowRedundancy.size());
+      }
+      return true;
+    }
+
+    /**
+     * Checks whether a block on a datanode is sufficiently replicated,
+     * scheduling its reconstruction if needed, and updates the pending blocks
+     * of the datanode accordingly.
+     */
+    private void checkBlock(DatanodeDescriptor dn, PendingBlocks pending,
+        BlockInfo block) {
+      pending.remove(block);
+      // Skip the block if it's no longer in the block map or on the datanode,
+      // e.g. the containing file has been deleted
+      if (blockManager.blocksMap.getStoredBlock(block) == null
+          || block.findStorageInfo(dn) == null) {
+        LOG.trace("Removing unknown block {}", block);
+        return;
+      }
+      if (block.getBlockCollectionId() == INodeId.INVALID_INODE_ID) {
+        // Orphan block, will be invalidated eventually. Skip.
+        return;
+      }
+
+      final BlockCollection bc = blockManager.getBlockCollection(block);
+      final NumberReplicas num = blockManager.countNodes(block);
+      scheduleReconstruction(block, num);
+      if (isSufficient(block, bc, num)) {
+        return;
+      }
+      if (pending.lowRedundancy.isEmpty()) {
+        logBlockReplicationInfo(block, bc, dn, num,
+            blockManager.blocksMap.getStorages(block));
+      }
+      pending.add(block, bc.isUnderConstruction(),
+          num.liveReplicas() == 0 && num.decommissionedAndDecommissioning() > 0);
+    }
   }
 
   @VisibleForTesting
@@ -350,36 +350,67 @@ List<DatanodeCommand> blockReport(long fullBrLeaseId) throws IOException {
         bpos.getBlockPoolId(), dn.getMetrics());
 
     long brCreateStartTime = monotonicNow();
-    Map<DatanodeStorage, BlockListAsLongs> perVolumeBlockLists =
-        dn.getFSDataset().getBlockReports(bpos.getBlockPoolId());
-
-    // Convert the reports to the format expected by the NN.
-    int i = 0;
+    final String bpid = bpos.getBlockPoolId();
+    boolean useBlocksBuffer =
+        bpRegistration.getNamespaceInfo().isCapabilitySupported(
+            NamespaceInfo.Capability.STORAGE_BLOCK_REPORT_BUFFERS);
+    long[] segmentEnds = null;
+    if (dnConf.blockReportSegmentSize > 0 &&
+        bpRegistration.getNamespaceInfo().isCapabilitySupported(
+            NamespaceInfo.Capability.STORAGE_BLOCK_REPORT_SEGMENTS)) {
+      segmentEnds = dn.getFSDataset().getBlockReportSegments(bpid,
+          dnConf.blockReportSegmentSize);
+      if (segmentEnds.length == 1) {
+        segmentEnds = null;
+      }
+    }
+    StorageBlockReport reports[] = null;
     int totalBlockCount = 0;
-    StorageBlockReport reports[] =
-        new StorageBlockReport[perVolumeBlockLists.size()];
-
-    for(Map.Entry<DatanodeStorage, BlockListAsLongs> kvPair : perVolumeBlockLists.entrySet()) {
-      BlockListAsLongs blockList = kvPair.getValue();
-      reports[i++] = new StorageBlockReport(kvPair.getKey(), blockList);
-      totalBlockCount += blockList.getNumberOfBlocks();
+    if (segmentEnds == null) {
+      reports = getStorageBlockReports(bpid, Long.MIN_VALUE, Long.MAX_VALUE);
+      for (StorageBlockReport report : reports) {
+        totalBlockCount += report.getBlocks().getNumberOfBlocks();
+      }
     }
 
     // Send the reports to the NN.
+    int numStorages = reports != null ? reports.length : 0;
     int numReportsSent = 0;
     int numRPCs = 0;
     boolean success = false;
     long brSendStartTime = monotonicNow();
     long reportId = generateUniqueBlockReportId();
-    boolean useBlocksBuffer =
-        bpRegistration.getNamespaceInfo().isCapabilitySupported(
-            NamespaceInfo.Capability.STORAGE_BLOCK_REPORT_BUFFERS);
     blockReportSizes.clear();
     try {
-      if (totalBlockCount < dnConf.blockReportSplitThreshold) {
+      if (segmentEnds != null) {
+        // Build and send the reports of one range of block IDs at a time,
+        // so that the full reports are never held in memory.
+        long minBlockId = Long.MIN_VALUE;
+        for (int s = 0; s < segmentEnds.length; s++) {
+          long maxBlockId = segmentEnds[s];
+          StorageBlockReport segment[] =
+              getStorageBlockReports(bpid, minBlockId, maxBlockId);
+          for (StorageBlockReport report : segment) {
+            totalBlockCount += report.getBlocks().getNumberOfBlocks();
+          }
+          DatanodeCommand cmd = bpNamenode.blockReport(
+              bpRegistration, bpid, segment,
+              new BlockReportContext(segmentEnds.length, s, reportId,
+                  fullBrLeaseId, true, minBlockId, maxBlockId));
+          blockReportSizes.add(
+              calculateBlockReportPBSize(useBlocksBuffer, segment));
+          numStorages = segment.length;
+          numRPCs++;
+          if (cmd != null) {
+            cmds.add(cmd);
+          }
+          minBlockId = maxBlockId + 1;
+        }
+        numReportsSent = numStorages;
+      } else if (totalBlockCount < dnConf.blockReportSplitThreshold) {
         // Below split threshold, send all reports in a single message.
         DatanodeCommand cmd = bpNamenode.blockReport(
-            bpRegistration, bpos.getBlockPoolId(), reports,
+            bpRegistration, bpid, reports,
               new BlockReportContext(1, 0, reportId, fullBrLeaseId, true));
         blockReportSizes.add(
             calculateBlockReportPBSize(useBlocksBuffer, reports));
@@ -393,7 +424,7 @@ List<DatanodeCommand> blockReport(long fullBrLeaseId) throws IOException {
         for (int r = 0; r < reports.length; r++) {
           StorageBlockReport singleReport[] = { reports[r] };
           DatanodeCommand cmd = bpNamenode.blockReport(
-              bpRegistration, bpos.getBlockPoolId(), singleReport,
+              bpRegistration, bpid, singleReport,
               new BlockReportContext(reports.length, r, reportId,
                   fullBrLeaseId, true));
           blockReportSizes.add(
@@ -414,7 +445,7 @@ List<DatanodeCommand> blockReport(long fullBrLeaseId) throws IOException {
       final int nCmds = cmds.size();
       LOG.info((success ? "S" : "Uns") +
           "uccessfully sent block report 0x" +
-          Long.toHexString(reportId) + ",  containing " + reports.length +
+          Long.toHexString(reportId) + ",  containing " + numStorages +
           " storage report(s), of which we sent " + numReportsSent + "." +
           " The reports had " + totalBlockCount +
           " total blocks and used " + numRPCs +
@@ -432,6 +463,25 @@ List<DatanodeCommand> blockReport(long fullBrLeaseId) throws IOException {
     return cmds.size() == 0 ? null : cmds;
   }
 
+  /**
+   * Get the reports of the replicas of each storage with block IDs in the
+   * given range, in the format expected by the NN.
+   */
+  private StorageBlockReport[] getStorageBlockReports(String bpid,
+      long minBlockId, long maxBlockId) {
+    Map<DatanodeStorage, BlockListAsLongs> perVolumeBlockLists =
+        dn.getFSDataset().getBlockReports(bpid, minBlockId, maxBlockId);
+    int i = 0;
+    StorageBlockReport reports[] =
+        new StorageBlockReport[perVolumeBlockLists.size()];
+    for (Map.Entry<DatanodeStorage, BlockListAsLongs> kvPair :
+        perVolumeBlockLists.entrySet()) {
+      reports[i++] = new StorageBlockReport(kvPair.getKey(),
+          kvPair.getValue());
+    }
+    return reports;
+  }
+
   DatanodeCommand cacheReport() throws IOException {
     // If caching is disabled, do not send a cache report
     if (dn.getFSDataset().getCacheCapacity() == 0) {
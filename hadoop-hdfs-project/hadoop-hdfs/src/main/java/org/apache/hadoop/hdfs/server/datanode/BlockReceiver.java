@@ -48,6 +48,7 @@
 import org.apache.hadoop.hdfs.protocol.datatransfer.PipelineAck;
 import org.apache.hadoop.hdfs.protocol.proto.DataTransferProtos.BlockOpResponseProto;
 import org.apache.hadoop.hdfs.protocol.proto.DataTransferProtos.Status;
+import org.apache.hadoop.hdfs.server.datanode.VolumeScanner.ForegroundIoTracker;
 import org.apache.hadoop.hdfs.server.datanode.fsdataset.ReplicaInputStreams;
 import org.apache.hadoop.hdfs.server.datanode.fsdataset.ReplicaOutputStreams;
 import org.apache.hadoop.hdfs.server.protocol.DatanodeRegistration;
@@ -130,6 +131,12 @@ class BlockReceiver implements Closeable {
   private long restartBudget;
   /** the reference of the volume where the block receiver writes to */
   private ReplicaHandler replicaHandler;
+  /**
+   * Times the disk writes as foreground IO of the volume, or null if they
+   * are not tracked.  The checksums are buffered, and reach the disk in
+   * {@link #flushOrSync(boolean)}.
+   */
+  private ForegroundIoTracker ioTracker;
 
   /**
    * for replaceBlock response
@@ -241,6 +248,8 @@ class BlockReceiver implements Closeable {
         }
       }
       replicaInfo = replicaHandler.getReplica();
+      ioTracker = datanode.getBlockScanner().getForegroundIoTracker(
+          replicaInfo.getStorageUuid());
       this.dropCacheBehindWrites = (cachingStrategy.getDropBehind() == null) ?
         datanode.getDnConf().dropCacheBehindWrites :
           cachingStrategy.getDropBehind();
@@ -406,6 +415,15 @@ synchronized boolean packetSentInTime() {
    * @throws IOException
    */
   void flushOrSync(boolean isSync) throws IOException {
+    startDiskIo();
+    try {
+      flushOrSyncStreams(isSync);
+    } finally {
+      finishDiskIo();
+    }
+  }
+
+  private void flushOrSyncStreams(boolean isSync) throws IOException {
     long flushTotalNanos = 0;
     long begin = Time.monotonicNow();
     if (checksumOut != null) {
@@ -444,6 +462,18 @@ void flushOrSync(boolean isSync) throws IOException {
     }
   }
 
+  private void startDiskIo() {
+    if (ioTracker != null) {
+      ioTracker.start();
+    }
+  }
+
+  private void finishDiskIo() {
+    if (ioTracker != null) {
+      ioTracker.finish();
+    }
+  }
+
   /**
    * While writing to mirrorOut, failure to write to mirror should not
    * affect this datanode unless it is caused by interruption.
@@ -717,7 +747,12 @@ private int receivePacket() throws IOException {
           
           // Write data to disk.
           long begin = Time.monotonicNow();
-          out.write(dataBuf.array(), startByteToDisk, numBytesToDisk);
+          startDiskIo();
+          try {
+            out.write(dataBuf.array(), startByteToDisk, numBytesToDisk);
+          } finally {
+            finishDiskIo();
+          }
           long duration = Time.monotonicNow() - begin;
           if (duration > maxWriteToDiskMs) {
             maxWriteToDiskMs = duration;
@@ -18,18 +18,28 @@
 
 package org.apache.hadoop.hdfs.server.datanode;
 
+import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_BLOCK_SCANNER_VOLUME_ADAPTIVE_ENABLED_DEFAULT;
+import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_BLOCK_SCANNER_VOLUME_ADAPTIVE_ENABLED_KEY;
+import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_BLOCK_SCANNER_VOLUME_ADAPTIVE_MAX_BYTES_PER_SECOND_DEFAULT;
+import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_BLOCK_SCANNER_VOLUME_ADAPTIVE_MAX_BYTES_PER_SECOND_KEY;
+import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_BLOCK_SCANNER_VOLUME_ADAPTIVE_MIN_BYTES_PER_SECOND_DEFAULT;
+import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_BLOCK_SCANNER_VOLUME_ADAPTIVE_MIN_BYTES_PER_SECOND_KEY;
 import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_BLOCK_SCANNER_VOLUME_BYTES_PER_SECOND;
 import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_BLOCK_SCANNER_VOLUME_BYTES_PER_SECOND_DEFAULT;
+import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_BLOCK_SCANNER_VOLUME_PRIORITY_ENABLED_DEFAULT;
+import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_BLOCK_SCANNER_VOLUME_PRIORITY_ENABLED_KEY;
 import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_DATANODE_SCAN_PERIOD_HOURS_KEY;
 import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_DATANODE_SCAN_PERIOD_HOURS_DEFAULT;
 
 import java.io.IOException;
 import java.util.Map.Entry;
 import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.TimeUnit;
 
 import com.google.common.annotations.VisibleForTesting;
 import org.apache.hadoop.hdfs.protocol.ExtendedBlock;
+import org.apache.hadoop.hdfs.server.datanode.VolumeScanner.ForegroundIoTracker;
 import org.apache.hadoop.hdfs.server.datanode.VolumeScanner.ScanResultHandler;
 import com.google.common.base.Preconditions;
 import com.google.common.util.concurrent.Uninterruptibles;
@@ -61,6 +71,16 @@ public class BlockScanner {
   private final TreeMap<String, VolumeScanner> scanners =
       new TreeMap<String, VolumeScanner>();
 
+  /**
+   * The same VolumeScanner objects as scanners.<p/>
+   *
+   * This map is not protected by the BlockScanner lock, since it is used on
+   * every block read and write, which should not wait while volume scanners
+   * are being stopped.
+   */
+  private final ConcurrentHashMap<String, VolumeScanner> liveScanners =
+      new ConcurrentHashMap<String, VolumeScanner>();
+
   /**
    * The scanner configuration.
    */
@@ -90,6 +110,14 @@ static class Conf {
     static final long INTERNAL_DFS_BLOCK_SCANNER_MAX_STALENESS_MS_DEFAULT =
         TimeUnit.MILLISECONDS.convert(15, TimeUnit.MINUTES);
 
+    @VisibleForTesting
+    static final String INTERNAL_DFS_BLOCK_SCANNER_NEW_BLOCK_DELAY_MS =
+        "internal.dfs.block.scanner.new.block.delay.ms";
+
+    @VisibleForTesting
+    static final long INTERNAL_DFS_BLOCK_SCANNER_NEW_BLOCK_DELAY_MS_DEFAULT =
+        TimeUnit.MILLISECONDS.convert(10, TimeUnit.MINUTES);
+
     @VisibleForTesting
     static final String INTERNAL_DFS_BLOCK_SCANNER_CURSOR_SAVE_INTERVAL_MS =
         "dfs.block.scanner.cursor.save.interval.ms";
@@ -104,6 +132,11 @@ static class Conf {
     final long maxStalenessMs;
     final long scanPeriodMs;
     final long cursorSaveMs;
+    final boolean adaptive;
+    final long adaptiveMinBytesPerSec;
+    final long adaptiveMaxBytesPerSec;
+    final boolean priority;
+    final long newBlockDelayMs;
     final Class<? extends ScanResultHandler> resultHandler;
 
     private static long getUnitTestLong(Configuration conf, String key,
@@ -155,6 +188,22 @@ private static long getConfiguredScanPeriodMs(Configuration conf) {
       this.cursorSaveMs = Math.max(0L, getUnitTestLong(conf,
           INTERNAL_DFS_BLOCK_SCANNER_CURSOR_SAVE_INTERVAL_MS,
           INTERNAL_DFS_BLOCK_SCANNER_CURSOR_SAVE_INTERVAL_MS_DEFAULT));
+      this.adaptive = conf.getBoolean(
+          DFS_BLOCK_SCANNER_VOLUME_ADAPTIVE_ENABLED_KEY,
+          DFS_BLOCK_SCANNER_VOLUME_ADAPTIVE_ENABLED_DEFAULT);
+      this.adaptiveMinBytesPerSec = Math.max(1L, conf.getLong(
+          DFS_BLOCK_SCANNER_VOLUME_ADAPTIVE_MIN_BYTES_PER_SECOND_KEY,
+          DFS_BLOCK_SCANNER_VOLUME_ADAPTIVE_MIN_BYTES_PER_SECOND_DEFAULT));
+      this.adaptiveMaxBytesPerSec = Math.max(adaptiveMinBytesPerSec,
+          conf.getLong(
+              DFS_BLOCK_SCANNER_VOLUME_ADAPTIVE_MAX_BYTES_PER_SECOND_KEY,
+              DFS_BLOCK_SCANNER_VOLUME_ADAPTIVE_MAX_BYTES_PER_SECOND_DEFAULT));
+      this.priority = conf.getBoolean(
+          DFS_BLOCK_SCANNER_VOLUME_PRIORITY_ENABLED_KEY,
+          DFS_BLOCK_SCANNER_VOLUME_PRIORITY_ENABLED_DEFAULT);
+      this.newBlockDelayMs = Math.max(0L, getUnitTestLong(conf,
+          INTERNAL_DFS_BLOCK_SCANNER_NEW_BLOCK_DELAY_MS,
+          INTERNAL_DFS_BLOCK_SCANNER_NEW_BLOCK_DELAY_MS_DEFAULT));
       if (allowUnitTestSettings) {
         this.resultHandler = (Class<? extends ScanResultHandler>)
             conf.getClass(INTERNAL_VOLUME_SCANNER_SCAN_RESULT_HANDLER,
@@ -211,6 +260,7 @@ public synchronized void addVolumeScanner(FsVolumeReference ref) {
       scanner = new VolumeScanner(conf, datanode, ref);
       scanner.start();
       scanners.put(volume.getStorageID(), scanner);
+      liveScanners.put(volume.getStorageID(), scanner);
       success = true;
     } finally {
       if (!success) {
@@ -244,6 +294,7 @@ public synchronized void removeVolumeScanner(FsVolumeSpi volume) {
         volume.getBasePath(), volume.getStorageID());
     scanner.shutdown();
     scanners.remove(volume.getStorageID());
+    liveScanners.remove(volume.getStorageID());
     Uninterruptibles.joinUninterruptibly(scanner, 5, TimeUnit.MINUTES);
   }
 
@@ -261,6 +312,7 @@ public synchronized void removeAllVolumeScanners() {
           5, TimeUnit.MINUTES);
     }
     scanners.clear();
+    liveScanners.clear();
   }
 
   /**
@@ -334,6 +386,43 @@ synchronized void markSuspectBlock(String storageId, ExtendedBlock block) {
     scanner.markSuspectBlock(block);
   }
 
+  /**
+   * Queue a block which was just written for a scan, once it is old enough
+   * to be read from the disk rather than the page cache.
+   *
+   * @param storageId     The ID of the storage where the block replica
+   *                      is being stored.
+   * @param block         The block's ID and block pool id.
+   */
+  void markNewBlock(String storageId, ExtendedBlock block) {
+    if (!isEnabled() || !conf.priority) {
+      return;
+    }
+    VolumeScanner scanner = liveScanners.get(storageId);
+    if (scanner == null) {
+      LOG.debug("Not queueing new block {} on {} for scanning, because " +
+          "there is no volume scanner for that storageId.", block, storageId);
+      return;
+    }
+    scanner.markNewBlock(block);
+  }
+
+  /**
+   * Get the tracker of the foreground disk IO on a volume, for the volume
+   * scanner to adapt its rate to.
+   *
+   * @param storageId     The ID of the storage.
+   * @return              The tracker, or null if the scan rate does not
+   *                        adapt to the foreground IO.
+   */
+  ForegroundIoTracker getForegroundIoTracker(String storageId) {
+    if (!isEnabled() || !conf.adaptive) {
+      return null;
+    }
+    VolumeScanner scanner = liveScanners.get(storageId);
+    return scanner == null ? null : scanner.getIoTracker();
+  }
+
   @InterfaceAudience.Private
   public static class Servlet extends HttpServlet {
     private static final long serialVersionUID = 1L;
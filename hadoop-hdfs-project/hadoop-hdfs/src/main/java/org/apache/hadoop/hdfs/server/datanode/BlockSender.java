@@ -38,7 +38,9 @@
 import org.apache.hadoop.hdfs.HdfsConfiguration;
 import org.apache.hadoop.hdfs.protocol.ExtendedBlock;
 import org.apache.hadoop.hdfs.protocol.datatransfer.PacketHeader;
+import org.apache.hadoop.hdfs.server.datanode.VolumeScanner.ForegroundIoTracker;
 import org.apache.hadoop.hdfs.server.datanode.fsdataset.FsVolumeReference;
+import org.apache.hadoop.hdfs.server.datanode.fsdataset.FsVolumeSpi;
 import org.apache.hadoop.hdfs.server.datanode.fsdataset.LengthInputStream;
 import org.apache.hadoop.hdfs.util.DataTransferThrottler;
 import org.apache.hadoop.io.IOUtils;
@@ -155,6 +157,11 @@ class BlockSender implements java.io.Closeable {
   private FileDescriptor blockInFd;
   /** The reference to the volume where the block is located */
   private FsVolumeReference volumeRef;
+  /**
+   * Times the disk reads as foreground IO of the volume, or null if they
+   * are not tracked.
+   */
+  private ForegroundIoTracker ioTracker;
 
   // Cache-management related fields
   private final long readaheadLength;
@@ -277,7 +284,10 @@ class BlockSender implements java.io.Closeable {
         (!is32Bit || length <= Integer.MAX_VALUE);
 
       // Obtain a reference before reading data
-      this.volumeRef = datanode.data.getVolume(block).obtainReference();
+      FsVolumeSpi volume = datanode.data.getVolume(block);
+      this.volumeRef = volume.obtainReference();
+      this.ioTracker = datanode.getBlockScanner().getForegroundIoTracker(
+          volume.getStorageID());
 
       /* 
        * (corruptChecksumOK, meta_file_exist): operation
@@ -556,7 +566,12 @@ private int sendPacket(ByteBuffer pkt, int maxChunks, OutputStream out,
     byte[] buf = pkt.array();
     
     if (checksumSize > 0 && checksumIn != null) {
-      readChecksum(buf, checksumOff, checksumDataLen);
+      startDiskIo();
+      try {
+        readChecksum(buf, checksumOff, checksumDataLen);
+      } finally {
+        finishDiskIo();
+      }
 
       // write in progress that we need to use to get last checksum
       if (lastDataPacket && lastChunkChecksum != null) {
@@ -571,7 +586,12 @@ private int sendPacket(ByteBuffer pkt, int maxChunks, OutputStream out,
     
     int dataOff = checksumOff + checksumDataLen;
     if (!transferTo) { // normal transfer
-      IOUtils.readFully(blockIn, buf, dataOff, dataLen);
+      startDiskIo();
+      try {
+        IOUtils.readFully(blockIn, buf, dataOff, dataLen);
+      } finally {
+        finishDiskIo();
+      }
 
       if (verifyChecksum) {
         verifyChecksum(buf, dataOff, dataLen, numChunks, checksumOff);
@@ -592,6 +612,10 @@ private int sendPacket(ByteBuffer pkt, int maxChunks, OutputStream out,
             waitTime, transferTime);
         datanode.metrics.addSendDataPacketBlockedOnNetworkNanos(waitTime.get());
         datanode.metrics.addSendDataPacketTransferNanos(transferTime.get());
+        if (ioTracker != null) {
+          // The reads are not timed apart from the sends to the socket.
+          ioTracker.addBusyNanos(transferTime.get());
+        }
         blockInPosition += dataLen;
       } else {
         // normal transfer
@@ -634,6 +658,26 @@ private int sendPacket(ByteBuffer pkt, int maxChunks, OutputStream out,
     return dataLen;
   }
   
+  private void startDiskIo() {
+    if (ioTracker != null) {
+      ioTracker.start();
+    }
+  }
+
+  private void finishDiskIo() {
+    if (ioTracker != null) {
+      ioTracker.finish();
+    }
+  }
+
+  /**
+   * Do not count the disk reads of this sender as foreground IO of the
+   * volume, e.g. because the block scanner is the reader.
+   */
+  void setBackgroundIo() {
+    ioTracker = null;
+  }
+
   /**
    * Read checksum into given buffer
    * @param buf buffer to read the checksum into
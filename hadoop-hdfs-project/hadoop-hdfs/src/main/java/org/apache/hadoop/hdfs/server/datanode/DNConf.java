@@ -92,6 +92,7 @@ public class DNConf {
   private final long lifelineIntervalMs;
   final long blockReportInterval;
   final long blockReportSplitThreshold;
+  final int blockReportSegmentSize;
   final long ibrInterval;
   final long initialBlockReportDelayMs;
   final long cacheReportInterval;
@@ -174,6 +175,9 @@ public DNConf(Configuration conf) {
         DFSConfigKeys.DFS_BLOCKREPORT_INCREMENTAL_INTERVAL_MSEC_DEFAULT);
     this.blockReportSplitThreshold = conf.getLong(DFS_BLOCKREPORT_SPLIT_THRESHOLD_KEY,
                                             DFS_BLOCKREPORT_SPLIT_THRESHOLD_DEFAULT);
+    this.blockReportSegmentSize = conf.getInt(
+        DFSConfigKeys.DFS_BLOCKREPORT_SEGMENT_SIZE_KEY,
+        DFSConfigKeys.DFS_BLOCKREPORT_SEGMENT_SIZE_DEFAULT);
     this.cacheReportInterval = conf.getLong(DFS_CACHEREPORT_INTERVAL_MSEC_KEY,
         DFS_CACHEREPORT_INTERVAL_MSEC_DEFAULT);
 
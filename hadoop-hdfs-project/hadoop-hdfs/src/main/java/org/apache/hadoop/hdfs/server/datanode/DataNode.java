@@ -2083,7 +2083,14 @@ private void handleDiskError(String errMsgr) {
   /** Number of concurrent xceivers per node. */
   @Override // DataNodeMXBean
   public int getXceiverCount() {
-    return threadGroup == null ? 0 : threadGroup.activeCount();
+    if (threadGroup == null) {
+      return 0;
+    }
+    int count = threadGroup.activeCount();
+    if (xserver != null) {
+      count += xserver.getNumSelectorXceivers();
+    }
+    return count;
   }
 
   @Override // DataNodeMXBean
@@ -2493,6 +2500,7 @@ void closeBlock(ExtendedBlock block, String delHint, String storageUuid,
     metrics.incrBlocksWritten();
     notifyNamenodeReceivedBlock(block, delHint, storageUuid,
         isTransientStorage);
+    blockScanner.markNewBlock(storageUuid, block);
   }
 
   /** Start a single datanode daemon and wait for it to finish.
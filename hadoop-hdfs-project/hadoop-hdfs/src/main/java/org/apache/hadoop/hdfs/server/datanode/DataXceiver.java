@@ -57,6 +57,7 @@
 import org.apache.hadoop.hdfs.shortcircuit.ShortCircuitShm.SlotId;
 import org.apache.hadoop.io.IOUtils;
 import org.apache.hadoop.net.NetUtils;
+import org.apache.hadoop.net.SocketInputStream;
 import org.apache.hadoop.net.unix.DomainSocket;
 import org.apache.hadoop.security.token.SecretManager.InvalidToken;
 import org.apache.hadoop.security.token.Token;
@@ -81,6 +82,8 @@
 import java.net.SocketException;
 import java.net.SocketTimeoutException;
 import java.nio.channels.ClosedChannelException;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.SelectableChannel;
 import java.util.Arrays;
 import java.util.concurrent.TimeUnit;
 
@@ -118,6 +121,15 @@ class DataXceiver extends Receiver implements Runnable {
   private final int smallBufferSize;
   private Thread xceiver = null;
 
+  /**
+   * The selector which parks the peer between operations, or null if the
+   * xceiver has a thread of its own.
+   */
+  private final DataXceiverSelector selector;
+  /** The channel to select on while the peer is parked, if it can be. */
+  private final SelectableChannel selectableChannel;
+  private int opsProcessed = 0;
+
   /**
    * Client Name used in previous operation. Not available on first request
    * on the socket.
@@ -146,6 +158,8 @@ private DataXceiver(Peer peer, DataNode datanode,
     remoteAddressWithoutPort =
         (colonIdx < 0) ? remoteAddress : remoteAddress.substring(0, colonIdx);
     localAddress = peer.getLocalAddressString();
+    this.selector = dataXceiverServer.getSelector();
+    this.selectableChannel = getSelectableChannel(socketIn);
 
     if (LOG.isDebugEnabled()) {
       LOG.debug("Number of active connections is: "
@@ -213,49 +227,71 @@ private synchronized BlockReceiver getCurrentBlockReceiver() {
     return blockReceiver;
   }
   
+  private static SelectableChannel getSelectableChannel(InputStream in) {
+    if (in instanceof SocketInputStream) {
+      ReadableByteChannel channel = ((SocketInputStream) in).getChannel();
+      if (channel instanceof SelectableChannel
+          && !((SelectableChannel) channel).isBlocking()) {
+        return (SelectableChannel) channel;
+      }
+    }
+    return null;
+  }
+
   /**
    * Read/write data from/to the DataXceiverServer.
    */
   @Override
   public void run() {
-    int opsProcessed = 0;
+    serve();
+  }
+
+  /**
+   * Process operations until the peer is closed or its keepalive times out,
+   * or until the peer is parked on the selector to wait for its next
+   * operation, in which case the selector calls this again once the peer
+   * has data.
+   *
+   * @return true if the peer has been parked.
+   */
+  boolean serve() {
     Op op = null;
+    boolean parked = false;
+    final String threadName = Thread.currentThread().getName();
 
     try {
       synchronized(this) {
         xceiver = Thread.currentThread();
       }
-      dataXceiverServer.addPeer(peer, Thread.currentThread(), this);
-      peer.setWriteTimeout(datanode.getDnConf().socketWriteTimeout);
-      InputStream input = socketIn;
-      try {
-        IOStreamPair saslStreams = datanode.saslServer.receive(peer, socketOut,
-          socketIn, datanode.getXferAddress().getPort(),
-          datanode.getDatanodeId());
-        input = new BufferedInputStream(saslStreams.in,
-            smallBufferSize);
-        socketOut = saslStreams.out;
-      } catch (InvalidMagicNumberException imne) {
-        if (imne.isHandshake4Encryption()) {
-          LOG.info("Failed to read expected encryption handshake from client " +
-              "at " + peer.getRemoteAddressString() + ". Perhaps the client " +
-              "is running an older version of Hadoop which does not support " +
-              "encryption");
-        } else {
-          LOG.info("Failed to read expected SASL data transfer protection " +
-              "handshake from client at " + peer.getRemoteAddressString() + 
-              ". Perhaps the client is running an older version of Hadoop " +
-              "which does not support SASL data transfer protection");
+      boolean resumed = opsProcessed != 0;
+      if (resumed) {
+        dataXceiverServer.setPeerThread(peer, Thread.currentThread());
+      } else {
+        initialize();
+        if (in == null) {
+          return false;
         }
-        return;
       }
       
-      super.initialize(new DataInputStream(input));
-      
       // We process requests in a loop, and stay around for a short timeout.
       // This optimistic behaviour allows the other end to reuse connections.
       // Setting keepalive timeout to 0 disable this behavior.
       do {
+        if (opsProcessed != 0 && !resumed && canPark()) {
+          synchronized(this) {
+            xceiver = null;
+          }
+          dataXceiverServer.setPeerThread(peer, null);
+          Thread.currentThread().setName(threadName);
+          parked = selector.park(this, selectableChannel,
+              dnConf.socketKeepaliveTimeout);
+          if (parked) {
+            // The peer may already be served by another worker.
+            return true;
+          }
+          break;
+        }
+        resumed = false;
         updateCurrentThreadName("Waiting for operation #" + (opsProcessed + 1));
 
         try {
@@ -316,16 +352,74 @@ public void run() {
         LOG.error(s, t);
       }
     } finally {
-      if (LOG.isDebugEnabled()) {
-        LOG.debug(datanode.getDisplayName() + ":Number of active connections is: "
-            + datanode.getXceiverCount());
+      if (!parked) {
+        if (LOG.isDebugEnabled()) {
+          LOG.debug(datanode.getDisplayName() + ":Number of active connections is: "
+              + datanode.getXceiverCount());
+        }
+        updateCurrentThreadName("Cleaning up");
+        if (peer != null) {
+          dataXceiverServer.closePeer(peer);
+          IOUtils.closeStream(in);
+        }
+        if (selector != null) {
+          Thread.currentThread().setName(threadName);
+        }
       }
-      updateCurrentThreadName("Cleaning up");
-      if (peer != null) {
-        dataXceiverServer.closePeer(peer);
-        IOUtils.closeStream(in);
+    }
+    return parked;
+  }
+
+  /**
+   * @return whether the peer can be parked on the selector while waiting for
+   *         the next operation, which it can if no data for the operation
+   *         has been buffered yet.
+   */
+  private boolean canPark() throws IOException {
+    return selector != null && selectableChannel != null
+        && peer != null && !peer.isClosed()
+        && dnConf.socketKeepaliveTimeout > 0 && in.available() == 0;
+  }
+
+  /** Close the peer after it timed out or failed while parked. */
+  void closeIdlePeer() {
+    LOG.debug("Cached {} closing after {} ops.  " +
+        "This message is usually benign.", peer, opsProcessed);
+    dataXceiverServer.closePeer(peer);
+    IOUtils.closeStream(in);
+  }
+
+  /**
+   * Register the peer and set up its streams for the first operation.
+   * Leaves {@link #in} null if the handshake with the client failed.
+   */
+  private void initialize() throws IOException {
+    dataXceiverServer.addPeer(peer, Thread.currentThread(), this);
+    peer.setWriteTimeout(datanode.getDnConf().socketWriteTimeout);
+    InputStream input = socketIn;
+    try {
+      IOStreamPair saslStreams = datanode.saslServer.receive(peer, socketOut,
+        socketIn, datanode.getXferAddress().getPort(),
+        datanode.getDatanodeId());
+      input = new BufferedInputStream(saslStreams.in,
+          smallBufferSize);
+      socketOut = saslStreams.out;
+    } catch (InvalidMagicNumberException imne) {
+      if (imne.isHandshake4Encryption()) {
+        LOG.info("Failed to read expected encryption handshake from client " +
+            "at " + peer.getRemoteAddressString() + ". Perhaps the client " +
+            "is running an older version of Hadoop which does not support " +
+            "encryption");
+      } else {
+        LOG.info("Failed to read expected SASL data transfer protection " +
+            "handshake from client at " + peer.getRemoteAddressString() + 
+            ". Perhaps the client is running an older version of Hadoop " +
+            "which does not support SASL data transfer protection");
       }
+      return;
     }
+    
+    super.initialize(new DataInputStream(input));
   }
 
   @Override
@@ -0,0 +1,269 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs.server.datanode;
+
+import java.io.IOException;
+import java.nio.channels.CancelledKeyException;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.SelectableChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.hadoop.util.Daemon;
+import org.apache.hadoop.util.Time;
+import org.slf4j.Logger;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+/**
+ * Parks the idle keep-alive peers of {@link DataXceiver}s on a selector.
+ *
+ * Each operation still runs on a thread of its own, since operations such as
+ * a pipeline write can block for as long as their clients keep them open,
+ * and one may depend on another, e.g. the downstream hop of a pipeline.
+ * Between operations, a DataXceiver whose peer has no pending data parks the
+ * peer here rather than blocking its thread until the next operation or the
+ * keepalive timeout. The parked peers are watched on a single selector, and
+ * handed to a thread again once they become readable. Idle threads are kept
+ * for a while to serve the next operations. Peers which stay idle for longer
+ * than their keepalive timeout are closed.
+ */
+class DataXceiverSelector implements Runnable {
+  public static final Logger LOG = DataNode.LOG;
+
+  /** How often the parked peers are checked for expired keepalives. */
+  private static final long EXPIRY_CHECK_INTERVAL_MS = 100;
+
+  /** A peer waiting for its next operation. */
+  private static class ParkedPeer {
+    final DataXceiver xceiver;
+    final SelectableChannel channel;
+    final long deadline;
+
+    ParkedPeer(DataXceiver xceiver, SelectableChannel channel,
+        long deadline) {
+      this.xceiver = xceiver;
+      this.channel = channel;
+      this.deadline = deadline;
+    }
+  }
+
+  private final ThreadPoolExecutor workers;
+  private final Selector selector;
+  private final Daemon selectorThread;
+  /** Peers parked since the selector last registered them. */
+  private final Queue<ParkedPeer> toPark = new ConcurrentLinkedQueue<>();
+  /** The number of xceivers which are queued, running or parked. */
+  private final AtomicInteger numXceivers = new AtomicInteger();
+  private final AtomicInteger numParked = new AtomicInteger();
+  private volatile boolean running = true;
+
+  DataXceiverSelector() throws IOException {
+    // Never queue an operation behind others: hand it to an idle thread or
+    // start a new one. dfs.datanode.max.transfer.threads bounds the number
+    // of xceivers, and so the number of threads.
+    workers = new ThreadPoolExecutor(0, Integer.MAX_VALUE,
+        60, TimeUnit.SECONDS, new SynchronousQueue<Runnable>(),
+        new ThreadFactoryBuilder().setDaemon(true)
+            .setNameFormat("DataXceiver worker #%d").build());
+    selector = Selector.open();
+    selectorThread = new Daemon(this);
+    selectorThread.setName("DataXceiver selector");
+  }
+
+  void start() {
+    selectorThread.start();
+  }
+
+  /** Stop parking peers and stop the workers once they are done. */
+  void shutdown() {
+    running = false;
+    selector.wakeup();
+    workers.shutdownNow();
+  }
+
+  /** Run a new xceiver on a thread of its own. */
+  void execute(DataXceiver xceiver) throws IOException {
+    numXceivers.incrementAndGet();
+    try {
+      dispatch(xceiver);
+    } catch (RejectedExecutionException e) {
+      numXceivers.decrementAndGet();
+      throw new IOException("DataXceiver workers have been shut down", e);
+    }
+  }
+
+  private void dispatch(final DataXceiver xceiver) {
+    workers.execute(new Runnable() {
+      @Override
+      public void run() {
+        if (!xceiver.serve()) {
+          numXceivers.decrementAndGet();
+        }
+      }
+    });
+  }
+
+  /**
+   * Park the peer of an xceiver until it has data for the next operation.
+   * The xceiver is served again by a worker once the channel is readable,
+   * possibly before this method returns.
+   *
+   * @return false if the selector has been shut down, in which case the
+   *         caller should close the peer.
+   */
+  boolean park(DataXceiver xceiver, SelectableChannel channel,
+      long keepaliveTimeoutMs) {
+    if (!running) {
+      return false;
+    }
+    numParked.incrementAndGet();
+    toPark.add(new ParkedPeer(xceiver, channel,
+        Time.monotonicNow() + keepaliveTimeoutMs));
+    selector.wakeup();
+    return true;
+  }
+
+  /** @return the number of xceivers which are queued, running or parked. */
+  int getNumXceivers() {
+    return numXceivers.get();
+  }
+
+  @VisibleForTesting
+  int getNumParked() {
+    return numParked.get();
+  }
+
+  @Override
+  public void run() {
+    long nextExpiryCheck = Time.monotonicNow() + EXPIRY_CHECK_INTERVAL_MS;
+    try {
+      while (running) {
+        selector.select(EXPIRY_CHECK_INTERVAL_MS);
+        dispatchReadable();
+        registerParked();
+        long now = Time.monotonicNow();
+        if (now >= nextExpiryCheck) {
+          closeExpired(now);
+          nextExpiryCheck = now + EXPIRY_CHECK_INTERVAL_MS;
+        }
+      }
+    } catch (Throwable t) {
+      LOG.error("DataXceiver selector exiting due to: ", t);
+    } finally {
+      running = false;
+      for (SelectionKey key : selector.keys()) {
+        unpark(key);
+      }
+      registerParked();
+      try {
+        selector.close();
+      } catch (IOException e) {
+        LOG.warn("Failed to close DataXceiver selector", e);
+      }
+    }
+  }
+
+  /** Hand the peers with data for their next operation back to a worker. */
+  private void dispatchReadable() {
+    Iterator<SelectionKey> it = selector.selectedKeys().iterator();
+    while (it.hasNext()) {
+      SelectionKey key = it.next();
+      it.remove();
+      ParkedPeer parked = (ParkedPeer) key.attachment();
+      if (parked == null) {
+        continue;
+      }
+      key.attach(null);
+      numParked.decrementAndGet();
+      try {
+        key.interestOps(0);
+        dispatch(parked.xceiver);
+      } catch (CancelledKeyException | RejectedExecutionException e) {
+        close(parked);
+      }
+    }
+  }
+
+  /**
+   * Start watching the newly parked peers. Once registered, a channel keeps
+   * its key until it is closed, and the key's interest is switched off while
+   * the peer is served by a worker.
+   */
+  private void registerParked() {
+    ParkedPeer parked;
+    while ((parked = toPark.poll()) != null) {
+      if (!running) {
+        numParked.decrementAndGet();
+        close(parked);
+        continue;
+      }
+      try {
+        SelectionKey key = parked.channel.keyFor(selector);
+        if (key == null) {
+          parked.channel.register(selector, SelectionKey.OP_READ, parked);
+        } else {
+          key.attach(parked);
+          key.interestOps(SelectionKey.OP_READ);
+        }
+      } catch (ClosedChannelException | CancelledKeyException e) {
+        numParked.decrementAndGet();
+        close(parked);
+      }
+    }
+  }
+
+  private void closeExpired(long now) {
+    for (SelectionKey key : selector.keys()) {
+      ParkedPeer parked = (ParkedPeer) key.attachment();
+      if (parked != null && (now >= parked.deadline || !key.isValid())) {
+        unpark(key);
+      }
+    }
+  }
+
+  /** Close the peer parked on the given key, if any. */
+  private void unpark(SelectionKey key) {
+    ParkedPeer parked = (ParkedPeer) key.attachment();
+    if (parked == null) {
+      return;
+    }
+    key.attach(null);
+    numParked.decrementAndGet();
+    try {
+      key.interestOps(0);
+    } catch (CancelledKeyException ignored) {
+      // the channel has already been closed
+    }
+    close(parked);
+  }
+
+  private void close(ParkedPeer parked) {
+    parked.xceiver.closeIdlePeer();
+    numXceivers.decrementAndGet();
+  }
+}
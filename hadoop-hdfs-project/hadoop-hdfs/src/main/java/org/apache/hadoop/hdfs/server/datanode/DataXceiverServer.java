@@ -27,6 +27,7 @@
 import org.apache.hadoop.hdfs.DFSConfigKeys;
 import org.apache.hadoop.hdfs.net.Peer;
 import org.apache.hadoop.hdfs.net.PeerServer;
+import org.apache.hadoop.hdfs.net.TcpPeerServer;
 import org.apache.hadoop.hdfs.util.DataTransferThrottler;
 import org.apache.hadoop.io.IOUtils;
 import org.apache.hadoop.util.Daemon;
@@ -115,10 +116,15 @@ synchronized void release() {
    * For older clients we just use the server-side default block size.
    */
   final long estimateBlockSize;
-  
+
+  /**
+   * Runs the xceivers and parks their idle peers, or null if each xceiver
+   * keeps a thread of its own while it is idle.
+   */
+  private final DataXceiverSelector selector;
   
   DataXceiverServer(PeerServer peerServer, Configuration conf,
-      DataNode datanode) {
+      DataNode datanode) throws IOException {
     this.peerServer = peerServer;
     this.datanode = datanode;
     
@@ -135,10 +141,22 @@ synchronized void release() {
             DFSConfigKeys.DFS_DATANODE_BALANCE_BANDWIDTHPERSEC_DEFAULT),
         conf.getInt(DFSConfigKeys.DFS_DATANODE_BALANCE_MAX_NUM_CONCURRENT_MOVES_KEY,
             DFSConfigKeys.DFS_DATANODE_BALANCE_MAX_NUM_CONCURRENT_MOVES_DEFAULT));
+
+    // Only TCP peers can be parked on a selector.
+    if (peerServer instanceof TcpPeerServer && conf.getBoolean(
+        DFSConfigKeys.DFS_DATANODE_XCEIVER_SELECTOR_ENABLED_KEY,
+        DFSConfigKeys.DFS_DATANODE_XCEIVER_SELECTOR_ENABLED_DEFAULT)) {
+      this.selector = new DataXceiverSelector();
+    } else {
+      this.selector = null;
+    }
   }
 
   @Override
   public void run() {
+    if (selector != null) {
+      selector.start();
+    }
     Peer peer = null;
     while (datanode.shouldRun && !datanode.shutdownForUpgrade) {
       try {
@@ -152,9 +170,12 @@ public void run() {
               + maxXceiverCount);
         }
 
-        new Daemon(datanode.threadGroup,
-            DataXceiver.create(peer, datanode, this))
-            .start();
+        DataXceiver xceiver = DataXceiver.create(peer, datanode, this);
+        if (selector != null) {
+          selector.execute(xceiver);
+        } else {
+          new Daemon(datanode.threadGroup, xceiver).start();
+        }
       } catch (SocketTimeoutException ignored) {
         // wake up to see if should continue to run
       } catch (AsynchronousCloseException ace) {
@@ -211,6 +232,9 @@ public void run() {
     }
     // Close all peers.
     closeAllPeers();
+    if (selector != null) {
+      selector.shutdown();
+    }
   }
 
   void kill() {
@@ -235,6 +259,16 @@ synchronized void addPeer(Peer peer, Thread t, DataXceiver xceiver)
     datanode.metrics.incrDataNodeActiveXceiversCount();
   }
 
+  /**
+   * Update the thread serving a peer, which is null while the peer is parked
+   * on the selector.
+   */
+  synchronized void setPeerThread(Peer peer, Thread t) {
+    if (peers.containsKey(peer)) {
+      peers.put(peer, t);
+    }
+  }
+
   synchronized void closePeer(Peer peer) {
     peers.remove(peer);
     peersXceiver.remove(peer);
@@ -272,7 +306,9 @@ synchronized void restartNotifyPeers() {
     assert (datanode.shouldRun == true && datanode.shutdownForUpgrade);
     for (Thread t : peers.values()) {
       // interrupt each and every DataXceiver thread.
-      t.interrupt();
+      if (t != null) {
+        t.interrupt();
+      }
     }
   }
 
@@ -303,6 +339,19 @@ PeerServer getPeerServer() {
     return peerServer;
   }
 
+  @VisibleForTesting
+  DataXceiverSelector getSelector() {
+    return selector;
+  }
+
+  /**
+   * @return the number of xceivers run by the selector, which are not
+   *         counted in the DataNode's thread group.
+   */
+  int getNumSelectorXceivers() {
+    return selector == null ? 0 : selector.getNumXceivers();
+  }
+
   synchronized void releasePeer(Peer peer) {
     peers.remove(peer);
     peersXceiver.remove(peer);
@@ -0,0 +1,272 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs.server.datanode;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.hadoop.hdfs.server.datanode.DirectoryScanner.ScanInfo;
+import org.apache.hadoop.hdfs.server.datanode.fsdataset.FsVolumeSpi;
+import org.apache.hadoop.io.IOUtils;
+import org.apache.hadoop.util.Time;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.io.Files;
+
+/**
+ * The index of the finalized directory of a block pool on a volume, which
+ * the {@link DirectoryScanner} keeps between incremental scans.
+ *
+ * For each directory, the index holds its modification time when it was
+ * listed, the blocks found in it and its subdirectories. A directory whose
+ * modification time has not changed since has had no file added, removed or
+ * renamed in it, so the scanner takes its blocks from the index instead of
+ * listing it and stat'ing its files again. It still checks the modification
+ * time of every directory, since a change to a directory does not change
+ * the modification time of its parent.
+ *
+ * The index is saved to a file next to the replica cache file of the block
+ * pool, so that it survives restarts of the DataNode, and records the time
+ * of the last full scan. It is discarded, and the directories are all
+ * listed again, once that is older than the full scan interval.
+ */
+class DirectoryScanIndex {
+  private static final Log LOG = LogFactory.getLog(DirectoryScanIndex.class);
+
+  @VisibleForTesting
+  static final String INDEX_FILE = "scanner.index";
+  private static final int LAYOUT_VERSION = 1;
+
+  /**
+   * Directories modified less than this long before they are listed are not
+   * indexed, since a later change in the same tick of the file system clock
+   * would not change their modification time.
+   */
+  private static final long MTIME_GRANULARITY_MS = 2000;
+
+  /** An indexed directory. */
+  static class Dir {
+    private final long lastModified;
+    private final List<ScanInfo> blocks;
+    private final List<String> subdirs;
+
+    Dir(long lastModified, List<ScanInfo> blocks, List<String> subdirs) {
+      this.lastModified = lastModified;
+      this.blocks = blocks;
+      this.subdirs = subdirs;
+    }
+
+    List<ScanInfo> getBlocks() {
+      return blocks;
+    }
+
+    List<String> getSubdirs() {
+      return subdirs;
+    }
+  }
+
+  private final FsVolumeSpi volume;
+  private final File finalizedDir;
+  private final File indexFile;
+  private final long fullScanIntervalMs;
+
+  /** The directories indexed by the previous scan, by relative path. */
+  private final Map<String, Dir> previous = new HashMap<>();
+  /** The directories indexed by this scan, in the order they were seen. */
+  private final Map<String, Dir> current = new LinkedHashMap<>();
+  private long fullScanTimeMs;
+
+  /**
+   * @param volume the volume of the block pool
+   * @param finalizedDir the finalized directory of the block pool
+   * @param fullScanIntervalMs the maximum age of the last full scan
+   */
+  DirectoryScanIndex(FsVolumeSpi volume, File finalizedDir,
+      long fullScanIntervalMs) {
+    this.volume = volume;
+    this.finalizedDir = finalizedDir;
+    this.indexFile = new File(finalizedDir.getParentFile(), INDEX_FILE);
+    this.fullScanIntervalMs = fullScanIntervalMs;
+  }
+
+  /**
+   * Load the index saved by the previous scan.
+   *
+   * @return true if the index was loaded, or false if this scan has to be a
+   *         full scan, because there is no index or it is too old or corrupt.
+   */
+  boolean load() {
+    long now = Time.now();
+    fullScanTimeMs = now;
+    if (!indexFile.exists()) {
+      return false;
+    }
+    DataInputStream in = null;
+    try {
+      in = new DataInputStream(new BufferedInputStream(
+          new FileInputStream(indexFile)));
+      if (in.readInt() != LAYOUT_VERSION) {
+        LOG.info("Ignoring directory scan index " + indexFile +
+            " of another layout version");
+        return false;
+      }
+      long lastFullScanTimeMs = in.readLong();
+      if (now - lastFullScanTimeMs > fullScanIntervalMs) {
+        return false;
+      }
+      int numDirs = in.readInt();
+      for (int i = 0; i < numDirs; i++) {
+        String path = in.readUTF();
+        File dir = new File(finalizedDir, path);
+        long lastModified = in.readLong();
+        int numBlocks = in.readInt();
+        List<ScanInfo> blocks = new ArrayList<>(numBlocks);
+        for (int j = 0; j < numBlocks; j++) {
+          long blockId = in.readLong();
+          String blockName = in.readUTF();
+          String metaName = in.readUTF();
+          long blockFileLength = in.readLong();
+          blocks.add(new ScanInfo(blockId,
+              blockName.isEmpty() ? null : new File(dir, blockName),
+              metaName.isEmpty() ? null : new File(dir, metaName),
+              volume, blockFileLength));
+        }
+        int numSubdirs = in.readInt();
+        List<String> subdirs = new ArrayList<>(numSubdirs);
+        for (int j = 0; j < numSubdirs; j++) {
+          subdirs.add(in.readUTF());
+        }
+        previous.put(path, new Dir(lastModified, blocks, subdirs));
+      }
+      fullScanTimeMs = lastFullScanTimeMs;
+      return true;
+    } catch (Exception e) {
+      LOG.warn("Failed to read directory scan index " + indexFile, e);
+      previous.clear();
+      return false;
+    } finally {
+      IOUtils.closeStream(in);
+    }
+  }
+
+  /**
+   * Get the directory from the index, if it has not been modified since it
+   * was indexed, and keep it in the index.
+   *
+   * @param dir the directory
+   * @param lastModified the modification time of the directory
+   * @return the indexed directory, or null if it has to be listed
+   */
+  Dir get(File dir, long lastModified) {
+    String path = getPath(dir);
+    Dir indexed = previous.get(path);
+    if (indexed == null || lastModified == 0 ||
+        indexed.lastModified != lastModified) {
+      return null;
+    }
+    current.put(path, indexed);
+    return indexed;
+  }
+
+  /**
+   * Index a directory which was just listed.
+   *
+   * @param dir the directory
+   * @param lastModified the modification time of the directory, taken before
+   *                     it was listed
+   * @param blocks the blocks found in the directory
+   * @param subdirs the names of the subdirectories of the directory
+   */
+  void put(File dir, long lastModified, List<ScanInfo> blocks,
+      List<String> subdirs) {
+    if (lastModified == 0 ||
+        Time.now() - lastModified < MTIME_GRANULARITY_MS) {
+      return;
+    }
+    current.put(getPath(dir), new Dir(lastModified, blocks, subdirs));
+  }
+
+  /**
+   * Save the directories indexed by this scan, for the next scan.
+   */
+  void save() {
+    File tmpFile = new File(indexFile.getPath() + ".tmp");
+    DataOutputStream out = null;
+    try {
+      out = new DataOutputStream(new BufferedOutputStream(
+          new FileOutputStream(tmpFile)));
+      out.writeInt(LAYOUT_VERSION);
+      out.writeLong(fullScanTimeMs);
+      out.writeInt(current.size());
+      for (Entry<String, Dir> entry : current.entrySet()) {
+        Dir dir = entry.getValue();
+        out.writeUTF(entry.getKey());
+        out.writeLong(dir.lastModified);
+        out.writeInt(dir.blocks.size());
+        for (ScanInfo info : dir.blocks) {
+          File blockFile = info.getBlockFile();
+          File metaFile = info.getMetaFile();
+          out.writeLong(info.getBlockId());
+          out.writeUTF(blockFile == null ? "" : blockFile.getName());
+          out.writeUTF(metaFile == null ? "" : metaFile.getName());
+          out.writeLong(info.getBlockFileLength());
+        }
+        out.writeInt(dir.subdirs.size());
+        for (String subdir : dir.subdirs) {
+          out.writeUTF(subdir);
+        }
+      }
+      out.close();
+      out = null;
+      if (indexFile.exists() && !indexFile.delete()) {
+        throw new IOException("Failed to delete " + indexFile);
+      }
+      Files.move(tmpFile, indexFile);
+    } catch (IOException e) {
+      // The index is not critical, the next scan is a full scan without it
+      LOG.warn("Failed to write directory scan index " + indexFile, e);
+      if (indexFile.exists() && !indexFile.delete()) {
+        LOG.warn("Failed to delete directory scan index " + indexFile);
+      }
+    } finally {
+      IOUtils.closeStream(out);
+      if (tmpFile.exists() && !tmpFile.delete()) {
+        LOG.warn("Failed to delete " + tmpFile);
+      }
+    }
+  }
+
+  /** @return the path of a directory relative to the finalized directory. */
+  private String getPath(File dir) {
+    return dir.getPath().substring(finalizedDir.getPath().length());
+  }
+}
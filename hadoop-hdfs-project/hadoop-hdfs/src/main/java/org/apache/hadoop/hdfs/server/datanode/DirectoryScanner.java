@@ -21,6 +21,7 @@
 import java.io.File;
 import java.io.FilenameFilter;
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
@@ -74,6 +75,8 @@ public class DirectoryScanner implements Runnable {
   private final ScheduledExecutorService masterThread;
   private final long scanPeriodMsecs;
   private final int throttleLimitMsPerSec;
+  private final boolean incremental;
+  private final long fullScanIntervalMs;
   private volatile boolean shouldRun = false;
   private boolean retainDiffs = false;
   private final DataNode datanode;
@@ -90,6 +93,15 @@ public class DirectoryScanner implements Runnable {
    */
   @VisibleForTesting
   final AtomicLong timeWaitingMs = new AtomicLong(0L);
+  /**
+   * The number of directories listed, and of directories taken from the
+   * index of an incremental scan, by the last scan.  Used for testing
+   * purposes.
+   */
+  @VisibleForTesting
+  final AtomicLong dirsListed = new AtomicLong(0L);
+  @VisibleForTesting
+  final AtomicLong dirsIndexed = new AtomicLong(0L);
   /**
    * The complete list of block differences indexed by block pool ID.
    */
@@ -300,12 +312,27 @@ private static String getSuffix(File f, String prefix) {
      * @param vol the volume that contains the block
      */
     ScanInfo(long blockId, File blockFile, File metaFile, FsVolumeSpi vol) {
+      this(blockId, blockFile, metaFile, vol,
+          (blockFile != null) ? blockFile.length() : 0);
+    }
+
+    /**
+     * Create a ScanInfo object for a block whose block file length is known.
+     *
+     * @param blockId the block ID
+     * @param blockFile the path to the block data file
+     * @param metaFile the path to the block meta-data file
+     * @param vol the volume that contains the block
+     * @param blockFileLength the length of the block data file
+     */
+    ScanInfo(long blockId, File blockFile, File metaFile, FsVolumeSpi vol,
+        long blockFileLength) {
       this.blockId = blockId;
       String condensedVolPath = vol == null ? null :
         getCondensedPath(vol.getBasePath());
       this.blockSuffix = blockFile == null ? null :
         getSuffix(blockFile, condensedVolPath);
-      this.blockFileLength = (blockFile != null) ? blockFile.length() : 0; 
+      this.blockFileLength = blockFileLength;
       if (metaFile == null) {
         this.metaSuffix = null;
       } else if (blockFile == null) {
@@ -442,6 +469,14 @@ public long getGenStamp() {
       throttleLimitMsPerSec = throttle;
     }
 
+    incremental = conf.getBoolean(
+        DFSConfigKeys.DFS_DATANODE_DIRECTORYSCAN_INCREMENTAL_ENABLED_KEY,
+        DFSConfigKeys.DFS_DATANODE_DIRECTORYSCAN_INCREMENTAL_ENABLED_DEFAULT);
+    fullScanIntervalMs = conf.getLong(
+        DFSConfigKeys.DFS_DATANODE_DIRECTORYSCAN_FULL_SCAN_INTERVAL_KEY,
+        DFSConfigKeys.DFS_DATANODE_DIRECTORYSCAN_FULL_SCAN_INTERVAL_DEFAULT)
+        * MILLIS_PER_SECOND;
+
     int threads = 
         conf.getInt(DFSConfigKeys.DFS_DATANODE_DIRECTORYSCAN_THREADS_KEY,
                     DFSConfigKeys.DFS_DATANODE_DIRECTORYSCAN_THREADS_DEFAULT);
@@ -491,6 +526,8 @@ boolean getRunStatus() {
   private void clear() {
     diffs.clear();
     stats.clear();
+    dirsListed.set(0);
+    dirsIndexed.set(0);
   }
 
   /**
@@ -781,6 +818,10 @@ private static boolean isBlockMetaFile(String blockId, String metaFile) {
    * When the ReportCompiler discovers block information, it create a new
    * ScanInfo object for it and adds that object to its report list.  The report
    * list is returned by the {@link #call()} method.
+   *
+   * In incremental mode, the directories which have not been modified since
+   * the previous scan are not listed again, and their blocks are taken from
+   * the {@link DirectoryScanIndex} of the block pool instead.
    */
   private class ReportCompiler implements Callable<ScanInfoPerBlockPool> {
     private final FsVolumeSpi volume;
@@ -816,12 +857,25 @@ public ScanInfoPerBlockPool call() throws IOException {
         LinkedList<ScanInfo> report = new LinkedList<>();
         File bpFinalizedDir = volume.getFinalizedDir(bpid);
 
+        DirectoryScanIndex index = null;
+        if (incremental) {
+          index = new DirectoryScanIndex(volume, bpFinalizedDir,
+              fullScanIntervalMs);
+          if (!index.load()) {
+            LOG.info("Listing all the directories of " + bpid + " on " +
+                volume);
+          }
+        }
+
         perfTimer.start();
         throttleTimer.start();
 
         try {
-          result.put(bpid,
-              compileReport(volume, bpFinalizedDir, bpFinalizedDir, report));
+          result.put(bpid, compileReport(volume, bpFinalizedDir,
+              bpFinalizedDir, report, index));
+          if (index != null) {
+            index.save();
+          }
         } catch (InterruptedException ex) {
           // Exit quickly and flag the scanner to do the same
           result = null;
@@ -839,13 +893,33 @@ public ScanInfoPerBlockPool call() throws IOException {
      * @param bpFinalizedDir the root directory of the directory to scan
      * @param dir the directory to scan
      * @param report the list onto which blocks reports are placed
+     * @param index the index of an incremental scan, or null
      */
     private LinkedList<ScanInfo> compileReport(FsVolumeSpi vol,
-        File bpFinalizedDir, File dir, LinkedList<ScanInfo> report)
-        throws InterruptedException {
+        File bpFinalizedDir, File dir, LinkedList<ScanInfo> report,
+        DirectoryScanIndex index) throws InterruptedException {
 
       throttle();
 
+      long lastModified = 0;
+      if (index != null) {
+        lastModified = dir.lastModified();
+        DirectoryScanIndex.Dir indexed = index.get(dir, lastModified);
+        if (indexed != null) {
+          dirsIndexed.incrementAndGet();
+          report.addAll(indexed.getBlocks());
+          for (String subdir : indexed.getSubdirs()) {
+            if (Thread.interrupted()) {
+              throw new InterruptedException();
+            }
+            compileReport(vol, bpFinalizedDir, new File(dir, subdir), report,
+                index);
+          }
+          return report;
+        }
+      }
+      dirsListed.incrementAndGet();
+
       List <String> fileNames;
       try {
         fileNames = IOUtils.listDirectory(dir, BlockDirFilter.INSTANCE);
@@ -857,6 +931,8 @@ private LinkedList<ScanInfo> compileReport(FsVolumeSpi vol,
         return report;
       }
       Collections.sort(fileNames);
+      List<ScanInfo> blocks = new ArrayList<>();
+      List<String> subdirs = new ArrayList<>();
 
       /*
        * Assumption: In the sorted list of files block file appears immediately
@@ -873,7 +949,7 @@ private LinkedList<ScanInfo> compileReport(FsVolumeSpi vol,
 
         File file = new File(dir, fileNames.get(i));
         if (file.isDirectory()) {
-          compileReport(vol, bpFinalizedDir, file, report);
+          subdirs.add(file.getName());
           continue;
         }
         if (!Block.isBlockFilename(file)) {
@@ -881,7 +957,7 @@ private LinkedList<ScanInfo> compileReport(FsVolumeSpi vol,
             long blockId = Block.getBlockId(file.getName());
             verifyFileLocation(file.getParentFile(), bpFinalizedDir,
                 blockId);
-            report.add(new ScanInfo(blockId, null, file, vol));
+            blocks.add(new ScanInfo(blockId, null, file, vol));
           }
           continue;
         }
@@ -904,7 +980,15 @@ private LinkedList<ScanInfo> compileReport(FsVolumeSpi vol,
           }
         }
         verifyFileLocation(blockFile, bpFinalizedDir, blockId);
-        report.add(new ScanInfo(blockId, blockFile, metaFile, vol));
+        blocks.add(new ScanInfo(blockId, blockFile, metaFile, vol));
+      }
+      report.addAll(blocks);
+      if (index != null) {
+        index.put(dir, lastModified, blocks, subdirs);
+      }
+      for (String subdir : subdirs) {
+        compileReport(vol, bpFinalizedDir, new File(dir, subdir), report,
+            index);
       }
       return report;
     }
@@ -0,0 +1,315 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs.server.datanode;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.AbstractMap.SimpleImmutableEntry;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+
+import org.apache.hadoop.hdfs.protocol.ExtendedBlock;
+import org.apache.hadoop.io.IOUtils;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.io.Files;
+
+/**
+ * The blocks of a volume which the {@link VolumeScanner} scans before the
+ * blocks of its block iterators.<p/>
+ *
+ * The suspect blocks come first, in the order they were reported. The blocks
+ * written to the volume, which have never been verified, come next in the
+ * order they were written, once they are old enough to have been evicted
+ * from the page cache, so that the scan reads them from the disk.<p/>
+ *
+ * The queue may be saved to a file, so that the blocks waiting for a scan
+ * are not forgotten when the DataNode restarts. The number of written blocks
+ * it holds is bounded; the oldest are dropped first, and left for the block
+ * iterators to scan.<p/>
+ *
+ * This class is thread-safe.
+ */
+class ScanPriorityQueue {
+  @VisibleForTesting
+  static final String QUEUE_FILE = "scanner.queue";
+  private static final int LAYOUT_VERSION = 1;
+
+  /**
+   * The maximum number of written blocks in the queue.
+   */
+  @VisibleForTesting
+  static final int MAX_NEW_BLOCKS = 65536;
+
+  /**
+   * The file the queue is saved to, or null if it is not saved.
+   */
+  private final File file;
+
+  /**
+   * The time after they are written before blocks are scanned.
+   */
+  private final long newBlockDelayMs;
+
+  private final LinkedHashSet<ExtendedBlock> suspectBlocks =
+      new LinkedHashSet<ExtendedBlock>();
+
+  /**
+   * The blocks written, with the wall-clock time they were written at.
+   */
+  private final LinkedHashMap<ExtendedBlock, Long> newBlocks =
+      new LinkedHashMap<ExtendedBlock, Long>();
+
+  /**
+   * True if the queue changed since it was last saved or loaded.
+   */
+  private boolean dirty = false;
+
+  /**
+   * @param file            The file to save the queue to, or null.
+   * @param newBlockDelayMs The time after they are written before blocks
+   *                          are scanned.
+   */
+  ScanPriorityQueue(File file, long newBlockDelayMs) {
+    this.file = file;
+    this.newBlockDelayMs = newBlockDelayMs;
+  }
+
+  /**
+   * Queue a suspect block.
+   *
+   * @return      False if the block was already queued as suspect.
+   */
+  synchronized boolean addSuspectBlock(ExtendedBlock block) {
+    if (!suspectBlocks.add(block)) {
+      return false;
+    }
+    dirty = true;
+    return true;
+  }
+
+  synchronized boolean containsSuspectBlock(ExtendedBlock block) {
+    return suspectBlocks.contains(block);
+  }
+
+  /**
+   * Queue a block which was just written. A block written again, e.g. by an
+   * append, goes back to the end of the queue.
+   *
+   * @param nowMs     The wall-clock time.
+   */
+  synchronized void addNewBlock(ExtendedBlock block, long nowMs) {
+    newBlocks.remove(block);
+    newBlocks.put(block, nowMs);
+    if (newBlocks.size() > MAX_NEW_BLOCKS) {
+      Iterator<ExtendedBlock> iter = newBlocks.keySet().iterator();
+      iter.next();
+      iter.remove();
+    }
+    dirty = true;
+  }
+
+  /**
+   * Get the next block to scan, without removing it from the queue.
+   *
+   * @param nowMs     The wall-clock time.
+   * @return          The first suspect block, or else the first written block
+   *                    if it is old enough, or null.
+   */
+  synchronized ExtendedBlock peek(long nowMs) {
+    if (!suspectBlocks.isEmpty()) {
+      return suspectBlocks.iterator().next();
+    }
+    if (!newBlocks.isEmpty()) {
+      Entry<ExtendedBlock, Long> first =
+          newBlocks.entrySet().iterator().next();
+      if (nowMs - first.getValue() >= newBlockDelayMs) {
+        return first.getKey();
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Get the time until there is a block to scan.
+   *
+   * @param nowMs     The wall-clock time.
+   * @return          0 if there is a block to scan now, or the number of
+   *                    milliseconds until there is one, or Long.MAX_VALUE
+   *                    if the queue is empty.
+   */
+  synchronized long getDelayMs(long nowMs) {
+    if (!suspectBlocks.isEmpty()) {
+      return 0;
+    }
+    if (newBlocks.isEmpty()) {
+      return Long.MAX_VALUE;
+    }
+    long writtenMs = newBlocks.values().iterator().next();
+    return Math.max(0, writtenMs + newBlockDelayMs - nowMs);
+  }
+
+  /**
+   * Remove a block which was scanned from the queue.
+   */
+  synchronized void remove(ExtendedBlock block) {
+    if (suspectBlocks.remove(block) | newBlocks.remove(block) != null) {
+      dirty = true;
+    }
+  }
+
+  /**
+   * @return      True if the queue changed since it was last saved or loaded.
+   */
+  synchronized boolean isDirty() {
+    return dirty;
+  }
+
+  synchronized int size() {
+    return suspectBlocks.size() + newBlocks.size();
+  }
+
+  /**
+   * Load the queue saved to the file, if there is one, in front of the
+   * blocks queued since.
+   */
+  void load() throws IOException {
+    if (file == null || !file.exists()) {
+      return;
+    }
+    List<ExtendedBlock> suspects = new ArrayList<ExtendedBlock>();
+    Map<ExtendedBlock, Long> written = new LinkedHashMap<ExtendedBlock, Long>();
+    DataInputStream in = null;
+    try {
+      in = new DataInputStream(new BufferedInputStream(
+          new FileInputStream(file)));
+      if (in.readInt() != LAYOUT_VERSION) {
+        throw new IOException("Unexpected layout version of " + file);
+      }
+      int numSuspects = in.readInt();
+      for (int i = 0; i < numSuspects; i++) {
+        suspects.add(readBlock(in));
+      }
+      int numWritten = in.readInt();
+      for (int i = 0; i < numWritten; i++) {
+        ExtendedBlock block = readBlock(in);
+        written.put(block, in.readLong());
+      }
+    } finally {
+      IOUtils.closeStream(in);
+    }
+    synchronized (this) {
+      LinkedHashSet<ExtendedBlock> queuedSuspects =
+          new LinkedHashSet<ExtendedBlock>(suspectBlocks);
+      suspectBlocks.clear();
+      suspectBlocks.addAll(suspects);
+      suspectBlocks.addAll(queuedSuspects);
+      Map<ExtendedBlock, Long> queuedWritten =
+          new LinkedHashMap<ExtendedBlock, Long>(newBlocks);
+      newBlocks.clear();
+      for (Entry<ExtendedBlock, Long> entry : written.entrySet()) {
+        addNewBlock(entry.getKey(), entry.getValue());
+      }
+      for (Entry<ExtendedBlock, Long> entry : queuedWritten.entrySet()) {
+        addNewBlock(entry.getKey(), entry.getValue());
+      }
+      dirty = !queuedSuspects.isEmpty() || !queuedWritten.isEmpty();
+    }
+  }
+
+  /**
+   * Save the queue to the file, if it changed since it was last saved.
+   */
+  void save() throws IOException {
+    List<ExtendedBlock> suspects;
+    List<Entry<ExtendedBlock, Long>> written;
+    synchronized (this) {
+      if (file == null || !dirty) {
+        return;
+      }
+      suspects = new ArrayList<ExtendedBlock>(suspectBlocks);
+      written = new ArrayList<Entry<ExtendedBlock, Long>>(
+          newBlocks.entrySet().size());
+      for (Entry<ExtendedBlock, Long> entry : newBlocks.entrySet()) {
+        written.add(
+            new SimpleImmutableEntry<ExtendedBlock, Long>(entry));
+      }
+      dirty = false;
+    }
+    File tmpFile = new File(file.getPath() + ".tmp");
+    boolean success = false;
+    DataOutputStream out = null;
+    try {
+      out = new DataOutputStream(new BufferedOutputStream(
+          new FileOutputStream(tmpFile)));
+      out.writeInt(LAYOUT_VERSION);
+      out.writeInt(suspects.size());
+      for (ExtendedBlock block : suspects) {
+        writeBlock(out, block);
+      }
+      out.writeInt(written.size());
+      for (Entry<ExtendedBlock, Long> entry : written) {
+        writeBlock(out, entry.getKey());
+        out.writeLong(entry.getValue());
+      }
+      out.close();
+      out = null;
+      if (file.exists() && !file.delete()) {
+        throw new IOException("Failed to delete " + file);
+      }
+      Files.move(tmpFile, file);
+      success = true;
+    } finally {
+      IOUtils.closeStream(out);
+      if (!success) {
+        synchronized (this) {
+          dirty = true;
+        }
+        if (!tmpFile.delete()) {
+          VolumeScanner.LOG.debug("Failed to delete {}", tmpFile);
+        }
+      }
+    }
+  }
+
+  private static ExtendedBlock readBlock(DataInputStream in)
+      throws IOException {
+    String bpid = in.readUTF();
+    long blockId = in.readLong();
+    long genStamp = in.readLong();
+    return new ExtendedBlock(bpid, blockId, 0, genStamp);
+  }
+
+  private static void writeBlock(DataOutputStream out, ExtendedBlock block)
+      throws IOException {
+    out.writeUTF(block.getBlockPoolId());
+    out.writeLong(block.getBlockId());
+    out.writeLong(block.getGenerationStamp());
+  }
+}
@@ -19,10 +19,10 @@
 package org.apache.hadoop.hdfs.server.datanode;
 
 import java.io.DataOutputStream;
+import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.util.Iterator;
-import java.util.LinkedHashSet;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.concurrent.TimeUnit;
@@ -33,6 +33,7 @@
 import com.google.common.cache.CacheBuilder;
 import org.apache.hadoop.hdfs.protocol.Block;
 import org.apache.hadoop.hdfs.protocol.ExtendedBlock;
+import org.apache.hadoop.hdfs.server.common.Storage;
 import org.apache.hadoop.hdfs.server.datanode.BlockScanner.Conf;
 import org.apache.hadoop.hdfs.server.datanode.fsdataset.FsVolumeReference;
 import org.apache.hadoop.hdfs.server.datanode.fsdataset.FsVolumeSpi.BlockIterator;
@@ -40,6 +41,7 @@
 import org.apache.hadoop.hdfs.util.DataTransferThrottler;
 import org.apache.hadoop.io.IOUtils;
 import org.apache.hadoop.util.Time;
+import org.apache.hadoop.util.Timer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -66,6 +68,12 @@ public class VolumeScanner extends Thread {
    */
   private final static String BLOCK_ITERATOR_NAME = "scanner";
 
+  /**
+   * The period over which the foreground IO utilization of the volume is
+   * measured, when the scan rate adapts to it.
+   */
+  private final static long UTILIZATION_PERIOD_MS = 10000L;
+
   /**
    * The configuration.
    */
@@ -120,11 +128,37 @@ public class VolumeScanner extends Thread {
       new LinkedList<BlockIterator>();
 
   /**
-   * Blocks which are suspect.
+   * Blocks which are suspect, and blocks which were written and never
+   * verified, if conf.priority is set.
    * The scanner prioritizes scanning these blocks.
    */
-  private final LinkedHashSet<ExtendedBlock> suspectBlocks =
-      new LinkedHashSet<ExtendedBlock>();
+  private final ScanPriorityQueue priorityQueue;
+
+  /**
+   * The monotonic time that the priority queue was last saved.
+   */
+  private long priorityQueueSavedMs = 0;
+
+  /**
+   * The foreground IO of the volume, if conf.adaptive is set.
+   */
+  private final ForegroundIoTracker ioTracker = new ForegroundIoTracker();
+
+  /**
+   * The monotonic time that the foreground IO utilization was last measured.
+   */
+  private long utilizationMeasuredMs = 0;
+
+  /**
+   * The busy time of the foreground IO when the utilization was last
+   * measured.
+   */
+  private long utilizationBusyMs = 0;
+
+  /**
+   * The last measured foreground IO utilization of the volume, from 0 to 1.
+   */
+  private double utilization = 0;
 
   /**
    * Blocks which were suspect which we have scanned.
@@ -164,6 +198,9 @@ public class VolumeScanner extends Thread {
 
   static class Statistics {
     long bytesScannedInPastHour = 0;
+    long scanBytesPerSec = 0;
+    double foregroundIoUtilization = 0;
+    int priorityBlocksQueued = 0;
     long blocksScannedInCurrentPeriod = 0;
     long blocksScannedSinceRestart = 0;
     long scansSinceRestart = 0;
@@ -178,6 +215,9 @@ static class Statistics {
 
     Statistics(Statistics other) {
       this.bytesScannedInPastHour = other.bytesScannedInPastHour;
+      this.scanBytesPerSec = other.scanBytesPerSec;
+      this.foregroundIoUtilization = other.foregroundIoUtilization;
+      this.priorityBlocksQueued = other.priorityBlocksQueued;
       this.blocksScannedInCurrentPeriod = other.blocksScannedInCurrentPeriod;
       this.blocksScannedSinceRestart = other.blocksScannedSinceRestart;
       this.scansSinceRestart = other.scansSinceRestart;
@@ -193,6 +233,10 @@ public String toString() {
       return new StringBuilder().
           append("Statistics{").
           append("bytesScannedInPastHour=").append(bytesScannedInPastHour).
+          append(", scanBytesPerSec=").append(scanBytesPerSec).
+          append(", foregroundIoUtilization=").
+              append(foregroundIoUtilization).
+          append(", priorityBlocksQueued=").append(priorityBlocksQueued).
           append(", blocksScannedInCurrentPeriod=").
               append(blocksScannedInCurrentPeriod).
           append(", blocksScannedSinceRestart=").
@@ -221,6 +265,14 @@ public void printStats(StringBuilder p) {
     synchronized (stats) {
       p.append(String.format("Bytes verified in last hour       : %57d%n",
           stats.bytesScannedInPastHour));
+      p.append(String.format("Scan rate in bytes per second     : %57d%n",
+          stats.scanBytesPerSec));
+      if (conf.adaptive) {
+        p.append(String.format("Foreground IO utilization         : %57.3f%n",
+            stats.foregroundIoUtilization));
+      }
+      p.append(String.format("Blocks queued for priority scan   : %57d%n",
+          stats.priorityBlocksQueued));
       p.append(String.format("Blocks scanned in current period  : %57d%n",
           stats.blocksScannedInCurrentPeriod));
       p.append(String.format("Blocks scanned since restart      : %57d%n",
@@ -248,6 +300,74 @@ public void printStats(StringBuilder p) {
     }
   }
 
+  /**
+   * Tracks the time during which a volume is busy with the disk IO of
+   * foreground reads and writes of blocks, like the utilization of a disk:
+   * the time during which at least one of them is in progress.<p/>
+   *
+   * Only the calls which read or write the block and meta files are
+   * tracked, so that the time spent waiting on the network or on clients
+   * does not count.
+   */
+  static class ForegroundIoTracker {
+    private final Timer timer;
+    private int numActive = 0;
+    private long busySinceMs = 0;
+    private long busyMs = 0;
+    private long addedBusyNanos = 0;
+
+    ForegroundIoTracker() {
+      this(new Timer());
+    }
+
+    @VisibleForTesting
+    ForegroundIoTracker(Timer timer) {
+      this.timer = timer;
+    }
+
+    /**
+     * Record the start of a disk read or write.
+     */
+    synchronized void start() {
+      if (numActive++ == 0) {
+        busySinceMs = timer.monotonicNow();
+      }
+    }
+
+    /**
+     * Record the end of a disk read or write started by {@link #start()}.
+     */
+    synchronized void finish() {
+      Preconditions.checkState(numActive > 0, "No IO in progress");
+      if (--numActive == 0) {
+        busyMs += timer.monotonicNow() - busySinceMs;
+      }
+    }
+
+    /**
+     * Record disk IO which just ended, when it could not be bracketed by
+     * {@link #start()} and {@link #finish()}, e.g. because transferTo did it
+     * along with a network send.  It is counted in full, even if it
+     * overlapped other IO.
+     *
+     * @param nanos     The time the IO took, in nanoseconds.
+     */
+    synchronized void addBusyNanos(long nanos) {
+      addedBusyNanos += nanos;
+    }
+
+    /**
+     * @return    The total time the volume was busy, in milliseconds.
+     */
+    synchronized long getBusyMs() {
+      long ms = busyMs + TimeUnit.NANOSECONDS.toMillis(addedBusyNanos);
+      if (numActive > 0) {
+        ms += timer.monotonicNow() - busySinceMs;
+      }
+      return ms;
+    }
+  }
+
   static class ScanResultHandler {
     private VolumeScanner scanner;
 
@@ -304,6 +424,16 @@ public void handle(ExtendedBlock block, IOException e) {
       handler = new ScanResultHandler();
     }
     this.resultHandler = handler;
+    File queueFile = null;
+    if (conf.priority && volume.getBasePath() != null) {
+      File currentDir = new File(volume.getBasePath(),
+          Storage.STORAGE_DIR_CURRENT);
+      if (currentDir.isDirectory()) {
+        queueFile = new File(currentDir, ScanPriorityQueue.QUEUE_FILE);
+      }
+    }
+    this.priorityQueue = new ScanPriorityQueue(queueFile,
+        conf.newBlockDelayMs);
     setName("VolumeScannerThread(" + volume.getBasePath() + ")");
     setDaemon(true);
   }
@@ -316,6 +446,67 @@ private void saveBlockIterator(BlockIterator iter) {
     }
   }
 
+  private void savePriorityQueue() {
+    try {
+      priorityQueue.save();
+    } catch (IOException e) {
+      LOG.warn("{}: error saving the priority scan queue.", this, e);
+    }
+  }
+
+  /**
+   * Save the priority queue if it changed and was last saved at least
+   * conf.cursorSaveMs ago.
+   */
+  private void savePriorityQueueIfDue(long monotonicMs) {
+    if (priorityQueue.isDirty() &&
+        monotonicMs - priorityQueueSavedMs >= conf.cursorSaveMs) {
+      savePriorityQueue();
+      priorityQueueSavedMs = monotonicMs;
+    }
+  }
+
+  /**
+   * @return    The number of milliseconds until the priority queue should be
+   *              saved, or Long.MAX_VALUE if it has not changed.
+   */
+  private long getPriorityQueueSaveDelayMs(long monotonicMs) {
+    if (!priorityQueue.isDirty()) {
+      return Long.MAX_VALUE;
+    }
+    return Math.max(1L,
+        priorityQueueSavedMs + conf.cursorSaveMs - monotonicMs);
+  }
+
+  /**
+   * Get the rate to scan at.  If conf.adaptive is set, it goes from
+   * conf.adaptiveMaxBytesPerSec when the volume has been idle to
+   * conf.adaptiveMinBytesPerSec when it has been busy with foreground IO
+   * all the time lately.
+   */
+  private long getScanBytesPerSec(long monotonicMs) {
+    if (!conf.adaptive) {
+      return conf.targetBytesPerSec;
+    }
+    long elapsedMs = monotonicMs - utilizationMeasuredMs;
+    if (elapsedMs >= UTILIZATION_PERIOD_MS) {
+      long busyMs = ioTracker.getBusyMs();
+      utilization = Math.min(1.0,
+          (double) (busyMs - utilizationBusyMs) / elapsedMs);
+      utilizationBusyMs = busyMs;
+      utilizationMeasuredMs = monotonicMs;
+    }
+    return calculateAdaptiveBytesPerSec(conf.adaptiveMinBytesPerSec,
+        conf.adaptiveMaxBytesPerSec, utilization);
+  }
+
+  @VisibleForTesting
+  static long calculateAdaptiveBytesPerSec(long minBytesPerSec,
+      long maxBytesPerSec, double utilization) {
+    double idle = 1.0 - Math.max(0.0, Math.min(1.0, utilization));
+    return minBytesPerSec + (long) ((maxBytesPerSec - minBytesPerSec) * idle);
+  }
+
   private void expireOldScannedBytesRecords(long monotonicMs) {
     long newMinute =
         TimeUnit.MINUTES.convert(monotonicMs, TimeUnit.MILLISECONDS);
@@ -434,6 +625,7 @@ private long scanBlock(ExtendedBlock cblock, long bytesPerSec) {
       blockSender = new BlockSender(block, 0, -1,
           false, true, true, datanode, null,
           CachingStrategy.newDropBehind());
+      blockSender.setBackgroundIo();
       throttler.setBandwidth(bytesPerSec);
       long bytesRead = blockSender.sendBlock(nullStream, null, throttler);
       resultHandler.handle(block, null);
@@ -475,21 +667,27 @@ static boolean calculateShouldScan(String storageId, long targetBytesPerSec,
   /**
    * Run an iteration of the VolumeScanner loop.
    *
-   * @param suspectBlock   A suspect block which we should scan, or null to
-   *                       scan the next regularly scheduled block.
+   * @param priorityBlock  A block from the priority queue which we should
+   *                       scan, or null to scan the next regularly scheduled
+   *                       block.
    *
    * @return     The number of milliseconds to delay before running the loop
    *               again, or 0 to re-run the loop immediately.
    */
-  private long runLoop(ExtendedBlock suspectBlock) {
+  private long runLoop(ExtendedBlock priorityBlock) {
     long bytesScanned = -1;
     boolean scanError = false;
     ExtendedBlock block = null;
     try {
       long monotonicMs = Time.monotonicNow();
       expireOldScannedBytesRecords(monotonicMs);
+      // Save the queue on every path, including the ones which wait, so that
+      // the blocks queued meanwhile survive a restart.
+      savePriorityQueueIfDue(monotonicMs);
+      long bytesPerSec = getScanBytesPerSec(monotonicMs);
 
-      if (!calculateShouldScan(volume.getStorageID(), conf.targetBytesPerSec,
+      if (!calculateShouldScan(volume.getStorageID(),
+          conf.adaptive ? conf.adaptiveMaxBytesPerSec : conf.targetBytesPerSec,
           scannedBytesSum, startMinute, curMinute)) {
         // If neededBytesPerSec is too low, then wait few seconds for some old
         // scannedBytes records to expire.
@@ -497,8 +695,8 @@ private long runLoop(ExtendedBlock suspectBlock) {
       }
 
       // Find a usable block pool to scan.
-      if (suspectBlock != null) {
-        block = suspectBlock;
+      if (priorityBlock != null) {
+        block = priorityBlock;
       } else {
         if ((curBlockIter == null) || curBlockIter.atEnd()) {
           long timeout = findNextUsableBlockIter();
@@ -508,7 +706,9 @@ private long runLoop(ExtendedBlock suspectBlock) {
             synchronized (stats) {
               stats.nextBlockPoolScanStartMs = Time.monotonicNow() + timeout;
             }
-            return timeout;
+            // Wake up for the next block in the priority queue meanwhile.
+            return Math.max(1L, Math.min(timeout,
+                priorityQueue.getDelayMs(Time.now())));
           }
           synchronized (stats) {
             stats.scansSinceRestart++;
@@ -543,7 +743,10 @@ private long runLoop(ExtendedBlock suspectBlock) {
           saveBlockIterator(curBlockIter);
         }
       }
-      bytesScanned = scanBlock(block, conf.targetBytesPerSec);
+      bytesScanned = scanBlock(block, bytesPerSec);
+      if (priorityBlock != null) {
+        priorityQueue.remove(priorityBlock);
+      }
       if (bytesScanned >= 0) {
         scannedBytesSum += bytesScanned;
         scannedBytes[(int)(curMinute % MINUTES_PER_HOUR)] += bytesScanned;
@@ -554,6 +757,12 @@ private long runLoop(ExtendedBlock suspectBlock) {
     } finally {
       synchronized (stats) {
         stats.bytesScannedInPastHour = scannedBytesSum;
+        stats.scanBytesPerSec = conf.adaptive ?
+            calculateAdaptiveBytesPerSec(conf.adaptiveMinBytesPerSec,
+                conf.adaptiveMaxBytesPerSec, utilization) :
+            conf.targetBytesPerSec;
+        stats.foregroundIoUtilization = utilization;
+        stats.priorityBlocksQueued = priorityQueue.size();
         if (bytesScanned > 0) {
           stats.blocksScannedInCurrentPeriod++;
           stats.blocksScannedSinceRestart++;
@@ -576,20 +785,6 @@ private long runLoop(ExtendedBlock suspectBlock) {
     }
   }
 
-  /**
-   * If there are elements in the suspectBlocks list, removes
-   * and returns the first one.  Otherwise, returns null.
-   */
-  private synchronized ExtendedBlock popNextSuspectBlock() {
-    Iterator<ExtendedBlock> iter = suspectBlocks.iterator();
-    if (!iter.hasNext()) {
-      return null;
-    }
-    ExtendedBlock block = iter.next();
-    iter.remove();
-    return block;
-  }
-
   @Override
   public void run() {
     // Record the minute on which the scanner started.
@@ -599,25 +794,33 @@ public void run() {
     try {
       LOG.trace("{}: thread starting.", this);
       resultHandler.setup(this);
+      try {
+        priorityQueue.load();
+      } catch (IOException e) {
+        LOG.warn("{}: failed to load the priority scan queue.", this, e);
+      }
       try {
         long timeout = 0;
         while (true) {
-          ExtendedBlock suspectBlock = null;
+          ExtendedBlock priorityBlock = null;
           // Take the lock to check if we should stop, and access the
-          // suspect block list.
+          // priority queue.  A block stays in the queue until it is scanned.
           synchronized (this) {
             if (stopping) {
               break;
             }
             if (timeout > 0) {
+              // Wake up to save the blocks queued since the last save.
+              timeout = Math.min(timeout,
+                  getPriorityQueueSaveDelayMs(Time.monotonicNow()));
               wait(timeout);
               if (stopping) {
                 break;
               }
             }
-            suspectBlock = popNextSuspectBlock();
+            priorityBlock = priorityQueue.peek(Time.now());
           }
-          timeout = runLoop(suspectBlock);
+          timeout = runLoop(priorityBlock);
         }
       } catch (InterruptedException e) {
         // We are exiting because of an InterruptedException,
@@ -627,6 +830,7 @@ public void run() {
         LOG.error("{} exiting because of exception ", this, e);
       }
       LOG.info("{} exiting.", this);
+      savePriorityQueue();
       // Save the current position of all block iterators and close them.
       for (BlockIterator iter : blockIters) {
         saveBlockIterator(iter);
@@ -667,17 +871,33 @@ public synchronized void markSuspectBlock(ExtendedBlock block) {
           "rescanning, because we rescanned it recently.", this, block);
       return;
     }
-    if (suspectBlocks.contains(block)) {
+    if (!priorityQueue.addSuspectBlock(block)) {
       LOG.debug("{}: suspect block {} is already queued for " +
           "rescanning.", this, block);
       return;
     }
-    suspectBlocks.add(block);
     recentSuspectBlocks.put(block, true);
     LOG.debug("{}: Scheduling suspect block {} for rescanning.", this, block);
     notify(); // wake scanner thread.
   }
 
+  /**
+   * Queue a block which was just written for a scan.
+   */
+  public synchronized void markNewBlock(ExtendedBlock block) {
+    if (stopping) {
+      return;
+    }
+    priorityQueue.addNewBlock(block, Time.now());
+    LOG.trace("{}: Queueing new block {} for scanning.", this, block);
+    // The scanner thread may have to shorten its wait for the block.
+    notify();
+  }
+
+  ForegroundIoTracker getIoTracker() {
+    return ioTracker;
+  }
+
   /**
    * Allow the scanner to scan the given block pool.
    *
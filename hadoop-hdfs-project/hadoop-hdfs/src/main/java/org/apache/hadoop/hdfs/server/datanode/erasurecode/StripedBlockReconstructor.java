@@ -18,9 +18,11 @@
 package org.apache.hadoop.hdfs.server.datanode.erasurecode;
 
 import java.io.IOException;
+import java.io.InterruptedIOException;
 import java.nio.ByteBuffer;
 
 import org.apache.hadoop.classification.InterfaceAudience;
+import org.apache.hadoop.hdfs.DFSConfigKeys;
 
 /**
  * StripedBlockReconstructor reconstruct one or more missed striped block in
@@ -32,6 +34,7 @@ class StripedBlockReconstructor extends StripedReconstructor
     implements Runnable {
 
   private StripedWriter stripedWriter;
+  private final int pipelineDepth;
 
   StripedBlockReconstructor(ErasureCodingWorker worker,
       StripedReconstructionInfo stripedReconInfo) {
@@ -39,6 +42,9 @@ class StripedBlockReconstructor extends StripedReconstructor
 
     stripedWriter = new StripedWriter(this, getDatanode(),
         getConf(), stripedReconInfo);
+    pipelineDepth = getConf().getInt(
+        DFSConfigKeys.DFS_DN_EC_RECONSTRUCTION_PIPELINE_DEPTH_KEY,
+        DFSConfigKeys.DFS_DN_EC_RECONSTRUCTION_PIPELINE_DEPTH_DEFAULT);
   }
 
   boolean hasValidTargets() {
@@ -73,6 +79,10 @@ public void run() {
   }
 
   void reconstruct() throws IOException {
+    if (pipelineDepth > 1) {
+      reconstructPipelined();
+      return;
+    }
     while (getPositionInBlock() < getMaxTargetLength()) {
       long remaining = getMaxTargetLength() - getPositionInBlock();
       final int toReconstructLen =
@@ -97,6 +107,38 @@ void reconstruct() throws IOException {
     }
   }
 
+  /**
+   * Reconstruct like {@link #reconstruct()}, but read the next rounds from
+   * the sources while the previous ones are decoded and transferred by a
+   * {@link StripedReconstructionPipeline}.
+   */
+  private void reconstructPipelined() throws IOException {
+    StripedReconstructionPipeline pipeline =
+        new StripedReconstructionPipeline(this, stripedWriter, pipelineDepth);
+    try {
+      while (getPositionInBlock() < getMaxTargetLength()) {
+        long remaining = getMaxTargetLength() - getPositionInBlock();
+        final int toReconstructLen =
+            (int) Math.min(getStripedReader().getBufferSize(), remaining);
+
+        getStripedReader().readMinimumSources(toReconstructLen);
+
+        pipeline.submit(getStripedReader().takeInputBuffers(toReconstructLen),
+            getPositionInBlock(), toReconstructLen);
+
+        updatePositionInBlock(toReconstructLen);
+
+        getStripedReader().clearBuffers();
+      }
+      pipeline.drain();
+    } catch (InterruptedException e) {
+      throw new InterruptedIOException("Interrupted while reconstructing " +
+          getBlockGroup());
+    } finally {
+      pipeline.close();
+    }
+  }
+
   private void reconstructTargets(int toReconstructLen) {
     ByteBuffer[] inputs = getStripedReader().getInputBuffers(toReconstructLen);
 
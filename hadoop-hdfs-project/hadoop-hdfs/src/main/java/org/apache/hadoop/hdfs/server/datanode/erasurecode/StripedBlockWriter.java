@@ -157,6 +157,14 @@ private void init() throws IOException {
    * Send data to targets.
    */
   void transferData2Target(byte[] packetBuf) throws IOException {
+    transferData2Target(packetBuf, targetBuffer);
+  }
+
+  /**
+   * Send the data of the given buffer to targets.
+   */
+  void transferData2Target(byte[] packetBuf, ByteBuffer targetBuffer)
+      throws IOException {
     if (targetBuffer.remaining() == 0) {
       return;
     }
@@ -231,6 +231,24 @@ ByteBuffer[] getInputBuffers(int toReconstructLen) {
     return inputs;
   }
 
+  /**
+   * Get the input buffers like {@link #getInputBuffers(int)}, and hand them
+   * over to the caller, who frees them once they are decoded. The next reads
+   * go to new buffers.
+   */
+  ByteBuffer[] takeInputBuffers(int toReconstructLen) {
+    ByteBuffer[] inputs = getInputBuffers(toReconstructLen);
+    for (int i = 0; i < successList.length; i++) {
+      getReader(successList[i]).freeReadBuffer();
+    }
+    if (successList.length < dataBlkNum) {
+      for (int i = 0; i < zeroStripeBuffers.length; i++) {
+        zeroStripeBuffers[i] = reconstructor.allocateBuffer(bufferSize);
+      }
+    }
+    return inputs;
+  }
+
   private void paddingBufferToLen(ByteBuffer buffer, int len) {
     if (len > buffer.limit()) {
       buffer.limit(len);
@@ -0,0 +1,198 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs.server.datanode.erasurecode;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.hadoop.classification.InterfaceAudience;
+import org.apache.hadoop.hdfs.server.datanode.DataNode;
+import org.apache.hadoop.util.Daemon;
+import org.slf4j.Logger;
+
+/**
+ * Decodes and transfers the rounds of a striped block reconstruction in the
+ * background, so that the reconstructor reads the next rounds from the
+ * sources meanwhile.
+ *
+ * A round is decoded by the decode thread once it is read, and sent to the
+ * targets by the transfer thread once it is decoded, so that the reading of
+ * a round, the decoding of the previous one and the transfer of the one
+ * before can all overlap. Each thread handles the rounds in order. A round
+ * owns its input and output buffers, which are freed once it is sent; at
+ * most <code>depth</code> rounds are in flight.
+ */
+@InterfaceAudience.Private
+class StripedReconstructionPipeline implements Closeable {
+  private static final Logger LOG = DataNode.LOG;
+
+  private final StripedReconstructor reconstructor;
+  private final StripedWriter stripedWriter;
+  private final int depth;
+  private final Semaphore freeRounds;
+  private final ExecutorService decodeExecutor;
+  private final ExecutorService transferExecutor;
+  private volatile IOException failure;
+
+  StripedReconstructionPipeline(StripedReconstructor reconstructor,
+      StripedWriter stripedWriter, int depth) {
+    this.reconstructor = reconstructor;
+    this.stripedWriter = stripedWriter;
+    this.depth = depth;
+    this.freeRounds = new Semaphore(depth);
+    final String name = "blk_" + reconstructor.getBlockGroup().getBlockId();
+    this.decodeExecutor = Executors.newSingleThreadExecutor(
+        new Daemon.DaemonFactory() {
+          @Override
+          public Thread newThread(Runnable r) {
+            Thread t = super.newThread(r);
+            t.setName("stripedDecode-" + name);
+            return t;
+          }
+        });
+    this.transferExecutor = Executors.newSingleThreadExecutor(
+        new Daemon.DaemonFactory() {
+          @Override
+          public Thread newThread(Runnable r) {
+            Thread t = super.newThread(r);
+            t.setName("stripedTransfer-" + name);
+            return t;
+          }
+        });
+  }
+
+  /**
+   * Queue a round to be decoded and sent to the targets, waiting while
+   * <code>depth</code> rounds are in flight.
+   *
+   * @param inputs the input buffers of the round, which the pipeline frees
+   * @param positionInBlock the position of the round in the blocks
+   * @param toReconstructLen the length of the round
+   * @throws IOException if a previous round failed
+   */
+  void submit(final ByteBuffer[] inputs, final long positionInBlock,
+      final int toReconstructLen) throws IOException, InterruptedException {
+    try {
+      checkFailure();
+      freeRounds.acquire();
+    } catch (IOException | InterruptedException e) {
+      freeBuffers(inputs);
+      throw e;
+    }
+    decodeExecutor.execute(new Runnable() {
+      @Override
+      public void run() {
+        ByteBuffer[] outputs = null;
+        try {
+          if (failure != null) {
+            freeRounds.release();
+            return;
+          }
+          outputs = stripedWriter.allocateTargetBuffers(toReconstructLen);
+          reconstructor.getDecoder().decode(inputs,
+              stripedWriter.getTargetIndices(), outputs);
+          stripedWriter.limitTargetBuffers(outputs, positionInBlock,
+              toReconstructLen);
+          transfer(outputs);
+        } catch (Throwable t) {
+          fail(new IOException("Failed to decode " +
+              reconstructor.getBlockGroup() + " at " + positionInBlock, t));
+          if (outputs != null) {
+            stripedWriter.freeBuffers(outputs);
+          }
+          freeRounds.release();
+        } finally {
+          freeBuffers(inputs);
+        }
+      }
+    });
+  }
+
+  private void transfer(final ByteBuffer[] outputs) {
+    transferExecutor.execute(new Runnable() {
+      @Override
+      public void run() {
+        try {
+          if (failure == null &&
+              stripedWriter.transferData2Targets(outputs) == 0) {
+            fail(new IOException("Transfer failed for all targets."));
+          }
+        } catch (Throwable t) {
+          fail(new IOException("Failed to transfer " +
+              reconstructor.getBlockGroup(), t));
+        } finally {
+          stripedWriter.freeBuffers(outputs);
+          freeRounds.release();
+        }
+      }
+    });
+  }
+
+  /**
+   * Wait for all the rounds in flight to be sent to the targets.
+   *
+   * @throws IOException if a round failed
+   */
+  void drain() throws IOException, InterruptedException {
+    freeRounds.acquire(depth);
+    freeRounds.release(depth);
+    checkFailure();
+  }
+
+  private void fail(IOException e) {
+    if (failure == null) {
+      failure = e;
+    }
+  }
+
+  private void checkFailure() throws IOException {
+    IOException e = failure;
+    if (e != null) {
+      throw e;
+    }
+  }
+
+  private void freeBuffers(ByteBuffer[] buffers) {
+    for (ByteBuffer buffer : buffers) {
+      if (buffer != null) {
+        reconstructor.freeBuffer(buffer);
+      }
+    }
+  }
+
+  @Override
+  public void close() {
+    decodeExecutor.shutdownNow();
+    transferExecutor.shutdownNow();
+    try {
+      // The writers are closed once the rounds in flight are done with them
+      if (!decodeExecutor.awaitTermination(1, TimeUnit.MINUTES) ||
+          !transferExecutor.awaitTermination(1, TimeUnit.MINUTES)) {
+        LOG.warn("Timed out waiting for the reconstruction of {} to stop",
+            reconstructor.getBlockGroup());
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+}
@@ -156,6 +156,28 @@ int transferData2Targets() {
     return nSuccess;
   }
 
+  /**
+   * Send reconstructed data from the given buffers, one per target, to
+   * targets.
+   */
+  int transferData2Targets(ByteBuffer[] targetBuffers) {
+    int nSuccess = 0;
+    for (int i = 0; i < targets.length; i++) {
+      if (targetsStatus[i]) {
+        boolean success = false;
+        try {
+          writers[i].transferData2Target(packetBuf, targetBuffers[i]);
+          nSuccess++;
+          success = true;
+        } catch (IOException e) {
+          LOG.warn(e.getMessage());
+        }
+        targetsStatus[i] = success;
+      }
+    }
+    return nSuccess;
+  }
+
   /**
    * Send an empty packet to mark the end of the block.
    */
@@ -225,6 +247,59 @@ int[] getRealTargetIndices() {
     return results;
   }
 
+  /**
+   * @return the indices of all the targets, whether they failed or not.
+   */
+  int[] getTargetIndices() {
+    int[] results = new int[targetIndices.length];
+    for (int i = 0; i < targetIndices.length; i++) {
+      results[i] = targetIndices[i];
+    }
+    return results;
+  }
+
+  /**
+   * Allocate a buffer per target for reconstructing toReconstructLen bytes,
+   * which the caller frees with {@link #freeBuffers(ByteBuffer[])}.
+   */
+  ByteBuffer[] allocateTargetBuffers(int toReconstructLen) {
+    ByteBuffer[] buffers = new ByteBuffer[targets.length];
+    for (int i = 0; i < targets.length; i++) {
+      buffers[i] = allocateWriteBuffer();
+      buffers[i].limit(toReconstructLen);
+    }
+    return buffers;
+  }
+
+  /**
+   * Limit the reconstructed data in the buffers of the targets to the
+   * length of their blocks.
+   *
+   * @param targetBuffers the buffers, one per target
+   * @param positionInBlock the position of the data in the blocks
+   * @param toReconstructLen the length of the data
+   */
+  void limitTargetBuffers(ByteBuffer[] targetBuffers, long positionInBlock,
+      int toReconstructLen) {
+    for (int i = 0; i < targets.length; i++) {
+      long blockLen = reconstructor.getBlockLen(targetIndices[i]);
+      long remaining = blockLen - positionInBlock;
+      if (remaining <= 0) {
+        targetBuffers[i].limit(0);
+      } else if (remaining < toReconstructLen) {
+        targetBuffers[i].limit((int)remaining);
+      }
+    }
+  }
+
+  void freeBuffers(ByteBuffer[] buffers) {
+    for (ByteBuffer buffer : buffers) {
+      if (buffer != null) {
+        reconstructor.freeBuffer(buffer);
+      }
+    }
+  }
+
   ByteBuffer[] getRealTargetBuffers(int toReconstructLen) {
     int numGood = getRealTargets();
     ByteBuffer[] outputs = new ByteBuffer[numGood];
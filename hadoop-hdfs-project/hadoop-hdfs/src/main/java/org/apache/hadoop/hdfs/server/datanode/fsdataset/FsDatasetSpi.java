@@ -403,6 +403,32 @@ Replica recoverClose(ExtendedBlock b, long newGS, long expectedBlockLen
    */
   Map<DatanodeStorage, BlockListAsLongs> getBlockReports(String bpid);
 
+  /**
+   * Returns one block report per volume, holding just the replicas whose
+   * block IDs are in the given range. Together with
+   * {@link #getBlockReportSegments}, this lets the full block reports be
+   * built and sent a segment at a time.
+   * @param bpid Block Pool Id
+   * @param minBlockId the lowest block ID to report, inclusive
+   * @param maxBlockId the highest block ID to report, inclusive
+   * @return - a map of DatanodeStorage to block report for the volume.
+   */
+  Map<DatanodeStorage, BlockListAsLongs> getBlockReports(String bpid,
+      long minBlockId, long maxBlockId);
+
+  /**
+   * Divides the replicas of a block pool into ranges of block IDs holding
+   * at most about the given number of replicas each. The replicas of a
+   * striped block group are never split between ranges.
+   * @param bpid Block Pool Id
+   * @param maxReplicasPerSegment the number of replicas per range
+   * @return the highest block ID of each range, in increasing order. The
+   *         first range starts from {@link Long#MIN_VALUE}, each next range
+   *         from the end of the one before, and the last range ends with
+   *         {@link Long#MAX_VALUE}.
+   */
+  long[] getBlockReportSegments(String bpid, int maxReplicasPerSegment);
+
   /**
    * Returns the cache report - the full list of cached block IDs of a
    * block pool.
@@ -67,6 +67,8 @@
 import org.apache.hadoop.hdfs.protocol.ExtendedBlock;
 import org.apache.hadoop.hdfs.protocol.HdfsConstants;
 import org.apache.hadoop.hdfs.protocol.RecoveryInProgressException;
+import org.apache.hadoop.hdfs.server.blockmanagement.BlockIdManager;
+import org.apache.hadoop.hdfs.server.common.HdfsServerConstants;
 import org.apache.hadoop.hdfs.server.common.HdfsServerConstants.ReplicaState;
 import org.apache.hadoop.hdfs.server.common.Storage;
 import org.apache.hadoop.hdfs.server.datanode.BlockMetadataHeader;
@@ -121,6 +123,7 @@
 import com.google.common.base.Preconditions;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Sets;
+import com.google.common.primitives.Longs;
 
 /**************************************************
  * FSDataset manages a set of data blocks.  Each block
@@ -265,6 +268,7 @@ public LengthInputStream getMetaDataInputStream(ExtendedBlock b)
   private boolean blockPinningEnabled;
   private final int maxDataLength;
 
+  private final FsDatasetLockManager lockManager;
   private final AutoCloseableLock datasetLock;
   
   /**
@@ -277,7 +281,10 @@ public LengthInputStream getMetaDataInputStream(ExtendedBlock b)
     this.dataStorage = storage;
     this.conf = conf;
     this.smallBufferSize = DFSUtilClient.getSmallBufferSize(conf);
-    this.datasetLock = new AutoCloseableLock();
+    this.lockManager = new FsDatasetLockManager(conf.getBoolean(
+        DFSConfigKeys.DFS_DATANODE_FSDATASET_VOLUME_LOCKS_ENABLED_KEY,
+        DFSConfigKeys.DFS_DATANODE_FSDATASET_VOLUME_LOCKS_ENABLED_DEFAULT));
+    this.datasetLock = lockManager.getDatasetLock();
     // The number of volumes required for operation is the total number
     // of volumes minus the number of failed volumes we can tolerate.
     volFailuresTolerated = datanode.getDnConf().getVolFailuresTolerated();
@@ -298,7 +305,7 @@ public LengthInputStream getMetaDataInputStream(ExtendedBlock b)
     }
 
     storageMap = new ConcurrentHashMap<String, DatanodeStorage>();
-    volumeMap = new ReplicaMap(this);
+    volumeMap = new ReplicaMap(datasetLock);
     ramDiskReplicaTracker = RamDiskReplicaTracker.getInstance(conf, this);
 
     @SuppressWarnings("unchecked")
@@ -355,6 +362,14 @@ public AutoCloseableLock acquireDatasetLock() {
     return datasetLock.acquire();
   }
 
+  /**
+   * Acquire the dataset lock shared with the operations on single block
+   * pools and volumes, if volume locks are enabled, or else exclusively.
+   */
+  AutoCloseableLock acquireDatasetReadLock() {
+    return lockManager.getDatasetReadLock().acquire();
+  }
+
   /**
    * Gets initial volume failure information for all volumes that failed
    * immediately at startup.  The method works by determining the set difference
@@ -424,7 +439,7 @@ private void addVolume(Collection<StorageLocation> dataLocations,
     FsVolumeImpl fsVolume = new FsVolumeImpl(
         this, sd.getStorageUuid(), dir, this.conf, storageType);
     FsVolumeReference ref = fsVolume.obtainReference();
-    ReplicaMap tempVolumeMap = new ReplicaMap(this);
+    ReplicaMap tempVolumeMap = new ReplicaMap();
     fsVolume.getVolumeMap(tempVolumeMap, ramDiskReplicaTracker);
 
     activateVolume(tempVolumeMap, sd, storageType, ref);
@@ -458,7 +473,7 @@ public void addVolume(final StorageLocation location,
     StorageType storageType = location.getStorageType();
     final FsVolumeImpl fsVolume =
         createFsVolume(sd.getStorageUuid(), sd.getCurrentDir(), storageType);
-    final ReplicaMap tempVolumeMap = new ReplicaMap(fsVolume);
+    final ReplicaMap tempVolumeMap = new ReplicaMap();
     ArrayList<IOException> exceptions = Lists.newArrayList();
 
     for (final NamespaceInfo nsInfo : nsInfos) {
@@ -1427,7 +1442,11 @@ private void bumpReplicaGS(ReplicaInfo replicaInfo,
   public ReplicaHandler createRbw(
       StorageType storageType, ExtendedBlock b, boolean allowLazyPersist)
       throws IOException {
-    try (AutoCloseableLock lock = datasetLock.acquire()) {
+    // Evicting lazy persist replicas to make room for the new one takes the
+    // dataset lock.
+    final boolean lazyPersist = allowLazyPersist && lazyWriter != null;
+    try (AutoCloseableLock lock = lazyPersist ? datasetLock.acquire() :
+        lockManager.getBlockPoolReadLock(b.getBlockPoolId()).acquire()) {
       ReplicaInfo replicaInfo = volumeMap.get(b.getBlockPoolId(),
           b.getBlockId());
       if (replicaInfo != null) {
@@ -1441,8 +1460,7 @@ public ReplicaHandler createRbw(
       // Use ramdisk only if block size is a multiple of OS page size.
       // This simplifies reservation for partially used replicas
       // significantly.
-      if (allowLazyPersist &&
-          lazyWriter != null &&
+      if (lazyPersist &&
           b.getNumBytes() % cacheManager.getOsPageSize() == 0 &&
           reserveLockedMemory(b.getNumBytes())) {
         try {
@@ -1469,19 +1487,35 @@ public ReplicaHandler createRbw(
         datanode.getMetrics().incrRamDiskBlocksWriteFallback();
       }
 
-      File f;
-      try {
-        f = v.createRbwFile(b.getBlockPoolId(), b.getLocalBlock());
-      } catch (IOException e) {
-        IOUtils.cleanup(null, ref);
-        throw e;
-      }
+      try (AutoCloseableLock volumeLock = lockManager.getVolumeLock(
+          b.getBlockPoolId(), v.getStorageID()).acquire()) {
+        File f;
+        try {
+          f = v.createRbwFile(b.getBlockPoolId(), b.getLocalBlock());
+        } catch (IOException e) {
+          IOUtils.cleanup(null, ref);
+          throw e;
+        }
 
-      ReplicaBeingWritten newReplicaInfo =
-          new ReplicaBeingWritten(b.getBlockId(),
-          b.getGenerationStamp(), v, f.getParentFile(), b.getNumBytes());
-      volumeMap.add(b.getBlockPoolId(), newReplicaInfo);
-      return new ReplicaHandler(newReplicaInfo, ref);
+        ReplicaBeingWritten newReplicaInfo =
+            new ReplicaBeingWritten(b.getBlockId(),
+            b.getGenerationStamp(), v, f.getParentFile(), b.getNumBytes());
+        // Another writer may have created the block on another volume since
+        // we checked.
+        replicaInfo = volumeMap.addIfAbsent(b.getBlockPoolId(),
+            newReplicaInfo);
+        if (replicaInfo != null) {
+          newReplicaInfo.releaseAllBytesReserved();
+          if (delBlockFromDisk(f, null, b.getLocalBlock())) {
+            v.onBlockFileDeletion(b.getBlockPoolId(), 0);
+          }
+          IOUtils.cleanup(null, ref);
+          throw new ReplicaAlreadyExistsException("Block " + b +
+              " already exists in state " + replicaInfo.getState() +
+              " and thus cannot be created.");
+        }
+        return new ReplicaHandler(newReplicaInfo, ref);
+      }
     }
   }
 
@@ -1710,24 +1744,37 @@ public void adjustCrcChannelPosition(ExtendedBlock b, ReplicaOutputStreams strea
    */
   @Override // FsDatasetSpi
   public void finalizeBlock(ExtendedBlock b) throws IOException {
-    try (AutoCloseableLock lock = datasetLock.acquire()) {
+    try (AutoCloseableLock lock =
+        lockManager.getBlockPoolReadLock(b.getBlockPoolId()).acquire()) {
       if (Thread.interrupted()) {
         // Don't allow data modifications from interrupted threads
         throw new IOException("Cannot finalize block from Interrupted Thread");
       }
       ReplicaInfo replicaInfo = getReplicaInfo(b);
-      if (replicaInfo.getState() == ReplicaState.FINALIZED) {
-        // this is legal, when recovery happens on a file that has
-        // been opened for append but never modified
-        return;
+      try (AutoCloseableLock volumeLock = lockManager.getVolumeLock(
+          b.getBlockPoolId(), replicaInfo.getVolume().getStorageID())
+          .acquire()) {
+        // Look the replica up again, in case another thread finalized it
+        // while we were waiting for the volume lock.
+        replicaInfo = getReplicaInfo(b);
+        if (replicaInfo.getState() == ReplicaState.FINALIZED) {
+          // this is legal, when recovery happens on a file that has
+          // been opened for append but never modified
+          return;
+        }
+        finalizeReplica(b.getBlockPoolId(), replicaInfo);
       }
-      finalizeReplica(b.getBlockPoolId(), replicaInfo);
     }
   }
   
   private FinalizedReplica finalizeReplica(String bpid,
       ReplicaInfo replicaInfo) throws IOException {
-    try (AutoCloseableLock lock = datasetLock.acquire()) {
+    if (replicaInfo.getVolume() == null) {
+      throw new IOException("No volume for temporary file " +
+          replicaInfo.getBlockFile() + " for block " + replicaInfo);
+    }
+    try (AutoCloseableLock lock = lockManager.getVolumeLock(bpid,
+        replicaInfo.getVolume().getStorageID()).acquire()) {
       FinalizedReplica newReplicaInfo = null;
       if (replicaInfo.getState() == ReplicaState.RUR &&
           ((ReplicaUnderRecovery) replicaInfo).getOriginalReplica().getState()
@@ -1737,11 +1784,6 @@ private FinalizedReplica finalizeReplica(String bpid,
       } else {
         FsVolumeImpl v = (FsVolumeImpl) replicaInfo.getVolume();
         File f = replicaInfo.getBlockFile();
-        if (v == null) {
-          throw new IOException("No volume for temporary file " + f +
-              " for block " + replicaInfo);
-        }
-
         File dest = v.addFinalizedBlock(
             bpid, replicaInfo, f, replicaInfo.getBytesReserved());
         newReplicaInfo =
@@ -1821,6 +1863,12 @@ public List<Long> getCacheReport(String bpid) {
 
   @Override
   public Map<DatanodeStorage, BlockListAsLongs> getBlockReports(String bpid) {
+    return getBlockReports(bpid, Long.MIN_VALUE, Long.MAX_VALUE);
+  }
+
+  @Override
+  public Map<DatanodeStorage, BlockListAsLongs> getBlockReports(String bpid,
+      long minBlockId, long maxBlockId) {
     Map<DatanodeStorage, BlockListAsLongs> blockReportsMap =
         new HashMap<DatanodeStorage, BlockListAsLongs>();
 
@@ -1832,8 +1880,14 @@ public Map<DatanodeStorage, BlockListAsLongs> getBlockReports(String bpid) {
       builders.put(v.getStorageID(), BlockListAsLongs.builder(maxDataLength));
     }
 
-    try (AutoCloseableLock lock = datasetLock.acquire()) {
-      for (ReplicaInfo b : volumeMap.replicas(bpid)) {
+    try (AutoCloseableLock lock =
+        lockManager.getBlockPoolReadLock(bpid).acquire()) {
+      for (Iterator<ReplicaInfo> it = volumeMap.replicas(bpid, minBlockId);
+           it.hasNext();) {
+        ReplicaInfo b = it.next();
+        if (b.getBlockId() > maxBlockId) {
+          break;
+        }
         switch(b.getState()) {
           case FINALIZED:
           case RBW:
@@ -1861,12 +1915,44 @@ public Map<DatanodeStorage, BlockListAsLongs> getBlockReports(String bpid) {
     return blockReportsMap;
   }
 
+  @Override // FsDatasetSpi
+  public long[] getBlockReportSegments(String bpid,
+      int maxReplicasPerSegment) {
+    List<Long> ends = new ArrayList<Long>();
+    try (AutoCloseableLock lock =
+        lockManager.getBlockPoolReadLock(bpid).acquire()) {
+      int count = 0;
+      long end = Long.MIN_VALUE;
+      for (Iterator<ReplicaInfo> it = volumeMap.replicas(bpid, Long.MIN_VALUE);
+           it.hasNext();) {
+        long blockId = it.next().getBlockId();
+        if (blockId <= end) {
+          // still in the striped block group which ended the last segment
+          continue;
+        }
+        if (++count >= maxReplicasPerSegment) {
+          // Keep all the internal blocks of a group in the same segment
+          end = BlockIdManager.isStripedBlockID(blockId) ?
+              blockId | HdfsServerConstants.BLOCK_GROUP_INDEX_MASK : blockId;
+          if (end == Long.MAX_VALUE) {
+            break;
+          }
+          ends.add(end);
+          count = 0;
+        }
+      }
+    }
+    ends.add(Long.MAX_VALUE);
+    return Longs.toArray(ends);
+  }
+
   /**
    * Get the list of finalized blocks from in-memory blockmap for a block pool.
    */
   @Override
   public List<FinalizedReplica> getFinalizedBlocks(String bpid) {
-    try (AutoCloseableLock lock = datasetLock.acquire()) {
+    try (AutoCloseableLock lock =
+        lockManager.getBlockPoolReadLock(bpid).acquire()) {
       ArrayList<FinalizedReplica> finalized =
           new ArrayList<FinalizedReplica>(volumeMap.size(bpid));
       for (ReplicaInfo b : volumeMap.replicas(bpid)) {
@@ -1884,7 +1970,8 @@ public List<FinalizedReplica> getFinalizedBlocks(String bpid) {
   @Override
   public List<FinalizedReplica> getFinalizedBlocksOnPersistentStorage(
       String bpid) {
-    try (AutoCloseableLock lock = datasetLock.acquire()) {
+    try (AutoCloseableLock lock =
+        lockManager.getBlockPoolReadLock(bpid).acquire()) {
       ArrayList<FinalizedReplica> finalized =
           new ArrayList<FinalizedReplica>(volumeMap.size(bpid));
       for (ReplicaInfo b : volumeMap.replicas(bpid)) {
@@ -2019,7 +2106,8 @@ public void invalidate(String bpid, Block invalidBlks[]) throws IOException {
     for (int i = 0; i < invalidBlks.length; i++) {
       final File f;
       final FsVolumeImpl v;
-      try (AutoCloseableLock lock = datasetLock.acquire()) {
+      try (AutoCloseableLock lock =
+          lockManager.getBlockPoolWriteLock(bpid).acquire()) {
         final ReplicaInfo info = volumeMap.get(bpid, invalidBlks[i]);
         if (info == null) {
           // It is okay if the block is not found -- it may be deleted earlier.
@@ -2503,7 +2591,7 @@ static ReplicaRecoveryInfo initReplicaRecovery(String bpid, ReplicaMap map,
       Block block, long recoveryId, long xceiverStopTimeout) throws IOException {
     while (true) {
       try {
-        synchronized (map.getMutex()) {
+        try (AutoCloseableLock lock = map.getLock().acquire()) {
           return initReplicaRecoveryImpl(bpid, map, block, recoveryId);
         }
       } catch (MustStopExistingWriter e) {
@@ -3279,6 +3367,11 @@ public void setTimer(Timer newTimer) {
     this.timer = newTimer;
   }
 
+  @VisibleForTesting
+  FsDatasetLockManager getLockManager() {
+    return lockManager;
+  }
+
   void stopAllDataxceiverThreads(FsVolumeImpl volume) {
     try (AutoCloseableLock lock = datasetLock.acquire()) {
       for (String blockPoolId : volumeMap.getBlockPoolList()) {
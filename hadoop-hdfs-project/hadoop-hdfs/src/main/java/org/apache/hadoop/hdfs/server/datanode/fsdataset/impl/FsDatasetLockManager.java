@@ -0,0 +1,141 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs.server.datanode.fsdataset.impl;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import org.apache.hadoop.util.AutoCloseableLock;
+
+/**
+ * Manages the locks of a {@link FsDatasetImpl}.
+ *
+ * The dataset lock is a read-write lock. Operations which change the set of
+ * volumes or block pools, or which touch replicas on more than one volume,
+ * hold it exclusively, as {@link FsDatasetImpl#acquireDatasetLock()} does.
+ *
+ * With volume locks enabled, operations confined to one block pool hold the
+ * dataset lock shared and the lock of the block pool, and operations on the
+ * replicas of one volume hold the lock of that volume on top. Locks are
+ * always taken in this order: dataset, block pool, volume. A replica only
+ * moves to another volume under the exclusive dataset lock, so the volume of
+ * a replica does not change while its block pool lock is held.
+ *
+ * With volume locks disabled, every lock is the exclusive dataset lock.
+ */
+class FsDatasetLockManager {
+  private final boolean volumeLocksEnabled;
+  private final ReentrantReadWriteLock datasetLock =
+      new ReentrantReadWriteLock();
+  private final AutoCloseableLock exclusiveLock =
+      new AutoCloseableLock(datasetLock.writeLock());
+  private final AutoCloseableLock sharedLock;
+  private final ConcurrentMap<String, BlockPoolLocks> blockPoolLocks =
+      new ConcurrentHashMap<>();
+
+  /** The locks of a block pool and of its volumes. */
+  private class BlockPoolLocks {
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private final AutoCloseableLock readLock = new AutoCloseableLock(
+        datasetLock.readLock(), lock.readLock());
+    private final AutoCloseableLock writeLock = new AutoCloseableLock(
+        datasetLock.readLock(), lock.writeLock());
+    private final ConcurrentMap<String, AutoCloseableLock> volumeLocks =
+        new ConcurrentHashMap<>();
+
+    AutoCloseableLock getVolumeLock(String storageId) {
+      AutoCloseableLock volumeLock = volumeLocks.get(storageId);
+      if (volumeLock == null) {
+        volumeLock = new AutoCloseableLock(datasetLock.readLock(),
+            lock.readLock(), new ReentrantLock());
+        AutoCloseableLock prev =
+            volumeLocks.putIfAbsent(storageId, volumeLock);
+        if (prev != null) {
+          volumeLock = prev;
+        }
+      }
+      return volumeLock;
+    }
+  }
+
+  FsDatasetLockManager(boolean volumeLocksEnabled) {
+    this.volumeLocksEnabled = volumeLocksEnabled;
+    this.sharedLock = volumeLocksEnabled ?
+        new AutoCloseableLock(datasetLock.readLock()) : exclusiveLock;
+  }
+
+  boolean isVolumeLocksEnabled() {
+    return volumeLocksEnabled;
+  }
+
+  /**
+   * @return the exclusive dataset lock.
+   */
+  AutoCloseableLock getDatasetLock() {
+    return exclusiveLock;
+  }
+
+  /**
+   * @return the shared dataset lock, for operations which only need the set
+   *         of volumes and block pools not to change.
+   */
+  AutoCloseableLock getDatasetReadLock() {
+    return sharedLock;
+  }
+
+  /**
+   * @return the lock for reading the replicas of a block pool.
+   */
+  AutoCloseableLock getBlockPoolReadLock(String bpid) {
+    return volumeLocksEnabled ?
+        getBlockPoolLocks(bpid).readLock : exclusiveLock;
+  }
+
+  /**
+   * @return the lock for changing the replicas of a block pool on any
+   *         volume.
+   */
+  AutoCloseableLock getBlockPoolWriteLock(String bpid) {
+    return volumeLocksEnabled ?
+        getBlockPoolLocks(bpid).writeLock : exclusiveLock;
+  }
+
+  /**
+   * @return the lock for changing the replicas of a block pool on a volume.
+   */
+  AutoCloseableLock getVolumeLock(String bpid, String storageId) {
+    return volumeLocksEnabled ?
+        getBlockPoolLocks(bpid).getVolumeLock(storageId) : exclusiveLock;
+  }
+
+  private BlockPoolLocks getBlockPoolLocks(String bpid) {
+    // The locks of a block pool are kept after it is shut down, so that all
+    // the threads locking it always share the same locks.
+    BlockPoolLocks locks = blockPoolLocks.get(bpid);
+    if (locks == null) {
+      locks = new BlockPoolLocks();
+      BlockPoolLocks prev = blockPoolLocks.putIfAbsent(bpid, locks);
+      if (prev != null) {
+        locks = prev;
+      }
+    }
+    return locks;
+  }
+}
@@ -305,7 +305,7 @@ void onMetaFileDeletion(String bpid, long value) {
 
   private void decDfsUsedAndNumBlocks(String bpid, long value,
                                       boolean blockFileDeleted) {
-    try(AutoCloseableLock lock = dataset.acquireDatasetLock()) {
+    try(AutoCloseableLock lock = dataset.acquireDatasetReadLock()) {
       BlockPoolSlice bp = bpSlices.get(bpid);
       if (bp != null) {
         bp.decDfsUsed(value);
@@ -317,7 +317,7 @@ private void decDfsUsedAndNumBlocks(String bpid, long value,
   }
 
   void incDfsUsedAndNumBlocks(String bpid, long value) {
-    try(AutoCloseableLock lock = dataset.acquireDatasetLock()) {
+    try(AutoCloseableLock lock = dataset.acquireDatasetReadLock()) {
       BlockPoolSlice bp = bpSlices.get(bpid);
       if (bp != null) {
         bp.incDfsUsed(value);
@@ -327,7 +327,7 @@ void incDfsUsedAndNumBlocks(String bpid, long value) {
   }
 
   void incDfsUsed(String bpid, long value) {
-    try(AutoCloseableLock lock = dataset.acquireDatasetLock()) {
+    try(AutoCloseableLock lock = dataset.acquireDatasetReadLock()) {
       BlockPoolSlice bp = bpSlices.get(bpid);
       if (bp != null) {
         bp.incDfsUsed(value);
@@ -338,7 +338,7 @@ void incDfsUsed(String bpid, long value) {
   @VisibleForTesting
   public long getDfsUsed() throws IOException {
     long dfsUsed = 0;
-    try(AutoCloseableLock lock = dataset.acquireDatasetLock()) {
+    try(AutoCloseableLock lock = dataset.acquireDatasetReadLock()) {
       for(BlockPoolSlice s : bpSlices.values()) {
         dfsUsed += s.getDfsUsed();
       }
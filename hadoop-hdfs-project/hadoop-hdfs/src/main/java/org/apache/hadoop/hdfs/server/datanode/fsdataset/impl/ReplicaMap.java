@@ -18,49 +18,48 @@
 package org.apache.hadoop.hdfs.server.datanode.fsdataset.impl;
 
 import java.util.Collection;
-import java.util.Comparator;
-import java.util.HashMap;
-import java.util.Map;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
 
 import org.apache.hadoop.HadoopIllegalArgumentException;
 import org.apache.hadoop.hdfs.protocol.Block;
 import org.apache.hadoop.hdfs.server.datanode.ReplicaInfo;
-import org.apache.hadoop.hdfs.util.FoldedTreeSet;
+import org.apache.hadoop.util.AutoCloseableLock;
 
 /**
  * Maintains the replica map. 
+ *
+ * The map is safe for concurrent use: lookups, updates and iterations need
+ * no external locking.  Iterators are weakly consistent; they never throw
+ * {@link java.util.ConcurrentModificationException}, and may or may not
+ * reflect the updates made while they run.
  */
 class ReplicaMap {
-  // Object using which this class is synchronized
-  private final Object mutex;
+  // Lock held for operations made of several calls to the map
+  private final AutoCloseableLock lock;
   
-  // Map of block pool Id to a set of ReplicaInfo.
-  private final Map<String, FoldedTreeSet<ReplicaInfo>> map = new HashMap<>();
-
-  // Special comparator used to compare Long to Block ID in the TreeSet.
-  private static final Comparator<Object> LONG_AND_BLOCK_COMPARATOR
-      = new Comparator<Object>() {
+  // Map of block pool Id to the replicas of the block pool by block ID.
+  private final ConcurrentMap<String, ConcurrentNavigableMap<Long, ReplicaInfo>>
+      map = new ConcurrentHashMap<>();
 
-        @Override
-        public int compare(Object o1, Object o2) {
-          long lookup = (long) o1;
-          long stored = ((Block) o2).getBlockId();
-          return lookup > stored ? 1 : lookup < stored ? -1 : 0;
-        }
-      };
+  ReplicaMap() {
+    this(new AutoCloseableLock());
+  }
 
-  ReplicaMap(Object mutex) {
-    if (mutex == null) {
+  ReplicaMap(AutoCloseableLock lock) {
+    if (lock == null) {
       throw new HadoopIllegalArgumentException(
-          "Object to synchronize on cannot be null");
+          "Lock to synchronize on cannot be null");
     }
-    this.mutex = mutex;
+    this.lock = lock;
   }
   
   String[] getBlockPoolList() {
-    synchronized(mutex) {
-      return map.keySet().toArray(new String[map.keySet().size()]);   
-    }
+    return map.keySet().toArray(new String[0]);
   }
   
   private void checkBlockPool(String bpid) {
@@ -103,13 +102,8 @@ ReplicaInfo get(String bpid, Block block) {
    */
   ReplicaInfo get(String bpid, long blockId) {
     checkBlockPool(bpid);
-    synchronized(mutex) {
-      FoldedTreeSet<ReplicaInfo> set = map.get(bpid);
-      if (set == null) {
-        return null;
-      }
-      return set.get(blockId, LONG_AND_BLOCK_COMPARATOR);
-    }
+    ConcurrentNavigableMap<Long, ReplicaInfo> replicas = map.get(bpid);
+    return replicas == null ? null : replicas.get(blockId);
   }
 
   /**
@@ -123,15 +117,39 @@ ReplicaInfo get(String bpid, long blockId) {
   ReplicaInfo add(String bpid, ReplicaInfo replicaInfo) {
     checkBlockPool(bpid);
     checkBlock(replicaInfo);
-    synchronized(mutex) {
-      FoldedTreeSet<ReplicaInfo> set = map.get(bpid);
-      if (set == null) {
-        // Add an entry for block pool if it does not exist already
-        set = new FoldedTreeSet<>();
-        map.put(bpid, set);
+    return getOrCreateReplicas(bpid).put(replicaInfo.getBlockId(),
+        replicaInfo);
+  }
+
+  /**
+   * Add a replica's meta information into the map, unless the map already
+   * has a replica of the same block
+   *
+   * @param bpid block pool id
+   * @param replicaInfo a replica's meta information
+   * @return the replica already in the map, or null if it was added
+   * @throws IllegalArgumentException if the input parameter is null
+   */
+  ReplicaInfo addIfAbsent(String bpid, ReplicaInfo replicaInfo) {
+    checkBlockPool(bpid);
+    checkBlock(replicaInfo);
+    return getOrCreateReplicas(bpid).putIfAbsent(replicaInfo.getBlockId(),
+        replicaInfo);
+  }
+
+  private ConcurrentNavigableMap<Long, ReplicaInfo> getOrCreateReplicas(
+      String bpid) {
+    ConcurrentNavigableMap<Long, ReplicaInfo> replicas = map.get(bpid);
+    if (replicas == null) {
+      // Add an entry for block pool if it does not exist already
+      replicas = new ConcurrentSkipListMap<>();
+      ConcurrentNavigableMap<Long, ReplicaInfo> prev =
+          map.putIfAbsent(bpid, replicas);
+      if (prev != null) {
+        replicas = prev;
       }
-      return set.addOrReplace(replicaInfo);
     }
+    return replicas;
   }
 
   /**
@@ -152,15 +170,13 @@ void addAll(ReplicaMap other) {
   ReplicaInfo remove(String bpid, Block block) {
     checkBlockPool(bpid);
     checkBlock(block);
-    synchronized(mutex) {
-      FoldedTreeSet<ReplicaInfo> set = map.get(bpid);
-      if (set != null) {
-        ReplicaInfo replicaInfo =
-            set.get(block.getBlockId(), LONG_AND_BLOCK_COMPARATOR);
-        if (replicaInfo != null &&
-            block.getGenerationStamp() == replicaInfo.getGenerationStamp()) {
-          return set.removeAndGet(replicaInfo);
-        }
+    ConcurrentNavigableMap<Long, ReplicaInfo> replicas = map.get(bpid);
+    if (replicas != null) {
+      ReplicaInfo replicaInfo = replicas.get(block.getBlockId());
+      if (replicaInfo != null &&
+          block.getGenerationStamp() == replicaInfo.getGenerationStamp() &&
+          replicas.remove(block.getBlockId(), replicaInfo)) {
+        return replicaInfo;
       }
     }
     
@@ -175,13 +191,8 @@ ReplicaInfo remove(String bpid, Block block) {
    */
   ReplicaInfo remove(String bpid, long blockId) {
     checkBlockPool(bpid);
-    synchronized(mutex) {
-      FoldedTreeSet<ReplicaInfo> set = map.get(bpid);
-      if (set != null) {
-        return set.removeAndGet(blockId, LONG_AND_BLOCK_COMPARATOR);
-      }
-    }
-    return null;
+    ConcurrentNavigableMap<Long, ReplicaInfo> replicas = map.get(bpid);
+    return replicas == null ? null : replicas.remove(blockId);
   }
  
   /**
@@ -190,50 +201,55 @@ ReplicaInfo remove(String bpid, long blockId) {
    * @return the number of replicas in the map
    */
   int size(String bpid) {
-    synchronized(mutex) {
-      FoldedTreeSet<ReplicaInfo> set = map.get(bpid);
-      return set != null ? set.size() : 0;
-    }
+    ConcurrentNavigableMap<Long, ReplicaInfo> replicas = map.get(bpid);
+    return replicas != null ? replicas.size() : 0;
   }
   
   /**
-   * Get a collection of the replicas for given block pool
-   * This method is <b>not synchronized</b>. It needs to be synchronized
-   * externally using the mutex, both for getting the replicas
-   * values from the map and iterating over it. Mutex can be accessed using
-   * {@link #getMutext()} method.
+   * Get a collection of the replicas for given block pool, in order of
+   * block ID. The collection is a live view of the map.
    * 
    * @param bpid block pool id
    * @return a collection of the replicas belonging to the block pool
    */
   Collection<ReplicaInfo> replicas(String bpid) {
-    return map.get(bpid);
+    ConcurrentNavigableMap<Long, ReplicaInfo> replicas = map.get(bpid);
+    return replicas == null ? null : replicas.values();
+  }
+
+  /**
+   * Get an iterator over the replicas for given block pool, in order of
+   * block ID, from the first replica whose ID is not lower than the given
+   * ID.
+   *
+   * @param bpid block pool id
+   * @param minBlockId the lowest block ID to iterate from
+   * @return an iterator over the replicas belonging to the block pool
+   */
+  Iterator<ReplicaInfo> replicas(String bpid, long minBlockId) {
+    ConcurrentNavigableMap<Long, ReplicaInfo> replicas = map.get(bpid);
+    if (replicas == null) {
+      return Collections.<ReplicaInfo>emptyIterator();
+    }
+    return replicas.tailMap(minBlockId).values().iterator();
   }
 
   void initBlockPool(String bpid) {
     checkBlockPool(bpid);
-    synchronized(mutex) {
-      FoldedTreeSet<ReplicaInfo> set = map.get(bpid);
-      if (set == null) {
-        // Add an entry for block pool if it does not exist already
-        set = new FoldedTreeSet<>();
-        map.put(bpid, set);
-      }
-    }
+    getOrCreateReplicas(bpid);
   }
   
   void cleanUpBlockPool(String bpid) {
     checkBlockPool(bpid);
-    synchronized(mutex) {
-      map.remove(bpid);
-    }
+    map.remove(bpid);
   }
   
   /**
-   * Give access to mutex used for synchronizing ReplicasMap
-   * @return object used as lock
+   * Give access to the lock held for operations made of several calls to
+   * the map
+   * @return the lock
    */
-  Object getMutex() {
-    return mutex;
+  AutoCloseableLock getLock() {
+    return lock;
   }
 }
@@ -33,6 +33,10 @@ public class ContentSummaryComputationContext {
   private long nextCountLimit = 0;
   private long limitPerRun = 0;
   private long yieldCount = 0;
+  private long cachedCount = 0;
+  private long uncacheableCount = 0;
+  private boolean cacheEnabled = false;
+  private long cacheMinSubtreeSize = 0;
   private long sleepMilliSec = 0;
   private int sleepNanoSec = 0;
 
@@ -55,6 +59,10 @@ public ContentSummaryComputationContext(FSDirectory dir,
     this.snapshotCounts = new ContentCounts.Builder().build();
     this.sleepMilliSec = sleepMicroSec/1000;
     this.sleepNanoSec = (int)((sleepMicroSec%1000)*1000);
+    if (dir != null) {
+      this.cacheEnabled = dir.isContentSummaryCacheEnabled();
+      this.cacheMinSubtreeSize = dir.getContentSummaryCacheMinSubtreeSize();
+    }
   }
 
   /** Constructor for blocking computation. */
@@ -68,6 +76,52 @@ public long getYieldCount() {
     return yieldCount;
   }
 
+  /**
+   * @return whether the directories may use and update their cached content
+   * summaries in this computation.
+   */
+  public boolean isCacheEnabled() {
+    return cacheEnabled;
+  }
+
+  /**
+   * @return the minimum number of inodes in a subtree for its content summary
+   * to be cached.
+   */
+  public long getCacheMinSubtreeSize() {
+    return cacheMinSubtreeSize;
+  }
+
+  /**
+   * Add the cached content summary of a subtree to the counts. The inodes in
+   * it do not count towards the limit of the current locking period since
+   * they were not visited.
+   */
+  public void addCachedCounts(ContentCounts cached) {
+    counts.addContents(cached);
+    cachedCount += getInodeCount(cached);
+  }
+
+  /**
+   * Record that the subtree being visited contains an inode whose content
+   * summary may change without its ancestors being notified, such as a file
+   * under construction or one in a snapshot, so that the content summaries
+   * of the enclosing directories are not cached.
+   */
+  public void markUncacheable() {
+    uncacheableCount++;
+  }
+
+  /** Return the number of uncacheable inodes visited so far */
+  public long getUncacheableCount() {
+    return uncacheableCount;
+  }
+
+  static long getInodeCount(ContentCounts c) {
+    return c.getFileCount() + c.getSymlinkCount() + c.getDirectoryCount() +
+        c.getSnapshotableDirectoryCount();
+  }
+
   /**
    * Relinquish locks held during computation for a short while
    * and reacquire them. This will give other threads a chance
@@ -82,10 +136,7 @@ public boolean yield() {
     }
 
     // Have we reached the limit?
-    long currentCount = counts.getFileCount() +
-        counts.getSymlinkCount() +
-        counts.getDirectoryCount() +
-        counts.getSnapshotableDirectoryCount();
+    long currentCount = getInodeCount(counts) - cachedCount;
     if (currentCount <= nextCountLimit) {
       return false;
     }
@@ -486,6 +486,7 @@ static void unprotectedSetStoragePolicy(FSDirectory fsd, BlockManager bm,
       throw new FileNotFoundException(iip.getPath()
           + " is not a file or directory");
     }
+    inode.invalidateContentSummaries();
   }
 
   private static void setDirStoragePolicy(
@@ -302,6 +302,7 @@ private static boolean unprotectedTruncate(FSNamesystem fsn,
     long remainingLength = file.collectBlocksBeyondMax(newLength,
         collectedBlocks, toRetain);
     file.setModificationTime(mtime);
+    file.invalidateContentSummaries();
     // return whether on a block boundary
     return (remainingLength - newLength) == 0;
   }
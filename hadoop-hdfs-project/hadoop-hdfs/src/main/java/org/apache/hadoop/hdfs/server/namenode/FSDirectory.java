@@ -145,6 +145,8 @@ private static INodeDirectory createRoot(FSNamesystem namesystem) {
   private final int lsLimit;  // max list limit
   private final int contentCountLimit; // max content summary counts per run
   private final long contentSleepMicroSec;
+  private final boolean contentSummaryCacheEnabled;
+  private final long contentSummaryCacheMinSubtreeSize;
   private final INodeMap inodeMap; // Synchronized by dirLock
   private long yieldCount = 0; // keep track of lock yield count.
   private int quotaInitThreads;
@@ -289,6 +291,12 @@ public int getWriteHoldCount() {
     this.contentSleepMicroSec = conf.getLong(
         DFSConfigKeys.DFS_CONTENT_SUMMARY_SLEEP_MICROSEC_KEY,
         DFSConfigKeys.DFS_CONTENT_SUMMARY_SLEEP_MICROSEC_DEFAULT);
+    this.contentSummaryCacheEnabled = conf.getBoolean(
+        DFSConfigKeys.DFS_CONTENT_SUMMARY_CACHE_ENABLED_KEY,
+        DFSConfigKeys.DFS_CONTENT_SUMMARY_CACHE_ENABLED_DEFAULT);
+    this.contentSummaryCacheMinSubtreeSize = conf.getLong(
+        DFSConfigKeys.DFS_CONTENT_SUMMARY_CACHE_MIN_SUBTREE_SIZE_KEY,
+        DFSConfigKeys.DFS_CONTENT_SUMMARY_CACHE_MIN_SUBTREE_SIZE_DEFAULT);
     
     // filesystem limits
     this.maxComponentLength = conf.getInt(
@@ -480,6 +488,14 @@ long getContentSleepMicroSec() {
     return contentSleepMicroSec;
   }
 
+  boolean isContentSummaryCacheEnabled() {
+    return contentSummaryCacheEnabled;
+  }
+
+  long getContentSummaryCacheMinSubtreeSize() {
+    return contentSummaryCacheMinSubtreeSize;
+  }
+
   int getInodeXAttrsLimit() {
     return inodeXAttrsLimit;
   }
@@ -908,6 +924,10 @@ static void unprotectedUpdateCount(INodesInPath inodesInPath,
             .addSpaceConsumed2Cache(counts);
       }
     }
+    // the content summaries of the same directories are now stale as well.
+    if (numOfINodes > 0) {
+      inodesInPath.getINode(numOfINodes - 1).invalidateContentSummaries();
+    }
   }
 
   public EnumCounters<StorageType> getStorageTypeDeltas(byte storagePolicyID,
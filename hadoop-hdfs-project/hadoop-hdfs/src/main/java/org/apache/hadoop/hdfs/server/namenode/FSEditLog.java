@@ -155,7 +155,9 @@ private enum State {
   private EditLogOutputStream editLogStream = null;
 
   // a monotonically increasing counter that represents transactionIds.
-  private long txid = 0;
+  // Only modified under the FSEditLog monitor, but volatile so that it can be
+  // read without the lock; see getLastWrittenTxIdWithoutLock().
+  private volatile long txid = 0;
 
   // stores the last synced transactionId.
   private long synctxid = 0;
@@ -522,6 +524,15 @@ private void endTransaction(long start) {
   public synchronized long getLastWrittenTxId() {
     return txid;
   }
+
+  /**
+   * Return the transaction ID of the last transaction written to the log,
+   * without taking the FSEditLog lock. The value may be stale by the time the
+   * caller uses it, but is never ahead of what has been logged.
+   */
+  public long getLastWrittenTxIdWithoutLock() {
+    return txid;
+  }
   
   /**
    * @return the first transaction ID in the current log segment
@@ -672,6 +683,7 @@ protected void logSync(long mytxid) {
   
       if (metrics != null) { // Metrics non-null only when used inside name node
         metrics.addSync(elapsed);
+        metrics.addSyncBatchSize(editsBatchedInSync + 1);
         metrics.incrTransactionsBatchedInSync(editsBatchedInSync);
         numTransactionsBatchedInSync.addAndGet(editsBatchedInSync);
       }
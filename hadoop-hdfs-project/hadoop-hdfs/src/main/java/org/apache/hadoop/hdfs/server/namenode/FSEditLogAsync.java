@@ -20,6 +20,7 @@
 import java.io.IOException;
 import java.net.URI;
 import java.util.ArrayDeque;
+import java.util.ArrayList;
 import java.util.Deque;
 import java.util.List;
 import java.util.concurrent.ArrayBlockingQueue;
@@ -34,14 +35,34 @@
 import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.Preconditions;
 
+/**
+ * An edit log which logs edits and syncs them to the journals on
+ * background threads, so that RPC handlers do not need to wait for syncs.
+ *
+ * Edits are queued by the callers and written to the edit log buffer by the
+ * sync thread. Once the queue runs dry or the buffer needs to be flushed, the
+ * edits written so far are handed as one batch to the flush thread, which
+ * syncs them to the journals and then releases their callers. While a flush
+ * is in flight the sync thread carries on writing new edits into the other
+ * half of the double buffer, and they are all handed over together once the
+ * flush completes. The size of each group commit thus grows and shrinks with
+ * the latency of the journals.
+ */
 class FSEditLogAsync extends FSEditLog implements Runnable {
   static final Log LOG = LogFactory.getLog(FSEditLog.class);
 
   // use separate mutex to avoid possible deadlock when stopping the thread.
   private final Object syncThreadLock = new Object();
   private Thread syncThread;
+  private Thread flushThread;
   private static ThreadLocal<Edit> threadEdit = new ThreadLocal<Edit>();
 
+  // the batch of edits being synced by the flush thread, if any.
+  private final Object flushLock = new Object();
+  private List<Edit> flushBatch = null;
+  private long flushTxId;
+  private boolean stopFlushThread = false;
+
   // requires concurrent access from caller threads and syncing thread.
   private final BlockingQueue<Edit> editPendingQ =
       new ArrayBlockingQueue<Edit>(4096);
@@ -66,6 +87,16 @@ private boolean isSyncThreadAlive() {
   private void startSyncThread() {
     synchronized(syncThreadLock) {
       if (!isSyncThreadAlive()) {
+        synchronized (flushLock) {
+          stopFlushThread = false;
+        }
+        flushThread = new Thread(new Runnable() {
+          @Override
+          public void run() {
+            runFlush();
+          }
+        }, this.getClass().getSimpleName() + "Flush");
+        flushThread.start();
         syncThread = new Thread(this, this.getClass().getSimpleName());
         syncThread.start();
       }
@@ -78,10 +109,23 @@ private void stopSyncThread() {
         try {
           syncThread.interrupt();
           syncThread.join();
+          // the sync thread may have exited with edits waiting for the
+          // in-flight flush; they must still be synced and released.
+          if (!syncWaitQ.isEmpty()) {
+            handOffBatch(true);
+          }
+          // let the flush thread finish an in-flight sync rather than
+          // interrupting it, which would close the journal's channel.
+          synchronized (flushLock) {
+            stopFlushThread = true;
+            flushLock.notifyAll();
+          }
+          flushThread.join();
         } catch (InterruptedException e) {
           // we're quitting anyway.
         } finally {
           syncThread = null;
+          flushThread = null;
         }
       }
     }
@@ -162,8 +206,17 @@ private void enqueueEdit(Edit edit) {
   }
 
   private Edit dequeueEdit() throws InterruptedException {
-    // only block for next edit if no pending syncs.
-    return syncWaitQ.isEmpty() ? editPendingQ.take() : editPendingQ.poll();
+    // only block for next edit if no pending syncs, or if the pending syncs
+    // must wait for the in-flight flush anyway.  the flush thread wakes us
+    // up when it is done.
+    return syncWaitQ.isEmpty() || isFlushInProgress()
+        ? editPendingQ.take() : editPendingQ.poll();
+  }
+
+  private boolean isFlushInProgress() {
+    synchronized (flushLock) {
+      return flushBatch != null;
+    }
   }
 
   @Override
@@ -171,28 +224,83 @@ public void run() {
     try {
       while (true) {
         boolean doSync;
+        boolean forceSync = false;
         Edit edit = dequeueEdit();
-        if (edit != null) {
+        if (edit != null && edit != FLUSH_DONE) {
           // sync if requested by edit log.
-          doSync = edit.logEdit();
+          doSync = forceSync = edit.logEdit();
           syncWaitQ.add(edit);
         } else {
           // sync when editq runs dry, but have edits pending a sync.
           doSync = !syncWaitQ.isEmpty();
         }
         if (doSync) {
-          // normally edit log exceptions cause the NN to terminate, but tests
-          // relying on ExitUtil.terminate need to see the exception.
-          RuntimeException syncEx = null;
-          try {
-            logSync(getLastWrittenTxId());
-          } catch (RuntimeException ex) {
-            syncEx = ex;
-          }
-          while ((edit = syncWaitQ.poll()) != null) {
-            edit.logSyncNotify(syncEx);
+          handOffBatch(forceSync);
+        }
+      }
+    } catch (InterruptedException ie) {
+      LOG.info(Thread.currentThread().getName() + " was interrupted, exiting");
+    } catch (Throwable t) {
+      terminate(t);
+    }
+  }
+
+  /**
+   * Hand the edits written since the last hand-off to the flush thread. If a
+   * flush is still in flight, the edits keep accumulating into a larger batch
+   * unless the edit log asked for a sync, e.g. because its buffer is full, in
+   * which case wait for the in-flight flush to complete.
+   */
+  private void handOffBatch(boolean wait) throws InterruptedException {
+    synchronized (flushLock) {
+      if (flushBatch != null) {
+        if (!wait) {
+          return;
+        }
+        while (flushBatch != null) {
+          flushLock.wait();
+        }
+      }
+      flushBatch = new ArrayList<Edit>(syncWaitQ);
+      flushTxId = getLastWrittenTxId();
+      syncWaitQ.clear();
+      flushLock.notifyAll();
+    }
+  }
+
+  private void runFlush() {
+    try {
+      while (true) {
+        final List<Edit> batch;
+        final long txId;
+        synchronized (flushLock) {
+          while (flushBatch == null) {
+            if (stopFlushThread) {
+              return;
+            }
+            flushLock.wait();
           }
+          batch = flushBatch;
+          txId = flushTxId;
+        }
+        // normally edit log exceptions cause the NN to terminate, but tests
+        // relying on ExitUtil.terminate need to see the exception.
+        RuntimeException syncEx = null;
+        try {
+          logSync(txId);
+        } catch (RuntimeException ex) {
+          syncEx = ex;
+        }
+        for (Edit edit : batch) {
+          edit.logSyncNotify(syncEx);
         }
+        synchronized (flushLock) {
+          flushBatch = null;
+          flushLock.notifyAll();
+        }
+        // wake up the sync thread in case it is waiting to hand off the next
+        // batch.  if the queue is full the sync thread is busy anyway.
+        editPendingQ.offer(FLUSH_DONE);
       }
     } catch (InterruptedException ie) {
       LOG.info(Thread.currentThread().getName() + " was interrupted, exiting");
@@ -219,6 +327,22 @@ private Edit getEditInstance(FSEditLogOp op) {
     return edit;
   }
 
+  // queued by the flush thread to wake up the sync thread, never logged.
+  private static final Edit FLUSH_DONE = new Edit(null, null) {
+    @Override
+    void logSyncWait() {
+    }
+
+    @Override
+    void logSyncNotify(RuntimeException ex) {
+    }
+
+    @Override
+    public String toString() {
+      return "[FLUSH_DONE]";
+    }
+  };
+
   private abstract static class Edit {
     final FSEditLog log;
     final FSEditLogOp op;
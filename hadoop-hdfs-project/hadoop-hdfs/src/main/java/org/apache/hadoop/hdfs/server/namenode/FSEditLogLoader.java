@@ -20,6 +20,7 @@
 import static org.apache.hadoop.hdfs.server.namenode.FSImageFormat.renameReservedPathsOnUpgrade;
 import static org.apache.hadoop.util.Time.monotonicNow;
 
+import java.io.Closeable;
 import java.io.FilterInputStream;
 import java.io.IOException;
 import java.io.InputStream;
@@ -27,6 +28,9 @@
 import java.util.EnumMap;
 import java.util.EnumSet;
 import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
@@ -120,11 +124,19 @@ public class FSEditLogLoader {
   private long lastAppliedTxId;
   /** Total number of end transactions loaded. */
   private int totalEdits = 0;
+  /** Number of ops decoded ahead of the replay, 0 to disable prefetching. */
+  private final int prefetchOps;
   
   public FSEditLogLoader(FSNamesystem fsNamesys, long lastAppliedTxId) {
+    this(fsNamesys, lastAppliedTxId, 0);
+  }
+
+  FSEditLogLoader(FSNamesystem fsNamesys, long lastAppliedTxId,
+      int prefetchOps) {
     this.fsNamesys = fsNamesys;
     this.blockManager = fsNamesys.getBlockManager();
     this.lastAppliedTxId = lastAppliedTxId;
+    this.prefetchOps = prefetchOps;
   }
   
   long loadFSEdits(EditLogInputStream edits, long expectedStartingTxId)
@@ -187,13 +199,19 @@ long loadEditRecords(EditLogInputStream in, boolean closeOnExit,
     Counter counter = prog.getCounter(Phase.LOADING_EDITS, step);
     long lastLogTime = monotonicNow();
     long lastInodeId = fsNamesys.dir.getLastInodeId();
+    // Recovery mode may need to resync the stream, so only prefetch when
+    // every read error is fatal anyway.
+    OpPrefetcher prefetcher = null;
+    if (prefetchOps > 0 && recovery == null) {
+      prefetcher = new OpPrefetcher(in, prefetchOps);
+    }
     
     try {
       while (true) {
         try {
           FSEditLogOp op;
           try {
-            op = in.readOp();
+            op = prefetcher != null ? prefetcher.readOp() : in.readOp();
             if (op == null) {
               break;
             }
@@ -215,7 +233,7 @@ long loadEditRecords(EditLogInputStream in, boolean closeOnExit,
             continue;
           }
           recentOpcodeOffsets[(int)(numEdits % recentOpcodeOffsets.length)] =
-            in.getPosition();
+            prefetcher != null ? prefetcher.getPosition() : in.getPosition();
           if (op.hasTransactionId()) {
             if (op.getTransactionId() > expectedTxId) { 
               MetaRecoveryContext.editLogLoaderPrompt("There appears " +
@@ -238,7 +256,8 @@ long loadEditRecords(EditLogInputStream in, boolean closeOnExit,
                   + ", numEdits=" + numEdits + ", totalEdits=" + totalEdits);
             }
             long inodeId = applyEditLogOp(op, fsDir, startOpt,
-                in.getVersion(true), lastInodeId);
+                prefetcher != null ? prefetcher.getVersion() :
+                    in.getVersion(true), lastInodeId);
             if (lastInodeId < inodeId) {
               lastInodeId = inodeId;
             }
@@ -286,6 +305,10 @@ long loadEditRecords(EditLogInputStream in, boolean closeOnExit,
         }
       }
     } finally {
+      if (prefetcher != null) {
+        // stop reading ahead before the stream is closed or handed back
+        prefetcher.close();
+      }
       fsNamesys.dir.resetLastInodeId(lastInodeId);
       if(closeOnExit) {
         in.close();
@@ -1301,6 +1324,131 @@ public long skip(long amt) throws IOException {
     }
   }
 
+  /**
+   * Reads and decodes ops from an edit log stream on a background thread,
+   * so that decoding the next ops overlaps with applying the current one.
+   * Ops are handed out in log order. The first read error is handed out in
+   * place of the next op and stops the reader.
+   */
+  static class OpPrefetcher implements Closeable {
+    private final EditLogInputStream in;
+    private final BlockingQueue<Entry> queue;
+    private final Thread reader;
+    private volatile boolean stopped = false;
+    /** Position and version of the stream after the last op handed out. */
+    private long position;
+    private int version;
+
+    /** An op, or the end of the stream if both op and error are null. */
+    private static class Entry {
+      private final FSEditLogOp op;
+      private final Throwable error;
+      private final long position;
+      private final int version;
+
+      Entry(FSEditLogOp op, Throwable error, long position, int version) {
+        this.op = op;
+        this.error = error;
+        this.position = position;
+        this.version = version;
+      }
+    }
+
+    OpPrefetcher(EditLogInputStream in, int capacity) {
+      this.in = in;
+      this.queue = new ArrayBlockingQueue<Entry>(capacity);
+      this.reader = new Thread(new Runnable() {
+        @Override
+        public void run() {
+          readOps();
+        }
+      }, "Edit log prefetcher for " + in.getName());
+      this.reader.setDaemon(true);
+      this.reader.start();
+    }
+
+    private void readOps() {
+      // the ops are applied on another thread, so they must not be reused
+      FSEditLogOp.OpInstanceCache.disableCacheForCurrentThread();
+      try {
+        while (!stopped) {
+          Entry entry;
+          try {
+            FSEditLogOp op = in.readOp();
+            entry = new Entry(op, null, in.getPosition(), in.getVersion(true));
+          } catch (Throwable t) {
+            entry = new Entry(null, t, in.getPosition(), 0);
+          }
+          while (!queue.offer(entry, 100, TimeUnit.MILLISECONDS)) {
+            if (stopped) {
+              return;
+            }
+          }
+          if (entry.op == null) {
+            return;
+          }
+        }
+      } catch (InterruptedException e) {
+        LOG.warn("Interrupted while reading ahead in " + in.getName());
+        Thread.currentThread().interrupt();
+      }
+    }
+
+    /**
+     * @return the next op, or null at the end of the stream
+     */
+    FSEditLogOp readOp() throws IOException {
+      Entry entry;
+      try {
+        entry = queue.take();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new IOException("Interrupted while reading " + in.getName(), e);
+      }
+      if (entry.error != null) {
+        if (entry.error instanceof IOException) {
+          throw (IOException) entry.error;
+        } else if (entry.error instanceof RuntimeException) {
+          throw (RuntimeException) entry.error;
+        } else if (entry.error instanceof Error) {
+          throw (Error) entry.error;
+        }
+        throw new IOException(entry.error);
+      }
+      position = entry.position;
+      version = entry.version;
+      return entry.op;
+    }
+
+    long getPosition() {
+      return position;
+    }
+
+    int getVersion() {
+      return version;
+    }
+
+    /**
+     * Stop the reader and wait for it, so that nobody else reads the stream
+     * after this returns.
+     */
+    @Override
+    public void close() {
+      stopped = true;
+      boolean interrupted = false;
+      while (reader.isAlive()) {
+        try {
+          reader.join();
+        } catch (InterruptedException e) {
+          interrupted = true;
+        }
+      }
+      if (interrupted) {
+        Thread.currentThread().interrupt();
+      }
+    }
+  }
+
   public long getLastAppliedTxId() {
     return lastAppliedTxId;
   }
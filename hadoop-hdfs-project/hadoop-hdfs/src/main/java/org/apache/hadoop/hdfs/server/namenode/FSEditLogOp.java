@@ -173,13 +173,23 @@ void disableCache() {
       useCache = false;
     }
 
+    /**
+     * Stop reusing op instances on the current thread. Needed by threads
+     * that decode ops and hand them over to another thread.
+     */
+    static void disableCacheForCurrentThread() {
+      cache.set(null);
+    }
+
     public OpInstanceCache get() {
       return this;
     }
 
     @SuppressWarnings("unchecked")
     public <T extends FSEditLogOp> T get(FSEditLogOpCodes opCode) {
-      return useCache ? (T)cache.get().get(opCode) : (T)newInstance(opCode);
+      OpInstanceCacheMap instances = useCache ? cache.get() : null;
+      return instances != null ? (T)instances.get(opCode) :
+          (T)newInstance(opCode);
     }
 
     private static FSEditLogOp newInstance(FSEditLogOpCodes opCode) {
@@ -91,7 +91,7 @@ public class FSImage implements Closeable {
    * The last transaction ID that was either loaded from an image
    * or loaded by loading edits files.
    */
-  protected long lastAppliedTxId = 0;
+  protected volatile long lastAppliedTxId = 0;
 
   final private Configuration conf;
 
@@ -827,7 +827,9 @@ private long loadEdits(Iterable<EditLogInputStream> editStreams,
     
     long prevLastAppliedTxId = lastAppliedTxId;  
     try {    
-      FSEditLogLoader loader = new FSEditLogLoader(target, lastAppliedTxId);
+      FSEditLogLoader loader = new FSEditLogLoader(target, lastAppliedTxId,
+          conf.getInt(DFSConfigKeys.DFS_NAMENODE_EDITS_REPLAY_PREFETCH_OPS_KEY,
+              DFSConfigKeys.DFS_NAMENODE_EDITS_REPLAY_PREFETCH_OPS_DEFAULT));
       
       // Load latest edits
       for (EditLogInputStream editIn : editStreams) {
@@ -907,7 +909,8 @@ void saveFSImage(SaveNamespaceContext context, StorageDirectory sd,
     File newFile = NNStorage.getStorageFile(sd, NameNodeFile.IMAGE_NEW, txid);
     File dstFile = NNStorage.getStorageFile(sd, dstType, txid);
     
-    FSImageFormatProtobuf.Saver saver = new FSImageFormatProtobuf.Saver(context);
+    FSImageFormatProtobuf.Saver saver = new FSImageFormatProtobuf.Saver(context,
+        conf);
     FSImageCompression compression = FSImageCompression.createCompression(conf);
     saver.save(newFile, compression);
     
@@ -1420,6 +1423,15 @@ public long getLastAppliedOrWrittenTxId() {
         editLog != null ? editLog.getLastWrittenTxId() : 0);
   }
 
+  /**
+   * Same as {@link #getLastAppliedOrWrittenTxId()}, but without taking the
+   * edit log lock, so that it is cheap enough to be called on every RPC.
+   */
+  public long getLastAppliedOrWrittenTxIdWithoutLock() {
+    return Math.max(lastAppliedTxId,
+        editLog != null ? editLog.getLastWrittenTxIdWithoutLock() : 0);
+  }
+
   public void updateLastAppliedTxIdFromWritten() {
     this.lastAppliedTxId = editLog.getLastWrittenTxId();
   }
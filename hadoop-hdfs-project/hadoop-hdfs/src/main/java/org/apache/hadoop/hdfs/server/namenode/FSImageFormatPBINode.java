@@ -20,11 +20,16 @@
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InterruptedIOException;
 import java.io.OutputStream;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Iterator;
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
@@ -225,6 +230,12 @@ public static void updateBlocksMap(INodeFile file, BlockManager bm) {
       }
     }
 
+    /**
+     * Number of inodes a parallel loading thread decodes before it takes the
+     * loader lock to add them to the inode map.
+     */
+    private static final int INODE_MAP_BATCH_SIZE = 1024;
+
     private final FSDirectory dir;
     private final FSNamesystem fsn;
     private final FSImageFormatProtobuf.Loader parent;
@@ -236,8 +247,43 @@ public static void updateBlocksMap(INodeFile file, BlockManager bm) {
     }
 
     void loadINodeDirectorySection(InputStream in) throws IOException {
+      loadINodeDirectoriesInSection(in);
+    }
+
+    /**
+     * Load the sub-sections of the INODE_DIR section concurrently. Every
+     * directory has a single DirEntry, so the children of a given directory
+     * are only ever added by one thread.
+     */
+    void loadINodeDirectorySectionInParallel(ExecutorService service,
+        List<FileSummary.Section> subSections, final String compressionCodec)
+        throws IOException {
+      LOG.info("Loading the INode directory section in parallel with "
+          + subSections.size() + " sub-sections");
+      List<Future<Integer>> futures = new ArrayList<>(subSections.size());
+      for (final FileSummary.Section s : subSections) {
+        futures.add(service.submit(new Callable<Integer>() {
+          @Override
+          public Integer call() throws IOException {
+            try (InputStream in = parent.getInputStreamForSection(s,
+                compressionCodec)) {
+              return loadINodeDirectoriesInSection(in);
+            }
+          }
+        }));
+      }
+      long loaded = 0;
+      for (Future<Integer> f : futures) {
+        loaded += getSubSectionResult(f);
+      }
+      LOG.info("Loaded " + loaded + " directory entries in parallel.");
+    }
+
+    private int loadINodeDirectoriesInSection(InputStream in)
+        throws IOException {
       final List<INodeReference> refList = parent.getLoaderContext()
           .getRefList();
+      int loaded = 0;
       while (true) {
         INodeDirectorySection.DirEntry e = INodeDirectorySection.DirEntry
             .parseDelimitedFrom(in);
@@ -246,6 +292,8 @@ void loadINodeDirectorySection(InputStream in) throws IOException {
           break;
         }
         INodeDirectory p = dir.getInode(e.getParent()).asDirectory();
+        p.ensureChildrenCapacity(
+            e.getChildrenCount() + e.getRefChildrenCount());
         for (long id : e.getChildrenList()) {
           INode child = dir.getInode(id);
           addToParent(p, child);
@@ -254,16 +302,14 @@ void loadINodeDirectorySection(InputStream in) throws IOException {
           INodeReference ref = refList.get(refId);
           addToParent(p, ref);
         }
+        ++loaded;
       }
+      return loaded;
     }
 
     void loadINodeSection(InputStream in, StartupProgress prog,
         Step currentStep) throws IOException {
-      INodeSection s = INodeSection.parseDelimitedFrom(in);
-      fsn.dir.resetLastInodeId(s.getLastInodeId());
-      long numInodes = s.getNumInodes();
-      LOG.info("Loading " + numInodes + " INodes.");
-      prog.setTotal(Phase.LOADING_FSIMAGE, currentStep, numInodes);
+      long numInodes = loadINodeSectionHeader(in, prog, currentStep);
       Counter counter = prog.getCounter(Phase.LOADING_FSIMAGE, currentStep);
       for (int i = 0; i < numInodes; ++i) {
         INodeSection.INode p = INodeSection.INode.parseDelimitedFrom(in);
@@ -277,6 +323,104 @@ void loadINodeSection(InputStream in, StartupProgress prog,
       }
     }
 
+    /**
+     * Load the INODE section header from the given stream, then load the
+     * INODE sub-sections concurrently. The header precedes the first
+     * sub-section, so it is always read from the parent section stream.
+     */
+    void loadINodeSectionInParallel(ExecutorService service, InputStream in,
+        List<FileSummary.Section> subSections, final String compressionCodec,
+        StartupProgress prog, Step currentStep) throws IOException {
+      long numInodes = loadINodeSectionHeader(in, prog, currentStep);
+      LOG.info("Loading the INode section in parallel with "
+          + subSections.size() + " sub-sections");
+      List<Future<Integer>> futures = new ArrayList<>(subSections.size());
+      for (final FileSummary.Section s : subSections) {
+        futures.add(service.submit(new Callable<Integer>() {
+          @Override
+          public Integer call() throws IOException {
+            try (InputStream sin = parent.getInputStreamForSection(s,
+                compressionCodec)) {
+              return loadINodesInSection(sin);
+            }
+          }
+        }));
+      }
+      long loaded = 0;
+      for (Future<Integer> f : futures) {
+        loaded += getSubSectionResult(f);
+        prog.setCount(Phase.LOADING_FSIMAGE, currentStep, loaded);
+      }
+      if (loaded != numInodes) {
+        throw new IOException("Expected to load " + numInodes + " INodes but"
+            + " loaded " + loaded + " from the INode sub-sections. The image"
+            + " may be corrupt.");
+      }
+    }
+
+    private long loadINodeSectionHeader(InputStream in, StartupProgress prog,
+        Step currentStep) throws IOException {
+      INodeSection s = INodeSection.parseDelimitedFrom(in);
+      fsn.dir.resetLastInodeId(s.getLastInodeId());
+      long numInodes = s.getNumInodes();
+      LOG.info("Loading " + numInodes + " INodes.");
+      prog.setTotal(Phase.LOADING_FSIMAGE, currentStep, numInodes);
+      return numInodes;
+    }
+
+    /**
+     * Load all the inodes in a sub-section. Decoding is done without holding
+     * any lock; the decoded inodes are added to the inode map in batches.
+     */
+    private int loadINodesInSection(InputStream in) throws IOException {
+      List<INode> batch = new ArrayList<>(INODE_MAP_BATCH_SIZE);
+      int loaded = 0;
+      while (true) {
+        // in is a LimitInputStream, so null is returned at the end of it
+        INodeSection.INode p = INodeSection.INode.parseDelimitedFrom(in);
+        if (p == null) {
+          break;
+        }
+        if (p.getId() == INodeId.ROOT_INODE_ID) {
+          synchronized (this) {
+            loadRootINode(p);
+          }
+        } else {
+          batch.add(loadINode(p));
+          if (batch.size() >= INODE_MAP_BATCH_SIZE) {
+            addToInodeMap(batch);
+            batch.clear();
+          }
+        }
+        ++loaded;
+      }
+      addToInodeMap(batch);
+      return loaded;
+    }
+
+    private synchronized void addToInodeMap(List<INode> inodes) {
+      for (INode n : inodes) {
+        dir.addToInodeMap(n);
+      }
+    }
+
+    private static int getSubSectionResult(Future<Integer> f)
+        throws IOException {
+      try {
+        return f.get();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new InterruptedIOException(
+            "Interrupted while loading fsimage sub-sections");
+      } catch (ExecutionException e) {
+        if (e.getCause() instanceof IOException) {
+          throw (IOException) e.getCause();
+        }
+        throw new IOException("Failed to load an fsimage sub-section",
+            e.getCause());
+      }
+    }
+
     /**
      * Load the under-construction files section, and update the lease map
      */
@@ -303,10 +447,14 @@ private void addToParent(INodeDirectory parent, INode child) {
       if (!parent.addChild(child)) {
         return;
       }
-      dir.cacheName(child);
+      // The name cache and the blocks map are shared by all the threads
+      // loading the directory section in parallel.
+      synchronized (this) {
+        dir.cacheName(child);
 
-      if (child.isFile()) {
-        updateBlocksMap(child.asFile(), fsn.getBlockManager());
+        if (child.isFile()) {
+          updateBlocksMap(child.asFile(), fsn.getBlockManager());
+        }
       }
     }
 
@@ -368,7 +516,9 @@ private INodeFile loadINodeFile(INodeSection.INode n) {
         INodeSection.FileUnderConstructionFeature uc = f.getFileUC();
         file.toUnderConstruction(uc.getClientName(), uc.getClientMachine());
         // update the lease manager
-        fsn.leaseManager.addLease(uc.getClientName(), file.getId());
+        synchronized (this) {
+          fsn.leaseManager.addLease(uc.getClientName(), file.getId());
+        }
         if (blocks.length > 0) {
           BlockInfo lastBlk = file.getLastBlock();
           // replace the last block of file
@@ -543,6 +693,8 @@ public static INodeSection.INodeDirectory.Builder buildINodeDirectory(
     private final FileSummary.Builder summary;
     private final SaveNamespaceContext context;
     private final FSImageFormatProtobuf.Saver parent;
+    /** Number of directories seen while serializing the INODE section */
+    private long numDirectories = 0;
 
     Saver(FSImageFormatProtobuf.Saver parent, FileSummary.Builder summary) {
       this.parent = parent;
@@ -556,6 +708,8 @@ void serializeINodeDirectorySection(OutputStream out) throws IOException {
           .getINodeMap().getMapIterator();
       final ArrayList<INodeReference> refList = parent.getSaverContext()
           .getRefList();
+      final long entriesPerSubSection =
+          parent.getEntriesPerSubSection(numDirectories);
       int i = 0;
       while (iter.hasNext()) {
         INodeWithAdditionalFields n = iter.next();
@@ -581,10 +735,16 @@ void serializeINodeDirectorySection(OutputStream out) throws IOException {
         }
 
         ++i;
+        if (i % entriesPerSubSection == 0) {
+          parent.commitSubSection(summary,
+              FSImageFormatProtobuf.SectionName.INODE_DIR_SUB);
+        }
         if (i % FSImageFormatProtobuf.Saver.CHECK_CANCEL_INTERVAL == 0) {
           context.checkCancelled();
         }
       }
+      parent.commitSubSection(summary,
+          FSImageFormatProtobuf.SectionName.INODE_DIR_SUB);
       parent.commitSection(summary,
           FSImageFormatProtobuf.SectionName.INODE_DIR);
     }
@@ -596,17 +756,29 @@ void serializeINodeSection(OutputStream out) throws IOException {
           .setLastInodeId(fsn.dir.getLastInodeId()).setNumInodes(inodesMap.size());
       INodeSection s = b.build();
       s.writeDelimitedTo(out);
+      parent.markSubSectionStart();
 
+      final long inodesPerSubSection =
+          parent.getEntriesPerSubSection(inodesMap.size());
       int i = 0;
       Iterator<INodeWithAdditionalFields> iter = inodesMap.getMapIterator();
       while (iter.hasNext()) {
         INodeWithAdditionalFields n = iter.next();
         save(out, n);
+        if (n.isDirectory()) {
+          ++numDirectories;
+        }
         ++i;
+        if (i % inodesPerSubSection == 0) {
+          parent.commitSubSection(summary,
+              FSImageFormatProtobuf.SectionName.INODE_SUB);
+        }
         if (i % FSImageFormatProtobuf.Saver.CHECK_CANCEL_INTERVAL == 0) {
           context.checkCancelled();
         }
       }
+      parent.commitSubSection(summary,
+          FSImageFormatProtobuf.SectionName.INODE_SUB);
       parent.commitSection(summary, FSImageFormatProtobuf.SectionName.INODE);
     }
 
@@ -36,14 +36,20 @@
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.apache.hadoop.classification.InterfaceAudience;
 import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.hdfs.DFSConfigKeys;
 import org.apache.hadoop.hdfs.protocol.proto.ClientNamenodeProtocolProtos.CacheDirectiveInfoProto;
 import org.apache.hadoop.hdfs.protocol.proto.ClientNamenodeProtocolProtos.CachePoolInfoProto;
 import org.apache.hadoop.hdfs.security.token.delegation.DelegationTokenSecretManager;
@@ -69,6 +75,7 @@
 
 import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import com.google.protobuf.CodedOutputStream;
 
 /**
@@ -151,6 +158,10 @@ public static final class Loader implements FSImageFormat.AbstractLoader {
      * when we're doing (rollingUpgrade rollback).
      */
     private final boolean requireSameLayoutVersion;
+    /** The image file being loaded, reopened for each parallel sub-section */
+    private File imageFile;
+    /** Loads sub-sections when the image has them and parallel load is on */
+    private ExecutorService executorService;
 
     Loader(Configuration conf, FSNamesystem fsn,
         boolean requireSameLayoutVersion) {
@@ -177,6 +188,7 @@ public LoaderContext getLoaderContext() {
     void load(File file) throws IOException {
       long start = Time.monotonicNow();
       imgDigest = MD5FileUtils.computeMd5ForFile(file);
+      imageFile = file;
       RandomAccessFile raFile = new RandomAccessFile(file, "r");
       FileInputStream fin = new FileInputStream(file);
       try {
@@ -184,6 +196,10 @@ void load(File file) throws IOException {
         long end = Time.monotonicNow();
         LOG.info("Loaded FSImage in {} seconds.", (end - start) / 1000);
       } finally {
+        if (executorService != null) {
+          executorService.shutdownNow();
+          executorService = null;
+        }
         fin.close();
         raFile.close();
       }
@@ -211,6 +227,11 @@ private void loadInternal(RandomAccessFile raFile, FileInputStream fin)
 
       ArrayList<FileSummary.Section> sections = Lists.newArrayList(summary
           .getSectionsList());
+      Map<SectionName, List<FileSummary.Section>> subSections =
+          removeSubSections(sections);
+      if (!subSections.isEmpty()) {
+        executorService = createParallelLoadExecutor();
+      }
       Collections.sort(sections, new Comparator<FileSummary.Section>() {
         @Override
         public int compare(FileSummary.Section s1, FileSummary.Section s2) {
@@ -254,14 +275,29 @@ public int compare(FileSummary.Section s1, FileSummary.Section s2) {
         case INODE: {
           currentStep = new Step(StepType.INODES);
           prog.beginStep(Phase.LOADING_FSIMAGE, currentStep);
-          inodeLoader.loadINodeSection(in, prog, currentStep);
+          List<FileSummary.Section> inodeSubSections =
+              subSections.get(SectionName.INODE_SUB);
+          if (executorService != null && inodeSubSections != null) {
+            inodeLoader.loadINodeSectionInParallel(executorService, in,
+                inodeSubSections, summary.getCodec(), prog, currentStep);
+          } else {
+            inodeLoader.loadINodeSection(in, prog, currentStep);
+          }
         }
           break;
         case INODE_REFERENCE:
           snapshotLoader.loadINodeReferenceSection(in);
           break;
-        case INODE_DIR:
-          inodeLoader.loadINodeDirectorySection(in);
+        case INODE_DIR: {
+          List<FileSummary.Section> dirSubSections =
+              subSections.get(SectionName.INODE_DIR_SUB);
+          if (executorService != null && dirSubSections != null) {
+            inodeLoader.loadINodeDirectorySectionInParallel(executorService,
+                dirSubSections, summary.getCodec());
+          } else {
+            inodeLoader.loadINodeDirectorySection(in);
+          }
+        }
           break;
         case FILES_UNDERCONSTRUCTION:
           inodeLoader.loadFilesUnderConstructionSection(in);
@@ -294,6 +330,73 @@ public int compare(FileSummary.Section s1, FileSummary.Section s2) {
       }
     }
 
+    /**
+     * Remove the sub-section index entries from the given section list.
+     * Sub-sections are only loaded through their parent section, and only
+     * when parallel loading is enabled; otherwise they are dropped and the
+     * parent section is read serially.
+     */
+    private Map<SectionName, List<FileSummary.Section>> removeSubSections(
+        List<FileSummary.Section> sections) {
+      boolean parallel = conf.getBoolean(
+          DFSConfigKeys.DFS_IMAGE_PARALLEL_LOAD_KEY,
+          DFSConfigKeys.DFS_IMAGE_PARALLEL_LOAD_DEFAULT);
+      Map<SectionName, List<FileSummary.Section>> subSections =
+          new EnumMap<>(SectionName.class);
+      for (Iterator<FileSummary.Section> it = sections.iterator();
+           it.hasNext();) {
+        FileSummary.Section s = it.next();
+        SectionName name = SectionName.fromString(s.getName());
+        if (name != SectionName.INODE_SUB
+            && name != SectionName.INODE_DIR_SUB) {
+          continue;
+        }
+        it.remove();
+        if (parallel) {
+          List<FileSummary.Section> list = subSections.get(name);
+          if (list == null) {
+            list = Lists.newArrayList();
+            subSections.put(name, list);
+          }
+          list.add(s);
+        }
+      }
+      return subSections;
+    }
+
+    private ExecutorService createParallelLoadExecutor() {
+      int threads = conf.getInt(DFSConfigKeys.DFS_IMAGE_PARALLEL_THREADS_KEY,
+          DFSConfigKeys.DFS_IMAGE_PARALLEL_THREADS_DEFAULT);
+      if (threads < 1) {
+        LOG.warn("{} is set to {}. Using a single thread instead.",
+            DFSConfigKeys.DFS_IMAGE_PARALLEL_THREADS_KEY, threads);
+        threads = 1;
+      }
+      LOG.info("Loading fsimage sub-sections with {} threads", threads);
+      return Executors.newFixedThreadPool(threads, new ThreadFactoryBuilder()
+          .setDaemon(true).setNameFormat("FSImageLoader-%d").build());
+    }
+
+    /**
+     * Open a new stream over the given section of the image being loaded.
+     * Each call opens its own file handle so that several sections can be
+     * read concurrently. The caller must close the returned stream.
+     */
+    InputStream getInputStreamForSection(FileSummary.Section section,
+        String compressionCodec) throws IOException {
+      FileInputStream fin = new FileInputStream(imageFile);
+      try {
+        fin.getChannel().position(section.getOffset());
+        InputStream in = new BufferedInputStream(new LimitInputStream(fin,
+            section.getLength()));
+        return FSImageUtil.wrapInputStreamForCompression(conf,
+            compressionCodec, in);
+      } catch (IOException e) {
+        fin.close();
+        throw e;
+      }
+    }
+
     private void loadNameSystemSection(InputStream in) throws IOException {
       NameSystemSection s = NameSystemSection.parseDelimitedFrom(in);
       BlockIdManager blockIdManager = fsn.getBlockManager().getBlockIdManager();
@@ -382,9 +485,30 @@ public static final class Saver {
     private CompressionCodec codec;
     private OutputStream underlyingOutputStream;
 
+    /** Whether parallel-loadable sub-sections were requested */
+    private final boolean parallelEnabled;
+    private final int targetSubSections;
+    private final long subSectionInodeThreshold;
+    /** Whether sub-section index entries are written for this image */
+    private boolean writeSubSections = false;
+    private long subSectionOffset = currentOffset;
+
     Saver(SaveNamespaceContext context) {
+      this(context, new Configuration(false));
+    }
+
+    Saver(SaveNamespaceContext context, Configuration conf) {
       this.context = context;
       this.saverContext = new SaverContext();
+      this.parallelEnabled = conf.getBoolean(
+          DFSConfigKeys.DFS_IMAGE_PARALLEL_LOAD_KEY,
+          DFSConfigKeys.DFS_IMAGE_PARALLEL_LOAD_DEFAULT);
+      this.targetSubSections = Math.max(1, conf.getInt(
+          DFSConfigKeys.DFS_IMAGE_PARALLEL_TARGET_SECTIONS_KEY,
+          DFSConfigKeys.DFS_IMAGE_PARALLEL_TARGET_SECTIONS_DEFAULT));
+      this.subSectionInodeThreshold = conf.getLong(
+          DFSConfigKeys.DFS_IMAGE_PARALLEL_INODE_THRESHOLD_KEY,
+          DFSConfigKeys.DFS_IMAGE_PARALLEL_INODE_THRESHOLD_DEFAULT);
     }
 
     public MD5Hash getSavedDigest() {
@@ -413,6 +537,50 @@ public void commitSection(FileSummary.Builder summary, SectionName name)
       summary.addSections(FileSummary.Section.newBuilder().setName(name.name)
           .setLength(length).setOffset(currentOffset));
       currentOffset += length;
+      subSectionOffset = currentOffset;
+    }
+
+    /**
+     * Mark the current position as the start of the first sub-section of the
+     * section being written. Used to exclude a section header from the
+     * sub-sections that follow it.
+     */
+    void markSubSectionStart() throws IOException {
+      if (!writeSubSections) {
+        return;
+      }
+      sectionOutputStream.flush();
+      subSectionOffset = fileChannel.position();
+    }
+
+    /**
+     * Record everything written since the previous sub-section boundary as
+     * a sub-section of the section being written. Sub-sections are index
+     * entries only: the parent section still covers the same bytes, so
+     * loaders that do not understand sub-sections can ignore them.
+     */
+    void commitSubSection(FileSummary.Builder summary, SectionName name)
+        throws IOException {
+      if (!writeSubSections) {
+        return;
+      }
+      sectionOutputStream.flush();
+      long length = fileChannel.position() - subSectionOffset;
+      if (length == 0) {
+        return;
+      }
+      summary.addSections(FileSummary.Section.newBuilder().setName(name.name)
+          .setLength(length).setOffset(subSectionOffset));
+      subSectionOffset += length;
+    }
+
+    /**
+     * @return the number of entries to put in each sub-section of a section
+     * that holds the given number of entries.
+     */
+    long getEntriesPerSubSection(long totalEntries) {
+      return Math.max(1,
+          (totalEntries + targetSubSections - 1) / targetSubSections);
     }
 
     private void flushSectionOutputStream() throws IOException {
@@ -490,6 +658,15 @@ private void saveInternal(FileOutputStream fout,
       } else {
         sectionOutputStream = underlyingOutputStream;
       }
+      if (parallelEnabled) {
+        if (codec != null) {
+          LOG.warn("Not writing fsimage sub-sections because the image is"
+              + " compressed. Parallel loading requires an uncompressed image.");
+        } else {
+          writeSubSections = context.getSourceNamesystem().dir.getINodeMap()
+              .size() >= subSectionInodeThreshold;
+        }
+      }
 
       saveNameSystemSection(b);
       // Check for cancellation right after serializing the name system section.
@@ -607,9 +784,11 @@ public enum SectionName {
     STRING_TABLE("STRING_TABLE"),
     EXTENDED_ACL("EXTENDED_ACL"),
     INODE("INODE"),
+    INODE_SUB("INODE_SUB"),
     INODE_REFERENCE("INODE_REFERENCE"),
     SNAPSHOT("SNAPSHOT"),
     INODE_DIR("INODE_DIR"),
+    INODE_DIR_SUB("INODE_DIR_SUB"),
     FILES_UNDERCONSTRUCTION("FILES_UNDERCONSTRUCTION"),
     SNAPSHOT_DIFF("SNAPSHOT_DIFF"),
     SECRET_MANAGER("SECRET_MANAGER"),
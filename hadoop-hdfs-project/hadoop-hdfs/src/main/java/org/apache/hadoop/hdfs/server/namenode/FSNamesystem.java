@@ -73,6 +73,8 @@
 import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_NAMENODE_RESOURCE_CHECK_INTERVAL_KEY;
 import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_NAMENODE_WRITE_LOCK_REPORTING_THRESHOLD_MS_KEY;
 import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_NAMENODE_WRITE_LOCK_REPORTING_THRESHOLD_MS_DEFAULT;
+import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_NAMENODE_FSLOCK_FINE_GRAINED_DEFAULT;
+import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_NAMENODE_FSLOCK_FINE_GRAINED_KEY;
 import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_NAMENODE_RETRY_CACHE_EXPIRYTIME_MILLIS_DEFAULT;
 import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_NAMENODE_RETRY_CACHE_EXPIRYTIME_MILLIS_KEY;
 import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_NAMENODE_RETRY_CACHE_HEAP_PERCENT_DEFAULT;
@@ -256,12 +258,14 @@
 import org.apache.hadoop.hdfs.server.protocol.StorageReceivedDeletedBlocks;
 import org.apache.hadoop.hdfs.server.protocol.StorageReport;
 import org.apache.hadoop.hdfs.server.protocol.VolumeFailureSummary;
+import org.apache.hadoop.hdfs.util.RwLockMode;
 import org.apache.hadoop.hdfs.web.JsonUtil;
 import org.apache.hadoop.io.IOUtils;
 import org.apache.hadoop.io.Text;
 import org.apache.hadoop.ipc.CallerContext;
 import org.apache.hadoop.ipc.RetriableException;
 import org.apache.hadoop.ipc.RetryCache;
+import org.apache.hadoop.ipc.RpcConstants;
 import org.apache.hadoop.ipc.Server;
 import org.apache.hadoop.ipc.StandbyException;
 import org.apache.hadoop.metrics2.annotation.Metric;
@@ -710,7 +714,10 @@ static FSNamesystem loadFromDisk(Configuration conf) throws IOException {
     }
     boolean fair = conf.getBoolean("dfs.namenode.fslock.fair", true);
     LOG.info("fsLock is fair:" + fair);
-    fsLock = new FSNamesystemLock(fair);
+    boolean fineGrained = conf.getBoolean(DFS_NAMENODE_FSLOCK_FINE_GRAINED_KEY,
+        DFS_NAMENODE_FSLOCK_FINE_GRAINED_DEFAULT);
+    LOG.info("fsLock is fine-grained:" + fineGrained);
+    fsLock = new FSNamesystemLock(fair, fineGrained);
     cond = fsLock.writeLock().newCondition();
     cpLock = new ReentrantLock();
 
@@ -1510,33 +1517,51 @@ public static List<URI> getSharedEditsDirs(Configuration conf) {
 
   @Override
   public void readLock() {
-    this.fsLock.readLock().lock();
+    readLock(RwLockMode.GLOBAL);
+  }
+  @Override
+  public void readLock(RwLockMode mode) {
+    this.fsLock.readLock(mode);
   }
   @Override
   public void readUnlock() {
-    this.fsLock.readLock().unlock();
+    readUnlock(RwLockMode.GLOBAL);
+  }
+  @Override
+  public void readUnlock(RwLockMode mode) {
+    this.fsLock.readUnlock(mode);
   }
   @Override
   public void writeLock() {
-    this.fsLock.writeLock().lock();
-    if (fsLock.getWriteHoldCount() == 1) {
+    writeLock(RwLockMode.GLOBAL);
+  }
+  @Override
+  public void writeLock(RwLockMode mode) {
+    this.fsLock.writeLock(mode);
+    if (fsLock.usesFsLock(mode) && fsLock.getWriteHoldCount() == 1) {
       writeLockHeldTimeStamp = monotonicNow();
     }
   }
   @Override
   public void writeLockInterruptibly() throws InterruptedException {
-    this.fsLock.writeLock().lockInterruptibly();
+    this.fsLock.writeLockInterruptibly(RwLockMode.GLOBAL);
     if (fsLock.getWriteHoldCount() == 1) {
       writeLockHeldTimeStamp = monotonicNow();
     }
   }
   @Override
   public void writeUnlock() {
-    final boolean needReport = fsLock.getWriteHoldCount() == 1 &&
+    writeUnlock(RwLockMode.GLOBAL);
+  }
+  @Override
+  public void writeUnlock(RwLockMode mode) {
+    // The hold time is only tracked for the namespace lock.
+    final boolean needReport = fsLock.usesFsLock(mode) &&
+        fsLock.getWriteHoldCount() == 1 &&
         fsLock.isWriteLockedByCurrentThread();
     final long writeLockInterval = monotonicNow() - writeLockHeldTimeStamp;
 
-    this.fsLock.writeLock().unlock();
+    this.fsLock.writeUnlock(mode);
 
     if (needReport && writeLockInterval >= this.writeLockReportingThreshold) {
       LOG.info("FSNamesystem write lock held for " + writeLockInterval +
@@ -1545,11 +1570,19 @@ public void writeUnlock() {
   }
   @Override
   public boolean hasWriteLock() {
-    return this.fsLock.isWriteLockedByCurrentThread();
+    return hasWriteLock(RwLockMode.GLOBAL);
+  }
+  @Override
+  public boolean hasWriteLock(RwLockMode mode) {
+    return this.fsLock.hasWriteLock(mode);
   }
   @Override
   public boolean hasReadLock() {
-    return this.fsLock.getReadHoldCount() > 0 || hasWriteLock();
+    return hasReadLock(RwLockMode.GLOBAL);
+  }
+  @Override
+  public boolean hasReadLock(RwLockMode mode) {
+    return this.fsLock.hasReadLock(mode);
   }
 
   public int getReadHoldCount() {
@@ -1719,7 +1752,7 @@ FsServerDefaults getServerDefaults() throws StandbyException {
   void setPermission(String src, FsPermission permission) throws IOException {
     HdfsFileStatus auditStat;
     checkOperation(OperationCategory.WRITE);
-    writeLock();
+    writeLock(RwLockMode.FS);
     try {
       checkOperation(OperationCategory.WRITE);
       checkNameNodeSafeMode("Cannot set permission for " + src);
@@ -1728,7 +1761,7 @@ void setPermission(String src, FsPermission permission) throws IOException {
       logAuditEvent(false, "setPermission", src);
       throw e;
     } finally {
-      writeUnlock();
+      writeUnlock(RwLockMode.FS);
     }
     getEditLog().logSync();
     logAuditEvent(true, "setPermission", src, null, auditStat);
@@ -1742,7 +1775,7 @@ void setOwner(String src, String username, String group)
       throws IOException {
     HdfsFileStatus auditStat;
     checkOperation(OperationCategory.WRITE);
-    writeLock();
+    writeLock(RwLockMode.FS);
     try {
       checkOperation(OperationCategory.WRITE);
       checkNameNodeSafeMode("Cannot set owner for " + src);
@@ -1751,7 +1784,7 @@ void setOwner(String src, String username, String group)
       logAuditEvent(false, "setOwner", src);
       throw e;
     } finally {
-      writeUnlock();
+      writeUnlock(RwLockMode.FS);
     }
     getEditLog().logSync();
     logAuditEvent(true, "setOwner", src, null, auditStat);
@@ -1771,6 +1804,19 @@ LocatedBlocks getBlockLocations(String clientMachine, String srcArg,
       checkOperation(OperationCategory.READ);
       res = FSDirStatAndListingOp.getBlockLocations(
           dir, pc, srcArg, offset, length, true);
+      if (isInStandbyState() &&
+          GlobalStateIdContext.getClientStateId() !=
+              RpcConstants.INVALID_STATE_ID) {
+        // A consistent read on a standby. The standby may not have received
+        // block reports for recently added blocks yet, so send the client to
+        // the active rather than returning blocks without locations.
+        for (LocatedBlock b : res.blocks.getLocatedBlocks()) {
+          if (b.getLocations() == null || b.getLocations().length == 0) {
+            throw new StandbyException("Zero block locations for " + srcArg +
+                " on standby; retry on the active NameNode");
+          }
+        }
+      }
       if (isInSafeMode()) {
         for (LocatedBlock b : res.blocks.getLocatedBlocks()) {
           // if safemode & no block locations yet then throw safemodeException
@@ -1795,7 +1841,7 @@ LocatedBlocks getBlockLocations(String clientMachine, String srcArg,
 
     logAuditEvent(true, "open", srcArg);
 
-    if (!isInSafeMode() && res.updateAccessTime()) {
+    if (!isInSafeMode() && !isInStandbyState() && res.updateAccessTime()) {
       String src = srcArg;
       writeLock();
       final long now = now();
@@ -1904,7 +1950,7 @@ void concat(String target, String [] srcs, boolean logRetryCache)
   void setTimes(String src, long mtime, long atime) throws IOException {
     HdfsFileStatus auditStat;
     checkOperation(OperationCategory.WRITE);
-    writeLock();
+    writeLock(RwLockMode.FS);
     try {
       checkOperation(OperationCategory.WRITE);
       checkNameNodeSafeMode("Cannot set times " + src);
@@ -1913,7 +1959,7 @@ void setTimes(String src, long mtime, long atime) throws IOException {
       logAuditEvent(false, "setTimes", src);
       throw e;
     } finally {
-      writeUnlock();
+      writeUnlock(RwLockMode.FS);
     }
     getEditLog().logSync();
     logAuditEvent(true, "setTimes", src, null, auditStat);
@@ -2942,7 +2988,7 @@ boolean mkdirs(String src, PermissionStatus permissions,
       boolean createParent) throws IOException {
     HdfsFileStatus auditStat = null;
     checkOperation(OperationCategory.WRITE);
-    writeLock();
+    writeLock(RwLockMode.FS);
     try {
       checkOperation(OperationCategory.WRITE);
       checkNameNodeSafeMode("Cannot create directory " + src);
@@ -2951,7 +2997,7 @@ boolean mkdirs(String src, PermissionStatus permissions,
       logAuditEvent(false, "mkdirs", src);
       throw e;
     } finally {
-      writeUnlock();
+      writeUnlock(RwLockMode.FS);
     }
     getEditLog().logSync();
     logAuditEvent(true, "mkdirs", src, null, auditStat);
@@ -3676,7 +3722,7 @@ HeartbeatResponse handleHeartbeat(DatanodeRegistration nodeReg,
       int xceiverCount, int xmitsInProgress, int failedVolumes,
       VolumeFailureSummary volumeFailureSummary,
       boolean requestFullBlockReportLease) throws IOException {
-    readLock();
+    readLock(RwLockMode.BM);
     try {
       //get datanode commands
       final int maxTransfer = blockManager.getMaxReplicationStreams()
@@ -3696,7 +3742,7 @@ nodeReg, reports, getBlockPoolId(), cacheCapacity, cacheUsed,
       return new HeartbeatResponse(cmds, haState, rollingUpgradeInfo,
           blockReportLeaseId);
     } finally {
-      readUnlock();
+      readUnlock(RwLockMode.BM);
     }
   }
 
@@ -4104,7 +4150,7 @@ DatanodeInfo[] datanodeReport(final DatanodeReportType type
       ) throws AccessControlException, StandbyException {
     checkSuperuserPrivilege();
     checkOperation(OperationCategory.UNCHECKED);
-    readLock();
+    readLock(RwLockMode.BM);
     try {
       checkOperation(OperationCategory.UNCHECKED);
       final DatanodeManager dm = getBlockManager().getDatanodeManager();      
@@ -4116,7 +4162,7 @@ DatanodeInfo[] datanodeReport(final DatanodeReportType type
       }
       return arr;
     } finally {
-      readUnlock();
+      readUnlock(RwLockMode.BM);
     }
   }
 
@@ -4124,7 +4170,7 @@ DatanodeStorageReport[] getDatanodeStorageReport(final DatanodeReportType type
       ) throws AccessControlException, StandbyException {
     checkSuperuserPrivilege();
     checkOperation(OperationCategory.UNCHECKED);
-    readLock();
+    readLock(RwLockMode.BM);
     try {
       checkOperation(OperationCategory.UNCHECKED);
       final DatanodeManager dm = getBlockManager().getDatanodeManager();      
@@ -4138,7 +4184,7 @@ DatanodeStorageReport[] getDatanodeStorageReport(final DatanodeReportType type
       }
       return reports;
     } finally {
-      readUnlock();
+      readUnlock(RwLockMode.BM);
     }
   }
 
@@ -4505,6 +4551,12 @@ public long getScheduledReplicationBlocks() {
     return blockManager.getScheduledReplicationBlocksCount();
   }
 
+  @Metric({"LowRedundancyBlocksDrainRate",
+      "Low redundancy blocks scheduled for reconstruction per second"})
+  public long getLowRedundancyBlocksDrainRate() {
+    return blockManager.getLowRedundancyBlocksDrainRate();
+  }
+
   @Override
   @Metric
   public long getPendingDeletionBlocks() {
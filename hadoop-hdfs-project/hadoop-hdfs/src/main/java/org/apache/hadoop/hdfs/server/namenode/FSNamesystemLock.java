@@ -24,18 +24,40 @@
 import java.util.concurrent.locks.ReentrantLock;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
 
+import org.apache.hadoop.hdfs.util.RwLockMode;
+
 import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Preconditions;
 
 /**
  * Mimics a ReentrantReadWriteLock so more sophisticated locking capabilities
  * are possible.
+ *
+ * When fine-grained locking is enabled, the block manager state is protected
+ * by a separate lock, and {@link RwLockMode#FS} and {@link RwLockMode#BM}
+ * callers only take the lock they need. {@link RwLockMode#GLOBAL} takes both,
+ * namespace lock first. A thread that holds only the block manager lock must
+ * not acquire the namespace lock. When fine-grained locking is disabled all
+ * the modes map to the coarse lock, which is the namespace lock.
  */
 class FSNamesystemLock implements ReadWriteLock {
   @VisibleForTesting
   protected ReentrantReadWriteLock coarseLock;
+
+  /** Block manager lock; null unless fine-grained locking is enabled. */
+  private final ReentrantReadWriteLock bmLock;
   
   FSNamesystemLock(boolean fair) {
+    this(fair, false);
+  }
+
+  FSNamesystemLock(boolean fair, boolean fineGrained) {
     this.coarseLock = new ReentrantReadWriteLock(fair);
+    this.bmLock = fineGrained ? new ReentrantReadWriteLock(fair) : null;
+  }
+
+  boolean isFineGrained() {
+    return bmLock != null;
   }
   
   @Override
@@ -48,6 +70,104 @@ public Lock writeLock() {
     return coarseLock.writeLock();
   }
 
+  void readLock(RwLockMode mode) {
+    if (usesFsLock(mode)) {
+      checkLockOrder();
+      coarseLock.readLock().lock();
+    }
+    if (usesBmLock(mode)) {
+      bmLock.readLock().lock();
+    }
+  }
+
+  void readUnlock(RwLockMode mode) {
+    if (usesBmLock(mode)) {
+      bmLock.readLock().unlock();
+    }
+    if (usesFsLock(mode)) {
+      coarseLock.readLock().unlock();
+    }
+  }
+
+  void writeLock(RwLockMode mode) {
+    if (usesFsLock(mode)) {
+      checkLockOrder();
+      coarseLock.writeLock().lock();
+    }
+    if (usesBmLock(mode)) {
+      bmLock.writeLock().lock();
+    }
+  }
+
+  void writeLockInterruptibly(RwLockMode mode) throws InterruptedException {
+    if (usesFsLock(mode)) {
+      checkLockOrder();
+      coarseLock.writeLock().lockInterruptibly();
+    }
+    if (usesBmLock(mode)) {
+      try {
+        bmLock.writeLock().lockInterruptibly();
+      } catch (InterruptedException e) {
+        if (usesFsLock(mode)) {
+          coarseLock.writeLock().unlock();
+        }
+        throw e;
+      }
+    }
+  }
+
+  void writeUnlock(RwLockMode mode) {
+    if (usesBmLock(mode)) {
+      bmLock.writeLock().unlock();
+    }
+    if (usesFsLock(mode)) {
+      coarseLock.writeLock().unlock();
+    }
+  }
+
+  boolean hasReadLock(RwLockMode mode) {
+    return (!usesFsLock(mode) || coarseLock.getReadHoldCount() > 0
+            || coarseLock.isWriteLockedByCurrentThread())
+        && (!usesBmLock(mode) || bmLock.getReadHoldCount() > 0
+            || bmLock.isWriteLockedByCurrentThread());
+  }
+
+  boolean hasWriteLock(RwLockMode mode) {
+    return (!usesFsLock(mode) || coarseLock.isWriteLockedByCurrentThread())
+        && (!usesBmLock(mode) || bmLock.isWriteLockedByCurrentThread());
+  }
+
+  /**
+   * @return whether the given mode takes the coarse lock. Every mode does
+   * unless fine-grained locking is enabled.
+   */
+  boolean usesFsLock(RwLockMode mode) {
+    return bmLock == null || mode != RwLockMode.BM;
+  }
+
+  /**
+   * @return whether the given mode takes the block manager lock.
+   */
+  private boolean usesBmLock(RwLockMode mode) {
+    return bmLock != null && mode != RwLockMode.FS;
+  }
+
+  /**
+   * The namespace lock must be acquired before the block manager lock,
+   * unless the current thread already holds it.
+   */
+  private void checkLockOrder() {
+    if (bmLock == null) {
+      return;
+    }
+    Preconditions.checkState((bmLock.getReadHoldCount() == 0
+            && !bmLock.isWriteLockedByCurrentThread())
+        || coarseLock.getReadHoldCount() > 0
+        || coarseLock.isWriteLockedByCurrentThread(),
+        "The namespace lock cannot be acquired while only holding the"
+        + " block manager lock");
+  }
+
   public int getReadHoldCount() {
     return coarseLock.getReadHoldCount();
   }
@@ -68,6 +188,10 @@ public boolean isWriteLockedByCurrentThread() {
    * @return int - Number of threads waiting on this lock
    */
   public int getQueueLength() {
-    return coarseLock.getQueueLength();
+    int length = coarseLock.getQueueLength();
+    if (bmLock != null) {
+      length += bmLock.getQueueLength();
+    }
+    return length;
   }
 }
@@ -0,0 +1,111 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs.server.namenode;
+
+import org.apache.hadoop.classification.InterfaceAudience;
+import org.apache.hadoop.classification.InterfaceStability;
+import org.apache.hadoop.ipc.AlignmentContext;
+import org.apache.hadoop.ipc.RpcConstants;
+import org.apache.hadoop.ipc.Server;
+import org.apache.hadoop.ipc.protobuf.RpcHeaderProtos.RpcRequestHeaderProto;
+import org.apache.hadoop.ipc.protobuf.RpcHeaderProtos.RpcResponseHeaderProto;
+
+/**
+ * This is the server side implementation responsible for passing
+ * state alignment info to clients.
+ *
+ * The NameNode's state is the ID of the last transaction it has written
+ * (on the active) or applied (on a standby). Every RPC response carries it,
+ * and clients using consistent standby reads send back the highest value
+ * they have seen, so that a standby can hold a read until it has caught up.
+ * The RPC server holds such a read by putting it back in its call queue, so
+ * that lagging clients do not tie up the handlers.
+ */
+@InterfaceAudience.Private
+@InterfaceStability.Evolving
+class GlobalStateIdContext implements AlignmentContext {
+  private final FSNamesystem namesystem;
+  private final long maxStateWaitMs;
+
+  GlobalStateIdContext(FSNamesystem namesystem, long maxStateWaitMs) {
+    this.namesystem = namesystem;
+    this.maxStateWaitMs = maxStateWaitMs;
+  }
+
+  /**
+   * Server side implementation for providing state alignment info in
+   * responses.
+   */
+  @Override
+  public void updateResponseState(RpcResponseHeaderProto.Builder header) {
+    header.setStateId(getLastSeenStateId());
+  }
+
+  /**
+   * Server side implementation only provides state alignment info.
+   * It does not receive state alignment info from responses.
+   */
+  @Override
+  public void receiveResponseState(RpcResponseHeaderProto header) {
+    throw new UnsupportedOperationException(
+        "Server does not receive responses");
+  }
+
+  /**
+   * Server side implementation only receives state alignment info.
+   * It does not build RPC requests.
+   */
+  @Override
+  public void updateRequestState(RpcRequestHeaderProto.Builder header) {
+    throw new UnsupportedOperationException("Server does not send requests");
+  }
+
+  /**
+   * Server side implementation for processing state alignment info in
+   * requests.
+   */
+  @Override
+  public long receiveRequestState(RpcRequestHeaderProto header) {
+    return header.getStateId();
+  }
+
+  @Override
+  public long getLastSeenStateId() {
+    return namesystem.getFSImage().getLastAppliedOrWrittenTxIdWithoutLock();
+  }
+
+  /**
+   * Server side implementation for bounding how long a read is held until
+   * this NameNode catches up with its client.
+   */
+  @Override
+  public long getMaxStateWaitMs() {
+    return maxStateWaitMs;
+  }
+
+  /**
+   * @return the state ID sent by the client of the current RPC call, or
+   * {@link RpcConstants#INVALID_STATE_ID} if there is no such call or the
+   * client did not send one.
+   */
+  static long getClientStateId() {
+    Server.Call call = Server.getCurCall().get();
+    return call != null ? call.getClientStateId()
+        : RpcConstants.INVALID_STATE_ID;
+  }
+}
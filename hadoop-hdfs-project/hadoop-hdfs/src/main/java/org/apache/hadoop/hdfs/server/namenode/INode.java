@@ -483,6 +483,18 @@ void addSpaceConsumed2Parent(QuotaCounts counts, boolean verify)
     }
   }
 
+  /**
+   * Drop the cached content summaries of the directories whose subtree
+   * contains this inode, after a change to what the inode contributes to
+   * them.
+   */
+  public final void invalidateContentSummaries() {
+    INodeDirectory dir = isDirectory() ? asDirectory() : getParent();
+    while (dir != null && dir.clearCachedContentCounts()) {
+      dir = dir.getParent();
+    }
+  }
+
   /**
    * Get the quota set for this inode
    * @return the quota counts.  The count is -1 if it is not set.
@@ -19,11 +19,10 @@
 
 import java.io.FileNotFoundException;
 import java.io.PrintWriter;
-import java.util.ArrayList;
-import java.util.Collections;
+import java.util.Arrays;
 import java.util.Iterator;
-import java.util.List;
 import java.util.Map;
+import java.util.NoSuchElementException;
 
 import org.apache.hadoop.fs.PathIsNotDirectoryException;
 import org.apache.hadoop.fs.permission.PermissionStatus;
@@ -68,7 +67,46 @@ public static INodeDirectory valueOf(INode inode, Object path
   protected static final int DEFAULT_FILES_PER_DIRECTORY = 5;
   final static byte[] ROOT_NAME = DFSUtil.string2Bytes("");
 
-  private List<INode> children = null;
+  /**
+   * The children of this directory, sorted by name, occupy the first
+   * {@link #numChildren} slots of this array. A bare array is used rather
+   * than an ArrayList to save an object per directory, and it is sized
+   * exactly when the namespace is loaded from an fsimage.
+   */
+  private INode[] children = null;
+  private int numChildren = 0;
+
+  /**
+   * The content summary of the current state of this directory's subtree,
+   * if it has been computed since the subtree last changed. Only kept for
+   * subtrees without snapshots or files under construction, which are
+   * updated through the mutation paths that invalidate it.
+   *
+   * Whenever it is set, it is also set for all the directories in the
+   * subtree, so that invalidation can stop at the first ancestor without it.
+   */
+  private CachedContentCounts cachedContentCounts = null;
+
+  /**
+   * Set for subtrees whose summary is up to date but too small to be worth
+   * keeping in memory.
+   */
+  private static final CachedContentCounts SMALL_SUBTREE =
+      new CachedContentCounts(null, BLOCK_STORAGE_POLICY_ID_UNSPECIFIED);
+
+  /**
+   * An immutable content summary together with the storage policy it was
+   * computed with, since a subtree inherits its storage policy.
+   */
+  private static final class CachedContentCounts {
+    private final ContentCounts counts;
+    private final byte storagePolicyId;
+
+    CachedContentCounts(ContentCounts counts, byte storagePolicyId) {
+      this.counts = counts;
+      this.storagePolicyId = storagePolicyId;
+    }
+  }
   
   /** constructor */
   public INodeDirectory(long id, byte[] name, PermissionStatus permissions,
@@ -88,9 +126,10 @@ public INodeDirectory(INodeDirectory other, boolean adopt,
       Feature... featuresToCopy) {
     super(other);
     this.children = other.children;
-    if (adopt && this.children != null) {
-      for (INode child : children) {
-        child.setParent(this);
+    this.numChildren = other.numChildren;
+    if (adopt) {
+      for (int i = 0; i < numChildren; i++) {
+        children[i].setParent(this);
       }
     }
     this.features = featuresToCopy;
@@ -198,7 +237,8 @@ DirectoryWithQuotaFeature addDirectoryWithQuotaFeature(
   }
 
   int searchChildren(byte[] name) {
-    return children == null? -1: Collections.binarySearch(children, name);
+    return children == null ? -1
+        : Arrays.binarySearch(children, 0, numChildren, name);
   }
   
   public DirectoryWithSnapshotFeature addSnapshotFeature(
@@ -207,6 +247,7 @@ public DirectoryWithSnapshotFeature addSnapshotFeature(
         "Directory is already with snapshot");
     DirectoryWithSnapshotFeature sf = new DirectoryWithSnapshotFeature(diffs);
     addFeature(sf);
+    invalidateContentSummaries();
     return sf;
   }
   
@@ -284,6 +325,7 @@ public void addSnapshottableFeature() {
       this.removeFeature(s);
     }
     this.addFeature(snapshottable);
+    invalidateContentSummaries();
   }
 
   /** remove DirectorySnapshottableFeature */
@@ -298,6 +340,7 @@ public void removeSnapshottableFeature() {
           s.getDiffs());
       addFeature(sf);
     }
+    invalidateContentSummaries();
   }
 
   /** 
@@ -311,10 +354,10 @@ public void replaceChild(INode oldChild, final INode newChild,
     Preconditions.checkNotNull(children);
     final int i = searchChildren(newChild.getLocalNameBytes());
     Preconditions.checkState(i >= 0);
-    Preconditions.checkState(oldChild == children.get(i)
-        || oldChild == children.get(i).asReference().getReferredINode()
+    Preconditions.checkState(oldChild == children[i]
+        || oldChild == children[i].asReference().getReferredINode()
             .asReference().getReferredINode());
-    oldChild = children.get(i);
+    oldChild = children[i];
     
     if (oldChild.isReference() && newChild.isReference()) {
       // both are reference nodes, e.g., DstReference -> WithName
@@ -322,7 +365,8 @@ public void replaceChild(INode oldChild, final INode newChild,
           (WithCount) oldChild.asReference().getReferredINode();
       withCount.removeReference(oldChild.asReference());
     }
-    children.set(i, newChild);
+    children[i] = newChild;
+    invalidateContentSummaries();
     
     // replace the instance in the created list of the diff list
     DirectoryWithSnapshotFeature sf = this.getDirectoryWithSnapshotFeature();
@@ -453,7 +497,54 @@ public ReadOnlyList<INode> getChildrenList(final int snapshotId) {
   
   private ReadOnlyList<INode> getCurrentChildrenList() {
     return children == null ? ReadOnlyList.Util.<INode> emptyList()
-        : ReadOnlyList.Util.asReadOnlyList(children);
+        : new CurrentChildrenList();
+  }
+
+  /** A live, read-only view of the current children of this directory. */
+  private class CurrentChildrenList implements ReadOnlyList<INode> {
+    @Override
+    public boolean isEmpty() {
+      return numChildren == 0;
+    }
+
+    @Override
+    public int size() {
+      return numChildren;
+    }
+
+    @Override
+    public INode get(int i) {
+      if (i >= numChildren) {
+        throw new IndexOutOfBoundsException(
+            "Index: " + i + ", Size: " + numChildren);
+      }
+      return children[i];
+    }
+
+    @Override
+    public Iterator<INode> iterator() {
+      return new Iterator<INode>() {
+        private int next = 0;
+
+        @Override
+        public boolean hasNext() {
+          return next < numChildren;
+        }
+
+        @Override
+        public INode next() {
+          if (!hasNext()) {
+            throw new NoSuchElementException();
+          }
+          return children[next++];
+        }
+
+        @Override
+        public void remove() {
+          throw new UnsupportedOperationException();
+        }
+      };
+    }
   }
 
   /**
@@ -502,8 +593,11 @@ public boolean removeChild(final INode child) {
       return false;
     }
 
-    final INode removed = children.remove(i);
+    final INode removed = children[i];
     Preconditions.checkState(removed == child);
+    System.arraycopy(children, i + 1, children, i, numChildren - i - 1);
+    children[--numChildren] = null;
+    invalidateContentSummaries();
     return true;
   }
 
@@ -555,16 +649,38 @@ public boolean addChild(INode node) {
    */
   private void addChild(final INode node, final int insertionPoint) {
     if (children == null) {
-      children = new ArrayList<>(DEFAULT_FILES_PER_DIRECTORY);
+      children = new INode[DEFAULT_FILES_PER_DIRECTORY];
+    } else {
+      ensureChildrenCapacity(numChildren + 1);
     }
     node.setParent(this);
-    children.add(-insertionPoint - 1, node);
+    final int i = -insertionPoint - 1;
+    System.arraycopy(children, i, children, i + 1, numChildren - i);
+    children[i] = node;
+    numChildren++;
+    invalidateContentSummaries();
 
     if (node.getGroupName() == null) {
       node.setGroup(getGroupName());
     }
   }
 
+  /**
+   * Make room for at least the given number of children. This is used when
+   * the number of children is known in advance, e.g. when loading an
+   * fsimage, so that the children array does not need to be resized.
+   */
+  void ensureChildrenCapacity(int capacity) {
+    if (children == null) {
+      if (capacity > 0) {
+        children = new INode[capacity];
+      }
+    } else if (children.length < capacity) {
+      children = Arrays.copyOf(children,
+          Math.max(capacity, children.length + (children.length >> 1)));
+    }
+  }
+
   @Override
   public QuotaCounts computeQuotaUsage(BlockStoragePolicySuite bsps,
       byte blockStoragePolicyId, boolean useCache, int lastSnapshotId) {
@@ -601,13 +717,12 @@ public QuotaCounts computeQuotaUsage(BlockStoragePolicySuite bsps,
   private QuotaCounts computeDirectoryQuotaUsage(BlockStoragePolicySuite bsps,
       byte blockStoragePolicyId, QuotaCounts counts, boolean useCache,
       int lastSnapshotId) {
-    if (children != null) {
-      for (INode child : children) {
-        final byte childPolicyId = child.getStoragePolicyIDForQuota(
-            blockStoragePolicyId);
-        counts.add(child.computeQuotaUsage(bsps, childPolicyId, useCache,
-            lastSnapshotId));
-      }
+    for (int i = 0; i < numChildren; i++) {
+      final INode child = children[i];
+      final byte childPolicyId = child.getStoragePolicyIDForQuota(
+          blockStoragePolicyId);
+      counts.add(child.computeQuotaUsage(bsps, childPolicyId, useCache,
+          lastSnapshotId));
     }
     return computeQuotaUsage4CurrentDirectory(bsps, blockStoragePolicyId,
         counts);
@@ -649,6 +764,28 @@ public ContentSummaryComputationContext computeContentSummary(int snapshotId,
 
   protected ContentSummaryComputationContext computeDirectoryContentSummary(
       ContentSummaryComputationContext summary, int snapshotId) {
+    final boolean cacheable = summary.isCacheEnabled() &&
+        snapshotId == Snapshot.CURRENT_STATE_ID &&
+        !isWithSnapshot();
+    if (!cacheable) {
+      summary.markUncacheable();
+    }
+    final byte storagePolicyId = cacheable ? getStoragePolicyID() : 0;
+    final CachedContentCounts cached = cachedContentCounts;
+    if (cacheable && cached != null && cached != SMALL_SUBTREE &&
+        cached.storagePolicyId == storagePolicyId) {
+      summary.addCachedCounts(cached.counts);
+      summary.yield();
+      return summary;
+    }
+    ContentCounts before = null;
+    final long lastUncacheableCount = summary.getUncacheableCount();
+    final long firstYieldCount = summary.getYieldCount();
+    if (cacheable) {
+      before = new ContentCounts.Builder().build();
+      before.addContents(summary.getCounts());
+    }
+
     ReadOnlyList<INode> childrenList = getChildrenList(snapshotId);
     // Explicit traversing is done to enable repositioning after relinquishing
     // and reacquiring locks.
@@ -679,10 +816,39 @@ protected ContentSummaryComputationContext computeDirectoryContentSummary(
 
     // Increment the directory count for this directory.
     summary.getCounts().addContent(Content.DIRECTORY, 1);
+    // Cache the counts of the subtree only if they are known to be exact,
+    // i.e. the locks were held throughout and nothing in it can change
+    // without invalidating the cache.
+    if (cacheable && lastUncacheableCount == summary.getUncacheableCount() &&
+        firstYieldCount == summary.getYieldCount()) {
+      ContentCounts counts = new ContentCounts.Builder().build();
+      counts.addContents(summary.getCounts());
+      counts.subtractContents(before);
+      cachedContentCounts = ContentSummaryComputationContext.getInodeCount(
+          counts) >= summary.getCacheMinSubtreeSize()
+          ? new CachedContentCounts(counts, storagePolicyId) : SMALL_SUBTREE;
+    }
     // Relinquish and reacquire locks if necessary.
     summary.yield();
     return summary;
   }
+
+  /**
+   * Drop the cached content summary of this directory.
+   * @return false if there was none, and so none of the ancestors has one.
+   */
+  boolean clearCachedContentCounts() {
+    if (cachedContentCounts == null) {
+      return false;
+    }
+    cachedContentCounts = null;
+    return true;
+  }
+
+  @VisibleForTesting
+  boolean hasCachedContentCounts() {
+    return cachedContentCounts != null && cachedContentCounts != SMALL_SUBTREE;
+  }
   
   /**
    * This method is usually called by the undo section of rename.
@@ -747,6 +913,7 @@ public void undoRename4DstParent(final BlockStoragePolicySuite bsps,
   /** Set the children list to null. */
   public void clearChildren() {
     this.children = null;
+    this.numChildren = 0;
   }
 
   @Override
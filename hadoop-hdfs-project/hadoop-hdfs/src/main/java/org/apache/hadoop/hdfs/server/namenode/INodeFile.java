@@ -253,6 +253,7 @@ INodeFile toUnderConstruction(String clientName, String clientMachine) {
     FileUnderConstructionFeature uc = new FileUnderConstructionFeature(
         clientName, clientMachine);
     addFeature(uc);
+    invalidateContentSummaries();
     return this;
   }
 
@@ -770,6 +771,13 @@ public final QuotaCounts computeQuotaUsageWithStriped(
   @Override
   public final ContentSummaryComputationContext computeContentSummary(
       int snapshotId, final ContentSummaryComputationContext summary) {
+    if (isUnderConstruction() || getFileWithSnapshotFeature() != null) {
+      // the length of the last block is updated without notifying the
+      // ancestors, and the blocks and replication kept for snapshots change
+      // when a snapshot is deleted, which only notifies the ancestors of the
+      // snapshot root. the summaries which include either cannot be cached.
+      summary.markUncacheable();
+    }
     final ContentCounts counts = summary.getCounts();
     counts.addContent(Content.FILE, 1);
     final long fileLen = computeFileSize(snapshotId);
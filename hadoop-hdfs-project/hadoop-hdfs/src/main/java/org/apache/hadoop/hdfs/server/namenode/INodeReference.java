@@ -315,6 +315,8 @@ public void destroyAndCollectBlocks(ReclaimContext reclaimContext) {
   @Override
   public ContentSummaryComputationContext computeContentSummary(int snapshotId,
       ContentSummaryComputationContext summary) {
+    // references only exist because of snapshots.
+    summary.markUncacheable();
     return referred.computeContentSummary(snapshotId, summary);
   }
 
@@ -504,6 +506,7 @@ public int getLastSnapshotId() {
     @Override
     public final ContentSummaryComputationContext computeContentSummary(
         int snapshotId, ContentSummaryComputationContext summary) {
+      summary.markUncacheable();
       final int s = snapshotId < lastSnapshotId ? snapshotId : lastSnapshotId;
       // only count storagespace for WithName
       final QuotaCounts q = computeQuotaUsage(
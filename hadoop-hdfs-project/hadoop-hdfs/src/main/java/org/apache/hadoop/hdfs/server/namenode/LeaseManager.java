@@ -24,12 +24,12 @@
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Comparator;
-import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
-import java.util.PriorityQueue;
-import java.util.SortedMap;
-import java.util.TreeMap;
+import java.util.NavigableSet;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
@@ -63,6 +63,14 @@
  * 2.9) Namenode removes f from the lease
  *      and removes the lease once all files have been removed
  * 2.10) Namenode commit changes to edit log
+ *
+ * Leases are added and removed under the FSNamesystem write lock, but are
+ * renewed by clients under the read lock only. Renewing a lease therefore
+ * just updates its timestamp, without locking or reordering anything. The
+ * expiry index is ordered by the timestamp each lease had when it was
+ * indexed, which can only be older than its current one, so the monitor
+ * finds all expired leases at the head of the index and moves the leases
+ * which have been renewed since to their new place as it comes across them.
  */
 @InterfaceAudience.Private
 public class LeaseManager {
@@ -77,17 +85,21 @@ public class LeaseManager {
   // Used for handling lock-leases
   // Mapping: leaseHolder -> Lease
   //
-  private final SortedMap<String, Lease> leases = new TreeMap<>();
-  // Set of: Lease
-  private final PriorityQueue<Lease> sortedLeases = new PriorityQueue<>(512,
+  private final ConcurrentMap<String, Lease> leases =
+      new ConcurrentHashMap<>();
+  // Set of: Lease, ordered by the time they were last indexed. Guarded by
+  // this object's monitor.
+  private final NavigableSet<Lease> sortedLeases = new TreeSet<>(
       new Comparator<Lease>() {
         @Override
         public int compare(Lease o1, Lease o2) {
-          return Long.signum(o1.getLastUpdate() - o2.getLastUpdate());
+          int cmp = Long.compare(o1.indexedUpdate, o2.indexedUpdate);
+          return cmp != 0 ? cmp : o1.holder.compareTo(o2.holder);
         }
   });
   // INodeID -> Lease
-  private final HashMap<Long, Lease> leasesById = new HashMap<>();
+  private final ConcurrentMap<Long, Lease> leasesById =
+      new ConcurrentHashMap<>();
 
   private Daemon lmthread;
   private volatile boolean shouldRunMonitor;
@@ -130,16 +142,16 @@ synchronized long getNumUnderConstructionBlocks() {
   Collection<Long> getINodeIdWithLeases() {return leasesById.keySet();}
 
   /** @return the lease containing src */
-  public synchronized Lease getLease(INodeFile src) {return leasesById.get(src.getId());}
+  public Lease getLease(INodeFile src) {return leasesById.get(src.getId());}
 
   /** @return the number of leases currently in the system */
   @VisibleForTesting
-  public synchronized int countLease() {
-    return sortedLeases.size();
+  public int countLease() {
+    return leases.size();
   }
 
   /** @return the number of paths contained in all leases */
-  synchronized long countPath() {
+  long countPath() {
     return leasesById.size();
   }
 
@@ -151,6 +163,7 @@ synchronized Lease addLease(String holder, long inodeId) {
     if (lease == null) {
       lease = new Lease(holder);
       leases.put(holder, lease);
+      lease.indexedUpdate = lease.lastUpdate;
       sortedLeases.add(lease);
     } else {
       renewLease(lease);
@@ -221,21 +234,19 @@ synchronized Lease reassignLease(Lease lease, INodeFile src,
   /**
    * Renew the lease(s) held by the given client
    */
-  synchronized void renewLease(String holder) {
+  void renewLease(String holder) {
     renewLease(getLease(holder));
   }
-  synchronized void renewLease(Lease lease) {
+  void renewLease(Lease lease) {
     if (lease != null) {
-      sortedLeases.remove(lease);
       lease.renew();
-      sortedLeases.add(lease);
     }
   }
 
   /**
    * Renew all of the currently open leases.
    */
-  synchronized void renewAllLeases() {
+  void renewAllLeases() {
     for (Lease l : leases.values()) {
       renewLease(l);
     }
@@ -250,7 +261,9 @@ synchronized void renewAllLeases() {
    *************************************************************/
   class Lease {
     private final String holder;
-    private long lastUpdate;
+    private volatile long lastUpdate;
+    // lastUpdate when the lease was added to sortedLeases.
+    private long indexedUpdate;
     private final HashSet<Long> files = new HashSet<>();
   
     /** Only LeaseManager object can create a lease */
@@ -322,21 +335,32 @@ class Monitor implements Runnable {
     public void run() {
       for(; shouldRunMonitor && fsnamesystem.isRunning(); ) {
         boolean needSync = false;
+        boolean moreExpired = false;
         try {
-          fsnamesystem.writeLockInterruptibly();
-          try {
-            if (!fsnamesystem.isInSafeMode()) {
-              needSync = checkLeases();
-            }
-          } finally {
-            fsnamesystem.writeUnlock();
-            // lease reassignments should to be sync'ed.
-            if (needSync) {
-              fsnamesystem.getEditLog().logSync();
+          // only take the write lock if there is anything to recover.
+          if (getExpiredLease() != null) {
+            fsnamesystem.writeLockInterruptibly();
+            try {
+              if (!fsnamesystem.isInSafeMode()) {
+                long start = monotonicNow();
+                needSync = checkLeases();
+                // go on with the next batch right away if this one was cut
+                // short to release the lock.
+                moreExpired = isMaxLockHoldToReleaseLease(start) &&
+                    getExpiredLease() != null;
+              }
+            } finally {
+              fsnamesystem.writeUnlock();
+              // lease reassignments should to be sync'ed.
+              if (needSync) {
+                fsnamesystem.getEditLog().logSync();
+              }
             }
           }
-  
-          Thread.sleep(fsnamesystem.getLeaseRecheckIntervalMs());
+
+          if (!moreExpired) {
+            Thread.sleep(fsnamesystem.getLeaseRecheckIntervalMs());
+          }
         } catch(InterruptedException ie) {
           if (LOG.isDebugEnabled()) {
             LOG.debug(name + " is interrupted", ie);
@@ -358,9 +382,9 @@ synchronized boolean checkLeases() {
 
     long start = monotonicNow();
 
-    while(!sortedLeases.isEmpty() && sortedLeases.peek().expiredHardLimit()
+    Lease leaseToCheck;
+    while((leaseToCheck = getExpiredLease()) != null
       && !isMaxLockHoldToReleaseLease(start)) {
-      Lease leaseToCheck = sortedLeases.peek();
       LOG.info(leaseToCheck + " has expired hard limit");
 
       final List<Long> removing = new ArrayList<>();
@@ -416,6 +440,29 @@ synchronized boolean checkLeases() {
   }
 
 
+  /**
+   * @return the lease which was renewed the longest time ago if it has
+   * expired its hard limit, otherwise null.
+   */
+  @VisibleForTesting
+  synchronized Lease getExpiredLease() {
+    while (!sortedLeases.isEmpty()) {
+      final Lease oldest = sortedLeases.first();
+      if (monotonicNow() - oldest.indexedUpdate <= hardLimit) {
+        // no lease has been renewed longer ago than it was indexed
+        return null;
+      }
+      if (oldest.expiredHardLimit()) {
+        return oldest;
+      }
+      // renewed since it was indexed, move it to its current place.
+      sortedLeases.remove(oldest);
+      oldest.indexedUpdate = oldest.lastUpdate;
+      sortedLeases.add(oldest);
+    }
+    return null;
+  }
+
   /** @return true if max lock hold is reached */
   private boolean isMaxLockHoldToReleaseLease(long start) {
     return monotonicNow() - start >
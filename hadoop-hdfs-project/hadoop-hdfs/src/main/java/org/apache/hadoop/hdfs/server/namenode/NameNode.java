@@ -65,6 +65,7 @@
 import org.apache.hadoop.hdfs.server.protocol.NamenodeRegistration;
 import org.apache.hadoop.hdfs.server.protocol.NamespaceInfo;
 import org.apache.hadoop.ipc.RefreshCallQueueProtocol;
+import org.apache.hadoop.ipc.RpcConstants;
 import org.apache.hadoop.ipc.Server;
 import org.apache.hadoop.ipc.StandbyException;
 import org.apache.hadoop.metrics2.lib.DefaultMetricsSystem;
@@ -361,6 +362,7 @@ public long getProtocolVersion(String protocol,
   private final boolean haEnabled;
   private final HAContext haContext;
   protected final boolean allowStaleStandbyReads;
+  protected final boolean allowConsistentStandbyReads;
   private AtomicBoolean started = new AtomicBoolean(false); 
 
   
@@ -922,6 +924,9 @@ protected NameNode(Configuration conf, NamenodeRole role)
     this.haEnabled = HAUtil.isHAEnabled(conf, nsId);
     state = createHAState(getStartupOption(conf));
     this.allowStaleStandbyReads = HAUtil.shouldAllowStandbyReads(conf);
+    this.allowConsistentStandbyReads = conf.getBoolean(
+        DFSConfigKeys.DFS_HA_STANDBY_CONSISTENT_READS_ENABLED_KEY,
+        DFSConfigKeys.DFS_HA_STANDBY_CONSISTENT_READS_ENABLED_DEFAULT);
     this.haContext = createHAContext();
     try {
       initializeGenericKeys(conf, nsId, namenodeId);
@@ -1917,10 +1922,28 @@ public void checkOperation(final OperationCategory op)
     
     @Override
     public boolean allowStaleReads() {
-      return allowStaleStandbyReads;
+      return allowStaleStandbyReads ||
+          (allowConsistentStandbyReads && canServeConsistentRead());
     }
 
   }
+
+  /**
+   * Check whether the current RPC call carries the last state ID seen by the
+   * client and whether this NameNode has caught up to it, i.e. whether it
+   * can serve the call without breaking read-your-writes semantics. This
+   * never waits: the RPC server holds back calls from clients which are
+   * ahead of this NameNode, see {@link GlobalStateIdContext}, so a call
+   * which is still ahead here has waited long enough and is rejected.
+   */
+  private boolean canServeConsistentRead() {
+    long clientStateId = GlobalStateIdContext.getClientStateId();
+    if (clientStateId == RpcConstants.INVALID_STATE_ID) {
+      return false;
+    }
+    return namesystem.getFSImage().getLastAppliedOrWrittenTxIdWithoutLock()
+        >= clientStateId;
+  }
   
   public boolean isStandbyState() {
     return (state.equals(STANDBY_STATE));
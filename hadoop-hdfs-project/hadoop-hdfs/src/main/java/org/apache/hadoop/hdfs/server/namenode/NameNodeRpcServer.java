@@ -40,6 +40,7 @@
 import java.util.List;
 import java.util.Set;
 import java.util.concurrent.Callable;
+import java.util.concurrent.Future;
 
 import com.google.common.collect.Lists;
 
@@ -133,6 +134,7 @@
 import org.apache.hadoop.hdfs.security.token.block.ExportedBlockKeys;
 import org.apache.hadoop.hdfs.security.token.delegation.DelegationTokenIdentifier;
 import org.apache.hadoop.hdfs.server.blockmanagement.BlockManager;
+import org.apache.hadoop.hdfs.server.blockmanagement.BlockManager.BlockReportDiff;
 import org.apache.hadoop.hdfs.server.blockmanagement.BlockManagerFaultInjector;
 import org.apache.hadoop.hdfs.server.common.HdfsServerConstants;
 import org.apache.hadoop.hdfs.server.common.HdfsServerConstants.NamenodeRole;
@@ -436,6 +438,16 @@ public NameNodeRpcServer(Configuration conf, NameNode nn)
         .setVerbose(false)
         .setSecretManager(namesystem.getDelegationTokenSecretManager())
         .build();
+    if (conf.getBoolean(
+        DFSConfigKeys.DFS_HA_STANDBY_CONSISTENT_READS_ENABLED_KEY,
+        DFSConfigKeys.DFS_HA_STANDBY_CONSISTENT_READS_ENABLED_DEFAULT)) {
+      // Pass the NameNode's last written or applied txid to clients, so that
+      // they can read consistently from a standby.
+      clientRpcServer.setAlignmentContext(new GlobalStateIdContext(namesystem,
+          conf.getLong(
+              DFSConfigKeys.DFS_HA_STANDBY_CONSISTENT_READS_WAIT_MS_KEY,
+              DFSConfigKeys.DFS_HA_STANDBY_CONSISTENT_READS_WAIT_MS_DEFAULT)));
+    }
 
     // Add all the RPC protocols that the namenode implements
     DFSUtil.addPBProtocol(conf, HAServiceProtocolPB.class, haPbService,
@@ -1433,8 +1445,14 @@ public DatanodeCommand blockReport(final DatanodeRegistration nodeReg,
     }
     final BlockManager bm = namesystem.getBlockManager(); 
     boolean noStaleStorages = false;
+    // Compare the reports of all the storages with the stored blocks
+    // concurrently, so that the block report thread only applies the changes.
+    final List<Future<BlockReportDiff>> diffs =
+        bm.computeReportDiffs(nodeReg, reports, context);
     for (int r = 0; r < reports.length; r++) {
       final BlockListAsLongs blocks = reports[r].getBlocks();
+      final BlockReportDiff diff =
+          diffs != null ? bm.getReportDiff(diffs.get(r)) : null;
       //
       // BlockManager.processReport accumulates information of prior calls
       // for the same node and storage, so the value returned by the last
@@ -1445,7 +1463,7 @@ public DatanodeCommand blockReport(final DatanodeRegistration nodeReg,
         @Override
         public Boolean call() throws IOException {
           return bm.processReport(nodeReg, reports[index].getStorage(),
-              blocks, context, (index == reports.length - 1));
+              blocks, context, (index == reports.length - 1), diff);
         }
       });
       metrics.incrStorageBlockReportOps();
@@ -119,10 +119,21 @@ public class EditLogTailer {
 
   /**
    * How often the Standby should check if there are new finalized segment(s)
-   * available to be read from.
+   * available to be read from, or new in-progress edits if it tails them.
    */
   private final long sleepTimeMs;
 
+  /**
+   * The longest the Standby should wait between checks, as it backs off
+   * while there are no new edits.
+   */
+  private final long maxSleepTimeMs;
+
+  /**
+   * How long the Standby waits before the next check.
+   */
+  private volatile long currentSleepTimeMs;
+
   private final int nnCount;
   private NamenodeProtocol cachedActiveProxy = null;
   // count of the number of NNs we have attempted in the current lookup loop
@@ -172,8 +183,6 @@ public EditLogTailer(FSNamesystem namesystem, Configuration conf) {
           DFSConfigKeys.DFS_HA_LOGROLL_PERIOD_KEY + " is negative.");
     }
     
-    sleepTimeMs = conf.getInt(DFSConfigKeys.DFS_HA_TAILEDITS_PERIOD_KEY,
-        DFSConfigKeys.DFS_HA_TAILEDITS_PERIOD_DEFAULT) * 1000;
 
     rollEditsTimeoutMs = conf.getInt(
         DFSConfigKeys.DFS_HA_TAILEDITS_ROLLEDITS_TIMEOUT_KEY,
@@ -196,12 +205,32 @@ public EditLogTailer(FSNamesystem namesystem, Configuration conf) {
         DFSConfigKeys.DFS_HA_TAILEDITS_INPROGRESS_KEY,
         DFSConfigKeys.DFS_HA_TAILEDITS_INPROGRESS_DEFAULT);
 
+    if (inProgressOk) {
+      // The in-progress edits are fetched from the JournalNode caches, which
+      // is cheap enough to check for new edits much more often.
+      sleepTimeMs = conf.getTimeDuration(
+          DFSConfigKeys.DFS_HA_TAILEDITS_INPROGRESS_PERIOD_KEY,
+          DFSConfigKeys.DFS_HA_TAILEDITS_INPROGRESS_PERIOD_DEFAULT,
+          TimeUnit.MILLISECONDS);
+      maxSleepTimeMs = Math.max(sleepTimeMs, conf.getTimeDuration(
+          DFSConfigKeys.DFS_HA_TAILEDITS_INPROGRESS_BACKOFF_MAX_KEY,
+          DFSConfigKeys.DFS_HA_TAILEDITS_INPROGRESS_BACKOFF_MAX_DEFAULT,
+          TimeUnit.MILLISECONDS));
+    } else {
+      sleepTimeMs = conf.getTimeDuration(
+          DFSConfigKeys.DFS_HA_TAILEDITS_PERIOD_KEY,
+          DFSConfigKeys.DFS_HA_TAILEDITS_PERIOD_DEFAULT,
+          TimeUnit.SECONDS, TimeUnit.MILLISECONDS);
+      maxSleepTimeMs = sleepTimeMs;
+    }
+    currentSleepTimeMs = sleepTimeMs;
+
     nnCount = nns.size();
     // setup the iterator to endlessly loop the nns
     this.nnLookup = Iterators.cycle(nns);
 
     LOG.debug("logRollPeriodMs=" + logRollPeriodMs +
-        " sleepTime=" + sleepTimeMs);
+        " sleepTime=" + sleepTimeMs + " maxSleepTime=" + maxSleepTimeMs);
   }
 
   public void start() {
@@ -252,8 +281,11 @@ public Void run() throws Exception {
     });
   }
   
+  /**
+   * @return the number of edits loaded.
+   */
   @VisibleForTesting
-  void doTailEdits() throws IOException, InterruptedException {
+  long doTailEdits() throws IOException, InterruptedException {
     // Write lock needs to be interruptible here because the 
     // transitionToActive RPC takes the write lock before calling
     // tailer.stop() -- so if we're not interruptible, it will
@@ -277,7 +309,7 @@ void doTailEdits() throws IOException, InterruptedException {
         // edits file hasn't been started yet.
         LOG.warn("Edits tailer failed to find any streams. Will try again " +
             "later.", ioe);
-        return;
+        return 0;
       }
       if (LOG.isDebugEnabled()) {
         LOG.debug("edit streams to load from: " + streams.size());
@@ -303,11 +335,21 @@ void doTailEdits() throws IOException, InterruptedException {
         lastLoadTimeMs = monotonicNow();
       }
       lastLoadedTxnId = image.getLastAppliedTxId();
+      return editsLoaded;
     } finally {
       namesystem.writeUnlock();
     }
   }
 
+  /**
+   * @return how long, in msec, the tailer waits before it checks for new
+   *         edits again.
+   */
+  @VisibleForTesting
+  long getCurrentSleepTimeMs() {
+    return currentSleepTimeMs;
+  }
+
   /**
    * @return time in msec of when we last loaded a non-zero number of edits.
    */
@@ -420,12 +462,20 @@ private void doWork() {
           // Prevent reading of name system while being modified. The full
           // name system lock will be acquired to further block even the block
           // state updates.
+          long editsTailed;
           namesystem.cpLockInterruptibly();
           try {
-            doTailEdits();
+            editsTailed = doTailEdits();
           } finally {
             namesystem.cpUnlock();
           }
+          // Back off while there are no new edits, up to maxSleepTimeMs.
+          if (editsTailed > 0) {
+            currentSleepTimeMs = sleepTimeMs;
+          } else {
+            currentSleepTimeMs = Math.min(maxSleepTimeMs,
+                Math.max(1, currentSleepTimeMs * 2));
+          }
           //Update NameDirSize Metric
           namesystem.getFSImage().getStorage().updateNameDirSize();
         } catch (EditLogInputException elie) {
@@ -440,7 +490,7 @@ private void doWork() {
         }
 
         try {
-          Thread.sleep(sleepTimeMs);
+          Thread.sleep(currentSleepTimeMs);
         } catch (InterruptedException e) {
           LOG.warn("Edit log tailer interrupted", e);
         }
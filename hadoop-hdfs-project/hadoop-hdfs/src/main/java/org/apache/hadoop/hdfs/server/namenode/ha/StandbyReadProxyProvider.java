@@ -0,0 +1,181 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs.server.namenode.ha;
+
+import java.io.IOException;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.hdfs.ClientGSIContext;
+import org.apache.hadoop.hdfs.NameNodeProxiesClient;
+import org.apache.hadoop.hdfs.protocol.ClientProtocol;
+import org.apache.hadoop.ipc.AlignmentContext;
+import org.apache.hadoop.ipc.RemoteException;
+import org.apache.hadoop.ipc.RpcConstants;
+import org.apache.hadoop.ipc.StandbyException;
+import org.apache.hadoop.security.UserGroupInformation;
+
+import com.google.common.annotations.VisibleForTesting;
+
+/**
+ * A FailoverProxyProvider implementation which sends read-only calls, i.e.
+ * methods annotated with {@link ReadOnly}, to the standby NameNodes while
+ * writes and all other calls go to the active NameNode, in the same way as
+ * with {@link ConfiguredFailoverProxyProvider}.
+ *
+ * All proxies share a {@link ClientGSIContext}, which records the latest
+ * transaction ID the client has seen in a response from any NameNode and
+ * sends it with every request. A standby NameNode with
+ * dfs.ha.standby.consistent-reads.enabled set only serves a read once it has
+ * applied that transaction, so that the client always reads its own writes.
+ * If a standby cannot serve the read, or is unreachable, the next standby is
+ * tried, and finally the active. Until the client has received a state ID
+ * from the active, all calls go to the active.
+ */
+public class StandbyReadProxyProvider<T> extends
+    ConfiguredFailoverProxyProvider<T> {
+
+  private static final Log LOG =
+      LogFactory.getLog(StandbyReadProxyProvider.class);
+
+  /**
+   * Creates proxies which exchange state with the NameNodes through the
+   * given alignment context.
+   */
+  static class AlignedProxyFactory<T> implements ProxyFactory<T> {
+    private final AlignmentContext alignmentContext;
+
+    AlignedProxyFactory(AlignmentContext alignmentContext) {
+      this.alignmentContext = alignmentContext;
+    }
+
+    @SuppressWarnings("unchecked")
+    @Override
+    public T createProxy(Configuration conf, InetSocketAddress nnAddr,
+        Class<T> xface, UserGroupInformation ugi, boolean withRetries,
+        AtomicBoolean fallbackToSimpleAuth) throws IOException {
+      if (xface != ClientProtocol.class) {
+        return new DefaultProxyFactory<T>().createProxy(conf, nnAddr, xface,
+            ugi, withRetries, fallbackToSimpleAuth);
+      }
+      return (T) NameNodeProxiesClient.createNonHAProxyWithClientProtocol(
+          nnAddr, conf, ugi, withRetries, fallbackToSimpleAuth,
+          alignmentContext);
+    }
+  }
+
+  class StandbyReadInvocationHandler implements InvocationHandler {
+
+    @Override
+    public Object invoke(Object proxy, Method method, Object[] args)
+        throws Throwable {
+      int activeIndex = getCurrentProxyIndex();
+      if (method.isAnnotationPresent(ReadOnly.class) &&
+          alignmentContext.getLastSeenStateId() !=
+              RpcConstants.INVALID_STATE_ID) {
+        for (int i = 0; i < proxies.size(); i++) {
+          if (i == activeIndex) {
+            continue;
+          }
+          ProxyInfo<T> standby = getProxy(i);
+          try {
+            return method.invoke(standby.proxy, args);
+          } catch (InvocationTargetException ite) {
+            if (!shouldRetryOnActive(ite.getCause())) {
+              throw ite.getCause();
+            }
+            if (LOG.isDebugEnabled()) {
+              LOG.debug("Invocation of " + method.getName() + " on standby [" +
+                  standby.proxyInfo + "] failed, trying the next NameNode",
+                  ite.getCause());
+            }
+          }
+        }
+      }
+      try {
+        return method.invoke(getProxy(activeIndex).proxy, args);
+      } catch (InvocationTargetException ite) {
+        throw ite.getCause();
+      }
+    }
+  }
+
+  private final AlignmentContext alignmentContext;
+  private T wrappedProxy;
+
+  public StandbyReadProxyProvider(Configuration conf, URI uri,
+      Class<T> xface) {
+    this(conf, uri, xface, new ClientGSIContext());
+  }
+
+  private StandbyReadProxyProvider(Configuration conf, URI uri,
+      Class<T> xface, AlignmentContext alignmentContext) {
+    this(conf, uri, xface, new AlignedProxyFactory<T>(alignmentContext),
+        alignmentContext);
+  }
+
+  @VisibleForTesting
+  StandbyReadProxyProvider(Configuration conf, URI uri, Class<T> xface,
+      ProxyFactory<T> factory, AlignmentContext alignmentContext) {
+    super(conf, uri, xface, factory);
+    this.alignmentContext = alignmentContext;
+  }
+
+  /**
+   * @return a proxy which sends read-only calls to the standby NameNodes and
+   * everything else to the NameNode which is currently believed to be active.
+   */
+  @SuppressWarnings("unchecked")
+  @Override
+  public synchronized ProxyInfo<T> getProxy() {
+    if (wrappedProxy == null) {
+      wrappedProxy = (T) Proxy.newProxyInstance(
+          StandbyReadInvocationHandler.class.getClassLoader(),
+          new Class<?>[]{xface}, new StandbyReadInvocationHandler());
+    }
+    return new ProxyInfo<T>(wrappedProxy,
+        super.getProxy().proxyInfo + " (with standby reads)");
+  }
+
+  @VisibleForTesting
+  AlignmentContext getAlignmentContext() {
+    return alignmentContext;
+  }
+
+  /**
+   * A standby which is not caught up or not configured for consistent reads
+   * throws a StandbyException, and an unreachable one an IOException which
+   * did not come from the server. In either case the read can be retried on
+   * another NameNode. Any other error is a legitimate answer to the read.
+   */
+  private static boolean shouldRetryOnActive(Throwable t) {
+    if (t instanceof RemoteException) {
+      return ((RemoteException) t).unwrapRemoteException()
+          instanceof StandbyException;
+    }
+    return t instanceof StandbyException || t instanceof IOException;
+  }
+}
@@ -32,6 +32,7 @@
 import org.apache.hadoop.metrics2.lib.MutableGaugeInt;
 import org.apache.hadoop.metrics2.lib.MutableQuantiles;
 import org.apache.hadoop.metrics2.lib.MutableRate;
+import org.apache.hadoop.metrics2.lib.MutableStat;
 import org.apache.hadoop.metrics2.source.JvmMetrics;
 
 /**
@@ -111,9 +112,16 @@ public long totalFileOps(){
   final MutableQuantiles[] syncsQuantiles;
   @Metric("Journal transactions batched in sync")
   MutableCounterLong transactionsBatchedInSync;
+  @Metric(value = "Journal transactions per sync", sampleName = "Syncs",
+      valueName = "Txns")
+  MutableStat syncBatchSize;
+  final MutableQuantiles[] syncBatchSizeQuantiles;
   @Metric("Block report") MutableRate blockReport;
   final MutableQuantiles[] blockReportQuantiles;
   @Metric("Cache report") MutableRate cacheReport;
+  @Metric("Computing reconstruction work") MutableRate reconstructionWork;
+  @Metric("Number of blocks scheduled for reconstruction")
+  MutableCounterLong blocksScheduledForReconstruction;
   final MutableQuantiles[] cacheReportQuantiles;
   @Metric("Generate EDEK time") private MutableRate generateEDEKTime;
   private final MutableQuantiles[] generateEDEKTimeQuantiles;
@@ -141,6 +149,7 @@ public long totalFileOps(){
     
     final int len = intervals.length;
     syncsQuantiles = new MutableQuantiles[len];
+    syncBatchSizeQuantiles = new MutableQuantiles[len];
     blockReportQuantiles = new MutableQuantiles[len];
     cacheReportQuantiles = new MutableQuantiles[len];
     generateEDEKTimeQuantiles = new MutableQuantiles[len];
@@ -151,6 +160,9 @@ public long totalFileOps(){
       syncsQuantiles[i] = registry.newQuantiles(
           "syncs" + interval + "s",
           "Journal syncs", "ops", "latency", interval);
+      syncBatchSizeQuantiles[i] = registry.newQuantiles(
+          "syncBatchSize" + interval + "s",
+          "Journal transactions per sync", "syncs", "txns", interval);
       blockReportQuantiles[i] = registry.newQuantiles(
           "blockReport" + interval + "s", 
           "Block report", "ops", "latency", interval);
@@ -306,6 +318,13 @@ public void addSync(long elapsed) {
     }
   }
 
+  public void addSyncBatchSize(long txns) {
+    syncBatchSize.add(txns);
+    for (MutableQuantiles q : syncBatchSizeQuantiles) {
+      q.add(txns);
+    }
+  }
+
   public void setFsImageLoadTime(long elapsed) {
     fsImageLoadTime.set((int) elapsed);
   }
@@ -317,6 +336,14 @@ public void addBlockReport(long latency) {
     }
   }
 
+  public void addReconstructionWork(long latency) {
+    reconstructionWork.add(latency);
+  }
+
+  public void incrBlocksScheduledForReconstruction(long count) {
+    blocksScheduledForReconstruction.incr(count);
+  }
+
   public void addCacheBlockReport(long latency) {
     cacheReport.add(latency);
     for (MutableQuantiles q : cacheReportQuantiles) {
@@ -28,6 +28,10 @@
  * identifies the block report as a whole.  It also includes the total number
  * of RPCs which this block report is split into, and the index into that
  * total for the current RPC.
+ *
+ * A large block report may be sent in segments, each covering a range of
+ * block IDs. The storage reports in such an RPC hold just the replicas with
+ * IDs in the range, and are compared with just the stored blocks in it.
  */
 @InterfaceAudience.Private
 public class BlockReportContext {
@@ -54,14 +58,30 @@ public class BlockReportContext {
 
   private final boolean sorted;
 
+  /**
+   * The range of block IDs covered by the storage reports, inclusive.
+   */
+  private final long minBlockId;
+  private final long maxBlockId;
+
   public BlockReportContext(int totalRpcs, int curRpc,
                             long reportId, long leaseId,
                             boolean sorted) {
+    this(totalRpcs, curRpc, reportId, leaseId, sorted,
+        Long.MIN_VALUE, Long.MAX_VALUE);
+  }
+
+  public BlockReportContext(int totalRpcs, int curRpc,
+                            long reportId, long leaseId,
+                            boolean sorted,
+                            long minBlockId, long maxBlockId) {
     this.totalRpcs = totalRpcs;
     this.curRpc = curRpc;
     this.reportId = reportId;
     this.leaseId = leaseId;
     this.sorted = sorted;
+    this.minBlockId = minBlockId;
+    this.maxBlockId = maxBlockId;
   }
 
   public int getTotalRpcs() {
@@ -83,4 +103,20 @@ public long getLeaseId() {
   public boolean isSorted() {
     return sorted;
   }
+
+  public long getMinBlockId() {
+    return minBlockId;
+  }
+
+  public long getMaxBlockId() {
+    return maxBlockId;
+  }
+
+  /**
+   * @return true if the storage reports run to the end of the full reports,
+   *         which is the case unless they are an earlier segment of them.
+   */
+  public boolean isLastSegment() {
+    return maxBlockId == Long.MAX_VALUE;
+  }
 }
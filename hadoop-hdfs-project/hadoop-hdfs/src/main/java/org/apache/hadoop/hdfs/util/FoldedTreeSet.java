@@ -251,6 +251,13 @@ private TreeSetIterator(FoldedTreeSet<E> tree) {
       }
     }
 
+    private TreeSetIterator(FoldedTreeSet<E> tree, Node<E> node, int index) {
+      this.tree = tree;
+      this.iteratorModCount = tree.modCount;
+      this.node = node;
+      this.index = index;
+    }
+
     @Override
     public boolean hasNext() {
       checkForModification();
@@ -479,6 +486,53 @@ public Iterator<E> iterator() {
     return new TreeSetIterator<>(this);
   }
 
+  /**
+   * Iterate over the stored objects from the first which is not lower than
+   * the lookup key, using a user provided comparator.
+   *
+   * @param obj Lookup key
+   * @param cmp User provided Comparator. The comparator should expect that the
+   *            proved obj will always be the first method parameter and any
+   *            stored object will be the second parameter.
+   *
+   * @return An iterator over the stored objects from the lookup key
+   */
+  public Iterator<E> tailIterator(Object obj, Comparator<?> cmp) {
+    Objects.requireNonNull(obj);
+
+    Node<E> ceilingNode = null;
+    int ceilingIndex = 0;
+    Node<E> node = root;
+    while (node != null) {
+      E[] entries = node.entries;
+      int leftIndex = node.leftIndex;
+      int rightIndex = node.rightIndex;
+      if (compare(obj, entries[leftIndex], cmp) <= 0) {
+        ceilingNode = node;
+        ceilingIndex = leftIndex;
+        node = node.left;
+      } else if (compare(obj, entries[rightIndex], cmp) > 0) {
+        node = node.right;
+      } else {
+        // The first entry not lower than obj is in (leftIndex, rightIndex]
+        int low = leftIndex + 1;
+        int high = rightIndex;
+        while (low < high) {
+          int mid = (low + high) >>> 1;
+          if (compare(obj, entries[mid], cmp) > 0) {
+            low = mid + 1;
+          } else {
+            high = mid;
+          }
+        }
+        ceilingNode = node;
+        ceilingIndex = low;
+        break;
+      }
+    }
+    return new TreeSetIterator<>(this, ceilingNode, ceilingIndex);
+  }
+
   @Override
   public Object[] toArray() {
     Object[] objects = new Object[size];
@@ -31,7 +31,8 @@
  * Hold the references count to a single instance. If there are no references
  * then the entry will be removed.<br>
  * Type E should implement {@link ReferenceCounter}<br>
- * Note: This class is NOT thread-safe.
+ * Note: This class is thread-safe, as instances are shared by the threads
+ * that load the fsimage in parallel.
  */
 @InterfaceAudience.Private
 @InterfaceStability.Evolving
@@ -46,7 +47,7 @@
    * @param key Key to put in reference map
    * @return Referenced instance
    */
-  public E put(E key) {
+  public synchronized E put(E key) {
     E value = referenceMap.get(key);
     if (value == null) {
       value = key;
@@ -62,7 +63,7 @@ public E put(E key) {
    * 
    * @param key Key to remove the reference.
    */
-  public void remove(E key) {
+  public synchronized void remove(E key) {
     E value = referenceMap.get(key);
     if (value != null && value.decrementAndGetRefCount() == 0) {
       referenceMap.remove(key);
@@ -75,14 +76,14 @@ public void remove(E key) {
    * @return
    */
   @VisibleForTesting
-  public ImmutableList<E> getEntries() {
+  public synchronized ImmutableList<E> getEntries() {
     return new ImmutableList.Builder<E>().addAll(referenceMap.keySet()).build();
   }
 
   /**
    * Get the reference count for the key
    */
-  public long getReferenceCount(E key) {
+  public synchronized long getReferenceCount(E key) {
     ReferenceCounter counter = referenceMap.get(key);
     if (counter != null) {
       return counter.getRefCount();
@@ -93,7 +94,7 @@ public long getReferenceCount(E key) {
   /**
    * Get the number of unique elements
    */
-  public int getUniqueElementsSize() {
+  public synchronized int getUniqueElementsSize() {
     return referenceMap.size();
   }
 
@@ -39,4 +39,22 @@ public interface RwLock {
 
   /** Check if the current thread holds write lock. */
   public boolean hasWriteLock();
+
+  /** Acquire read lock for the given part of the state. */
+  public void readLock(RwLockMode mode);
+
+  /** Release read lock for the given part of the state. */
+  public void readUnlock(RwLockMode mode);
+
+  /** Check if the current thread holds read lock for the given part. */
+  public boolean hasReadLock(RwLockMode mode);
+
+  /** Acquire write lock for the given part of the state. */
+  public void writeLock(RwLockMode mode);
+
+  /** Release write lock for the given part of the state. */
+  public void writeUnlock(RwLockMode mode);
+
+  /** Check if the current thread holds write lock for the given part. */
+  public boolean hasWriteLock(RwLockMode mode);
 }
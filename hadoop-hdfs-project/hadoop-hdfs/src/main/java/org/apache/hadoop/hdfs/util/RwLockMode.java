@@ -0,0 +1,34 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs.util;
+
+/**
+ * The part of the namesystem state protected by a {@link RwLock}.
+ *
+ * When fine-grained locking is disabled, all the modes share one lock. When
+ * it is enabled, the namespace and the block manager are protected by two
+ * separate locks, which are always acquired namespace lock first.
+ */
+public enum RwLockMode {
+  /** Both the namespace and the block manager state. */
+  GLOBAL,
+  /** Only the namespace: inodes, leases, quotas and the edit log. */
+  FS,
+  /** Only the block manager: blocks, datanodes and their storages. */
+  BM
+}
@@ -0,0 +1,187 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.hdfs.protocol.DatanodeInfo;
+import org.apache.hadoop.hdfs.protocol.LocatedBlock;
+import org.apache.hadoop.hdfs.protocol.LocatedBlocks;
+import org.apache.hadoop.hdfs.protocol.LocatedStripedBlock;
+import org.apache.hadoop.hdfs.server.datanode.DataNode;
+import org.apache.hadoop.hdfs.util.StripedBlockUtil;
+
+/**
+ * Measures the rate at which DataNodes reconstruct the striped blocks of a
+ * lost DataNode, with the rounds of each reconstruction in lock-step and
+ * pipelined, and the rate per core busy reconstructing.
+ *
+ * Usage: StripedReconstructionBenchmark
+ *     [numBlockGroups [blockSize [pipelineDepth]]]
+ *
+ * The sources and targets are the DataNodes of a MiniDFSCluster, so that the
+ * network does not limit the rate. The time is taken from the first round
+ * read to the last block reconstructed, and the CPU time is that of the
+ * reconstruction, read, decode and transfer threads of the DataNodes.
+ */
+public class StripedReconstructionBenchmark {
+  private static final Log LOG =
+      LogFactory.getLog(StripedReconstructionBenchmark.class);
+  private static final Path TEST_FILE = new Path("/bench");
+  private static final String[] THREAD_PREFIXES = {
+      "stripedBlockReconstruction-", "stripedRead-", "stripedDecode-",
+      "stripedTransfer-"};
+
+  private final int numBlockGroups;
+  private final int blockSize;
+  private final int dataBlkNum = StripedFileTestUtil.NUM_DATA_BLOCKS;
+  private final int groupSize = StripedFileTestUtil.NUM_DATA_BLOCKS +
+      StripedFileTestUtil.NUM_PARITY_BLOCKS;
+  private final ThreadMXBean threadBean = ManagementFactory.getThreadMXBean();
+
+  StripedReconstructionBenchmark(int numBlockGroups, int blockSize) {
+    this.numBlockGroups = numBlockGroups;
+    this.blockSize = blockSize;
+  }
+
+  /**
+   * Write a striped file, stop one of the DataNodes with its blocks, and
+   * log the rate at which the other DataNodes reconstruct them.
+   */
+  void run(int pipelineDepth) throws Exception {
+    Configuration conf = new HdfsConfiguration();
+    conf.setLong(DFSConfigKeys.DFS_BLOCK_SIZE_KEY, blockSize);
+    conf.setInt(DFSConfigKeys.DFS_DN_EC_RECONSTRUCTION_PIPELINE_DEPTH_KEY,
+        pipelineDepth);
+    conf.setInt(DFSConfigKeys.DFS_NAMENODE_REPLICATION_INTERVAL_KEY, 1);
+    conf.setInt(DFSConfigKeys.DFS_NAMENODE_REPLICATION_MAX_STREAMS_KEY,
+        numBlockGroups);
+    conf.setLong(DFSConfigKeys.DFS_HEARTBEAT_INTERVAL_KEY, 1);
+    conf.setBoolean(DFSConfigKeys.DFS_NAMENODE_REPLICATION_CONSIDERLOAD_KEY,
+        false);
+    MiniDFSCluster cluster = new MiniDFSCluster.Builder(conf)
+        .numDataNodes(groupSize + 1)
+        .build();
+    try {
+      cluster.waitActive();
+      DistributedFileSystem fs = cluster.getFileSystem();
+      fs.getClient().setErasureCodingPolicy("/", null);
+      long fileLen = (long) numBlockGroups * dataBlkNum * blockSize;
+      DFSTestUtil.createFile(fs, TEST_FILE, fileLen, (short) 1, 0L);
+      StripedFileTestUtil.waitBlockGroupsReported(fs, TEST_FILE.toString());
+
+      // Stop the DataNode with the first internal block of the first group,
+      // which holds an internal block of every group.
+      LocatedBlocks blocks =
+          StripedFileTestUtil.getLocatedBlocks(TEST_FILE, fs);
+      DatanodeInfo lost = blocks.get(0).getLocations()[0];
+      long lostBytes = 0;
+      for (LocatedBlock block : blocks.getLocatedBlocks()) {
+        DatanodeInfo[] locations = block.getLocations();
+        byte[] indices = ((LocatedStripedBlock) block).getBlockIndices();
+        for (int i = 0; i < locations.length; i++) {
+          if (locations[i].equals(lost)) {
+            lostBytes += StripedBlockUtil.getInternalBlockLength(
+                block.getBlockSize(), StripedFileTestUtil.TEST_EC_POLICY,
+                indices[i]);
+          }
+        }
+      }
+      DataNode dn = cluster.getDataNode(lost.getIpcPort());
+      dn.shutdown();
+      cluster.setDataNodeDead(dn.getDatanodeId());
+
+      Map<Long, Long> cpuNanos = new HashMap<>();
+      long start = 0;
+      while (!isReconstructed(fs)) {
+        if (sampleCpuTime(cpuNanos) && start == 0) {
+          start = System.nanoTime();
+        }
+        Thread.sleep(10);
+      }
+      long elapsedNanos = System.nanoTime() - start;
+      sampleCpuTime(cpuNanos);
+      long totalCpuNanos = 0;
+      for (long nanos : cpuNanos.values()) {
+        totalCpuNanos += nanos;
+      }
+
+      double mb = lostBytes / (1024.0 * 1024.0);
+      LOG.info(String.format("pipeline depth %d: %d block groups, %.1f MB " +
+          "reconstructed, %.1f MB/s, %.1f MB/s per core", pipelineDepth,
+          numBlockGroups, mb, mb * 1e9 / elapsedNanos,
+          mb * 1e9 / totalCpuNanos));
+    } finally {
+      cluster.shutdown();
+    }
+  }
+
+  /** @return whether every block group has all its internal blocks again. */
+  private boolean isReconstructed(DistributedFileSystem fs) throws Exception {
+    LocatedBlocks blocks = StripedFileTestUtil.getLocatedBlocks(TEST_FILE, fs);
+    for (LocatedBlock block : blocks.getLocatedBlocks()) {
+      if (block.getLocations().length < groupSize) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Record the CPU time of the live reconstruction threads.
+   *
+   * @return whether any reconstruction thread was found
+   */
+  private boolean sampleCpuTime(Map<Long, Long> cpuNanos) {
+    boolean found = false;
+    for (Thread t : Thread.getAllStackTraces().keySet()) {
+      for (String prefix : THREAD_PREFIXES) {
+        if (t.getName().startsWith(prefix)) {
+          long nanos = threadBean.getThreadCpuTime(t.getId());
+          if (nanos > 0) {
+            cpuNanos.put(t.getId(), nanos);
+            found = true;
+          }
+          break;
+        }
+      }
+    }
+    return found;
+  }
+
+  public static void main(String[] args) throws Exception {
+    int numBlockGroups = args.length > 0 ? Integer.parseInt(args[0]) : 8;
+    int blockSize = args.length > 1 ? Integer.parseInt(args[1]) :
+        64 * StripedFileTestUtil.BLOCK_STRIPED_CELL_SIZE;
+    int pipelineDepth = args.length > 2 ? Integer.parseInt(args[2]) : 4;
+    StripedReconstructionBenchmark bench =
+        new StripedReconstructionBenchmark(numBlockGroups, blockSize);
+    // Warm up, then measure each kind of reconstruction
+    bench.run(1);
+    bench.run(pipelineDepth);
+    bench.run(1);
+    bench.run(pipelineDepth);
+  }
+}
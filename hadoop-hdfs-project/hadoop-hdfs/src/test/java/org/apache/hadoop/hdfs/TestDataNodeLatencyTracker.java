@@ -0,0 +1,63 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs;
+
+import static org.junit.Assert.assertEquals;
+
+import org.apache.hadoop.hdfs.protocol.DatanodeInfo;
+import org.junit.Test;
+
+/**
+ * Tests the per-DataNode hedged read thresholds of
+ * {@link DataNodeLatencyTracker}.
+ */
+public class TestDataNodeLatencyTracker {
+  private final DatanodeInfo fast = DFSTestUtil.getLocalDatanodeInfo(50010);
+  private final DatanodeInfo slow = DFSTestUtil.getLocalDatanodeInfo(50011);
+
+  @Test
+  public void testFixedThresholdWithFewSamples() {
+    DataNodeLatencyTracker tracker = new DataNodeLatencyTracker(95, 10, 500);
+    assertEquals(500, tracker.getThresholdMillis(fast));
+    for (int i = 0; i < DataNodeLatencyTracker.MIN_SAMPLES - 1; i++) {
+      tracker.addLatency(fast, 20);
+    }
+    assertEquals(500, tracker.getThresholdMillis(fast));
+    tracker.addLatency(fast, 20);
+    assertEquals(20, tracker.getThresholdMillis(fast));
+  }
+
+  @Test
+  public void testThresholdPerDataNode() {
+    DataNodeLatencyTracker tracker = new DataNodeLatencyTracker(90, 10, 500);
+    for (int i = 1; i <= 100; i++) {
+      // The window keeps the last 64 samples, 37..100
+      tracker.addLatency(fast, i);
+      tracker.addLatency(slow, 1000 + i);
+    }
+    assertEquals(94, tracker.getThresholdMillis(fast));
+    // Bounded by the fixed threshold
+    assertEquals(500, tracker.getThresholdMillis(slow));
+
+    for (int i = 0; i < DataNodeLatencyTracker.WINDOW_SIZE; i++) {
+      tracker.addLatency(fast, 1);
+    }
+    // Bounded by the minimum threshold
+    assertEquals(10, tracker.getThresholdMillis(fast));
+  }
+}
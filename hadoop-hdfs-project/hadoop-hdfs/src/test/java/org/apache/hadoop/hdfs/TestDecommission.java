@@ -1155,6 +1155,221 @@ public void testPendingNodes() throws Exception {
     assertTrackedAndPending(decomManager, 1, 0);
   }
 
+  @Test(timeout=120000)
+  public void testIncrementalDecommission() throws Exception {
+    Configuration newConf = new Configuration(conf);
+    newConf.setBoolean(
+        DFSConfigKeys.DFS_NAMENODE_DECOMMISSION_INCREMENTAL_KEY, true);
+    // Release the lock after every couple of blocks
+    newConf.setInt(
+        DFSConfigKeys.DFS_NAMENODE_DECOMMISSION_BLOCKS_PER_LOCK_KEY, 2);
+    // Disable the normal monitor runs and the reconstruction of blocks
+    newConf.setInt(DFSConfigKeys.DFS_NAMENODE_DECOMMISSION_INTERVAL_KEY,
+        Integer.MAX_VALUE);
+    newConf.setInt(DFSConfigKeys.DFS_NAMENODE_REPLICATION_INTERVAL_KEY, 1000);
+    startCluster(1, 4, newConf);
+    final FileSystem fs = cluster.getFileSystem();
+    final BlockManager bm = cluster.getNamesystem().getBlockManager();
+    final DatanodeManager datanodeManager = bm.getDatanodeManager();
+    final DecommissionManager decomManager = datanodeManager.getDecomManager();
+
+    final Path file = new Path("/file1");
+    DFSTestUtil.createFile(fs, file, blockSize, 5 * blockSize, blockSize,
+        (short) 3, seed);
+    DFSTestUtil.waitReplication(fs, file, (short) 3);
+
+    final DataNode d = cluster.getDataNodes().get(0);
+    final DatanodeDescriptor dn = datanodeManager.getDatanode(
+        d.getDatanodeId());
+    final int numBlocks = dn.numBlocks();
+    assertTrue(numBlocks > 0);
+    decommissionNode(0, d.getDatanodeUuid(), null,
+        AdminStates.DECOMMISSION_INPROGRESS);
+
+    // The first check scans every block of the node
+    BlockManagerTestUtil.recheckDecommissionState(datanodeManager);
+    assertEquals(numBlocks, decomManager.getNumBlocksChecked());
+    assertEquals(numBlocks,
+        dn.decommissioningStatus.getUnderReplicatedBlocks());
+
+    // Nothing changed, so the blocks are not checked again
+    BlockManagerTestUtil.recheckDecommissionState(datanodeManager);
+    assertEquals(0, decomManager.getNumBlocksChecked());
+    assertEquals(numBlocks,
+        dn.decommissioningStatus.getUnderReplicatedBlocks());
+    assertTrue(dn.isDecommissionInProgress());
+
+    // Only the blocks changed by the reconstruction are checked
+    BlockManagerTestUtil.computeAllPendingWork(bm);
+    GenericTestUtils.waitFor(new Supplier<Boolean>() {
+      @Override
+      public Boolean get() {
+        try {
+          BlockManagerTestUtil.recheckDecommissionState(datanodeManager);
+        } catch (ExecutionException | InterruptedException e) {
+          LOG.warn("Failed to check decommission state", e);
+        }
+        return dn.isDecommissioned();
+      }
+    }, 500, 30000);
+    assertEquals(0, dn.decommissioningStatus.getUnderReplicatedBlocks());
+    assertEquals(0, decomManager.getNumTrackedNodes());
+    assertNull(checkFile(fs, file, 3, dn.getXferAddr(), 4));
+  }
+
+  /**
+   * Test that a node tracked incrementally is not decommissioned when another
+   * node storing the same blocks starts decommissioning after they were
+   * checked.
+   */
+  @Test(timeout=120000)
+  public void testIncrementalDecommissionOfNodesSharingBlocks()
+      throws Exception {
+    Configuration newConf = new Configuration(conf);
+    newConf.setBoolean(
+        DFSConfigKeys.DFS_NAMENODE_DECOMMISSION_INCREMENTAL_KEY, true);
+    // Disable the normal monitor runs and the reconstruction of blocks
+    newConf.setInt(DFSConfigKeys.DFS_NAMENODE_DECOMMISSION_INTERVAL_KEY,
+        Integer.MAX_VALUE);
+    newConf.setInt(DFSConfigKeys.DFS_NAMENODE_REPLICATION_INTERVAL_KEY, 1000);
+    startCluster(1, 4, newConf);
+    final FileSystem fs = cluster.getFileSystem();
+    final BlockManager bm = cluster.getNamesystem().getBlockManager();
+    final DatanodeManager datanodeManager = bm.getDatanodeManager();
+
+    final Path file1 = new Path("/file1");
+    final Path file2 = new Path("/file2");
+    DFSTestUtil.createFile(fs, file1, blockSize, blockSize, blockSize,
+        (short) 2, seed);
+    DFSTestUtil.createFile(fs, file2, blockSize, blockSize, blockSize,
+        (short) 3, seed);
+    DFSTestUtil.waitReplication(fs, file1, (short) 2);
+    DFSTestUtil.waitReplication(fs, file2, (short) 3);
+    final List<String> block1Nodes = getBlockNodeUuids(fs, file1);
+    final List<String> block2Nodes = getBlockNodeUuids(fs, file2);
+
+    // The first node stores both blocks, the second only the block of file2
+    String firstUuid = null;
+    String secondUuid = null;
+    for (String uuid : block2Nodes) {
+      if (block1Nodes.contains(uuid)) {
+        firstUuid = uuid;
+      } else {
+        secondUuid = uuid;
+      }
+    }
+    assertNotNull(firstUuid);
+    assertNotNull(secondUuid);
+
+    final ArrayList<DatanodeInfo> decommissioned = new ArrayList<>();
+    decommissioned.add(decommissionNode(0, firstUuid, null,
+        AdminStates.DECOMMISSION_INPROGRESS));
+    final DatanodeDescriptor first =
+        datanodeManager.getDatanode(decommissioned.get(0));
+    BlockManagerTestUtil.recheckDecommissionState(datanodeManager);
+    assertEquals(2, first.decommissioningStatus.getUnderReplicatedBlocks());
+
+    // The block of file2 is sufficiently replicated without the first node
+    fs.setReplication(file2, (short) 2);
+    BlockManagerTestUtil.recheckDecommissionState(datanodeManager);
+    assertEquals(1, first.decommissioningStatus.getUnderReplicatedBlocks());
+
+    // Decommissioning the second node leaves it with a single live replica
+    final DatanodeInfo second = decommissionNode(0, secondUuid,
+        decommissioned, AdminStates.DECOMMISSION_INPROGRESS);
+
+    // Once the block of file1 is sufficiently replicated, the block of file2
+    // still prevents the first node from being decommissioned
+    fs.setReplication(file1, (short) 1);
+    BlockManagerTestUtil.recheckDecommissionState(datanodeManager);
+    BlockManagerTestUtil.recheckDecommissionState(datanodeManager);
+    assertTrue(first.isDecommissionInProgress());
+    assertEquals(1, first.decommissioningStatus.getUnderReplicatedBlocks());
+    assertTrue(second.isDecommissionInProgress());
+  }
+
+  /**
+   * Test that starting or stopping the decommission of a node does not
+   * queue its blocks for recheck on the tracked nodes right away, but
+   * leaves walking them to the monitor.
+   */
+  @Test(timeout=120000)
+  public void testIncrementalDecommissionAdminStateChange() throws Exception {
+    Configuration newConf = new Configuration(conf);
+    newConf.setBoolean(
+        DFSConfigKeys.DFS_NAMENODE_DECOMMISSION_INCREMENTAL_KEY, true);
+    // Release the lock after every couple of blocks
+    newConf.setInt(
+        DFSConfigKeys.DFS_NAMENODE_DECOMMISSION_BLOCKS_PER_LOCK_KEY, 2);
+    // Disable the normal monitor runs and the reconstruction of blocks
+    newConf.setInt(DFSConfigKeys.DFS_NAMENODE_DECOMMISSION_INTERVAL_KEY,
+        Integer.MAX_VALUE);
+    newConf.setInt(DFSConfigKeys.DFS_NAMENODE_REPLICATION_INTERVAL_KEY, 1000);
+    startCluster(1, 3, newConf);
+    final FileSystem fs = cluster.getFileSystem();
+    final BlockManager bm = cluster.getNamesystem().getBlockManager();
+    final DatanodeManager datanodeManager = bm.getDatanodeManager();
+    final DecommissionManager decomManager = datanodeManager.getDecomManager();
+
+    // Every node stores every block
+    final Path file = new Path("/file1");
+    DFSTestUtil.createFile(fs, file, blockSize, 5 * blockSize, blockSize,
+        (short) 3, seed);
+    DFSTestUtil.waitReplication(fs, file, (short) 3);
+
+    final ArrayList<DatanodeInfo> decommissioned = new ArrayList<>();
+    decommissioned.add(decommissionNode(0,
+        cluster.getDataNodes().get(0).getDatanodeUuid(), null,
+        AdminStates.DECOMMISSION_INPROGRESS));
+    final DatanodeDescriptor first =
+        datanodeManager.getDatanode(decommissioned.get(0));
+    final int numBlocks = first.numBlocks();
+    assertTrue(numBlocks > 0);
+    BlockManagerTestUtil.recheckDecommissionState(datanodeManager);
+    assertEquals(numBlocks,
+        first.decommissioningStatus.getUnderReplicatedBlocks());
+    assertEquals(0, decomManager.getNumAdminStateChangedNodes());
+
+    // Starting the decommission of the second node only notes the node
+    final DatanodeInfo second = decommissionNode(0,
+        cluster.getDataNodes().get(1).getDatanodeUuid(), decommissioned,
+        AdminStates.DECOMMISSION_INPROGRESS);
+    assertEquals(1, decomManager.getNumAdminStateChangedNodes());
+    assertEquals(0, decomManager.getNumBlocksToRecheck(first));
+
+    // The monitor walks its blocks, a couple at a time, and the first node
+    // rechecks them
+    BlockManagerTestUtil.recheckDecommissionState(datanodeManager);
+    assertEquals(0, decomManager.getNumAdminStateChangedNodes());
+    assertEquals(0, decomManager.getNumBlocksToRecheck(first));
+    assertTrue(decomManager.getNumBlocksChecked() >= 2 * numBlocks);
+    assertEquals(numBlocks,
+        first.decommissioningStatus.getUnderReplicatedBlocks());
+
+    // Stopping the decommission of the second node only notes the node too
+    writeConfigFile(excludeFile,
+        Arrays.asList(decommissioned.get(0).getXferAddr()));
+    refreshNodes(cluster.getNamesystem(0), conf);
+    waitNodeState(second, AdminStates.NORMAL);
+    assertEquals(1, decomManager.getNumAdminStateChangedNodes());
+    assertEquals(0, decomManager.getNumBlocksToRecheck(first));
+
+    BlockManagerTestUtil.recheckDecommissionState(datanodeManager);
+    assertEquals(0, decomManager.getNumAdminStateChangedNodes());
+    assertEquals(0, decomManager.getNumBlocksToRecheck(first));
+    assertTrue(first.isDecommissionInProgress());
+  }
+
+  private static List<String> getBlockNodeUuids(FileSystem fs, Path file)
+      throws IOException {
+    final List<String> uuids = new ArrayList<>();
+    for (DatanodeInfo node :
+        DFSTestUtil.getAllBlocks(fs, file).get(0).getLocations()) {
+      uuids.add(node.getDatanodeUuid());
+    }
+    return uuids;
+  }
+
   private void assertTrackedAndPending(DecommissionManager decomManager,
       int tracked, int pending) {
     assertEquals("Unexpected number of tracked nodes", tracked,
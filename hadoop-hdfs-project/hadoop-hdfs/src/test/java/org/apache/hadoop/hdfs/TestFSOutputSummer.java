@@ -22,6 +22,8 @@
 import static org.junit.Assert.assertTrue;
 
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
 import java.util.Random;
 
 import org.apache.hadoop.conf.Configuration;
@@ -87,6 +89,39 @@ private void writeFile3(Path name) throws Exception {
     checkFile(name);
     cleanupFile(name);
   }
+  /* create a file, write data from direct and heap buffers */
+  private void writeFile4(Path name) throws Exception {
+    byte[] data = new byte[50 * BLOCK_SIZE + 7];
+    new Random(seed).nextBytes(data);
+    FSDataOutputStream stm = fileSys.create(name, true,
+        fileSys.getConf().getInt(IO_FILE_BUFFER_SIZE_KEY, 4096),
+        NUM_OF_DATANODES, BLOCK_SIZE);
+    // whole chunks of a direct buffer are checksummed in place
+    ByteBuffer direct = ByteBuffer.allocateDirect(data.length);
+    direct.put(data).flip();
+    direct.limit(20 * BLOCK_SIZE);
+    stm.write(direct);
+    assertEquals(direct.limit(), direct.position());
+    // partial chunks of a direct buffer are buffered
+    direct.limit(20 * BLOCK_SIZE + HALF_CHUNK_SIZE);
+    stm.write(direct);
+    direct.limit(40 * BLOCK_SIZE + 3);
+    stm.write(direct);
+    ByteBuffer heap = ByteBuffer.wrap(data);
+    heap.position(direct.position());
+    stm.write(heap);
+    assertEquals(data.length, heap.position());
+    assertEquals(data.length, stm.getPos());
+    stm.close();
+
+    FSDataInputStream in = fileSys.open(name);
+    byte[] read = new byte[data.length];
+    in.readFully(0, read);
+    in.close();
+    assertTrue("Data written from buffers differs", Arrays.equals(data, read));
+    cleanupFile(name);
+  }
+
   private void checkAndEraseData(byte[] actual, int from, byte[] expected,
       String message) throws Exception {
     for (int idx = 0; idx < actual.length; idx++) {
@@ -139,6 +174,7 @@ private void doTestFSOutputSummer(String checksumType) throws Exception {
       writeFile1(file);
       writeFile2(file);
       writeFile3(file);
+      writeFile4(file);
     } finally {
       fileSys.close();
       cluster.shutdown();
@@ -17,30 +17,46 @@
  */
 package org.apache.hadoop.hdfs;
 
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
 import static org.junit.Assert.assertTrue;
 
 import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumSet;
+import java.util.List;
 import java.util.Random;
 import java.util.concurrent.Callable;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.IntFunction;
 
 import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.fs.ChecksumException;
+import org.apache.hadoop.fs.CombinedFileRange;
+import org.apache.hadoop.fs.CreateFlag;
 import org.apache.hadoop.fs.FSDataInputStream;
 import org.apache.hadoop.fs.FSDataOutputStream;
+import org.apache.hadoop.fs.FileRange;
 import org.apache.hadoop.fs.FileSystem;
 import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.fs.VectoredReadUtils;
 import org.apache.hadoop.hdfs.client.HdfsClientConfigKeys;
+import org.apache.hadoop.hdfs.protocol.DatanodeInfo;
+import org.apache.hadoop.hdfs.protocol.LocatedBlock;
 import org.apache.hadoop.hdfs.protocol.LocatedBlocks;
 import org.apache.hadoop.hdfs.protocol.datatransfer.DataTransferProtocol;
 import org.apache.hadoop.hdfs.server.datanode.SimulatedFSDataset;
 import org.apache.hadoop.io.IOUtils;
 import org.apache.hadoop.test.GenericTestUtils;
+import org.apache.hadoop.util.Time;
 import org.apache.log4j.Level;
 import org.junit.Before;
 import org.junit.Test;
@@ -432,6 +448,7 @@ public Void answer(InvocationOnMock invocation) throws Throwable {
       }
       assertTrue(metrics.getHedgedReadOps() > initialReadOpsValue);
       assertTrue(metrics.getHedgedReadOpsInCurThread() > 0);
+      assertFalse(metrics.getHedgedReadWinRates().isEmpty());
       cleanupFile(fileSys, file1);
       executor.shutdown();
     } finally {
@@ -441,6 +458,81 @@ public Void answer(InvocationOnMock invocation) throws Throwable {
     }
   }
 
+  @Test(timeout = 60000)
+  public void testHedgedSequentialRead() throws Exception {
+    Configuration conf = new Configuration();
+    final int stallMillis = 10000;
+    conf.setInt(HdfsClientConfigKeys.HedgedRead.THREADPOOL_SIZE_KEY, 5);
+    conf.setLong(HdfsClientConfigKeys.HedgedRead.THRESHOLD_MILLIS_KEY, 500);
+    conf.setBoolean(HdfsClientConfigKeys.HedgedRead.SEQUENTIAL_ENABLED_KEY,
+        true);
+    MiniDFSCluster cluster = new MiniDFSCluster.Builder(conf).numDataNodes(3)
+        .format(true).build();
+    DistributedFileSystem fileSys = cluster.getFileSystem();
+    DFSClient dfsClient = fileSys.getClient();
+    DFSHedgedReadMetrics metrics = dfsClient.getHedgedReadMetrics();
+    DFSInputStream input = null;
+    String filename = "/hedgedSequentialRead.dat";
+    try {
+      DFSTestUtil.createFile(fileSys, new Path(filename), 3 * 64 * 1024,
+          (short) 3, seed);
+      byte[] expected = DFSTestUtil.readFileAsBytes(fileSys,
+          new Path(filename));
+      long hedgedReadOps = metrics.getHedgedReadOps();
+
+      // Stall the first read from a block reader. Not a mock, which would
+      // serialize the reads.
+      final AtomicBoolean stalled = new AtomicBoolean(false);
+      DFSClientFaultInjector.set(new DFSClientFaultInjector() {
+        @Override
+        public void readFromBlockReaderDelay() {
+          if (stalled.compareAndSet(false, true)) {
+            try {
+              Thread.sleep(stallMillis);
+            } catch (InterruptedException e) {
+              Thread.currentThread().interrupt();
+            }
+          }
+        }
+      });
+
+      input = dfsClient.open(filename);
+      byte[] buffer = new byte[expected.length];
+      long start = Time.monotonicNow();
+      IOUtils.readFully(input, buffer, 0, buffer.length);
+      // The hedged read did not wait for the stalled one
+      assertTrue(Time.monotonicNow() - start < stallMillis);
+      assertArrayEquals(expected, buffer);
+      assertTrue(stalled.get());
+      assertEquals(hedgedReadOps + 1, metrics.getHedgedReadOps());
+
+      // Both DataNodes took part in the hedged read, and the one which
+      // stalled lost it, and was not read from again
+      DatanodeInfo stalledNode = null;
+      DatanodeInfo winnerNode = null;
+      for (DatanodeInfo dn : input.getAllBlocks().get(0).getLocations()) {
+        if (metrics.getHedgedReads(dn) == 1) {
+          if (metrics.getHedgedReadWins(dn) == 1) {
+            winnerNode = dn;
+          } else {
+            stalledNode = dn;
+          }
+        }
+      }
+      assertTrue(stalledNode != null && winnerNode != null);
+      assertEquals(1.0,
+          metrics.getHedgedReadWinRates().get(winnerNode.getXferAddr()), 0);
+      assertEquals(0.0,
+          metrics.getHedgedReadWinRates().get(stalledNode.getXferAddr()), 0);
+      assertNotEquals(stalledNode, input.getCurrentDatanode());
+    } finally {
+      DFSClientFaultInjector.set(new DFSClientFaultInjector());
+      IOUtils.cleanup(null, input);
+      fileSys.close();
+      cluster.shutdown();
+    }
+  }
+
   private void dfsPreadTest(Configuration conf, boolean disableTransferTo, boolean verifyChecksum)
       throws IOException {
     conf.setLong(DFSConfigKeys.DFS_BLOCK_SIZE_KEY, 4096);
@@ -491,6 +583,151 @@ public void testPreadLocalFS() throws IOException {
     }
   }
 
+  /**
+   * Tests vectored reads of ranges within and across blocks in DFS.
+   */
+  @Test(timeout = 60000)
+  public void testVectoredReadDFS() throws Exception {
+    Configuration conf = new Configuration();
+    conf.setLong(DFSConfigKeys.DFS_BLOCK_SIZE_KEY, blockSize);
+    conf.setInt(HdfsClientConfigKeys.VectoredRead.MIN_SEEK_SIZE_KEY, 1024);
+    MiniDFSCluster cluster =
+        new MiniDFSCluster.Builder(conf).numDataNodes(3).build();
+    FileSystem fileSys = cluster.getFileSystem();
+    try {
+      Path file1 = new Path("/vectoredreadtest.dat");
+      writeFile(fileSys, file1);
+      byte[] expected = new byte[fileSize];
+      new Random(seed).nextBytes(expected);
+      FSDataInputStream in = fileSys.open(file1);
+      for (boolean direct : new boolean[] {false, true}) {
+        List<FileRange> ranges = new ArrayList<>();
+        // Merged within the first block
+        ranges.add(new FileRange(100, 100));
+        ranges.add(new FileRange(300, 100));
+        // Across the first two blocks
+        ranges.add(new FileRange(blockSize - 100, 200));
+        ranges.add(new FileRange(blockSize + 200, 50));
+        // Across several blocks
+        ranges.add(new FileRange(5 * blockSize - 10, 3 * blockSize));
+        ranges.add(new FileRange(9 * blockSize, 0));
+        ranges.add(new FileRange(fileSize - 1, 1));
+        in.readVectored(ranges, direct ?
+            new IntFunction<ByteBuffer>() {
+              @Override
+              public ByteBuffer apply(int length) {
+                return ByteBuffer.allocateDirect(length);
+              }
+            } :
+            new IntFunction<ByteBuffer>() {
+              @Override
+              public ByteBuffer apply(int length) {
+                return ByteBuffer.allocate(length);
+              }
+            });
+        for (FileRange range : ranges) {
+          ByteBuffer data = range.getData().get();
+          byte[] actual = new byte[data.remaining()];
+          data.get(actual);
+          assertArrayEquals("Vectored read of " + range,
+              Arrays.copyOfRange(expected, (int) range.getOffset(),
+                  (int) range.getOffset() + range.getLength()), actual);
+        }
+      }
+      in.close();
+      cleanupFile(fileSys, file1);
+    } finally {
+      fileSys.close();
+      cluster.shutdown();
+    }
+  }
+
+  /**
+   * Tests vectored reads of a file whose blocks have different lengths, which
+   * are merged within the actual blocks only.
+   */
+  @Test(timeout = 60000)
+  public void testVectoredReadVariableLengthBlocks() throws Exception {
+    Configuration conf = new Configuration();
+    conf.setLong(DFSConfigKeys.DFS_BLOCK_SIZE_KEY, blockSize);
+    conf.setInt(HdfsClientConfigKeys.VectoredRead.MIN_SEEK_SIZE_KEY, 1024);
+    MiniDFSCluster cluster =
+        new MiniDFSCluster.Builder(conf).numDataNodes(1).build();
+    DistributedFileSystem fs = cluster.getFileSystem();
+    try {
+      Path file = new Path("/vectoredvariable.dat");
+      byte[] expected = new byte[2 * blockSize];
+      new Random(seed).nextBytes(expected);
+      // blocks of blockSize, 100, 300 and blockSize - 400 bytes
+      int[] lengths = {blockSize, 100, 300, blockSize - 400};
+      int off = 0;
+      for (int i = 0; i < lengths.length; i++) {
+        FSDataOutputStream out = i == 0 ? fs.create(file, (short) 1) :
+            fs.append(file, EnumSet.of(CreateFlag.APPEND,
+                CreateFlag.NEW_BLOCK), 4096, null);
+        out.write(expected, off, lengths[i]);
+        out.close();
+        off += lengths[i];
+      }
+      LocatedBlocks blocks =
+          fs.getClient().getLocatedBlocks(file.toString(), 0);
+      assertEquals(lengths.length, blocks.locatedBlockCount());
+
+      DFSInputStream in = fs.getClient().open(file.toString());
+      try {
+        List<FileRange> ranges = new ArrayList<>();
+        // In the first block, with the same offsets in a block of blockSize
+        ranges.add(new FileRange(100, 100));
+        ranges.add(new FileRange(300, 100));
+        // In the second and third blocks, which the first block's size puts
+        // in the same block
+        ranges.add(new FileRange(blockSize + 10, 50));
+        ranges.add(new FileRange(blockSize + 110, 50));
+        ranges.add(new FileRange(blockSize + 200, 50));
+        // Across the third and fourth blocks
+        ranges.add(new FileRange(blockSize + 350, 200));
+        // In the fourth block
+        ranges.add(new FileRange(2 * blockSize - 300, 20));
+        ranges.add(new FileRange(2 * blockSize - 100, 20));
+        List<CombinedFileRange> combined = in.mergeRangesWithinBlocks(
+            VectoredReadUtils.validateAndSortRanges(ranges, expected.length));
+        for (CombinedFileRange range : combined) {
+          LocatedBlock block = null;
+          for (LocatedBlock b : blocks.getLocatedBlocks()) {
+            if (b.getStartOffset() <= range.getOffset() &&
+                range.getOffset() < b.getStartOffset() + b.getBlockSize()) {
+              block = b;
+            }
+          }
+          assertTrue(range + " crosses the end of " + block,
+              range.getUnderlying().size() == 1 ||
+              range.getOffset() + range.getLength() <=
+                  block.getStartOffset() + block.getBlockSize());
+        }
+        assertEquals(5, combined.size());
+
+        in.readVectored(ranges, new IntFunction<ByteBuffer>() {
+          @Override
+          public ByteBuffer apply(int length) {
+            return ByteBuffer.allocate(length);
+          }
+        });
+        for (FileRange range : ranges) {
+          ByteBuffer data = range.getData().get();
+          byte[] actual = new byte[data.remaining()];
+          data.get(actual);
+          assertArrayEquals("Vectored read of " + range,
+              Arrays.copyOfRange(expected, (int) range.getOffset(),
+                  (int) range.getOffset() + range.getLength()), actual);
+        }
+      } finally {
+        in.close();
+      }
+    } finally {
+      cluster.shutdown();
+    }
+  }
+
   public static void main(String[] args) throws Exception {
     new TestPread().testPreadDFS();
   }
@@ -100,6 +100,7 @@ public void setup() throws IOException {
           CommonConfigurationKeys.IO_ERASURECODE_CODEC_RS_DEFAULT_RAWCODER_KEY,
           NativeRSRawErasureCoderFactory.class.getCanonicalName());
     }
+    initConf(conf);
     cluster = new MiniDFSCluster.Builder(conf).numDataNodes(dnNum).build();
     cluster.waitActive();
 
@@ -112,6 +113,12 @@ public void setup() throws IOException {
     }
   }
 
+  /**
+   * Override to change the configuration of the cluster.
+   */
+  protected void initConf(Configuration conf) {
+  }
+
   @After
   public void tearDown() {
     if (cluster != null) {
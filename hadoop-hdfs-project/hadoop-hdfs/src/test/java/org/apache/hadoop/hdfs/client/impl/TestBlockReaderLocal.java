@@ -555,6 +555,58 @@ public void testBlockReaderLocalReadCorruptNoChecksumNoReadahead()
     runBlockReaderLocalTest(new TestBlockReaderLocalReadCorrupt(), false, 0);
   }
 
+  private static class TestBlockReaderLocalMmapReads
+      extends BlockReaderLocalTest {
+    private final BlockReaderLocalTest test;
+
+    TestBlockReaderLocalMmapReads(BlockReaderLocalTest test) {
+      this.test = test;
+    }
+
+    @Override
+    public void setConfiguration(HdfsConfiguration conf) {
+      test.setConfiguration(conf);
+      conf.setBoolean(HdfsClientConfigKeys.Mmap.READS_ENABLED_KEY, true);
+    }
+
+    @Override
+    public void setup(File blockFile, boolean usingChecksums)
+        throws IOException {
+      test.setup(blockFile, usingChecksums);
+    }
+
+    @Override
+    public void doTest(BlockReaderLocal reader, byte original[])
+        throws IOException {
+      test.doTest(reader, original);
+    }
+  }
+
+  @Test
+  public void testBlockReaderLocalMmapReads() throws IOException {
+    for (boolean checksum : new boolean[] {true, false}) {
+      runBlockReaderLocalTest(new TestBlockReaderLocalMmapReads(
+          new TestBlockReaderSimpleReads()), checksum,
+          HdfsClientConfigKeys.DFS_DATANODE_READAHEAD_BYTES_DEFAULT);
+      runBlockReaderLocalTest(new TestBlockReaderLocalMmapReads(
+          new TestBlockReaderLocalArrayReads2()), checksum, 0);
+      runBlockReaderLocalTest(new TestBlockReaderLocalMmapReads(
+          new TestBlockReaderLocalByteBufferReads()), checksum,
+          HdfsClientConfigKeys.DFS_DATANODE_READAHEAD_BYTES_DEFAULT);
+      runBlockReaderLocalTest(new TestBlockReaderLocalMmapReads(
+          new TestBlockReaderLocalByteBufferFastLaneReads()), checksum, 0);
+    }
+  }
+
+  @Test
+  public void testBlockReaderLocalMmapReadCorrupt() throws IOException {
+    runBlockReaderLocalTest(new TestBlockReaderLocalMmapReads(
+        new TestBlockReaderLocalReadCorrupt()), true,
+        HdfsClientConfigKeys.DFS_DATANODE_READAHEAD_BYTES_DEFAULT);
+    runBlockReaderLocalTest(new TestBlockReaderLocalMmapReads(
+        new TestBlockReaderLocalReadCorrupt()), false, 0);
+  }
+
   private static class TestBlockReaderLocalWithMlockChanges
       extends BlockReaderLocalTest {
     @Override
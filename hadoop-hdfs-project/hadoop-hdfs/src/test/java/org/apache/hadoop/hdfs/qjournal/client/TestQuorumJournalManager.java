@@ -44,6 +44,7 @@
 import org.apache.commons.logging.LogFactory;
 import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.fs.CommonConfigurationKeysPublic;
+import org.apache.hadoop.hdfs.DFSConfigKeys;
 import org.apache.hadoop.hdfs.qjournal.MiniJournalCluster;
 import org.apache.hadoop.hdfs.qjournal.QJMTestUtil;
 import org.apache.hadoop.hdfs.qjournal.protocol.QJournalProtocolProtos.SegmentStateProto;
@@ -210,6 +211,77 @@ public void testReaderWhileAnotherWrites() throws Exception {
     }
   }
   
+  /**
+   * Test that in-progress edits are served over RPC from the JournalNodes'
+   * edit caches when in-progress tailing is enabled, and that the reader
+   * falls back to streaming when the caches can't serve the request.
+   */
+  @Test
+  public void testSelectViaRpcWithInProgressTailing() throws Exception {
+    // Restart the journal cluster with the edits cache enabled
+    cluster.shutdown();
+    conf.setBoolean(DFSConfigKeys.DFS_HA_TAILEDITS_INPROGRESS_KEY, true);
+    cluster = new MiniJournalCluster.Builder(conf).build();
+    cluster.waitActive();
+    qjm = createSpyingQJM();
+    qjm.format(QJMTestUtil.FAKE_NSINFO);
+    qjm.recoverUnfinalizedSegments();
+
+    QuorumJournalManager readerQjm = createSpyingQJM();
+    List<AsyncLogger> readerSpies =
+        readerQjm.getLoggerSetForTests().getLoggersForTests();
+    List<EditLogInputStream> streams = Lists.newArrayList();
+
+    EditLogOutputStream stm = writeSegment(cluster, qjm, 1, 5, false);
+    readerQjm.selectInputStreams(streams, 1, true, true);
+    try {
+      assertEquals(1, streams.size());
+      verifyEdits(streams, 1, 5);
+    } finally {
+      IOUtils.cleanup(LOG, streams.toArray(new Closeable[0]));
+      streams.clear();
+    }
+    for (AsyncLogger spy : readerSpies) {
+      Mockito.verify(spy, Mockito.atLeastOnce())
+          .getJournaledEdits(Mockito.eq(1L), Mockito.anyInt());
+      Mockito.verify(spy, Mockito.never())
+          .getEditLogManifest(Mockito.anyLong(), Mockito.anyBoolean());
+    }
+
+    // Nothing new has been written
+    readerQjm.selectInputStreams(streams, 6, true, true);
+    assertEquals(0, streams.size());
+
+    // Reading from the middle of a cached batch should skip ahead
+    writeTxns(stm, 6, 5);
+    readerQjm.selectInputStreams(streams, 4, true, true);
+    try {
+      assertEquals(1, streams.size());
+      verifyEdits(streams, 4, 10);
+    } finally {
+      IOUtils.cleanup(LOG, streams.toArray(new Closeable[0]));
+      streams.clear();
+    }
+
+    // A new writer clears the caches, so the reader must fall back
+    // to streaming the (now finalized) segment over HTTP.
+    stm.abort();
+    QuorumJournalManager newWriter = createSpyingQJM();
+    newWriter.recoverUnfinalizedSegments();
+    readerQjm.selectInputStreams(streams, 1, true, true);
+    try {
+      assertEquals(1, streams.size());
+      verifyEdits(streams, 1, 10);
+    } finally {
+      IOUtils.cleanup(LOG, streams.toArray(new Closeable[0]));
+      streams.clear();
+    }
+    for (AsyncLogger spy : readerSpies) {
+      Mockito.verify(spy, Mockito.atLeastOnce())
+          .getEditLogManifest(Mockito.anyLong(), Mockito.anyBoolean());
+    }
+  }
+
   /**
    * Regression test for HDFS-3725. One of the journal nodes is down
    * during the writing of one segment, then comes back up later to
@@ -0,0 +1,154 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs.qjournal.server;
+
+import static org.apache.hadoop.hdfs.qjournal.QJMTestUtil.createTxnData;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+
+import org.apache.hadoop.hdfs.qjournal.protocol.QJournalProtocolProtos.GetJournaledEditsResponseProto;
+import org.apache.hadoop.hdfs.qjournal.server.JournaledEditsCache.CacheMissException;
+import org.apache.hadoop.hdfs.server.namenode.EditLogFileInputStream;
+import org.apache.hadoop.hdfs.server.namenode.EditLogInputStream;
+import org.apache.hadoop.hdfs.server.namenode.FSEditLogOp;
+import org.apache.hadoop.hdfs.server.namenode.NameNodeLayoutVersion;
+import org.apache.hadoop.io.IOUtils;
+import org.apache.hadoop.test.GenericTestUtils;
+import org.junit.Test;
+
+/**
+ * Unit tests for {@link JournaledEditsCache}.
+ */
+public class TestJournaledEditsCache {
+  private static final int LAYOUT =
+      NameNodeLayoutVersion.CURRENT_LAYOUT_VERSION;
+
+  @Test
+  public void testRetrieveWholeBatches() throws Exception {
+    JournaledEditsCache cache = new JournaledEditsCache(1024 * 1024);
+    storeTxns(cache, 1, 5);
+    storeTxns(cache, 6, 5);
+    storeTxns(cache, 11, 5);
+
+    assertTxns(cache.retrieveEdits(1, 100), 1, 15);
+    // Responses begin at the start of the batch containing sinceTxId
+    assertTxns(cache.retrieveEdits(8, 100), 6, 15);
+    // Nothing newer than what is cached
+    assertEquals(0, cache.retrieveEdits(16, 100).getTxnCount());
+  }
+
+  @Test
+  public void testMaxTxns() throws Exception {
+    JournaledEditsCache cache = new JournaledEditsCache(1024 * 1024);
+    storeTxns(cache, 1, 5);
+    storeTxns(cache, 6, 5);
+    storeTxns(cache, 11, 5);
+
+    assertTxns(cache.retrieveEdits(1, 5), 1, 5);
+    assertTxns(cache.retrieveEdits(1, 7), 1, 10);
+    // The batch containing sinceTxId is always returned
+    assertTxns(cache.retrieveEdits(3, 1), 1, 5);
+  }
+
+  @Test
+  public void testEviction() throws Exception {
+    byte[] batch = createTxnData(1, 5);
+    // Room for two batches but not three; later batches are slightly larger
+    // since their txids have more digits.
+    JournaledEditsCache cache =
+        new JournaledEditsCache(batch.length * 5 / 2);
+    cache.storeEdits(batch, 1, 5, LAYOUT);
+    storeTxns(cache, 6, 5);
+    storeTxns(cache, 11, 5);
+
+    assertCacheMiss(cache, 1);
+    assertTxns(cache.retrieveEdits(6, 100), 6, 15);
+  }
+
+  @Test
+  public void testOversizedBatchClearsCache() throws Exception {
+    byte[] batch = createTxnData(1, 5);
+    JournaledEditsCache cache = new JournaledEditsCache(batch.length);
+    cache.storeEdits(batch, 1, 5, LAYOUT);
+    storeTxns(cache, 6, 10);
+
+    assertCacheMiss(cache, 6);
+    assertEquals(0, cache.getCachedBytes());
+  }
+
+  @Test
+  public void testGapOrLayoutChangeClearsCache() throws Exception {
+    JournaledEditsCache cache = new JournaledEditsCache(1024 * 1024);
+    storeTxns(cache, 1, 5);
+    storeTxns(cache, 10, 5);
+    assertCacheMiss(cache, 1);
+    assertTxns(cache.retrieveEdits(10, 100), 10, 14);
+
+    cache.storeEdits(createTxnData(15, 5), 15, 19, LAYOUT - 1);
+    assertCacheMiss(cache, 10);
+  }
+
+  @Test
+  public void testEmptyCache() throws Exception {
+    JournaledEditsCache cache = new JournaledEditsCache(1024 * 1024);
+    assertCacheMiss(cache, 1);
+    storeTxns(cache, 1, 5);
+    cache.clear();
+    assertCacheMiss(cache, 1);
+  }
+
+  private static void storeTxns(JournaledEditsCache cache, int startTxn,
+      int numTxns) throws Exception {
+    cache.storeEdits(createTxnData(startTxn, numTxns), startTxn,
+        startTxn + numTxns - 1, LAYOUT);
+  }
+
+  private static void assertCacheMiss(JournaledEditsCache cache,
+      long sinceTxId) {
+    try {
+      cache.retrieveEdits(sinceTxId, 100);
+      fail("Expected a cache miss for txid " + sinceTxId);
+    } catch (CacheMissException cme) {
+      GenericTestUtils.assertExceptionContains("not present", cme);
+    }
+  }
+
+  /**
+   * Assert that the response contains exactly the given range of txns,
+   * and that the serialized edits can be read back.
+   */
+  private static void assertTxns(GetJournaledEditsResponseProto resp,
+      long firstTxId, long lastTxId) throws IOException {
+    assertEquals(firstTxId, resp.getFromTxId());
+    assertEquals(lastTxId - firstTxId + 1, resp.getTxnCount());
+    EditLogInputStream elis = EditLogFileInputStream.fromByteString(
+        resp.getEditLog(), firstTxId, lastTxId, true);
+    try {
+      for (long txid = firstTxId; txid <= lastTxId; txid++) {
+        FSEditLogOp op = elis.readOp();
+        assertEquals(txid, op.getTransactionId());
+      }
+      assertNull(elis.readOp());
+    } finally {
+      IOUtils.closeStream(elis);
+    }
+  }
+}
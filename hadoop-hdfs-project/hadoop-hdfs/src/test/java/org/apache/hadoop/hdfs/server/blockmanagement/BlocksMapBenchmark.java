@@ -0,0 +1,178 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs.server.blockmanagement;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.hadoop.hdfs.DFSTestUtil;
+import org.apache.hadoop.hdfs.protocol.Block;
+import org.apache.hadoop.util.GSet;
+import org.apache.hadoop.util.LightWeightGSet;
+
+/**
+ * Measures the heap used per block and the latency of block lookups in the
+ * NameNode's blocks map for {@link BlockInfoContiguous}, and compares them
+ * with a block info which keeps its storages in a separate array, as
+ * {@link BlockInfoContiguous} used to.
+ *
+ * Usage: BlocksMapBenchmark [numBlocks [replication]]
+ *
+ * Run it with a fixed heap size (-Xms equal to -Xmx) so that the heap
+ * measurements are not disturbed by the heap being resized.
+ */
+public class BlocksMapBenchmark {
+  private static final Log LOG = LogFactory.getLog(BlocksMapBenchmark.class);
+
+  /** The block info layout in use before storages were inlined. */
+  static class ArrayBlockInfo extends BlockInfo {
+    private DatanodeStorageInfo[] storages;
+
+    ArrayBlockInfo(Block blk, short size) {
+      super(blk, size);
+      storages = new DatanodeStorageInfo[size];
+    }
+
+    @Override
+    DatanodeStorageInfo getStorageInfo(int index) {
+      return storages[index];
+    }
+
+    @Override
+    void setStorageInfo(int index, DatanodeStorageInfo storage) {
+      storages[index] = storage;
+    }
+
+    @Override
+    public int getCapacity() {
+      return storages.length;
+    }
+
+    @Override
+    public int numNodes() {
+      for (int idx = getCapacity() - 1; idx >= 0; idx--) {
+        if (storages[idx] != null) {
+          return idx + 1;
+        }
+      }
+      return 0;
+    }
+
+    @Override
+    boolean addStorage(DatanodeStorageInfo storage, Block reportedBlock) {
+      storages[numNodes()] = storage;
+      return true;
+    }
+
+    @Override
+    boolean removeStorage(DatanodeStorageInfo storage) {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public boolean isStriped() {
+      return false;
+    }
+
+    @Override
+    boolean hasNoStorage() {
+      return storages[0] == null;
+    }
+  }
+
+  private final int numBlocks;
+  private final short replication;
+  private final DatanodeStorageInfo[] storages;
+
+  BlocksMapBenchmark(int numBlocks, short replication) {
+    this.numBlocks = numBlocks;
+    this.replication = replication;
+    this.storages = new DatanodeStorageInfo[replication];
+    for (int i = 0; i < replication; i++) {
+      storages[i] = DFSTestUtil.createDatanodeStorageInfo("storage" + i,
+          "127.0.0." + (i + 1));
+    }
+  }
+
+  private BlockInfo newBlockInfo(boolean compact, long blockId) {
+    Block blk = new Block(blockId, 128 * 1024 * 1024, 1001);
+    return compact ? new BlockInfoContiguous(blk, replication)
+        : new ArrayBlockInfo(blk, replication);
+  }
+
+  /**
+   * Fill a blocks map with blocks of the given layout and log the heap used
+   * per block and the average time taken to add and look up a block.
+   */
+  void run(boolean compact) {
+    final String layout = compact ? "inline storages" : "storage array";
+    GSet<Block, BlockInfo> blocks =
+        new LightWeightGSet<Block, BlockInfo>(
+            LightWeightGSet.computeCapacity(2.0, "BlocksMapBenchmark"));
+    long heapBefore = usedHeap();
+
+    long start = System.nanoTime();
+    for (long id = 0; id < numBlocks; id++) {
+      BlockInfo b = newBlockInfo(compact, id);
+      for (DatanodeStorageInfo storage : storages) {
+        b.addStorage(storage, b);
+      }
+      blocks.put(b);
+    }
+    long addNanos = System.nanoTime() - start;
+    long heapAfter = usedHeap();
+
+    Block key = new Block();
+    long found = 0;
+    start = System.nanoTime();
+    for (long id = 0; id < numBlocks; id++) {
+      key.setBlockId(id);
+      BlockInfo b = blocks.get(key);
+      found += b.numNodes();
+    }
+    long getNanos = System.nanoTime() - start;
+    if (found != (long) numBlocks * replication) {
+      throw new IllegalStateException("Found " + found + " replicas, " +
+          "expected " + (long) numBlocks * replication);
+    }
+
+    LOG.info(String.format("%-16s: %d blocks, %.1f bytes/block, " +
+        "add %.1f ns/block, lookup %.1f ns/block", layout, numBlocks,
+        (double) (heapAfter - heapBefore) / numBlocks,
+        (double) addNanos / numBlocks, (double) getNanos / numBlocks));
+    blocks.clear();
+  }
+
+  private static long usedHeap() {
+    Runtime rt = Runtime.getRuntime();
+    for (int i = 0; i < 3; i++) {
+      System.gc();
+    }
+    return rt.totalMemory() - rt.freeMemory();
+  }
+
+  public static void main(String[] args) {
+    int numBlocks = args.length > 0 ? Integer.parseInt(args[0]) : 1000000;
+    short replication = args.length > 1 ? Short.parseShort(args[1]) : 3;
+    BlocksMapBenchmark bench = new BlocksMapBenchmark(numBlocks, replication);
+    // Warm up, then measure each layout
+    bench.run(false);
+    bench.run(true);
+    bench.run(false);
+    bench.run(true);
+  }
+}
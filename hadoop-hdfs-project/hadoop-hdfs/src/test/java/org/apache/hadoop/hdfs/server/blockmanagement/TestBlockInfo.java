@@ -83,4 +83,34 @@ public void testReplaceStorage() throws Exception {
     Assert.assertThat(added, is(false));
     Assert.assertThat(blockInfos[NUM_BLOCKS/2].getStorageInfo(0), is(storage2));
   }
+
+  @Test
+  public void testStoragesBeyondInlineSlots() throws Exception {
+    final int numStorages = BlockInfoContiguous.INLINE_STORAGES + 2;
+    BlockInfo blockInfo = new BlockInfoContiguous((short) 1);
+    DatanodeStorageInfo[] storages = new DatanodeStorageInfo[numStorages];
+    for (int i = 0; i < numStorages; i++) {
+      storages[i] = DFSTestUtil.createDatanodeStorageInfo("storageID" + i,
+          "127.0.0." + (i + 1));
+      Assert.assertTrue(blockInfo.addStorage(storages[i], blockInfo));
+    }
+    Assert.assertEquals(numStorages, blockInfo.numNodes());
+    Assert.assertEquals(numStorages, blockInfo.getCapacity());
+    for (int i = 0; i < numStorages; i++) {
+      Assert.assertEquals(storages[i], blockInfo.getStorageInfo(i));
+    }
+
+    // Removing an inline storage moves the last storage into its slot
+    Assert.assertTrue(blockInfo.removeStorage(storages[1]));
+    Assert.assertEquals(numStorages - 1, blockInfo.numNodes());
+    Assert.assertEquals(storages[numStorages - 1], blockInfo.getStorageInfo(1));
+    Assert.assertNull(blockInfo.getStorageInfo(numStorages - 1));
+    Assert.assertFalse(blockInfo.removeStorage(storages[1]));
+
+    for (int i = 0; i < numStorages; i++) {
+      blockInfo.removeStorage(storages[i]);
+    }
+    Assert.assertEquals(0, blockInfo.numNodes());
+    Assert.assertTrue(blockInfo.hasNoStorage());
+  }
 }
@@ -84,11 +84,13 @@
 import org.apache.hadoop.hdfs.server.namenode.INodeId;
 import org.apache.hadoop.hdfs.server.namenode.NameNodeAdapter;
 import org.apache.hadoop.hdfs.server.namenode.TestINodeFile;
+import org.apache.hadoop.hdfs.server.blockmanagement.BlockManager.BlockReportDiff;
 import org.apache.hadoop.hdfs.server.protocol.BlockReportContext;
 import org.apache.hadoop.hdfs.server.protocol.DatanodeRegistration;
 import org.apache.hadoop.hdfs.server.protocol.DatanodeStorage;
 import org.apache.hadoop.hdfs.server.protocol.NamenodeProtocols;
 import org.apache.hadoop.hdfs.server.protocol.ReceivedDeletedBlockInfo;
+import org.apache.hadoop.hdfs.server.protocol.StorageBlockReport;
 import org.apache.hadoop.hdfs.server.protocol.StorageReceivedDeletedBlocks;
 import org.apache.hadoop.hdfs.server.protocol.StorageReport;
 import org.apache.hadoop.io.EnumSetWritable;
@@ -137,6 +139,8 @@ public void setupMockCluster() throws IOException {
     Configuration conf = new HdfsConfiguration();
     conf.set(DFSConfigKeys.NET_TOPOLOGY_SCRIPT_FILE_NAME_KEY,
              "need to set a dummy value here so it assumes a multi-rack cluster");
+    // compare full block reports on the diff workers, which are off by default
+    conf.setInt(DFSConfigKeys.DFS_NAMENODE_BLOCKREPORT_DIFF_THREADS_KEY, 1);
     fsn = Mockito.mock(FSNamesystem.class);
     Mockito.doReturn(true).when(fsn).hasWriteLock();
     Mockito.doReturn(true).when(fsn).hasReadLock();
@@ -599,6 +603,77 @@ private LinkedListMultimap<DatanodeStorageInfo, BlockTargetPair> getAllPendingRe
     return repls;
   }
 
+  /**
+   * Test that the reconstruction capacity follows the transfers each live
+   * node is free to start.
+   */
+  @Test
+  public void testReconstructionCapacity() throws Exception {
+    addNodes(nodes);
+    HeartbeatManager hbm = bm.getDatanodeManager().getHeartbeatManager();
+    for (DatanodeDescriptor dn : nodes) {
+      hbm.addDatanode(dn);
+    }
+    assertEquals(nodes.size() * bm.maxReplicationStreams,
+        bm.getReconstructionCapacity());
+
+    // A node running transfers has fewer free
+    nodes.get(0).setAvailableTransfers(bm.maxReplicationStreams - 1);
+    assertEquals(nodes.size() * bm.maxReplicationStreams - 1,
+        bm.getReconstructionCapacity());
+
+    // A decommissioning node may be used up to the hard limit
+    startDecommission(1);
+    assertEquals((nodes.size() - 1) * bm.maxReplicationStreams - 1
+        + bm.replicationStreamsHardLimit, bm.getReconstructionCapacity());
+
+    // Queued tasks use up the free transfers
+    BlockInfo block = addBlockOnNodes(0, getNodes(2));
+    nodes.get(2).addBlockToBeReplicated(block,
+        new DatanodeStorageInfo[] {storages[3]});
+    assertEquals((nodes.size() - 1) * bm.maxReplicationStreams - 2
+        + bm.replicationStreamsHardLimit, bm.getReconstructionCapacity());
+  }
+
+  /**
+   * Test that reconstruction work is scheduled in batches whose targets
+   * are chosen by the target choosers.
+   */
+  @Test
+  public void testPipelinedReconstruction() throws Exception {
+    Configuration conf = new HdfsConfiguration();
+    conf.set(DFSConfigKeys.NET_TOPOLOGY_SCRIPT_FILE_NAME_KEY,
+        "need to set a dummy value here so it assumes a multi-rack cluster");
+    conf.setInt(
+        DFSConfigKeys.DFS_NAMENODE_RECONSTRUCTION_TARGET_CHOOSER_THREADS_KEY,
+        2);
+    conf.setInt(DFSConfigKeys.DFS_NAMENODE_RECONSTRUCTION_BATCH_SIZE_KEY, 2);
+    bm = new BlockManager(fsn, false, conf);
+    try {
+      addNodes(nodes);
+      // One block on each node, so that no source reaches its limit
+      List<BlockInfo> blocks = new ArrayList<>();
+      for (int i = 0; i < nodes.size(); i++) {
+        blocks.add(addBlockOnNodes(i, getNodes(i)));
+      }
+      List<List<BlockInfo>> blocksToReconstruct = new ArrayList<>();
+      blocksToReconstruct.add(blocks.subList(0, 1));
+      blocksToReconstruct.add(new ArrayList<BlockInfo>());
+      blocksToReconstruct.add(blocks.subList(1, blocks.size()));
+
+      assertEquals(blocks.size(),
+          bm.computeReconstructionWorkForBlocks(blocksToReconstruct));
+      for (BlockInfo block : blocks) {
+        assertEquals(2, bm.pendingReconstruction.getNumReplicas(block));
+      }
+      for (DatanodeDescriptor dn : nodes) {
+        assertEquals(1, dn.getNumberOfBlocksToBeReplicated());
+      }
+    } finally {
+      bm.close();
+    }
+  }
+
   /**
    * Test that a source node for a highest-priority reconstruction is chosen
    * even if all available source nodes have reached their replication limits.
@@ -906,6 +981,65 @@ public void testFullBR() throws Exception {
     }
   }
 
+  @Test
+  public void testFullBRDiff() throws Exception {
+    DatanodeDescriptor node = nodes.get(0);
+    DatanodeStorageInfo ds = node.getStorageInfos()[0];
+    DatanodeStorage storage = new DatanodeStorage(ds.getStorageID());
+    node.setAlive(true);
+    DatanodeRegistration nodeReg =  new DatanodeRegistration(node, null, null, "");
+
+    // register new node
+    bm.getDatanodeManager().registerDatanode(nodeReg);
+    bm.getDatanodeManager().addDatanode(node);
+
+    ArrayList<BlockInfo> blocks = new ArrayList<>();
+    for (int id = 1; id <= 10; id++) {
+      blocks.add(addBlockToBM(id));
+    }
+    BlockReportContext context =
+        new BlockReportContext(1, 0, System.nanoTime(), 0, true);
+    // The first report is not compared with the stored blocks
+    List<Future<BlockReportDiff>> diffs = bm.computeReportDiffs(node,
+        new StorageBlockReport[] {
+            new StorageBlockReport(storage, generateReport(blocks))},
+        context);
+    assertNull(bm.getReportDiff(diffs.get(0)));
+    bm.processReport(node, storage, generateReport(blocks), context, false);
+    assertEquals(1, ds.getBlockReportCount());
+
+    // Report a new replica and one which does not belong to any file,
+    // but not the replica of blocks[0]
+    BlockInfo removed = blocks.remove(0);
+    blocks.add(addBlockToBM(11));
+    blocks.add(new BlockInfoContiguous(new Block(12), (short) 3));
+    BlockListAsLongs report = generateReport(blocks);
+    diffs = bm.computeReportDiffs(node,
+        new StorageBlockReport[] {new StorageBlockReport(storage, report)},
+        context);
+    BlockReportDiff diff = bm.getReportDiff(diffs.get(0));
+    assertEquals(2, diff.changed.size());
+    assertEquals(ImmutableList.of(removed), diff.unreported);
+
+    // The unreported replica is removed before the difference is applied
+    ds.removeBlock(removed);
+    bm.processReport(node, storage, report, context, false, diff);
+    assertEquals(2, ds.getBlockReportCount());
+    assertEquals(-1, removed.findStorageInfo(ds));
+    for (int id = 2; id <= 11; id++) {
+      assertTrue(bm.getStoredBlock(new Block(id)).findStorageInfo(ds) >= 0);
+    }
+    assertNull(bm.getStoredBlock(new Block(12)));
+
+    // A difference computed before the last report is not applied
+    assertFalse(diff.isCurrent(ds));
+    blocks.add(0, removed);
+    bm.processReport(node, storage, generateReport(blocks), context, false,
+        diff);
+    assertEquals(3, ds.getBlockReportCount());
+    assertTrue(removed.findStorageInfo(ds) >= 0);
+  }
+
   private BlockListAsLongs generateReport(List<BlockInfo> blocks) {
     BlockListAsLongs.Builder builder = BlockListAsLongs.builder();
     for (BlockInfo block : blocks) {
@@ -0,0 +1,177 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs.server.datanode;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FSDataInputStream;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.hdfs.DFSConfigKeys;
+import org.apache.hadoop.hdfs.DFSTestUtil;
+import org.apache.hadoop.hdfs.HdfsConfiguration;
+import org.apache.hadoop.hdfs.MiniDFSCluster;
+import org.apache.hadoop.hdfs.client.HdfsClientConfigKeys;
+
+/**
+ * Measures the throughput and latency of many concurrent short positional
+ * reads served by a DataNode, and the number of threads it needs to serve
+ * them, with a thread per peer and with the peers multiplexed on a
+ * {@link DataXceiverSelector}.
+ *
+ * Usage: DataXceiverBenchmark
+ *     [numClients [readsPerClient [readSize [thinkTimeMs]]]]
+ *
+ * Each client has a client context, and so a peer cache, of its own, and
+ * keeps its peer open to the DataNode between reads. The clients pause for
+ * the think time between reads, during which their peers are idle.
+ */
+public class DataXceiverBenchmark {
+  private static final Log LOG = LogFactory.getLog(DataXceiverBenchmark.class);
+  private static final Path TEST_FILE = new Path("/bench");
+  private static final int FILE_LEN = 1024 * 1024;
+
+  private final int numClients;
+  private final int readsPerClient;
+  private final int readSize;
+  private final long thinkTimeMs;
+
+  DataXceiverBenchmark(int numClients, int readsPerClient, int readSize,
+      long thinkTimeMs) {
+    this.numClients = numClients;
+    this.readsPerClient = readsPerClient;
+    this.readSize = readSize;
+    this.thinkTimeMs = thinkTimeMs;
+  }
+
+  /**
+   * Start a DataNode with the given engine, run the reads against it, and
+   * log the read rate, the mean read latency, and the peak number of
+   * xceivers and of threads serving them.
+   */
+  void run(boolean useSelector) throws Exception {
+    final String engine = useSelector ? "selector" : "thread per peer";
+    Configuration conf = new HdfsConfiguration();
+    conf.setBoolean(DFSConfigKeys.DFS_DATANODE_XCEIVER_SELECTOR_ENABLED_KEY,
+        useSelector);
+    conf.setInt(DFSConfigKeys.DFS_DATANODE_MAX_RECEIVER_THREADS_KEY,
+        numClients * 2);
+    conf.setInt(HdfsClientConfigKeys.DFS_CLIENT_SOCKET_CACHE_CAPACITY_KEY,
+        1);
+    MiniDFSCluster cluster =
+        new MiniDFSCluster.Builder(conf).numDataNodes(1).build();
+    ExecutorService executor = Executors.newFixedThreadPool(numClients);
+    List<FileSystem> clients = new ArrayList<>();
+    try {
+      cluster.waitActive();
+      final DataNode dn = cluster.getDataNodes().get(0);
+      DFSTestUtil.createFile(cluster.getFileSystem(), TEST_FILE, FILE_LEN,
+          (short) 1, 0L);
+      for (int i = 0; i < numClients; i++) {
+        Configuration clientConf = new Configuration(conf);
+        clientConf.set(HdfsClientConfigKeys.DFS_CLIENT_CONTEXT,
+            "DataXceiverBenchmark-" + engine + "-" + i);
+        clients.add(FileSystem.newInstance(cluster.getURI(), clientConf));
+      }
+
+      List<Future<Long>> futures = new ArrayList<>();
+      long start = System.nanoTime();
+      for (final FileSystem fs : clients) {
+        futures.add(executor.submit(new Callable<Long>() {
+          @Override
+          public Long call() throws Exception {
+            byte[] buf = new byte[readSize];
+            long nanos = 0;
+            try (FSDataInputStream in = fs.open(TEST_FILE)) {
+              for (int i = 0; i < readsPerClient; i++) {
+                long pos = ((long) i * 7919 * readSize) % (FILE_LEN - readSize);
+                long readStart = System.nanoTime();
+                in.readFully(pos, buf);
+                nanos += System.nanoTime() - readStart;
+                if (thinkTimeMs > 0) {
+                  Thread.sleep(thinkTimeMs);
+                }
+              }
+            }
+            return nanos;
+          }
+        }));
+      }
+      int peakXceivers = 0;
+      int peakThreads = 0;
+      long readNanos = 0;
+      for (Future<Long> future : futures) {
+        while (!future.isDone()) {
+          peakXceivers = Math.max(peakXceivers, dn.getXceiverCount());
+          peakThreads = Math.max(peakThreads, countXceiverThreads());
+          Thread.sleep(10);
+        }
+        readNanos += future.get();
+      }
+      long elapsedNanos = System.nanoTime() - start;
+      long numReads = (long) numClients * readsPerClient;
+
+      LOG.info(String.format("%-16s: %d clients, %d reads of %d bytes, " +
+          "think time %d ms, %.0f reads/s, mean latency %.1f us, " +
+          "peak xceivers %d, peak xceiver threads %d", engine, numClients,
+          numReads, readSize, thinkTimeMs,
+          numReads * 1e9 / elapsedNanos, readNanos / 1e3 / numReads,
+          peakXceivers, peakThreads));
+    } finally {
+      executor.shutdownNow();
+      for (FileSystem fs : clients) {
+        fs.close();
+      }
+      cluster.shutdown();
+    }
+  }
+
+  /** @return the number of threads which are serving or waiting for peers. */
+  private static int countXceiverThreads() {
+    int count = 0;
+    for (Thread t : Thread.getAllStackTraces().keySet()) {
+      if (t.getName().startsWith("DataXceiver")
+          && !t.getName().equals("DataXceiver selector")) {
+        count++;
+      }
+    }
+    return count;
+  }
+
+  public static void main(String[] args) throws Exception {
+    int numClients = args.length > 0 ? Integer.parseInt(args[0]) : 256;
+    int readsPerClient = args.length > 1 ? Integer.parseInt(args[1]) : 200;
+    int readSize = args.length > 2 ? Integer.parseInt(args[2]) : 4096;
+    long thinkTimeMs = args.length > 3 ? Long.parseLong(args[3]) : 5;
+    DataXceiverBenchmark bench = new DataXceiverBenchmark(numClients,
+        readsPerClient, readSize, thinkTimeMs);
+    // Warm up, then measure each engine
+    bench.run(false);
+    bench.run(true);
+    bench.run(false);
+    bench.run(true);
+  }
+}
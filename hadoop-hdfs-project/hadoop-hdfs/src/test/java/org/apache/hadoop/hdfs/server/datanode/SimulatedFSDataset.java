@@ -611,11 +611,17 @@ public synchronized void unfinalizeBlock(ExtendedBlock b) throws IOException{
   }
 
   synchronized BlockListAsLongs getBlockReport(String bpid) {
+    return getBlockReport(bpid, Long.MIN_VALUE, Long.MAX_VALUE);
+  }
+
+  private synchronized BlockListAsLongs getBlockReport(String bpid,
+      long minBlockId, long maxBlockId) {
     BlockListAsLongs.Builder report = BlockListAsLongs.builder();
     final Map<Block, BInfo> map = blockMap.get(bpid);
     if (map != null) {
       for (BInfo b : map.values()) {
-        if (b.isFinalized()) {
+        if (b.isFinalized() && b.getBlockId() >= minBlockId
+            && b.getBlockId() <= maxBlockId) {
           report.add(b);
         }
       }
@@ -629,6 +635,19 @@ public synchronized Map<DatanodeStorage, BlockListAsLongs> getBlockReports(
     return Collections.singletonMap(storage.getDnStorage(), getBlockReport(bpid));
   }
 
+  @Override
+  public synchronized Map<DatanodeStorage, BlockListAsLongs> getBlockReports(
+      String bpid, long minBlockId, long maxBlockId) {
+    return Collections.singletonMap(storage.getDnStorage(),
+        getBlockReport(bpid, minBlockId, maxBlockId));
+  }
+
+  @Override // FsDatasetSpi
+  public long[] getBlockReportSegments(String bpid,
+      int maxReplicasPerSegment) {
+    return new long[] {Long.MAX_VALUE};
+  }
+
   @Override // FsDatasetSpi
   public List<Long> getCacheReport(String bpid) {
     return new LinkedList<Long>();
@@ -19,9 +19,11 @@
 
 import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_DATANODE_SCAN_PERIOD_HOURS_KEY;
 import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_BLOCK_SCANNER_VOLUME_BYTES_PER_SECOND;
+import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_BLOCK_SCANNER_VOLUME_PRIORITY_ENABLED_KEY;
 import static org.apache.hadoop.hdfs.server.datanode.BlockScanner.Conf.INTERNAL_DFS_DATANODE_SCAN_PERIOD_MS;
 import static org.apache.hadoop.hdfs.server.datanode.BlockScanner.Conf.INTERNAL_VOLUME_SCANNER_SCAN_RESULT_HANDLER;
 import static org.apache.hadoop.hdfs.server.datanode.BlockScanner.Conf.INTERNAL_DFS_BLOCK_SCANNER_CURSOR_SAVE_INTERVAL_MS;
+import static org.apache.hadoop.hdfs.server.datanode.BlockScanner.Conf.INTERNAL_DFS_BLOCK_SCANNER_NEW_BLOCK_DELAY_MS;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.assertFalse;
@@ -35,11 +37,13 @@
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
 
 import com.google.common.base.Supplier;
 import org.apache.hadoop.hdfs.MiniDFSNNTopology;
 import org.apache.hadoop.hdfs.protocol.ExtendedBlock;
 import org.apache.hadoop.hdfs.server.datanode.FsDatasetTestUtils.MaterializedReplica;
+import org.apache.hadoop.hdfs.server.common.Storage;
 import org.apache.hadoop.hdfs.server.datanode.fsdataset.FsDatasetSpi;
 import org.apache.hadoop.hdfs.server.datanode.VolumeScanner.ScanResultHandler;
 import org.apache.hadoop.conf.Configuration;
@@ -698,6 +702,146 @@ public void testCalculateNeededBytesPerSec() throws Exception {
         calculateShouldScan("test", 100000L, 365000000L, 0, 60));
   }
 
+  @Test(timeout=120000)
+  public void testCalculateAdaptiveBytesPerSec() throws Exception {
+    // An idle volume is scanned at the maximum rate.
+    assertEquals(1000L,
+        VolumeScanner.calculateAdaptiveBytesPerSec(100L, 1000L, 0.0));
+    // A busy volume is scanned at the minimum rate.
+    assertEquals(100L,
+        VolumeScanner.calculateAdaptiveBytesPerSec(100L, 1000L, 1.0));
+    // In between, the rate falls as the utilization rises.
+    assertEquals(775L,
+        VolumeScanner.calculateAdaptiveBytesPerSec(100L, 1000L, 0.25));
+    assertEquals(325L,
+        VolumeScanner.calculateAdaptiveBytesPerSec(100L, 1000L, 0.75));
+    // The utilization is clamped.
+    assertEquals(1000L,
+        VolumeScanner.calculateAdaptiveBytesPerSec(100L, 1000L, -1.0));
+    assertEquals(100L,
+        VolumeScanner.calculateAdaptiveBytesPerSec(100L, 1000L, 2.0));
+  }
+
+  /**
+   * Test that blocks written after the scan of their block pool are scanned
+   * without waiting for the next scan period, and that the queue of blocks
+   * to scan is saved.
+   */
+  @Test(timeout=120000)
+  public void testScanNewBlocks() throws Exception {
+    Configuration conf = new Configuration();
+    // Set a really long scan period.
+    conf.setLong(DFS_DATANODE_SCAN_PERIOD_HOURS_KEY, 100L);
+    conf.set(INTERNAL_VOLUME_SCANNER_SCAN_RESULT_HANDLER,
+        TestScanResultHandler.class.getName());
+    conf.setLong(INTERNAL_DFS_BLOCK_SCANNER_CURSOR_SAVE_INTERVAL_MS, 0L);
+    conf.setBoolean(DFS_BLOCK_SCANNER_VOLUME_PRIORITY_ENABLED_KEY, true);
+    conf.setLong(INTERNAL_DFS_BLOCK_SCANNER_NEW_BLOCK_DELAY_MS, 0L);
+    final TestContext ctx = new TestContext(conf, 1);
+    final int NUM_FILES = 5;
+    ctx.createFiles(0, NUM_FILES, 1);
+    final TestScanResultHandler.Info info =
+        TestScanResultHandler.getInfo(ctx.volumes.get(0));
+    final String storageID = ctx.volumes.get(0).getStorageID();
+    synchronized (info) {
+      info.shouldRun = true;
+      info.notify();
+    }
+    LOG.info("Waiting for the block pool scan to finish.");
+    GenericTestUtils.waitFor(new Supplier<Boolean>() {
+      @Override
+      public Boolean get() {
+        Statistics stats = ctx.blockScanner.getVolumeStats(storageID);
+        synchronized (info) {
+          LOG.info("info = {}, stats = {}", info, stats);
+          return info.goodBlocks.size() == NUM_FILES && stats.eof &&
+              stats.priorityBlocksQueued == 0;
+        }
+      }
+    }, 50, 30000);
+    synchronized (info) {
+      assertEquals("Did not expect bad blocks.", 0, info.badBlocks.size());
+      info.goodBlocks.clear();
+    }
+
+    // Write another block, which the block pool scan has already passed.
+    DFSTestUtil.createFile(ctx.dfs[0], ctx.getPath(NUM_FILES), 1,
+        (short)1, 123L);
+    final ExtendedBlock newBlock = ctx.getFileBlock(0, NUM_FILES);
+    LOG.info("Waiting for the new block {} to be scanned.", newBlock);
+    GenericTestUtils.waitFor(new Supplier<Boolean>() {
+      @Override
+      public Boolean get() {
+        synchronized (info) {
+          return info.goodBlocks.contains(newBlock);
+        }
+      }
+    }, 50, 30000);
+    synchronized (info) {
+      assertEquals(1, info.goodBlocks.size());
+      assertEquals("Did not expect bad blocks.", 0, info.badBlocks.size());
+    }
+    File queueFile = new File(new File(ctx.volumes.get(0).getBasePath(),
+        Storage.STORAGE_DIR_CURRENT), ScanPriorityQueue.QUEUE_FILE);
+    assertTrue("Expected the queue to be saved to " + queueFile,
+        queueFile.exists());
+    ctx.close();
+  }
+
+  /**
+   * Test that blocks written while the scanner waits for them to be old
+   * enough to scan are saved, before the scanner wakes up to scan them.
+   */
+  @Test(timeout=120000)
+  public void testSaveNewBlocksWhileWaiting() throws Exception {
+    Configuration conf = new Configuration();
+    // Set a really long scan period.
+    conf.setLong(DFS_DATANODE_SCAN_PERIOD_HOURS_KEY, 100L);
+    conf.set(INTERNAL_VOLUME_SCANNER_SCAN_RESULT_HANDLER,
+        TestScanResultHandler.class.getName());
+    conf.setLong(INTERNAL_DFS_BLOCK_SCANNER_CURSOR_SAVE_INTERVAL_MS, 0L);
+    conf.setBoolean(DFS_BLOCK_SCANNER_VOLUME_PRIORITY_ENABLED_KEY, true);
+    conf.setLong(INTERNAL_DFS_BLOCK_SCANNER_NEW_BLOCK_DELAY_MS,
+        TimeUnit.HOURS.toMillis(1));
+    final TestContext ctx = new TestContext(conf, 1);
+    final TestScanResultHandler.Info info =
+        TestScanResultHandler.getInfo(ctx.volumes.get(0));
+    final String storageID = ctx.volumes.get(0).getStorageID();
+    synchronized (info) {
+      info.shouldRun = true;
+      info.notify();
+    }
+    LOG.info("Waiting for the scan of the empty block pool to finish.");
+    GenericTestUtils.waitFor(new Supplier<Boolean>() {
+      @Override
+      public Boolean get() {
+        return ctx.blockScanner.getVolumeStats(storageID).eof;
+      }
+    }, 50, 30000);
+
+    // The scanner has nothing left to scan for an hour, so it waits.
+    final int NUM_FILES = 3;
+    ctx.createFiles(0, NUM_FILES, 1);
+    final File queueFile = new File(new File(
+        ctx.volumes.get(0).getBasePath(), Storage.STORAGE_DIR_CURRENT),
+        ScanPriorityQueue.QUEUE_FILE);
+    LOG.info("Waiting for the new blocks to be saved to {}.", queueFile);
+    GenericTestUtils.waitFor(new Supplier<Boolean>() {
+      @Override
+      public Boolean get() {
+        ScanPriorityQueue saved = new ScanPriorityQueue(queueFile, 0);
+        try {
+          saved.load();
+        } catch (IOException e) {
+          LOG.info("Failed to load {}", queueFile, e);
+          return false;
+        }
+        return saved.size() == NUM_FILES;
+      }
+    }, 50, 30000);
+    ctx.close();
+  }
+
   /**
    * Test that we can mark certain blocks as suspect, and get them quickly
    * rescanned that way.  See HDFS-7686 and HDFS-7548.
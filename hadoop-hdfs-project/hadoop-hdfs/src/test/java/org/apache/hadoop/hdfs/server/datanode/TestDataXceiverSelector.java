@@ -0,0 +1,209 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs.server.datanode;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FSDataInputStream;
+import org.apache.hadoop.fs.FSDataOutputStream;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.hdfs.DFSConfigKeys;
+import org.apache.hadoop.hdfs.DFSTestUtil;
+import org.apache.hadoop.hdfs.HdfsConfiguration;
+import org.apache.hadoop.hdfs.MiniDFSCluster;
+import org.apache.hadoop.hdfs.client.HdfsClientConfigKeys;
+import org.apache.hadoop.test.GenericTestUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.common.base.Supplier;
+
+/**
+ * Tests the DataNode serving its TCP peers with a {@link DataXceiverSelector}.
+ */
+public class TestDataXceiverSelector {
+  private static final int KEEPALIVE_TIMEOUT = 1000;
+  private static final int FILE_LEN = 64 * 1024;
+  private static final Path TEST_FILE = new Path("/test");
+
+  private final Configuration conf = new HdfsConfiguration();
+  private MiniDFSCluster cluster;
+  private DataXceiverSelector selector;
+  private byte[] expected;
+
+  @Before
+  public void setup() throws Exception {
+    conf.setBoolean(DFSConfigKeys.DFS_DATANODE_XCEIVER_SELECTOR_ENABLED_KEY,
+        true);
+    conf.setInt(DFSConfigKeys.DFS_DATANODE_SOCKET_REUSE_KEEPALIVE_KEY,
+        KEEPALIVE_TIMEOUT);
+    cluster = new MiniDFSCluster.Builder(conf).numDataNodes(1).build();
+    cluster.waitActive();
+    selector = cluster.getDataNodes().get(0).getXferServer().getSelector();
+    assertNotNull(selector);
+
+    FileSystem fs = cluster.getFileSystem();
+    DFSTestUtil.createFile(fs, TEST_FILE, FILE_LEN, (short) 1, 0L);
+    expected = DFSTestUtil.readFileAsBytes(fs, TEST_FILE);
+    // Let the keepalive of the peers used for the setup expire
+    GenericTestUtils.waitFor(new Supplier<Boolean>() {
+      @Override
+      public Boolean get() {
+        return selector.getNumXceivers() == 0;
+      }
+    }, 10, 10000);
+  }
+
+  @After
+  public void teardown() {
+    if (cluster != null) {
+      cluster.shutdown();
+      cluster = null;
+    }
+  }
+
+  private FileSystem newClient(String context) throws Exception {
+    Configuration clientConf = new Configuration(conf);
+    clientConf.set(HdfsClientConfigKeys.DFS_CLIENT_CONTEXT, context);
+    return FileSystem.newInstance(cluster.getURI(), clientConf);
+  }
+
+  /**
+   * Read the file with a single positional read, which leaves the peer in
+   * the client's cache for the next read.
+   */
+  private byte[] readFile(FileSystem fs) throws Exception {
+    byte[] buf = new byte[FILE_LEN];
+    try (FSDataInputStream in = fs.open(TEST_FILE)) {
+      in.readFully(0, buf);
+    }
+    return buf;
+  }
+
+  private void waitForParked(final int expectedParked) throws Exception {
+    GenericTestUtils.waitFor(new Supplier<Boolean>() {
+      @Override
+      public Boolean get() {
+        return selector.getNumParked() == expectedParked;
+      }
+    }, 10, 10000);
+  }
+
+  @Test(timeout = 60000)
+  public void testKeepalivePeerIsParked() throws Exception {
+    FileSystem fs = newClient("testKeepalivePeerIsParked");
+    try {
+      // Every read after the first reuses the parked peer
+      for (int i = 0; i < 5; i++) {
+        assertArrayEquals(expected, readFile(fs));
+        waitForParked(1);
+        assertEquals(1, selector.getNumXceivers());
+      }
+      // The idle peer is closed once its keepalive expires
+      waitForParked(0);
+      assertEquals(0, selector.getNumXceivers());
+      assertArrayEquals(expected, readFile(fs));
+    } finally {
+      fs.close();
+    }
+  }
+
+  /**
+   * Test that operations which stay open, such as pipeline writes, do not
+   * hold back the operations of other peers.
+   */
+  @Test(timeout = 60000)
+  public void testLongOperationsDoNotBlockOthers() throws Exception {
+    final int numWriters = 8;
+    FileSystem fs = newClient("testLongOperationsDoNotBlockOthers");
+    List<FSDataOutputStream> outs = new ArrayList<>();
+    try {
+      for (int i = 0; i < numWriters; i++) {
+        FSDataOutputStream out = fs.create(new Path("/open" + i));
+        outs.add(out);
+        out.write(expected, 0, 1024);
+        out.hflush();
+      }
+      // Each writer holds a writeBlock operation open on the DataNode
+      assertTrue(selector.getNumXceivers() >= numWriters);
+      assertArrayEquals(expected, readFile(fs));
+      for (FSDataOutputStream out : outs) {
+        out.write(expected, 1024, 1024);
+        out.hflush();
+      }
+      assertArrayEquals(expected, readFile(fs));
+    } finally {
+      for (FSDataOutputStream out : outs) {
+        out.close();
+      }
+      fs.close();
+    }
+  }
+
+  @Test(timeout = 120000)
+  public void testConcurrentReads() throws Exception {
+    final int numClients = 16;
+    ExecutorService executor = Executors.newFixedThreadPool(numClients);
+    List<FileSystem> clients = new ArrayList<>();
+    try {
+      List<Future<Void>> futures = new ArrayList<>();
+      for (int i = 0; i < numClients; i++) {
+        final FileSystem fs = newClient("testConcurrentReads" + i);
+        clients.add(fs);
+        futures.add(executor.submit(new Callable<Void>() {
+          @Override
+          public Void call() throws Exception {
+            byte[] buf = new byte[1024];
+            try (FSDataInputStream in = fs.open(TEST_FILE)) {
+              for (int j = 0; j < 50; j++) {
+                int pos = (j * 4093) % (FILE_LEN - buf.length);
+                in.readFully(pos, buf);
+                for (int k = 0; k < buf.length; k++) {
+                  assertEquals(expected[pos + k], buf[k]);
+                }
+              }
+            }
+            return null;
+          }
+        }));
+      }
+      // The clients keep their connections open between reads
+      for (Future<Void> future : futures) {
+        future.get();
+      }
+    } finally {
+      executor.shutdownNow();
+      for (FileSystem fs : clients) {
+        fs.close();
+      }
+    }
+  }
+}
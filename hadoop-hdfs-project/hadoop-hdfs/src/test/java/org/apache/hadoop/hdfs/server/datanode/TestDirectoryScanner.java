@@ -409,6 +409,95 @@ public void testDeleteBlockOnTransientStorage() throws Exception {
     }
   }
 
+  @Test (timeout=300000)
+  public void testIncrementalScan() throws Exception {
+    Configuration conf = new Configuration(CONF);
+    conf.setBoolean(
+        DFSConfigKeys.DFS_DATANODE_DIRECTORYSCAN_INCREMENTAL_ENABLED_KEY, true);
+    cluster = new MiniDFSCluster.Builder(conf).build();
+    try {
+      cluster.waitActive();
+      DataNode dataNode = cluster.getDataNodes().get(0);
+      bpid = cluster.getNamesystem().getBlockPoolId();
+      fds = DataNodeTestUtils.getFSDataset(dataNode);
+      client = cluster.getFileSystem().getClient();
+      scanner = new DirectoryScanner(dataNode, fds, conf);
+      scanner.setRetainDiffs(true);
+
+      createFile(GenericTestUtils.getMethodName(), BLOCK_LENGTH * 10, false);
+      backdateBlockDirs();
+
+      // The first scan lists all the directories, and indexes them.
+      scan(10, 0, 0, 0, 0, 0);
+      long numDirs = scanner.dirsListed.get();
+      assertTrue(numDirs > 0);
+      assertEquals(0, scanner.dirsIndexed.get());
+
+      // The directories which were not modified are not listed again.
+      scan(10, 0, 0, 0, 0, 0);
+      assertEquals(0, scanner.dirsListed.get());
+      assertEquals(numDirs, scanner.dirsIndexed.get());
+
+      // A modified directory is listed again.
+      long blockId = deleteMetaFile();
+      scan(10, 1, 1, 0, 0, 1);
+      assertEquals(1, scanner.dirsListed.get());
+      verifyGenStamp(blockId, HdfsConstants.GRANDFATHER_GENERATION_STAMP);
+      scan(10, 0, 0, 0, 0, 0);
+
+      // The index is saved, so a new scanner uses it too.
+      backdateBlockDirs();
+      scan(10, 0, 0, 0, 0, 0);
+      assertEquals(numDirs, scanner.dirsListed.get());
+      scanner.shutdown();
+      scanner = new DirectoryScanner(dataNode, fds, conf);
+      scanner.setRetainDiffs(true);
+      scan(10, 0, 0, 0, 0, 0);
+      assertEquals(0, scanner.dirsListed.get());
+      assertEquals(numDirs, scanner.dirsIndexed.get());
+
+      // Once the last full scan is too old, all the directories are listed.
+      scanner.shutdown();
+      conf.setLong(
+          DFSConfigKeys.DFS_DATANODE_DIRECTORYSCAN_FULL_SCAN_INTERVAL_KEY, 0);
+      scanner = new DirectoryScanner(dataNode, fds, conf);
+      scanner.setRetainDiffs(true);
+      Thread.sleep(10);
+      scan(10, 0, 0, 0, 0, 0);
+      assertEquals(numDirs, scanner.dirsListed.get());
+      assertEquals(0, scanner.dirsIndexed.get());
+    } finally {
+      if (scanner != null) {
+        scanner.shutdown();
+        scanner = null;
+      }
+      cluster.shutdown();
+      cluster = null;
+    }
+  }
+
+  /**
+   * Set the modification time of the block directories back, so that the
+   * incremental scans index them.
+   */
+  private void backdateBlockDirs() throws IOException {
+    long mtime = Time.now() - 60 * 1000;
+    try (FsVolumeReferences volumes = fds.getFsVolumeReferences()) {
+      for (FsVolumeSpi vol : volumes) {
+        backdateDir(vol.getFinalizedDir(bpid), mtime);
+      }
+    }
+  }
+
+  private static void backdateDir(File dir, long mtime) {
+    for (File file : dir.listFiles()) {
+      if (file.isDirectory()) {
+        backdateDir(file, mtime);
+      }
+    }
+    assertTrue(dir.setLastModified(mtime));
+  }
+
   @Test (timeout=600000)
   public void testDirectoryScanner() throws Exception {
     // Run the test with and without parallel scanning
@@ -0,0 +1,161 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.hadoop.hdfs.server.datanode;
+
+import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_BLOCKREPORT_SEGMENT_SIZE_KEY;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.times;
+
+import java.io.IOException;
+import java.util.List;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.hdfs.DFSConfigKeys;
+import org.apache.hadoop.hdfs.DFSTestUtil;
+import org.apache.hadoop.hdfs.DistributedFileSystem;
+import org.apache.hadoop.hdfs.HdfsConfiguration;
+import org.apache.hadoop.hdfs.MiniDFSCluster;
+import org.apache.hadoop.hdfs.protocol.BlockListAsLongs;
+import org.apache.hadoop.hdfs.protocol.BlockListAsLongs.BlockReportReplica;
+import org.apache.hadoop.hdfs.protocol.LocatedBlock;
+import org.apache.hadoop.hdfs.protocolPB.DatanodeProtocolClientSideTranslatorPB;
+import org.apache.hadoop.hdfs.server.namenode.NameNode;
+import org.apache.hadoop.hdfs.server.protocol.BlockReportContext;
+import org.apache.hadoop.hdfs.server.protocol.DatanodeRegistration;
+import org.apache.hadoop.hdfs.server.protocol.StorageBlockReport;
+import org.apache.hadoop.test.GenericTestUtils;
+import org.junit.After;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mockito;
+
+/**
+ * Tests that the DataNode sends its block reports in segments of block IDs
+ * when {@link DFSConfigKeys#DFS_BLOCKREPORT_SEGMENT_SIZE_KEY} is set, and
+ * that the NameNode keeps all the reported replicas.
+ */
+public class TestDnSendsBlockReportSegments {
+  private static final int BLOCK_SIZE = 1024;
+  private static final short REPL_FACTOR = 1;
+  private static final long seed = 0xFEEDFACE;
+  private static final int BLOCKS_IN_FILE = 5;
+  private static final int SEGMENT_SIZE = 2;
+
+  private MiniDFSCluster cluster;
+  private DistributedFileSystem fs;
+
+  private void startUpCluster(int segmentSize) throws IOException {
+    Configuration conf = new HdfsConfiguration();
+    conf.setInt(DFS_BLOCKREPORT_SEGMENT_SIZE_KEY, segmentSize);
+    cluster = new MiniDFSCluster.Builder(conf)
+        .numDataNodes(REPL_FACTOR)
+        .build();
+    fs = cluster.getFileSystem();
+  }
+
+  @After
+  public void shutDownCluster() throws IOException {
+    if (cluster != null) {
+      fs.close();
+      cluster.shutdown();
+      cluster = null;
+    }
+  }
+
+  private Path createFile(String filenamePrefix, int blockCount)
+      throws IOException {
+    Path path = new Path("/" + filenamePrefix + ".dat");
+    DFSTestUtil.createFile(fs, path, BLOCK_SIZE,
+        blockCount * BLOCK_SIZE, BLOCK_SIZE, REPL_FACTOR, seed);
+    return path;
+  }
+
+  private void verifyLocations(Path path) throws IOException {
+    List<LocatedBlock> blocks = DFSTestUtil.getAllBlocks(fs, path);
+    assertEquals(BLOCKS_IN_FILE, blocks.size());
+    for (LocatedBlock block : blocks) {
+      assertEquals(REPL_FACTOR, block.getLocations().length);
+    }
+  }
+
+  @Test(timeout=300000)
+  public void testSegmentedReport() throws Exception {
+    startUpCluster(SEGMENT_SIZE);
+    NameNode nn = cluster.getNameNode();
+    DataNode dn = cluster.getDataNodes().get(0);
+    Path path = createFile(GenericTestUtils.getMethodName(), BLOCKS_IN_FILE);
+
+    DatanodeProtocolClientSideTranslatorPB nnSpy =
+        InternalDataNodeTestUtils.spyOnBposToNN(dn, nn);
+    DataNodeTestUtils.triggerBlockReport(dn);
+
+    // One RPC per segment, each covering every storage.
+    int numSegments = (BLOCKS_IN_FILE + SEGMENT_SIZE - 1) / SEGMENT_SIZE;
+    ArgumentCaptor<StorageBlockReport[]> reportCaptor =
+        ArgumentCaptor.forClass(StorageBlockReport[].class);
+    ArgumentCaptor<BlockReportContext> contextCaptor =
+        ArgumentCaptor.forClass(BlockReportContext.class);
+    Mockito.verify(nnSpy, times(numSegments)).blockReport(
+        any(DatanodeRegistration.class), anyString(),
+        reportCaptor.capture(), contextCaptor.capture());
+
+    List<StorageBlockReport[]> segments = reportCaptor.getAllValues();
+    List<BlockReportContext> contexts = contextCaptor.getAllValues();
+    int numBlocksReported = 0;
+    long nextMinBlockId = Long.MIN_VALUE;
+    for (int s = 0; s < numSegments; s++) {
+      BlockReportContext context = contexts.get(s);
+      assertEquals(numSegments, context.getTotalRpcs());
+      assertEquals(s, context.getCurRpc());
+      assertEquals(nextMinBlockId, context.getMinBlockId());
+      assertEquals(s == numSegments - 1, context.isLastSegment());
+      nextMinBlockId = context.getMaxBlockId() + 1;
+
+      StorageBlockReport[] reports = segments.get(s);
+      assertEquals(cluster.getStoragesPerDatanode(), reports.length);
+      for (StorageBlockReport report : reports) {
+        BlockListAsLongs blockList = report.getBlocks();
+        for (BlockReportReplica replica : blockList) {
+          assertTrue(replica.getBlockId() >= context.getMinBlockId());
+          assertTrue(replica.getBlockId() <= context.getMaxBlockId());
+        }
+        numBlocksReported += blockList.getNumberOfBlocks();
+      }
+    }
+    assertEquals(BLOCKS_IN_FILE, numBlocksReported);
+
+    // No replicas are removed by the segments which do not cover them.
+    verifyLocations(path);
+  }
+
+  @Test(timeout=300000)
+  public void testSegmentedFirstReport() throws Exception {
+    startUpCluster(SEGMENT_SIZE);
+    Path path = createFile(GenericTestUtils.getMethodName(), BLOCKS_IN_FILE);
+
+    // The first report after the NN restarts is sent in segments too.
+    cluster.restartNameNode(true);
+    cluster.waitActive();
+    verifyLocations(path);
+  }
+}
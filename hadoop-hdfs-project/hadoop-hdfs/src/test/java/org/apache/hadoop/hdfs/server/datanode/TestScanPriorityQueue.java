@@ -0,0 +1,263 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs.server.datanode;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.hadoop.fs.FileUtil;
+import org.apache.hadoop.hdfs.protocol.ExtendedBlock;
+import org.apache.hadoop.hdfs.server.datanode.VolumeScanner.ForegroundIoTracker;
+import org.apache.hadoop.test.GenericTestUtils;
+import org.apache.hadoop.util.FakeTimer;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests the {@link ScanPriorityQueue} of the blocks to scan first, and the
+ * {@link ForegroundIoTracker} of the disk IO the scanner adapts to.
+ */
+public class TestScanPriorityQueue {
+  private static final String BPID = "BP-TestScanPriorityQueue";
+  private static final long DELAY_MS = 1000L;
+
+  private File queueFile;
+
+  @Before
+  public void setUp() throws Exception {
+    File dir = new File(GenericTestUtils.getTestDir(),
+        "TestScanPriorityQueue");
+    assertTrue(dir.mkdirs() || dir.exists());
+    assertTrue(FileUtil.fullyDeleteContents(dir));
+    queueFile = new File(dir, ScanPriorityQueue.QUEUE_FILE);
+  }
+
+  private static ExtendedBlock block(long id) {
+    return new ExtendedBlock(BPID, id, 0, 1000L + id);
+  }
+
+  /**
+   * Remove and return the blocks of the queue, in the order they are
+   * scanned.
+   */
+  private static List<ExtendedBlock> drain(ScanPriorityQueue queue,
+      long nowMs) {
+    List<ExtendedBlock> blocks = new ArrayList<ExtendedBlock>();
+    ExtendedBlock block;
+    while ((block = queue.peek(nowMs)) != null) {
+      blocks.add(block);
+      queue.remove(block);
+    }
+    return blocks;
+  }
+
+  @Test(timeout=60000)
+  public void testSuspectBlocksBeforeNewBlocks() throws Exception {
+    ScanPriorityQueue queue = new ScanPriorityQueue(null, 0);
+    queue.addNewBlock(block(1), 0);
+    queue.addNewBlock(block(2), 0);
+    assertTrue(queue.addSuspectBlock(block(3)));
+    assertTrue(queue.addSuspectBlock(block(2)));
+    assertFalse(queue.addSuspectBlock(block(3)));
+    assertTrue(queue.containsSuspectBlock(block(2)));
+    assertEquals(4, queue.size());
+    assertEquals(0, queue.getDelayMs(0));
+    // Removing a block drops it from both the suspect and the written blocks.
+    assertEquals(
+        Arrays.asList(block(3), block(2), block(1)),
+        drain(queue, 0));
+    assertEquals(0, queue.size());
+  }
+
+  @Test(timeout=60000)
+  public void testNewBlockDelay() throws Exception {
+    ScanPriorityQueue queue = new ScanPriorityQueue(null, DELAY_MS);
+    assertNull(queue.peek(0));
+    assertEquals(Long.MAX_VALUE, queue.getDelayMs(0));
+
+    queue.addNewBlock(block(1), 100);
+    queue.addNewBlock(block(2), 500);
+    assertNull(queue.peek(100));
+    assertEquals(DELAY_MS, queue.getDelayMs(100));
+    assertNull(queue.peek(1099));
+    assertEquals(1, queue.getDelayMs(1099));
+    assertEquals(block(1), queue.peek(1100));
+    assertEquals(0, queue.getDelayMs(1100));
+    queue.remove(block(1));
+    // The next block is gated by its own write time.
+    assertNull(queue.peek(1100));
+    assertEquals(400, queue.getDelayMs(1100));
+    assertEquals(block(2), queue.peek(1500));
+
+    // A block written again goes back to the end of the queue.
+    queue.addNewBlock(block(3), 600);
+    queue.addNewBlock(block(2), 700);
+    assertEquals(block(3), queue.peek(1600));
+    queue.remove(block(3));
+    assertNull(queue.peek(1600));
+    assertEquals(block(2), queue.peek(1700));
+
+    // A suspect block is not delayed.
+    queue.addSuspectBlock(block(4));
+    assertEquals(block(4), queue.peek(0));
+  }
+
+  @Test(timeout=60000)
+  public void testMaxNewBlocks() throws Exception {
+    ScanPriorityQueue queue = new ScanPriorityQueue(null, 0);
+    final int numEvicted = 3;
+    final int numBlocks = ScanPriorityQueue.MAX_NEW_BLOCKS + numEvicted;
+    for (int i = 0; i < numBlocks; i++) {
+      queue.addNewBlock(block(i), i);
+    }
+    assertEquals(ScanPriorityQueue.MAX_NEW_BLOCKS, queue.size());
+    // The oldest blocks were dropped.
+    assertEquals(block(numEvicted), queue.peek(numBlocks));
+    // Suspect blocks do not count towards the bound.
+    queue.addSuspectBlock(block(numBlocks));
+    assertEquals(ScanPriorityQueue.MAX_NEW_BLOCKS + 1, queue.size());
+    queue.addNewBlock(block(numBlocks + 1), numBlocks + 1);
+    assertEquals(ScanPriorityQueue.MAX_NEW_BLOCKS + 1, queue.size());
+    queue.remove(block(numBlocks));
+    assertEquals(block(numEvicted + 1), queue.peek(numBlocks + 1));
+  }
+
+  @Test(timeout=60000)
+  public void testSaveAndLoad() throws Exception {
+    ScanPriorityQueue queue = new ScanPriorityQueue(queueFile, DELAY_MS);
+    assertFalse(queue.isDirty());
+    queue.save();
+    assertFalse("Did not expect an unchanged queue to be saved",
+        queueFile.exists());
+
+    queue.addSuspectBlock(block(1));
+    queue.addNewBlock(block(2), 200);
+    queue.addNewBlock(block(3), 300);
+    assertTrue(queue.isDirty());
+    queue.save();
+    assertFalse(queue.isDirty());
+    assertTrue(queueFile.exists());
+
+    ScanPriorityQueue loaded = new ScanPriorityQueue(queueFile, DELAY_MS);
+    loaded.load();
+    assertFalse(loaded.isDirty());
+    assertEquals(3, loaded.size());
+    assertTrue(loaded.containsSuspectBlock(block(1)));
+    // The write times were saved along with the blocks.
+    loaded.remove(block(1));
+    assertEquals(DELAY_MS, loaded.getDelayMs(200));
+    assertTrue(loaded.isDirty());
+    loaded.remove(block(2));
+    assertEquals(DELAY_MS, loaded.getDelayMs(300));
+
+    // A saved queue replaces the one saved before it.
+    loaded.save();
+    ScanPriorityQueue reloaded = new ScanPriorityQueue(queueFile, DELAY_MS);
+    reloaded.load();
+    assertEquals(Arrays.asList(block(3)),
+        drain(reloaded, 300 + DELAY_MS));
+  }
+
+  @Test(timeout=60000)
+  public void testLoadMergesQueuedBlocks() throws Exception {
+    ScanPriorityQueue saved = new ScanPriorityQueue(queueFile, 0);
+    saved.addSuspectBlock(block(1));
+    saved.addNewBlock(block(2), 200);
+    saved.addNewBlock(block(3), 300);
+    saved.save();
+
+    // Blocks queued before the saved queue is loaded go behind its blocks,
+    // unless they were written again since.
+    ScanPriorityQueue queue = new ScanPriorityQueue(queueFile, 0);
+    queue.addSuspectBlock(block(4));
+    queue.addSuspectBlock(block(1));
+    queue.addNewBlock(block(5), 500);
+    queue.addNewBlock(block(2), 600);
+    queue.load();
+    assertTrue("Expected the blocks queued before the load to be saved",
+        queue.isDirty());
+    assertEquals(5, queue.size());
+    assertEquals(
+        Arrays.asList(block(1), block(4), block(3), block(5),
+            block(2)),
+        drain(queue, 600));
+  }
+
+  @Test(timeout=60000)
+  public void testLoadWithoutFile() throws Exception {
+    ScanPriorityQueue queue = new ScanPriorityQueue(queueFile, 0);
+    queue.addNewBlock(block(1), 0);
+    queue.load();
+    assertTrue(queue.isDirty());
+    assertEquals(block(1), queue.peek(0));
+  }
+
+  @Test(timeout=60000)
+  public void testForegroundIoTracker() throws Exception {
+    FakeTimer timer = new FakeTimer();
+    ForegroundIoTracker tracker = new ForegroundIoTracker(timer);
+    assertEquals(0, tracker.getBusyMs());
+    timer.advance(100);
+    assertEquals(0, tracker.getBusyMs());
+
+    tracker.start();
+    timer.advance(10);
+    // The IO in progress counts.
+    assertEquals(10, tracker.getBusyMs());
+    tracker.finish();
+    timer.advance(100);
+    assertEquals(10, tracker.getBusyMs());
+
+    // Overlapping IO counts once, for the union of its intervals.
+    tracker.start();
+    timer.advance(5);
+    tracker.start();
+    timer.advance(20);
+    tracker.finish();
+    assertEquals(35, tracker.getBusyMs());
+    timer.advance(5);
+    tracker.start();
+    timer.advance(10);
+    tracker.finish();
+    timer.advance(10);
+    tracker.finish();
+    assertEquals(60, tracker.getBusyMs());
+    timer.advance(100);
+    assertEquals(60, tracker.getBusyMs());
+
+    // IO which could not be bracketed is added in full.
+    tracker.addBusyNanos(2500000L);
+    tracker.addBusyNanos(2500000L);
+    assertEquals(65, tracker.getBusyMs());
+  }
+
+  @Test(timeout=60000, expected=IllegalStateException.class)
+  public void testForegroundIoTrackerFinishWithoutStart() throws Exception {
+    ForegroundIoTracker tracker = new ForegroundIoTracker(new FakeTimer());
+    tracker.start();
+    tracker.finish();
+    tracker.finish();
+  }
+}
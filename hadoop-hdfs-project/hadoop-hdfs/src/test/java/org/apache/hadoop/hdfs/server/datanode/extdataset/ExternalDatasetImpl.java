@@ -199,6 +199,18 @@ public Map<DatanodeStorage, BlockListAsLongs> getBlockReports(String bpid) {
     return result;
   }
 
+  @Override
+  public Map<DatanodeStorage, BlockListAsLongs> getBlockReports(String bpid,
+      long minBlockId, long maxBlockId) {
+    return getBlockReports(bpid);
+  }
+
+  @Override
+  public long[] getBlockReportSegments(String bpid,
+      int maxReplicasPerSegment) {
+    return new long[] {Long.MAX_VALUE};
+  }
+
   @Override
   public List<Long> getCacheReport(String bpid) {
     return null;
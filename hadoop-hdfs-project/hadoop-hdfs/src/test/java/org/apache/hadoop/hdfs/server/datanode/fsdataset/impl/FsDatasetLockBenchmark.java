@@ -0,0 +1,163 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs.server.datanode.fsdataset.impl;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.StorageType;
+import org.apache.hadoop.hdfs.DFSConfigKeys;
+import org.apache.hadoop.hdfs.HdfsConfiguration;
+import org.apache.hadoop.hdfs.MiniDFSCluster;
+import org.apache.hadoop.hdfs.protocol.ExtendedBlock;
+import org.apache.hadoop.hdfs.server.datanode.DataNode;
+import org.apache.hadoop.hdfs.server.datanode.DataNodeTestUtils;
+import org.apache.hadoop.hdfs.server.datanode.ReplicaHandler;
+import org.apache.hadoop.hdfs.server.datanode.ReplicaInfo;
+
+/**
+ * Measures the rate at which many concurrent writers can create and
+ * finalize replicas on a DataNode with several volumes, while the block
+ * reports of the block pool are built in the background, with the global
+ * dataset lock and with volume locks.
+ *
+ * Usage: FsDatasetLockBenchmark
+ *     [numWriters [blocksPerWriter [numVolumes]]]
+ *
+ * The replicas are empty, so that the time spent holding the locks, and
+ * waiting for them, is not hidden behind the disk.
+ */
+public class FsDatasetLockBenchmark {
+  private static final Log LOG =
+      LogFactory.getLog(FsDatasetLockBenchmark.class);
+  private static final long FIRST_BLOCK_ID = 1L << 40;
+  private static final long GEN_STAMP = 1000L;
+
+  private final int numWriters;
+  private final int blocksPerWriter;
+  private final int numVolumes;
+
+  FsDatasetLockBenchmark(int numWriters, int blocksPerWriter,
+      int numVolumes) {
+    this.numWriters = numWriters;
+    this.blocksPerWriter = blocksPerWriter;
+    this.numVolumes = numVolumes;
+  }
+
+  /**
+   * Start a DataNode with the given locking, run the writers against its
+   * dataset, and log the rate of replicas written and the number of block
+   * reports built meanwhile.
+   */
+  void run(boolean volumeLocks) throws Exception {
+    final String locking = volumeLocks ? "volume locks" : "dataset lock";
+    Configuration conf = new HdfsConfiguration();
+    conf.setBoolean(
+        DFSConfigKeys.DFS_DATANODE_FSDATASET_VOLUME_LOCKS_ENABLED_KEY,
+        volumeLocks);
+    MiniDFSCluster cluster = new MiniDFSCluster.Builder(conf)
+        .numDataNodes(1)
+        .storagesPerDatanode(numVolumes)
+        .build();
+    ExecutorService executor = Executors.newFixedThreadPool(numWriters + 1);
+    try {
+      cluster.waitActive();
+      DataNode dn = cluster.getDataNodes().get(0);
+      final FsDatasetImpl dataset =
+          (FsDatasetImpl) DataNodeTestUtils.getFSDataset(dn);
+      final String bpid = cluster.getNamesystem().getBlockPoolId();
+      final AtomicBoolean writing = new AtomicBoolean(true);
+      final AtomicLong numReports = new AtomicLong();
+
+      Future<?> reporter = executor.submit(new Callable<Void>() {
+        @Override
+        public Void call() throws Exception {
+          while (writing.get()) {
+            dataset.getBlockReports(bpid);
+            numReports.incrementAndGet();
+          }
+          return null;
+        }
+      });
+      List<Future<Long>> futures = new ArrayList<>();
+      long start = System.nanoTime();
+      for (int w = 0; w < numWriters; w++) {
+        final long firstBlockId = FIRST_BLOCK_ID + (long) w * blocksPerWriter;
+        futures.add(executor.submit(new Callable<Long>() {
+          @Override
+          public Long call() throws Exception {
+            long nanos = 0;
+            for (int i = 0; i < blocksPerWriter; i++) {
+              ExtendedBlock b = new ExtendedBlock(bpid, firstBlockId + i,
+                  0, GEN_STAMP);
+              long writeStart = System.nanoTime();
+              try (ReplicaHandler handler =
+                  dataset.createRbw(StorageType.DEFAULT, b, false)) {
+                // The meta file is created by the BlockReceiver otherwise
+                ((ReplicaInfo) handler.getReplica()).getMetaFile()
+                    .createNewFile();
+                dataset.finalizeBlock(b);
+              }
+              nanos += System.nanoTime() - writeStart;
+            }
+            return nanos;
+          }
+        }));
+      }
+      long writeNanos = 0;
+      for (Future<Long> future : futures) {
+        writeNanos += future.get();
+      }
+      long elapsedNanos = System.nanoTime() - start;
+      writing.set(false);
+      reporter.get();
+      long numBlocks = (long) numWriters * blocksPerWriter;
+
+      LOG.info(String.format("%-12s: %d writers, %d volumes, %d replicas, " +
+          "%.0f replicas/s, mean latency %.1f us, %d block reports",
+          locking, numWriters, numVolumes, numBlocks,
+          numBlocks * 1e9 / elapsedNanos, writeNanos / 1e3 / numBlocks,
+          numReports.get()));
+    } finally {
+      executor.shutdownNow();
+      cluster.shutdown();
+    }
+  }
+
+  public static void main(String[] args) throws Exception {
+    int numWriters = args.length > 0 ? Integer.parseInt(args[0]) : 32;
+    int blocksPerWriter = args.length > 1 ? Integer.parseInt(args[1]) : 500;
+    int numVolumes = args.length > 2 ? Integer.parseInt(args[2]) : 8;
+    FsDatasetLockBenchmark bench = new FsDatasetLockBenchmark(numWriters,
+        blocksPerWriter, numVolumes);
+    // Warm up, then measure each kind of locking
+    bench.run(false);
+    bench.run(true);
+    bench.run(false);
+    bench.run(true);
+  }
+}
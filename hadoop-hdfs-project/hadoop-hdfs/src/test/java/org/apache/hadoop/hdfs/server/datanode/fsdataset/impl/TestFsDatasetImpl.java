@@ -37,6 +37,7 @@
 import org.apache.hadoop.hdfs.protocol.LocatedBlock;
 import org.apache.hadoop.hdfs.server.blockmanagement.BlockManagerTestUtil;
 import org.apache.hadoop.hdfs.server.common.HdfsServerConstants;
+import org.apache.hadoop.hdfs.server.common.HdfsServerConstants.ReplicaState;
 import org.apache.hadoop.hdfs.server.common.Storage;
 import org.apache.hadoop.hdfs.server.common.StorageInfo;
 import org.apache.hadoop.hdfs.server.datanode.BlockScanner;
@@ -49,12 +50,14 @@
 import org.apache.hadoop.hdfs.server.datanode.ReplicaInfo;
 import org.apache.hadoop.hdfs.server.datanode.ShortCircuitRegistry;
 import org.apache.hadoop.hdfs.server.datanode.StorageLocation;
+import org.apache.hadoop.hdfs.server.datanode.FsDatasetTestUtils;
 import org.apache.hadoop.hdfs.server.datanode.fsdataset.FsDatasetSpi;
 import org.apache.hadoop.hdfs.server.datanode.fsdataset.FsVolumeReference;
 import org.apache.hadoop.hdfs.server.datanode.fsdataset.RoundRobinVolumeChoosingPolicy;
 import org.apache.hadoop.hdfs.server.protocol.NamespaceInfo;
 import org.apache.hadoop.io.MultipleIOException;
 import org.apache.hadoop.test.GenericTestUtils;
+import org.apache.hadoop.util.AutoCloseableLock;
 import org.apache.hadoop.util.DiskChecker;
 import org.apache.hadoop.util.FakeTimer;
 import org.apache.hadoop.util.StringUtils;
@@ -74,7 +77,11 @@
 import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.concurrent.Callable;
 import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
@@ -734,4 +741,64 @@ public void testReportBadBlocks() throws Exception {
       cluster.shutdown();
     }
   }
+
+  @Test(timeout = 30000)
+  public void testVolumeLocks() throws Exception {
+    Configuration config = new HdfsConfiguration();
+    config.setBoolean(
+        DFSConfigKeys.DFS_DATANODE_FSDATASET_VOLUME_LOCKS_ENABLED_KEY, true);
+    MiniDFSCluster cluster = new MiniDFSCluster.Builder(config)
+        .numDataNodes(1)
+        .storagesPerDatanode(2)
+        .build();
+    ExecutorService executor = Executors.newFixedThreadPool(2);
+    try {
+      cluster.waitActive();
+      final FsDatasetImpl ds = (FsDatasetImpl) DataNodeTestUtils.
+          getFSDataset(cluster.getDataNodes().get(0));
+      FsDatasetTestUtils utils = cluster.getFsDatasetTestUtils(0);
+      String bpid = cluster.getNamesystem().getBlockPoolId();
+      final ExtendedBlock b0 = new ExtendedBlock(bpid, 1, 0, 1000);
+      final ExtendedBlock b1 = new ExtendedBlock(bpid, 2, 0, 1000);
+      String storageId0;
+      try (FsDatasetSpi.FsVolumeReferences volumes =
+          ds.getFsVolumeReferences()) {
+        storageId0 = volumes.get(0).getStorageID();
+        utils.createRBW(volumes.get(0), b0);
+        utils.createRBW(volumes.get(1), b1);
+      }
+
+      Future<?> finalize0;
+      try (AutoCloseableLock lock =
+          ds.getLockManager().getVolumeLock(bpid, storageId0).acquire()) {
+        // Replicas on other volumes are finalized, and block reports are
+        // built, while the first volume is locked.
+        executor.submit(new Callable<Void>() {
+          @Override
+          public Void call() throws IOException {
+            ds.finalizeBlock(b1);
+            return null;
+          }
+        }).get();
+        assertEquals(2, ds.getBlockReports(bpid).size());
+        finalize0 = executor.submit(new Callable<Void>() {
+          @Override
+          public Void call() throws IOException {
+            ds.finalizeBlock(b0);
+            return null;
+          }
+        });
+        Thread.sleep(500);
+        assertFalse(finalize0.isDone());
+      }
+      finalize0.get();
+      assertEquals(ReplicaState.FINALIZED,
+          ds.getReplicaInfo(b0).getState());
+      assertEquals(ReplicaState.FINALIZED,
+          ds.getReplicaInfo(b1).getState());
+    } finally {
+      executor.shutdownNow();
+      cluster.shutdown();
+    }
+  }
 }
@@ -17,11 +17,17 @@
  */
 package org.apache.hadoop.hdfs.server.datanode.fsdataset.impl;
 
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
+import java.util.Iterator;
+
 import org.apache.hadoop.hdfs.protocol.Block;
+import org.apache.hadoop.hdfs.server.datanode.ReplicaInfo;
 import org.apache.hadoop.hdfs.server.datanode.FinalizedReplica;
 import org.junit.Before;
 import org.junit.Test;
@@ -30,7 +36,7 @@
  * Unit test for ReplicasMap class
  */
 public class TestReplicaMap {
-  private final ReplicaMap map = new ReplicaMap(TestReplicaMap.class);
+  private final ReplicaMap map = new ReplicaMap();
   private final String bpid = "BP-TEST";
   private final  Block block = new Block(1234, 1234, 1234);
   
@@ -107,4 +113,36 @@ public void testRemove() {
     map.add(bpid, new FinalizedReplica(block, null, null));
     assertNotNull(map.remove(bpid, block.getBlockId()));
   }
+
+  @Test
+  public void testAddIfAbsent() {
+    ReplicaInfo existing = map.get(bpid, block);
+    assertSame(existing, map.addIfAbsent(bpid,
+        new FinalizedReplica(new Block(block), null, null)));
+    assertSame(existing, map.get(bpid, block));
+
+    ReplicaInfo added = new FinalizedReplica(new Block(5678, 1, 1), null, null);
+    assertNull(map.addIfAbsent(bpid, added));
+    assertSame(added, map.get(bpid, 5678));
+  }
+
+  @Test
+  public void testIterateWhileUpdating() {
+    for (long id = 0; id < 10; id++) {
+      map.add(bpid, new FinalizedReplica(new Block(id, 1, 1), null, null));
+    }
+    // Iterators are in block ID order, and do not fail on concurrent updates
+    int count = 0;
+    long last = Long.MIN_VALUE;
+    for (Iterator<ReplicaInfo> it = map.replicas(bpid, 5); it.hasNext();) {
+      ReplicaInfo replica = it.next();
+      assertTrue(replica.getBlockId() > last);
+      last = replica.getBlockId();
+      map.remove(bpid, replica.getBlockId());
+      count++;
+    }
+    // 5 to 9, and the replica added by setup()
+    assertEquals(6, count);
+    assertEquals(5, map.size(bpid));
+  }
 }
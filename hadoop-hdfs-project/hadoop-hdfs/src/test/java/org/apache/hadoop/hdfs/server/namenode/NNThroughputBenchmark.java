@@ -25,6 +25,7 @@
 import java.util.Arrays;
 import java.util.EnumSet;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
 
 import com.google.common.base.Preconditions;
 
@@ -698,6 +699,119 @@ void printResults() {
     }
   }
 
+  /**
+   * Directory creation statistics under datanode heartbeat load.
+   *
+   * Runs the mkdirs benchmark while the simulated data-nodes keep sending
+   * heartbeats, so that the namespace and the block manager are accessed
+   * concurrently. Comparing runs with dfs.namenode.fslock.fine-grained
+   * enabled and disabled and with different thread counts shows how well
+   * the namespace operations scale when they do not contend with the block
+   * manager.
+   */
+  class MkdirsWithHeartbeatsStats extends MkdirsStats {
+    static final String OP_MKDIRS_HEARTBEATS_NAME = "mkdirsWithHeartbeats";
+    static final String OP_MKDIRS_HEARTBEATS_USAGE =
+        "-op mkdirsWithHeartbeats [-threads T] [-dirs N] [-dirsPerDir P] " +
+        "[-datanodes D]";
+
+    private int numDatanodes;
+    private TinyDatanode[] datanodes;
+    private List<Thread> heartbeaters;
+    private volatile boolean heartbeatsRunning;
+    private final AtomicLong numHeartbeats = new AtomicLong();
+
+    MkdirsWithHeartbeatsStats(List<String> args) {
+      super(args);
+    }
+
+    @Override
+    String getOpName() {
+      return OP_MKDIRS_HEARTBEATS_NAME;
+    }
+
+    @Override
+    void parseArguments(List<String> args) {
+      // Called from the super constructor, before the field initializers.
+      numDatanodes = 10;
+      int dnIndex = args.indexOf("-datanodes");
+      if(dnIndex >= 0) {
+        if(args.size() <= dnIndex + 1)
+          printUsage();
+        numDatanodes = Integer.parseInt(args.get(dnIndex + 1));
+        args.remove(dnIndex + 1);
+        args.remove(dnIndex);
+      }
+      super.parseArguments(args);
+    }
+
+    /**
+     * Register the data-nodes and start sending heartbeats,
+     * so that they run for the whole duration of the benchmark.
+     */
+    @Override
+    void generateInputs(int[] opsPerThread) throws IOException {
+      super.generateInputs(opsPerThread);
+      datanodes = new TinyDatanode[numDatanodes];
+      for(int idx=0; idx < numDatanodes; idx++) {
+        datanodes[idx] = new TinyDatanode(idx, 0);
+        datanodes[idx].register();
+      }
+      numHeartbeats.set(0);
+      heartbeatsRunning = true;
+      heartbeaters = new ArrayList<Thread>();
+      for(final TinyDatanode dn : datanodes) {
+        Thread t = new Thread("Heartbeater-" + dn.dnIdx) {
+          @Override
+          public void run() {
+            try {
+              while(heartbeatsRunning) {
+                dn.sendHeartbeat();
+                numHeartbeats.incrementAndGet();
+              }
+            } catch(IOException e) {
+              LOG.error("Heartbeater " + dn.dnIdx + " failed: \n"
+                  + StringUtils.stringifyException(e));
+            }
+          }
+        };
+        heartbeaters.add(t);
+        t.start();
+      }
+    }
+
+    @Override
+    void benchmark() throws IOException {
+      try {
+        super.benchmark();
+      } finally {
+        heartbeatsRunning = false;
+        if(heartbeaters != null) {
+          for(Thread t : heartbeaters) {
+            try {
+              t.join();
+            } catch(InterruptedException e) {
+              Thread.currentThread().interrupt();
+              break;
+            }
+          }
+        }
+      }
+    }
+
+    @Override
+    void printResults() {
+      super.printResults();
+      LOG.info("nrDatanodes = " + numDatanodes);
+      LOG.info("heartbeats per sec: " + getHeartbeatsPerSecond());
+    }
+
+    private double getHeartbeatsPerSecond() {
+      return elapsedTime == 0 ? 0 :
+          1000 * (double) numHeartbeats.get() / elapsedTime;
+    }
+  }
+
   /**
    * Open file statistics.
    * 
@@ -1399,6 +1513,7 @@ static void printUsage() {
         + "\n\t"    + OperationStatsBase.OP_ALL_USAGE
         + " | \n\t" + CreateFileStats.OP_CREATE_USAGE
         + " | \n\t" + MkdirsStats.OP_MKDIRS_USAGE
+        + " | \n\t" + MkdirsWithHeartbeatsStats.OP_MKDIRS_HEARTBEATS_USAGE
         + " | \n\t" + OpenFileStats.OP_OPEN_USAGE
         + " | \n\t" + DeleteFileStats.OP_DELETE_USAGE
         + " | \n\t" + FileStatusStats.OP_FILE_STATUS_USAGE
@@ -1455,6 +1570,12 @@ public int run(String[] aArgs) throws Exception {
         opStat = new MkdirsStats(args);
         ops.add(opStat);
       }
+      // Not part of "all": its data-nodes would stay alive and become
+      // targets of the replication benchmark.
+      if(MkdirsWithHeartbeatsStats.OP_MKDIRS_HEARTBEATS_NAME.equals(type)) {
+        opStat = new MkdirsWithHeartbeatsStats(args);
+        ops.add(opStat);
+      }
       if(runAll || OpenFileStats.OP_OPEN_NAME.equals(type)) {
         opStat = new OpenFileStats(args);
         ops.add(opStat);
@@ -0,0 +1,246 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs.server.namenode;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.ContentSummary;
+import org.apache.hadoop.fs.FSDataOutputStream;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.hdfs.DFSConfigKeys;
+import org.apache.hadoop.hdfs.DFSTestUtil;
+import org.apache.hadoop.hdfs.DistributedFileSystem;
+import org.apache.hadoop.hdfs.MiniDFSCluster;
+import org.apache.hadoop.hdfs.protocol.HdfsConstants;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests that the content summaries cached by the directories are reused
+ * while their subtrees are unchanged and never served stale.
+ */
+public class TestContentSummaryCache {
+  private static final short REPLICATION = 1;
+  private static final long BLOCK_SIZE = 1024;
+  private static final long SEED = 0L;
+
+  private final Path dir = new Path("/dir");
+  private final Path sub1 = new Path(dir, "sub1");
+  private final Path sub2 = new Path(dir, "sub2");
+
+  private Configuration conf;
+  private MiniDFSCluster cluster;
+  private FSDirectory fsdir;
+  private DistributedFileSystem dfs;
+
+  @Before
+  public void setUp() throws Exception {
+    conf = new Configuration();
+    conf.setLong(DFSConfigKeys.DFS_BLOCK_SIZE_KEY, BLOCK_SIZE);
+    conf.setBoolean(DFSConfigKeys.DFS_CONTENT_SUMMARY_CACHE_ENABLED_KEY, true);
+    // cache every directory's summary
+    conf.setLong(DFSConfigKeys.DFS_CONTENT_SUMMARY_CACHE_MIN_SUBTREE_SIZE_KEY,
+        0);
+    cluster = new MiniDFSCluster.Builder(conf).numDataNodes(REPLICATION)
+        .build();
+    cluster.waitActive();
+    fsdir = cluster.getNamesystem().getFSDirectory();
+    dfs = cluster.getFileSystem();
+
+    DFSTestUtil.createFile(dfs, new Path(sub1, "f1"), BLOCK_SIZE, REPLICATION,
+        SEED);
+    DFSTestUtil.createFile(dfs, new Path(sub1, "f2"), BLOCK_SIZE / 2,
+        REPLICATION, SEED);
+    DFSTestUtil.createFile(dfs, new Path(sub2, "f3"), 3 * BLOCK_SIZE,
+        REPLICATION, SEED);
+  }
+
+  @After
+  public void tearDown() {
+    if (cluster != null) {
+      cluster.shutdown();
+    }
+  }
+
+  private INodeDirectory getDir(Path path) throws Exception {
+    return fsdir.getINode4Write(path.toString()).asDirectory();
+  }
+
+  /**
+   * Check the summary served by the NameNode against one computed from
+   * scratch, without any cached summaries.
+   */
+  private void checkSummary(Path path) throws Exception {
+    ContentSummary cs = FSDirStatAndListingOp.getContentSummary(fsdir,
+        path.toString());
+    ContentSummary expected;
+    fsdir.readLock();
+    try {
+      expected = fsdir.getINode4Write(path.toString())
+          .computeContentSummary(fsdir.getBlockStoragePolicySuite());
+    } finally {
+      fsdir.readUnlock();
+    }
+    assertEquals(expected, cs);
+  }
+
+  @Test(timeout = 60000)
+  public void testSummaryIsCached() throws Exception {
+    checkSummary(dir);
+    assertTrue(getDir(dir).hasCachedContentCounts());
+    assertTrue(getDir(sub1).hasCachedContentCounts());
+    assertTrue(getDir(sub2).hasCachedContentCounts());
+
+    ContentSummary cs = dfs.getContentSummary(dir);
+    assertEquals(3, cs.getFileCount());
+    assertEquals(3, cs.getDirectoryCount());
+    assertEquals(4 * BLOCK_SIZE + BLOCK_SIZE / 2, cs.getLength());
+
+    // a change drops the cached summaries along its path only
+    DFSTestUtil.createFile(dfs, new Path(sub1, "f4"), BLOCK_SIZE, REPLICATION,
+        SEED);
+    assertFalse(getDir(dir).hasCachedContentCounts());
+    assertFalse(getDir(sub1).hasCachedContentCounts());
+    assertTrue(getDir(sub2).hasCachedContentCounts());
+    checkSummary(dir);
+  }
+
+  @Test(timeout = 60000)
+  public void testSmallSubtreesAreNotCached() throws Exception {
+    cluster.getConfiguration(0).setLong(
+        DFSConfigKeys.DFS_CONTENT_SUMMARY_CACHE_MIN_SUBTREE_SIZE_KEY, 3);
+    cluster.restartNameNode();
+    fsdir = cluster.getNamesystem().getFSDirectory();
+    dfs = cluster.getFileSystem();
+
+    checkSummary(dir);
+    assertTrue(getDir(dir).hasCachedContentCounts());
+    assertTrue(getDir(sub1).hasCachedContentCounts());
+    assertFalse(getDir(sub2).hasCachedContentCounts());
+
+    // a change below a small subtree still reaches its ancestors
+    DFSTestUtil.createFile(dfs, new Path(sub2, "f4"), BLOCK_SIZE, REPLICATION,
+        SEED);
+    assertFalse(getDir(dir).hasCachedContentCounts());
+    assertTrue(getDir(sub1).hasCachedContentCounts());
+    checkSummary(dir);
+  }
+
+  @Test(timeout = 60000)
+  public void testNamespaceChanges() throws Exception {
+    checkSummary(dir);
+    dfs.mkdirs(new Path(sub1, "a/b"));
+    checkSummary(dir);
+    dfs.rename(new Path(sub1, "f1"), new Path(sub2, "f1"));
+    checkSummary(dir);
+    checkSummary(sub1);
+    dfs.rename(sub1, new Path(sub2, "sub1"));
+    checkSummary(dir);
+    dfs.delete(new Path(sub2, "f3"), false);
+    checkSummary(dir);
+    dfs.createSymlink(new Path("/target"), new Path(sub2, "link"), false);
+    checkSummary(dir);
+  }
+
+  @Test(timeout = 60000)
+  public void testFileChanges() throws Exception {
+    final Path f1 = new Path(sub1, "f1");
+    final Path f2 = new Path(sub1, "f2");
+    final Path f3 = new Path(sub2, "f3");
+    checkSummary(dir);
+
+    dfs.setReplication(f1, (short) 3);
+    checkSummary(dir);
+
+    FSDataOutputStream out = dfs.append(f2);
+    try {
+      // the file under construction is counted but not cached
+      out.write(new byte[(int) BLOCK_SIZE]);
+      out.hflush();
+      checkSummary(dir);
+      assertFalse(getDir(sub1).hasCachedContentCounts());
+      assertTrue(getDir(sub2).hasCachedContentCounts());
+    } finally {
+      out.close();
+    }
+    checkSummary(dir);
+
+    assertTrue(dfs.truncate(f3, BLOCK_SIZE));
+    checkSummary(dir);
+
+    final Path src = new Path(sub1, "f3");
+    dfs.rename(f3, src);
+    checkSummary(dir);
+    dfs.concat(f1, new Path[] {src});
+    checkSummary(dir);
+  }
+
+  @Test(timeout = 60000)
+  public void testStoragePolicyChanges() throws Exception {
+    checkSummary(dir);
+    // a subtree's storage type usage depends on the policy of its ancestors
+    dfs.setStoragePolicy(dir, HdfsConstants.ONESSD_STORAGE_POLICY_NAME);
+    checkSummary(dir);
+    checkSummary(sub1);
+    dfs.setStoragePolicy(sub1, HdfsConstants.COLD_STORAGE_POLICY_NAME);
+    checkSummary(dir);
+    dfs.rename(sub2, new Path(sub1, "sub2"));
+    checkSummary(dir);
+  }
+
+  @Test(timeout = 60000)
+  public void testSnapshots() throws Exception {
+    checkSummary(dir);
+    dfs.allowSnapshot(sub1);
+    checkSummary(dir);
+    assertFalse(getDir(dir).hasCachedContentCounts());
+    assertTrue(getDir(sub2).hasCachedContentCounts());
+
+    dfs.createSnapshot(sub1, "s1");
+    dfs.delete(new Path(sub1, "f1"), false);
+    checkSummary(dir);
+    dfs.deleteSnapshot(sub1, "s1");
+    checkSummary(dir);
+    dfs.disallowSnapshot(sub1);
+    checkSummary(dir);
+  }
+
+  @Test(timeout = 60000)
+  public void testSnapshotDeletionBelowSnapshotRoot() throws Exception {
+    final Path f3 = new Path(sub2, "f3");
+    dfs.allowSnapshot(dir);
+    dfs.createSnapshot(dir, "s1");
+    // the truncated block is still counted for the snapshot, by a file in a
+    // directory nested below the snapshot root
+    assertTrue(dfs.truncate(f3, BLOCK_SIZE));
+    dfs.setReplication(f3, (short) 2);
+    checkSummary(sub2);
+    final long spaceBefore = dfs.getContentSummary(sub2).getSpaceConsumed();
+
+    // deleting the snapshot frees the block, but only updates the ancestors
+    // of the snapshot root
+    dfs.deleteSnapshot(dir, "s1");
+    checkSummary(sub2);
+    checkSummary(dir);
+    assertTrue(dfs.getContentSummary(sub2).getSpaceConsumed() < spaceBefore);
+  }
+}
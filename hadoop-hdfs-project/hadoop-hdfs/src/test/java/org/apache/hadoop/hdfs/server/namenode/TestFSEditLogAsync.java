@@ -0,0 +1,286 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs.server.namenode;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileUtil;
+import org.apache.hadoop.hdfs.server.common.Storage.StorageDirectory;
+import org.apache.hadoop.hdfs.server.namenode.FSEditLogOp.SetReplicationOp;
+import org.apache.hadoop.hdfs.server.namenode.NNStorage.NameNodeDirType;
+import org.apache.hadoop.io.IOUtils;
+import org.apache.hadoop.test.GenericTestUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Matchers;
+import org.mockito.Mockito;
+
+import com.google.common.base.Supplier;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+
+/**
+ * Tests the group commit of {@link FSEditLogAsync}: edits logged while a
+ * sync is in flight are synced together by the next one, in the order they
+ * were logged, and no caller returns from logSync before its edit is synced.
+ */
+public class TestFSEditLogAsync {
+  private File logDir;
+  private RecordingEditLog editLog;
+
+  /**
+   * An async edit log which records the transaction ID of each sync, and
+   * can hold the syncs back to let edits accumulate behind them.
+   */
+  private static class RecordingEditLog extends FSEditLogAsync {
+    private final List<Long> syncedTxIds =
+        Collections.synchronizedList(new ArrayList<Long>());
+    private volatile CountDownLatch syncGate = null;
+    private volatile int syncsStarted = 0;
+    private volatile long durableTxId = 0;
+    private volatile long syncDelayMs = 0;
+
+    RecordingEditLog(Configuration conf, NNStorage storage, List<URI> dirs) {
+      super(conf, storage, dirs);
+    }
+
+    @Override
+    protected void logSync(long mytxid) {
+      syncsStarted++;
+      try {
+        CountDownLatch gate = syncGate;
+        if (gate != null) {
+          gate.await();
+        }
+        if (syncDelayMs > 0) {
+          Thread.sleep(syncDelayMs);
+        }
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+      super.logSync(mytxid);
+      syncedTxIds.add(mytxid);
+      durableTxId = mytxid;
+    }
+
+    List<Long> getSyncedTxIds() {
+      synchronized (syncedTxIds) {
+        return new ArrayList<Long>(syncedTxIds);
+      }
+    }
+  }
+
+  @Before
+  public void setUp() throws Exception {
+    logDir = new File(GenericTestUtils.getTestDir(), "TestFSEditLogAsync");
+    assertTrue(logDir.mkdirs() || logDir.exists());
+    assertTrue(FileUtil.fullyDeleteContents(logDir));
+    NNStorage storage = Mockito.mock(NNStorage.class);
+    StorageDirectory sd =
+        FSImageTestUtil.mockStorageDirectory(logDir, NameNodeDirType.EDITS);
+    List<StorageDirectory> sds = Lists.newArrayList(sd);
+    Mockito.doReturn(sds).when(storage).dirIterable(NameNodeDirType.EDITS);
+    Mockito.doReturn(sd).when(storage)
+        .getStorageDirectory(Matchers.<URI>anyObject());
+    editLog = new RecordingEditLog(new Configuration(), storage,
+        ImmutableList.of(logDir.toURI()));
+    editLog.initJournalsForWrite();
+    editLog.setNextTxId(1);
+    editLog.openForWrite(NameNodeLayoutVersion.CURRENT_LAYOUT_VERSION);
+    editLog.logSyncAll();
+    editLog.syncedTxIds.clear();
+  }
+
+  @After
+  public void tearDown() {
+    if (editLog != null) {
+      editLog.close();
+    }
+  }
+
+  private Thread startWriter(final String path,
+      final AtomicReference<Throwable> failure) {
+    Thread t = new Thread() {
+      @Override
+      public void run() {
+        try {
+          editLog.logSetReplication(path, (short) 3);
+          editLog.logSync();
+        } catch (Throwable e) {
+          failure.compareAndSet(null, e);
+        }
+      }
+    };
+    t.start();
+    return t;
+  }
+
+  /**
+   * Test that the edits logged while a sync is in flight are synced as one
+   * batch once it completes, and that their callers wait for that batch.
+   */
+  @Test(timeout=60000)
+  public void testEditsBatchedDuringSync() throws Exception {
+    final long firstTxId = editLog.getLastWrittenTxId() + 1;
+    final int numQueued = 5;
+    final AtomicReference<Throwable> failure =
+        new AtomicReference<Throwable>();
+    CountDownLatch gate = new CountDownLatch(1);
+    editLog.syncGate = gate;
+    final int syncsBefore = editLog.syncsStarted;
+
+    Thread first = startWriter("/first", failure);
+    GenericTestUtils.waitFor(new Supplier<Boolean>() {
+      @Override
+      public Boolean get() {
+        return editLog.syncsStarted > syncsBefore;
+      }
+    }, 10, 10000);
+
+    // The sync of the first edit is held back; log more edits meanwhile.
+    List<Thread> queued = new ArrayList<Thread>();
+    for (int i = 0; i < numQueued; i++) {
+      queued.add(startWriter("/queued" + i, failure));
+    }
+    GenericTestUtils.waitFor(new Supplier<Boolean>() {
+      @Override
+      public Boolean get() {
+        return editLog.getLastWrittenTxId() == firstTxId + numQueued;
+      }
+    }, 10, 10000);
+    // The sync thread wrote the edits, but did not sync them.
+    assertEquals(syncsBefore + 1, editLog.syncsStarted);
+    assertTrue(first.isAlive());
+    for (Thread t : queued) {
+      assertTrue("logSync returned before its edit was synced", t.isAlive());
+    }
+
+    editLog.syncGate = null;
+    gate.countDown();
+    first.join();
+    for (Thread t : queued) {
+      t.join();
+    }
+    if (failure.get() != null) {
+      throw new AssertionError(failure.get());
+    }
+    // One sync for the first edit, and one for all the edits behind it.
+    assertEquals(Lists.newArrayList(firstTxId, firstTxId + numQueued),
+        editLog.getSyncedTxIds());
+  }
+
+  /**
+   * Test that concurrent writers have their edits synced in batches, in the
+   * order each of them logged them, and durably by the time logSync returns.
+   */
+  @Test(timeout=120000)
+  public void testConcurrentWriters() throws Exception {
+    final int numWriters = 10;
+    final int editsPerWriter = 200;
+    final long firstTxId = editLog.getLastWrittenTxId() + 1;
+    final long[][] durableOnReturn = new long[numWriters][editsPerWriter];
+    final AtomicReference<Throwable> failure =
+        new AtomicReference<Throwable>();
+    editLog.syncDelayMs = 1;
+
+    List<Thread> writers = new ArrayList<Thread>();
+    for (int w = 0; w < numWriters; w++) {
+      final int writer = w;
+      Thread t = new Thread() {
+        @Override
+        public void run() {
+          try {
+            for (int i = 0; i < editsPerWriter; i++) {
+              editLog.logSetReplication("/w" + writer + "/" + i, (short) 3);
+              editLog.logSync();
+              durableOnReturn[writer][i] = editLog.durableTxId;
+            }
+          } catch (Throwable e) {
+            failure.compareAndSet(null, e);
+          }
+        }
+      };
+      writers.add(t);
+      t.start();
+    }
+    for (Thread t : writers) {
+      t.join();
+    }
+    if (failure.get() != null) {
+      throw new AssertionError(failure.get());
+    }
+
+    // The syncs cover every edit, in increasing transaction ID order, and
+    // fewer syncs than edits were needed.
+    final int numEdits = numWriters * editsPerWriter;
+    final long lastTxId = firstTxId + numEdits - 1;
+    List<Long> synced = editLog.getSyncedTxIds();
+    long prev = firstTxId - 1;
+    for (long txId : synced) {
+      assertTrue("Synced " + txId + " after " + prev, txId > prev);
+      prev = txId;
+    }
+    assertEquals(lastTxId, prev);
+    assertTrue("Expected the edits to be batched, but there were " +
+        synced.size() + " syncs for " + numEdits + " edits",
+        synced.size() < numEdits);
+
+    // Each writer's edits were logged in order, and were durable by the time
+    // its logSync returned.
+    editLog.close();
+    editLog = null;
+    File segment = new File(logDir,
+        NNStorage.getFinalizedEditsFileName(1, lastTxId + 1));
+    int[] nextIndex = new int[numWriters];
+    long expectedTxId = firstTxId;
+    EditLogFileInputStream in = new EditLogFileInputStream(segment);
+    try {
+      FSEditLogOp op;
+      while ((op = in.readOp()) != null) {
+        if (!(op instanceof SetReplicationOp)) {
+          continue;
+        }
+        assertEquals(expectedTxId++, op.getTransactionId());
+        String[] parts = ((SetReplicationOp) op).path.split("/");
+        int writer = Integer.parseInt(parts[1].substring(1));
+        int index = Integer.parseInt(parts[2]);
+        assertEquals("Edits of writer " + writer + " out of order",
+            nextIndex[writer]++, index);
+        assertTrue("logSync of " + op + " returned before it was synced",
+            op.getTransactionId() <= durableOnReturn[writer][index]);
+      }
+    } finally {
+      IOUtils.closeStream(in);
+    }
+    assertEquals(lastTxId + 1, expectedTxId);
+    for (int w = 0; w < numWriters; w++) {
+      assertEquals(editsPerWriter, nextIndex[w]);
+    }
+  }
+}
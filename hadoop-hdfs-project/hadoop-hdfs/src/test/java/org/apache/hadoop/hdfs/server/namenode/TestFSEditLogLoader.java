@@ -19,6 +19,7 @@
 
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 import static org.mockito.Mockito.doNothing;
@@ -104,8 +105,20 @@ private static Configuration getConf() {
 
   @Test
   public void testDisplayRecentEditLogOpCodes() throws IOException {
-    // start a cluster
+    testDisplayRecentEditLogOpCodes(getConf());
+  }
+
+  @Test
+  public void testDisplayRecentEditLogOpCodesWithPrefetch()
+      throws IOException {
     Configuration conf = getConf();
+    conf.setInt(DFSConfigKeys.DFS_NAMENODE_EDITS_REPLAY_PREFETCH_OPS_KEY, 4);
+    testDisplayRecentEditLogOpCodes(conf);
+  }
+
+  private void testDisplayRecentEditLogOpCodes(Configuration conf)
+      throws IOException {
+    // start a cluster
     MiniDFSCluster cluster = null;
     FileSystem fileSys = null;
     cluster = new MiniDFSCluster.Builder(conf).numDataNodes(NUM_DATA_NODES)
@@ -147,6 +160,49 @@ public void testDisplayRecentEditLogOpCodes() throws IOException {
     }
   }
   
+  /**
+   * Test that edits replayed with a prefetching reader produce the same
+   * namespace, including edits read across several segments.
+   */
+  @Test
+  public void testReplayEditsWithPrefetch() throws Exception {
+    Configuration conf = getConf();
+    conf.setInt(DFSConfigKeys.DFS_NAMENODE_EDITS_REPLAY_PREFETCH_OPS_KEY, 2);
+    MiniDFSCluster cluster = null;
+    try {
+      cluster = new MiniDFSCluster.Builder(conf).numDataNodes(NUM_DATA_NODES)
+          .enableManagedDfsDirsRedundancy(false).build();
+      cluster.waitActive();
+      DistributedFileSystem fs = cluster.getFileSystem();
+      for (int i = 0; i < 20; i++) {
+        Path dir = new Path("/dir" + i);
+        fs.mkdirs(dir);
+        DFSTestUtil.createFile(fs, new Path(dir, "file"), 0, (short) 1, 0L);
+        if (i % 5 == 0) {
+          cluster.getNameNodeRpc().rollEditLog();
+        }
+      }
+      fs.rename(new Path("/dir0"), new Path("/dir1/dir0"));
+      fs.delete(new Path("/dir2"), true);
+      fs.setPermission(new Path("/dir3"), new FsPermission((short) 0700));
+
+      cluster.restartNameNode();
+      fs = cluster.getFileSystem();
+      assertTrue(fs.exists(new Path("/dir1/dir0/file")));
+      assertFalse(fs.exists(new Path("/dir0")));
+      assertFalse(fs.exists(new Path("/dir2")));
+      assertEquals(new FsPermission((short) 0700),
+          fs.getFileStatus(new Path("/dir3")).getPermission());
+      for (int i = 4; i < 20; i++) {
+        assertTrue(fs.exists(new Path("/dir" + i + "/file")));
+      }
+    } finally {
+      if (cluster != null) {
+        cluster.shutdown();
+      }
+    }
+  }
+
   /**
    * Test that, if the NN restarts with a new minimum replication,
    * any files created with the old replication count will get
@@ -29,6 +29,7 @@
 import java.io.ByteArrayOutputStream;
 import java.io.ByteArrayInputStream;
 import java.io.IOException;
+import java.io.RandomAccessFile;
 import java.util.EnumSet;
 
 import org.apache.hadoop.hdfs.protocol.Block;
@@ -57,6 +58,8 @@
 import org.apache.hadoop.hdfs.protocol.HdfsConstants;
 import org.apache.hadoop.hdfs.protocol.HdfsConstants.SafeModeAction;
 import org.apache.hadoop.hdfs.server.common.HdfsServerConstants.BlockUCState;
+import org.apache.hadoop.hdfs.server.namenode.FSImageFormatProtobuf.SectionName;
+import org.apache.hadoop.hdfs.server.namenode.FsImageProto.FileSummary;
 import org.apache.hadoop.hdfs.server.namenode.LeaseManager.Lease;
 import org.apache.hadoop.hdfs.server.namenode.NNStorage.NameNodeDirType;
 import org.apache.hadoop.hdfs.util.MD5FileUtils;
@@ -323,6 +326,78 @@ public void testDigest() throws IOException {
     }
   }
 
+  /**
+   * Ensure that an image written with INODE and INODE_DIR sub-sections is
+   * loaded in parallel into the same namespace.
+   */
+  @Test(timeout=60000)
+  public void testParallelSaveAndLoad() throws IOException {
+    Configuration conf = new Configuration();
+    conf.setBoolean(DFSConfigKeys.DFS_IMAGE_PARALLEL_LOAD_KEY, true);
+    conf.setLong(DFSConfigKeys.DFS_IMAGE_PARALLEL_INODE_THRESHOLD_KEY, 1);
+    conf.setInt(DFSConfigKeys.DFS_IMAGE_PARALLEL_TARGET_SECTIONS_KEY, 4);
+    conf.setInt(DFSConfigKeys.DFS_IMAGE_PARALLEL_THREADS_KEY, 3);
+    MiniDFSCluster cluster = null;
+    try {
+      cluster = new MiniDFSCluster.Builder(conf).numDataNodes(1).build();
+      cluster.waitActive();
+      DistributedFileSystem fs = cluster.getFileSystem();
+      for (int i = 0; i < 10; i++) {
+        for (int j = 0; j < 5; j++) {
+          DFSTestUtil.createFile(fs, new Path("/dir" + i + "/file" + j),
+              j + 1, (short) 1, 0L);
+        }
+      }
+      long filesTotal = cluster.getNamesystem().getFilesTotal();
+      long blocksTotal = cluster.getNamesystem().getBlocksTotal();
+
+      fs.setSafeMode(SafeModeAction.SAFEMODE_ENTER);
+      fs.saveNamespace();
+      fs.setSafeMode(SafeModeAction.SAFEMODE_LEAVE);
+
+      File currentDir = FSImageTestUtil.getNameNodeCurrentDirs(cluster, 0).get(
+          0);
+      File fsimage = FSImageTestUtil.findNewestImageFile(currentDir
+          .getAbsolutePath());
+      FileSummary summary;
+      RandomAccessFile raFile = new RandomAccessFile(fsimage, "r");
+      try {
+        summary = FSImageUtil.loadSummary(raFile);
+      } finally {
+        raFile.close();
+      }
+      int inodeSubSections = 0;
+      int dirSubSections = 0;
+      for (FileSummary.Section s : summary.getSectionsList()) {
+        SectionName name = SectionName.fromString(s.getName());
+        if (name == SectionName.INODE_SUB) {
+          inodeSubSections++;
+        } else if (name == SectionName.INODE_DIR_SUB) {
+          dirSubSections++;
+        }
+      }
+      assertEquals(4, inodeSubSections);
+      assertTrue(dirSubSections > 1);
+
+      cluster.restartNameNode();
+      cluster.waitActive();
+      fs = cluster.getFileSystem();
+
+      assertEquals(filesTotal, cluster.getNamesystem().getFilesTotal());
+      assertEquals(blocksTotal, cluster.getNamesystem().getBlocksTotal());
+      for (int i = 0; i < 10; i++) {
+        for (int j = 0; j < 5; j++) {
+          assertEquals(j + 1,
+              fs.getFileStatus(new Path("/dir" + i + "/file" + j)).getLen());
+        }
+      }
+    } finally {
+      if (cluster != null) {
+        cluster.shutdown();
+      }
+    }
+  }
+
   /**
    * Ensure mtime and atime can be loaded from fsimage.
    */
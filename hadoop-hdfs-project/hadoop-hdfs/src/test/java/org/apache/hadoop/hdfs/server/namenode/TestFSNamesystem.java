@@ -44,6 +44,7 @@
 import org.apache.hadoop.hdfs.server.namenode.ha.HAState;
 import org.apache.hadoop.hdfs.server.namenode.snapshot.Snapshot;
 import org.apache.hadoop.hdfs.server.namenode.top.TopAuditLogger;
+import org.apache.hadoop.hdfs.util.RwLockMode;
 import org.apache.hadoop.test.GenericTestUtils;
 import org.apache.hadoop.test.GenericTestUtils.LogCapturer;
 import org.apache.log4j.Level;
@@ -216,6 +217,64 @@ public void testFSNamesystemLockCompatibility() {
     assertEquals(0, rwLock.getWriteHoldCount());
   }
 
+  @Test
+  public void testFSNamesystemLockModes() {
+    // Without fine-grained locking every mode takes the coarse lock.
+    FSNamesystemLock rwLock = new FSNamesystemLock(true);
+    assertFalse(rwLock.isFineGrained());
+    rwLock.readLock(RwLockMode.BM);
+    assertEquals(1, rwLock.getReadHoldCount());
+    assertTrue(rwLock.hasReadLock(RwLockMode.GLOBAL));
+    rwLock.readUnlock(RwLockMode.BM);
+    rwLock.writeLock(RwLockMode.FS);
+    assertTrue(rwLock.hasWriteLock(RwLockMode.GLOBAL));
+    rwLock.writeUnlock(RwLockMode.FS);
+    assertEquals(0, rwLock.getWriteHoldCount());
+
+    rwLock = new FSNamesystemLock(true, true);
+    assertTrue(rwLock.isFineGrained());
+    rwLock.readLock(RwLockMode.BM);
+    assertEquals(0, rwLock.getReadHoldCount());
+    assertTrue(rwLock.hasReadLock(RwLockMode.BM));
+    assertFalse(rwLock.hasReadLock(RwLockMode.FS));
+    assertFalse(rwLock.hasReadLock(RwLockMode.GLOBAL));
+    rwLock.readUnlock(RwLockMode.BM);
+
+    rwLock.writeLock(RwLockMode.FS);
+    assertTrue(rwLock.hasWriteLock(RwLockMode.FS));
+    assertFalse(rwLock.hasWriteLock(RwLockMode.BM));
+    assertFalse(rwLock.hasWriteLock(RwLockMode.GLOBAL));
+    // The block manager lock may be taken while holding the namespace lock.
+    rwLock.readLock(RwLockMode.BM);
+    assertTrue(rwLock.hasReadLock(RwLockMode.GLOBAL));
+    rwLock.readUnlock(RwLockMode.BM);
+    rwLock.writeUnlock(RwLockMode.FS);
+
+    rwLock.writeLock(RwLockMode.GLOBAL);
+    assertEquals(1, rwLock.getWriteHoldCount());
+    assertTrue(rwLock.hasWriteLock(RwLockMode.FS));
+    assertTrue(rwLock.hasWriteLock(RwLockMode.BM));
+    rwLock.writeUnlock(RwLockMode.GLOBAL);
+    assertFalse(rwLock.hasReadLock(RwLockMode.BM));
+    assertFalse(rwLock.hasReadLock(RwLockMode.FS));
+  }
+
+  @Test
+  public void testFSNamesystemLockOrder() {
+    FSNamesystemLock rwLock = new FSNamesystemLock(true, true);
+    rwLock.readLock(RwLockMode.BM);
+    try {
+      rwLock.writeLock(RwLockMode.FS);
+      fail("Acquired the namespace lock while holding the block manager lock");
+    } catch (IllegalStateException e) {
+      GenericTestUtils.assertExceptionContains("block manager lock", e);
+    } finally {
+      rwLock.readUnlock(RwLockMode.BM);
+    }
+    assertFalse(rwLock.hasWriteLock(RwLockMode.FS));
+    assertFalse(rwLock.hasReadLock(RwLockMode.BM));
+  }
+
   @Test
   public void testReset() throws Exception {
     Configuration conf = new Configuration();
@@ -66,6 +66,7 @@
 import org.apache.hadoop.hdfs.server.blockmanagement.BlockManager;
 import org.apache.hadoop.hdfs.server.namenode.snapshot.Snapshot;
 import org.apache.hadoop.hdfs.server.protocol.NamenodeProtocols;
+import org.apache.hadoop.hdfs.util.ReadOnlyList;
 import org.apache.hadoop.io.IOUtils;
 import org.apache.hadoop.util.Time;
 import org.junit.Test;
@@ -223,6 +224,53 @@ public void testGetFullPathName() {
     assertEquals(Path.SEPARATOR, root.getFullPathName());
   }
   
+  @Test
+  public void testDirectoryChildren() {
+    INodeDirectory dir = new INodeDirectory(HdfsConstants.GRANDFATHER_INODE_ID,
+        DFSUtil.string2Bytes("d"), perm, 0L);
+    assertTrue(dir.getChildrenList(Snapshot.CURRENT_STATE_ID).isEmpty());
+
+    // Add more children than the initial capacity, out of order
+    final int numChildren = 20;
+    INodeFile[] files = new INodeFile[numChildren];
+    for (int i = 0; i < numChildren; i++) {
+      files[i] = createINodeFile((i * 7) % numChildren + 1);
+      assertTrue(dir.addChild(files[i]));
+      assertSame(dir, files[i].getParent());
+    }
+    assertFalse(dir.addChild(createINodeFile(1)));
+
+    ReadOnlyList<INode> children = dir.getChildrenList(
+        Snapshot.CURRENT_STATE_ID);
+    assertEquals(numChildren, children.size());
+    for (int i = 1; i < numChildren; i++) {
+      assertTrue(children.get(i - 1).compareTo(
+          children.get(i).getLocalNameBytes()) < 0);
+    }
+    for (INodeFile f : files) {
+      assertSame(f, dir.getChild(f.getLocalNameBytes(),
+          Snapshot.CURRENT_STATE_ID));
+    }
+
+    // The list is a live view of the children
+    for (int i = 0; i < numChildren; i += 2) {
+      assertTrue(dir.removeChild(files[i]));
+      assertFalse(dir.removeChild(files[i]));
+    }
+    assertEquals(numChildren / 2, children.size());
+    int seen = 0;
+    for (INode child : children) {
+      assertSame(child, dir.getChild(child.getLocalNameBytes(),
+          Snapshot.CURRENT_STATE_ID));
+      seen++;
+    }
+    assertEquals(numChildren / 2, seen);
+    for (int i = 0; i < numChildren; i++) {
+      assertSame(i % 2 == 0 ? null : files[i], dir.getChild(
+          files[i].getLocalNameBytes(), Snapshot.CURRENT_STATE_ID));
+    }
+  }
+
   /**
    * FSDirectory#unprotectedSetQuota creates a new INodeDirectoryWithQuota to
    * replace the original INodeDirectory. Before HDFS-4243, the parent field of
@@ -88,6 +88,27 @@ public void testCheckLease() {
     assertTrue(lm.countLease() < numLease);
   }
 
+  /**
+   * Check that a renewed lease is not expired even though it was indexed
+   * before a lease which has expired.
+   */
+  @Test
+  public void testRenewedLeaseIsNotExpired() throws Exception {
+    LeaseManager lm = new LeaseManager(makeMockFsNameSystem());
+    lm.setLeasePeriod(0, 1000);
+    lm.addLease("holder1", INodeId.ROOT_INODE_ID + 1);
+    lm.addLease("holder2", INodeId.ROOT_INODE_ID + 2);
+    assertNull(lm.getExpiredLease());
+
+    Thread.sleep(1100);
+    lm.renewLease("holder1");
+    assertEquals("holder2", lm.getExpiredLease().getHolder());
+
+    lm.removeLease(INodeId.ROOT_INODE_ID + 2);
+    assertNull(lm.getExpiredLease());
+    assertEquals(1, lm.countLease());
+  }
+
   @Test
   public void testCountPath() {
     LeaseManager lm = new LeaseManager(makeMockFsNameSystem());
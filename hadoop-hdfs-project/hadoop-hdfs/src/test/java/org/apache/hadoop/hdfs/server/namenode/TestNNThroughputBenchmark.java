@@ -56,6 +56,23 @@ public void testNNThroughput() throws Exception {
     NNThroughputBenchmark.runBenchmark(conf, new String[] {"-op", "all"});
   }
 
+  /**
+   * This test runs the mkdirs benchmark under datanode heartbeat load
+   * with the block manager lock separated from the namespace lock.
+   */
+  @Test(timeout = 120000)
+  public void testMkdirsWithHeartbeatsFineGrainedLock() throws Exception {
+    Configuration conf = new HdfsConfiguration();
+    File nameDir = new File(MiniDFSCluster.getBaseDirectory(), "name");
+    conf.set(DFSConfigKeys.DFS_NAMENODE_NAME_DIR_KEY,
+        nameDir.getAbsolutePath());
+    conf.setBoolean(DFSConfigKeys.DFS_NAMENODE_FSLOCK_FINE_GRAINED_KEY, true);
+    DFSTestUtil.formatNameNode(conf);
+    NNThroughputBenchmark.runBenchmark(conf, new String[] {
+        "-op", "mkdirsWithHeartbeats", "-threads", "4", "-dirs", "100",
+        "-datanodes", "3"});
+  }
+
   /**
    * This test runs all benchmarks defined in {@link NNThroughputBenchmark},
    * with explicit local -fs option.
@@ -24,6 +24,7 @@
 import java.io.IOException;
 import java.net.URI;
 import java.util.List;
+import java.util.concurrent.TimeUnit;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
@@ -37,11 +38,13 @@
 import org.apache.hadoop.hdfs.server.namenode.NameNode;
 import org.apache.hadoop.hdfs.server.namenode.NameNodeAdapter;
 import org.apache.hadoop.test.GenericTestUtils;
+import org.apache.hadoop.util.Time;
 import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
 
 import com.google.common.base.Joiner;
+import com.google.common.base.Supplier;
 import com.google.common.collect.Lists;
 
 /**
@@ -62,6 +65,8 @@ public void startUp() throws IOException {
     conf = new Configuration();
     // Set period of tail edits to a large value (20 mins) for test purposes
     conf.setInt(DFSConfigKeys.DFS_HA_TAILEDITS_PERIOD_KEY, 20 * 60);
+    conf.setTimeDuration(DFSConfigKeys.DFS_HA_TAILEDITS_INPROGRESS_PERIOD_KEY,
+        20, TimeUnit.MINUTES);
     conf.setBoolean(DFSConfigKeys.DFS_HA_TAILEDITS_INPROGRESS_KEY, true);
     HAUtil.setAllowStandbyReads(conf, true);
     qjmhaCluster = new MiniQJMHACluster.Builder(conf).build();
@@ -309,6 +314,57 @@ public void testNewStartInProgressTail() throws Exception {
     assertNotNull(NameNodeAdapter.getFileInfo(nn1, "/test3", true));
   }
 
+  /**
+   * Test that the standby applies a new in-progress edit on its own within
+   * the short in-progress tailing period, rather than dfs.ha.tail-edits.period,
+   * and that it backs off while there are no new edits.
+   */
+  @Test(timeout = 60000)
+  public void testTailWithinInProgressPeriod() throws Exception {
+    qjmhaCluster.shutdown();
+    conf = new Configuration();
+    conf.setInt(DFSConfigKeys.DFS_HA_TAILEDITS_PERIOD_KEY, 20 * 60);
+    conf.setBoolean(DFSConfigKeys.DFS_HA_TAILEDITS_INPROGRESS_KEY, true);
+    conf.setTimeDuration(DFSConfigKeys.DFS_HA_TAILEDITS_INPROGRESS_PERIOD_KEY,
+        10, TimeUnit.MILLISECONDS);
+    conf.setTimeDuration(
+        DFSConfigKeys.DFS_HA_TAILEDITS_INPROGRESS_BACKOFF_MAX_KEY,
+        200, TimeUnit.MILLISECONDS);
+    HAUtil.setAllowStandbyReads(conf, true);
+    qjmhaCluster = new MiniQJMHACluster.Builder(conf).build();
+    cluster = qjmhaCluster.getDfsCluster();
+    cluster.transitionToActive(0);
+    nn1 = cluster.getNameNode(1);
+    final EditLogTailer tailer = nn1.getNamesystem().getEditLogTailer();
+
+    // With no new edits, the tailer backs off to the maximum period.
+    GenericTestUtils.waitFor(new Supplier<Boolean>() {
+      @Override
+      public Boolean get() {
+        return tailer.getCurrentSleepTimeMs() == 200;
+      }
+    }, 10, 10000);
+
+    for (int i = 0; i < 3; i++) {
+      final String path = "/test" + i;
+      cluster.getNameNode(0).getRpcServer().mkdirs(path,
+          FsPermission.createImmutable((short) 0755), true);
+      long startMs = Time.monotonicNow();
+      GenericTestUtils.waitFor(new Supplier<Boolean>() {
+        @Override
+        public Boolean get() {
+          try {
+            return NameNodeAdapter.getFileInfo(nn1, path, true) != null;
+          } catch (IOException e) {
+            throw new RuntimeException(e);
+          }
+        }
+      }, 5, 10000);
+      LOG.info("The standby applied " + path + " after " +
+          (Time.monotonicNow() - startMs) + " ms");
+    }
+  }
+
   /**
    * Check that no edits files are present in the given storage dirs.
    */
@@ -0,0 +1,201 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs.server.namenode.ha;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.hdfs.DFSConfigKeys;
+import org.apache.hadoop.hdfs.DistributedFileSystem;
+import org.apache.hadoop.hdfs.MiniDFSCluster;
+import org.apache.hadoop.hdfs.NameNodeProxies;
+import org.apache.hadoop.hdfs.client.HdfsClientConfigKeys;
+import org.apache.hadoop.hdfs.protocol.ClientProtocol;
+import org.apache.hadoop.hdfs.qjournal.MiniQJMHACluster;
+import org.apache.hadoop.hdfs.server.namenode.NameNodeAdapter;
+import org.apache.hadoop.ipc.RemoteException;
+import org.apache.hadoop.ipc.Server;
+import org.apache.hadoop.ipc.StandbyException;
+import org.apache.hadoop.security.UserGroupInformation;
+import org.apache.hadoop.test.GenericTestUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.common.base.Supplier;
+
+/**
+ * Tests consistent reads served by the standby NameNode through
+ * {@link StandbyReadProxyProvider}.
+ */
+public class TestStandbyReads {
+  private Configuration conf;
+  private MiniQJMHACluster qjmhaCluster;
+  private MiniDFSCluster cluster;
+  private DistributedFileSystem fs;
+
+  @Before
+  public void startUp() throws Exception {
+    conf = new Configuration();
+    // Tail edits manually so that the tests control how far behind the
+    // standby is.
+    conf.setInt(DFSConfigKeys.DFS_HA_TAILEDITS_PERIOD_KEY, 20 * 60);
+    conf.setTimeDuration(DFSConfigKeys.DFS_HA_TAILEDITS_INPROGRESS_PERIOD_KEY,
+        20, TimeUnit.MINUTES);
+    conf.setBoolean(DFSConfigKeys.DFS_HA_TAILEDITS_INPROGRESS_KEY, true);
+    conf.setBoolean(
+        DFSConfigKeys.DFS_HA_STANDBY_CONSISTENT_READS_ENABLED_KEY, true);
+    conf.setLong(DFSConfigKeys.DFS_HA_STANDBY_CONSISTENT_READS_WAIT_MS_KEY,
+        100);
+    startCluster();
+  }
+
+  private void startCluster() throws Exception {
+    qjmhaCluster = new MiniQJMHACluster.Builder(conf).build();
+    cluster = qjmhaCluster.getDfsCluster();
+    cluster.transitionToActive(0);
+
+    Configuration clientConf = new Configuration(conf);
+    String logicalName = HATestUtil.getLogicalHostname(cluster);
+    HATestUtil.setFailoverConfigurations(cluster, clientConf, logicalName);
+    clientConf.set(HdfsClientConfigKeys.Failover.PROXY_PROVIDER_KEY_PREFIX +
+        "." + logicalName, StandbyReadProxyProvider.class.getName());
+    fs = (DistributedFileSystem) FileSystem.get(
+        new URI("hdfs://" + logicalName), clientConf);
+  }
+
+  @After
+  public void tearDown() throws IOException {
+    if (fs != null) {
+      fs.close();
+      fs = null;
+    }
+    if (qjmhaCluster != null) {
+      qjmhaCluster.shutdown();
+      qjmhaCluster = null;
+    }
+  }
+
+  @Test(timeout = 60000)
+  public void testReadServedByStandby() throws Exception {
+    Path dir = new Path("/testReadServedByStandby");
+    assertTrue(fs.mkdirs(dir));
+    cluster.getNameNode(1).getNamesystem().getEditLogTailer().doTailEdits();
+
+    // With the active gone, only the caught up standby can serve the read
+    cluster.shutdownNameNode(0);
+    assertTrue(fs.getFileStatus(dir).isDirectory());
+    assertEquals(0, fs.listStatus(dir).length);
+  }
+
+  @Test(timeout = 60000)
+  public void testFallbackToActiveWhenStandbyLags() throws Exception {
+    Path dir = new Path("/testFallbackToActiveWhenStandbyLags");
+    assertTrue(fs.mkdirs(dir));
+
+    // The standby has not applied the mkdirs, so it rejects the read and the
+    // client reads its write from the active.
+    assertTrue(fs.getFileStatus(dir).isDirectory());
+    assertNull(NameNodeAdapter.getFileInfo(cluster.getNameNode(1),
+        dir.toString(), true));
+
+    cluster.getNameNode(1).getNamesystem().getEditLogTailer().doTailEdits();
+    assertNotNull(NameNodeAdapter.getFileInfo(cluster.getNameNode(1),
+        dir.toString(), true));
+    assertTrue(fs.getFileStatus(dir).isDirectory());
+  }
+
+  @Test(timeout = 60000)
+  public void testLaggingReadsDoNotOccupyHandlers() throws Exception {
+    // Restart with a single handler and reads held for longer than the test
+    tearDown();
+    conf.setInt(DFSConfigKeys.DFS_NAMENODE_HANDLER_COUNT_KEY, 1);
+    conf.setLong(DFSConfigKeys.DFS_HA_STANDBY_CONSISTENT_READS_WAIT_MS_KEY,
+        10 * 60 * 1000);
+    startCluster();
+
+    final Path dir = new Path("/testLaggingReadsDoNotOccupyHandlers");
+    assertTrue(fs.mkdirs(dir));
+    final int numReads = 3;
+    ExecutorService executor = Executors.newFixedThreadPool(numReads);
+    try {
+      List<Future<FileStatus>> reads = new ArrayList<Future<FileStatus>>();
+      for (int i = 0; i < numReads; i++) {
+        reads.add(executor.submit(new Callable<FileStatus>() {
+          @Override
+          public FileStatus call() throws IOException {
+            return fs.getFileStatus(dir);
+          }
+        }));
+      }
+      // Wait until the standby holds all the reads, which keep cycling
+      // through its call queue and its only handler.
+      final Server server = NameNodeAdapter.getRpcServer(
+          cluster.getNameNode(1));
+      GenericTestUtils.waitFor(new Supplier<Boolean>() {
+        @Override
+        public Boolean get() {
+          return server.getCallQueueLen() >= numReads - 1;
+        }
+      }, 10, 10000);
+
+      // The handler is still free to serve calls which do not wait
+      ClientProtocol nn1 = NameNodeProxies.createNonHAProxy(conf,
+          cluster.getNameNode(1).getNameNodeAddress(), ClientProtocol.class,
+          UserGroupInformation.getCurrentUser(), false).getProxy();
+      for (int i = 0; i < 10; i++) {
+        try {
+          nn1.getFileInfo(dir.toString());
+          fail("Expected the standby to reject a read without a state ID");
+        } catch (RemoteException e) {
+          assertEquals(StandbyException.class.getName(), e.getClassName());
+        }
+      }
+      for (Future<FileStatus> read : reads) {
+        assertFalse(read.isDone());
+      }
+
+      // Once the standby catches up it serves the held reads itself
+      cluster.shutdownNameNode(0);
+      cluster.getNameNode(1).getNamesystem().getEditLogTailer().doTailEdits();
+      for (Future<FileStatus> read : reads) {
+        assertTrue(read.get().isDirectory());
+      }
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+}
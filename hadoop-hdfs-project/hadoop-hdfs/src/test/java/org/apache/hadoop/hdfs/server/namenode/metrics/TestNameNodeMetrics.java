@@ -545,6 +545,7 @@ public void testSyncAndBlockReportMetric() throws Exception {
     MetricsRecordBuilder rb = getMetrics(NN_METRICS);
     // We have one sync when the cluster starts up, just opening the journal
     assertCounter("SyncsNumOps", 1L, rb);
+    assertCounter("SyncBatchSizeNumSyncs", 1L, rb);
     // Each datanode reports in when the cluster comes up
     assertCounter("BlockReportNumOps",
                   (long)DATANODE_COUNT * cluster.getStoragesPerDatanode(), rb);
@@ -307,6 +307,55 @@ public ShortCircuitReplicaInfo createShortCircuitReplicaInfo() {
     cache.close();
   }
   
+  @Test(timeout=60000)
+  public void testMmapByteLimit() throws Exception {
+    // Allow 10 evictable mmaps, but only 2 bytes of them.  Every data file
+    // holds a single byte.
+    final ShortCircuitCache cache =
+        new ShortCircuitCache(10, 10000000, 10, 10000000, 1, 10000, 0, 2);
+    final TestFileDescriptorPair pairs[] = new TestFileDescriptorPair[] {
+      new TestFileDescriptorPair(),
+      new TestFileDescriptorPair(),
+      new TestFileDescriptorPair(),
+    };
+    ShortCircuitReplica replicas[] = new ShortCircuitReplica[pairs.length];
+    for (int i = 0; i < pairs.length; i++) {
+      ShortCircuitReplicaInfo replicaInfo = cache.fetchOrCreate(
+          new ExtendedBlockId(i, "test_bp1"),
+            new SimpleReplicaCreator(i, cache, pairs[i]));
+      replicas[i] = replicaInfo.getReplica();
+      Preconditions.checkNotNull(replicas[i]);
+      ClientMmap clientMmap = replicas[i].getOrCreateClientMmap(false);
+      Assert.assertNotNull(clientMmap);
+      Assert.assertEquals(1, clientMmap.getMappedByteBuffer().capacity());
+      clientMmap.close();
+    }
+    for (int i = 0; i < pairs.length; i++) {
+      replicas[i].unref();
+    }
+    // The oldest mmap was closed to stay within the byte limit, but its
+    // replica is still cached.
+    cache.accept(new CacheVisitor() {
+      @Override
+      public void visit(int numOutstandingMmaps,
+          Map<ExtendedBlockId, ShortCircuitReplica> replicas,
+          Map<ExtendedBlockId, InvalidToken> failedLoads,
+          Map<Long, ShortCircuitReplica> evictable,
+          Map<Long, ShortCircuitReplica> evictableMmapped) {
+        Assert.assertEquals(2, numOutstandingMmaps);
+        Assert.assertEquals(3, replicas.size());
+        Assert.assertEquals(1, evictable.size());
+        Assert.assertEquals(2, evictableMmapped.size());
+        Assert.assertFalse(
+            replicas.get(new ExtendedBlockId(0, "test_bp1")).hasMmap());
+      }
+    });
+    for (int i = 0; i < pairs.length; i++) {
+      pairs[i].close();
+    }
+    cache.close();
+  }
+
   @Test(timeout=60000)
   public void testTimeBasedStaleness() throws Exception {
     // Set up the cache with a short staleness time.
@@ -386,6 +386,51 @@ public int compare(Object o1, Object o2) {
     }
   }
 
+  @Test
+  public void testTailIterator() {
+    FoldedTreeSet<Holder> set = new FoldedTreeSet<>();
+    long[] longs = new long[23497];
+    for (int i = 0; i < longs.length; i++) {
+      Holder val = new Holder(srand.nextLong());
+      while (set.contains(val)) {
+        val = new Holder(srand.nextLong());
+      }
+      longs[i] = val.getId();
+      set.add(val);
+    }
+    Arrays.sort(longs);
+    Comparator<Object> cmp = new Comparator<Object>() {
+      @Override
+      public int compare(Object o1, Object o2) {
+        return Long.compare((long) o1, ((Holder) o2).getId());
+      }
+    };
+
+    if (longs[longs.length - 1] != Long.MAX_VALUE) {
+      assertFalse(
+          set.tailIterator(longs[longs.length - 1] + 1, cmp).hasNext());
+    }
+    for (int n = 0; n < 1000; n++) {
+      int i = srand.nextInt(longs.length);
+      // Look up both a stored ID and the ID just after the one before it
+      long from = srand.nextBoolean() || i == 0 ? longs[i]
+          : longs[i - 1] + 1;
+      Iterator<Holder> it = set.tailIterator(from, cmp);
+      for (int j = i; j < Math.min(i + 100, longs.length); j++) {
+        assertTrue(it.hasNext());
+        assertEquals(longs[j], it.next().getId());
+      }
+      if (i + 100 >= longs.length) {
+        assertFalse(it.hasNext());
+      }
+    }
+    Iterator<Holder> it = set.tailIterator(Long.MIN_VALUE, cmp);
+    for (long val : longs) {
+      assertEquals(val, it.next().getId());
+    }
+    assertFalse(it.hasNext());
+  }
+
   @Test
   public void testGet() {
     FoldedTreeSet<Holder> set = new FoldedTreeSet<>();
@@ -20,10 +20,12 @@
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Map;
@@ -388,6 +390,56 @@ public void testChooseRandomExcludeAllNodes() {
     }
   }
 
+  /**
+   * This test checks that chooseRandom picks evenly among the few nodes left
+   * when an excluded scope and most of the other nodes are excluded.
+   */
+  @Test
+  public void testChooseRandomMostNodesExcluded() {
+    Set<Node> excludedNodes = new HashSet<>();
+    for (int i = 0; i < dataNodes.length; i++) {
+      if (i != 5 && i != 12 && i != 19) {
+        excludedNodes.add(dataNodes[i]);
+      }
+    }
+    Map<Node, Integer> frequency =
+        pickNodesAtRandom(3000, "~/d2", excludedNodes);
+    for (int i = 0; i < dataNodes.length; i++) {
+      int freq = frequency.get(dataNodes[i]);
+      if (i == 12 || i == 19) {
+        assertTrue("dn[" + i + "] chosen " + freq + " times",
+            freq > 1200 && freq < 1800);
+      } else {
+        assertEquals("dn[" + i + "] should be excluded", 0, freq);
+      }
+    }
+    assertEquals(2, cluster.countNumOfAvailableNodes("~/d2", excludedNodes));
+  }
+
+  /**
+   * This test checks that chooseRandom follows nodes being removed and
+   * added back.
+   */
+  @Test
+  public void testChooseRandomAfterRemove() {
+    final String scope = "/d3/r2";
+    assertEquals(2, cluster.countNumOfAvailableNodes(scope, null));
+    cluster.remove(dataNodes[12]);
+    try {
+      assertEquals(1, cluster.countNumOfAvailableNodes(scope, null));
+      for (int i = 0; i < 100; i++) {
+        assertEquals(dataNodes[11], cluster.chooseRandom(scope));
+      }
+      assertNull(cluster.chooseRandom(scope,
+          Collections.<Node>singleton(dataNodes[11])));
+    } finally {
+      cluster.add(dataNodes[12]);
+    }
+    Map<Node, Integer> frequency = pickNodesAtRandom(100, scope, null);
+    assertTrue(frequency.get(dataNodes[11]) > 0);
+    assertTrue(frequency.get(dataNodes[12]) > 0);
+  }
+
   @Test(timeout=180000)
   public void testInvalidNetworkTopologiesNotCachedInHdfs() throws Exception {
     // start a cluster
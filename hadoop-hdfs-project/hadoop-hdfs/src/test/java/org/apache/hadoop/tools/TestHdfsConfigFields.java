@@ -130,6 +130,18 @@ public void initializeMemberVariables() {
     // Some properties have moved to HdfsClientConfigKeys
     xmlPropsToSkipCompare.add("dfs.client.short.circuit.replica.stale.threshold.ms");
 
+    // Defined only in the nested HdfsClientConfigKeys.HedgedRead interface
+    xmlPropsToSkipCompare.add(
+        HdfsClientConfigKeys.HedgedRead.THRESHOLD_PERCENTILE_KEY);
+    xmlPropsToSkipCompare.add(
+        HdfsClientConfigKeys.HedgedRead.THRESHOLD_MIN_MILLIS_KEY);
+    xmlPropsToSkipCompare.add(
+        HdfsClientConfigKeys.HedgedRead.SEQUENTIAL_ENABLED_KEY);
+
+    // Defined only in the nested HdfsClientConfigKeys.Mmap interface
+    xmlPropsToSkipCompare.add(HdfsClientConfigKeys.Mmap.CACHE_MAX_BYTES_KEY);
+    xmlPropsToSkipCompare.add(HdfsClientConfigKeys.Mmap.READS_ENABLED_KEY);
+
     // Ignore HTrace properties
     xmlPropsToSkipCompare.add("fs.client.htrace");
     xmlPropsToSkipCompare.add("hadoop.htrace");